@@ -33,6 +33,15 @@ android {
         sourceCompatibility = JavaVersion.VERSION_17
         targetCompatibility = JavaVersion.VERSION_17
     }
+
+    testOptions {
+        unitTests.all { test ->
+            // Benchmarks are slow and machine dependent, run them with -Pbenchmark
+            if (!project.hasProperty("benchmark")) {
+                test.exclude("**/*Benchmark.class")
+            }
+        }
+    }
 }
 
 
@@ -45,6 +54,8 @@ dependencies {
     implementation(libs.activity)
     implementation(libs.constraintlayout)
     testImplementation(libs.junit)
+    // The android.jar org.json classes are stubs that throw on the JVM
+    testImplementation(libs.json)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
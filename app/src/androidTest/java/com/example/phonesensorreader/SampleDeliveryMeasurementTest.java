@@ -0,0 +1,163 @@
+package com.example.phonesensorreader;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sample-to-UI latency and allocation rate of the previous per-sample broadcast versus
+ * {@link SampleChannel}, with both sensors at 100 Hz delivered to the main thread.
+ * Results are logged under the tag SampleDelivery.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SampleDeliveryMeasurementTest {
+    private static final String LOG_TAG = "SampleDelivery";
+    private static final String ACTION = "com.example.phonesensorreader.test.ACTION_SENSOR_DATA";
+    private static final String EXTRA_TIMESTAMP = "timestamp";
+    private static final String EXTRA_VALUES = "values";
+    private static final int SECONDS = 5;
+    private static final int SAMPLES = SECONDS * 200;
+    // The sample consumer drains every 20 ms
+    private static final int SAMPLES_PER_FLUSH = 4;
+
+    private static class Result {
+        final long[] latencies = new long[SAMPLES];
+        int received;
+        long allocatedBytes;
+
+        synchronized void record(long timestampNanos) {
+            if (received < latencies.length) {
+                latencies[received++] = SystemClock.elapsedRealtimeNanos() - timestampNanos;
+            }
+        }
+
+        String describe(String path) {
+            if (received == 0) {
+                return path + ": no samples received";
+            }
+            long[] sorted = Arrays.copyOf(latencies, received);
+            Arrays.sort(sorted);
+            return String.format(Locale.US, "%s: %d/%d samples, latency p50=%.2fms p99=%.2fms max=%.2fms, %.1f KB/s allocated",
+                    path, received, SAMPLES, sorted[received / 2] / 1e6, sorted[received * 99 / 100] / 1e6,
+                    sorted[received - 1] / 1e6, allocatedBytes / 1024.0 / SECONDS);
+        }
+    }
+
+    private static long allocatedBytes() {
+        String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    /** Emits both sensors at 100 Hz like the consumer thread, calling {@code flush} every 20 ms. */
+    private static void produce(SampleSink sink, Runnable flush) throws InterruptedException {
+        long next = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < SAMPLES; i += 2) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            sink.onSample(now, 1, i, i, i);
+            sink.onSample(now, 4, i, i, i);
+            if ((i + 2) % SAMPLES_PER_FLUSH == 0) {
+                flush.run();
+            }
+            next += 10_000_000L;
+            long sleep = next - SystemClock.elapsedRealtimeNanos();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+            }
+        }
+        flush.run();
+    }
+
+    private static void awaitReceived(Result result) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + 10_000;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            synchronized (result) {
+                if (result.received >= SAMPLES) return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private Result measureBroadcast(Context context) throws InterruptedException {
+        Result result = new Result();
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                float[] values = intent.getFloatArrayExtra(EXTRA_VALUES);
+                if (values != null) {
+                    result.record(intent.getLongExtra(EXTRA_TIMESTAMP, 0));
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter(ACTION);
+        Handler main = new Handler(Looper.getMainLooper());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(receiver, filter, null, main, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter, null, main);
+        }
+        long before = allocatedBytes();
+        // What PhoneSensorService did per sample
+        produce((timestampNanos, sensorType, x, y, z) -> {
+            Intent intent = new Intent(ACTION).setPackage(context.getPackageName());
+            intent.putExtra(EXTRA_TIMESTAMP, timestampNanos);
+            intent.putExtra(EXTRA_VALUES, new float[]{x, y, z});
+            context.sendBroadcast(intent);
+        }, () -> { });
+        awaitReceived(result);
+        result.allocatedBytes = allocatedBytes() - before;
+        context.unregisterReceiver(receiver);
+        return result;
+    }
+
+    private Result measureChannel() throws InterruptedException {
+        Result result = new Result();
+        SampleChannel channel = new SampleChannel(SampleChannel.DEFAULT_BATCH_CAPACITY,
+                SampleChannel.DEFAULT_MAX_DELIVERY_RATE_HZ);
+        Handler main = new Handler(Looper.getMainLooper());
+        SampleChannel.Subscription subscription = channel.subscribe(batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                result.record(batch.getTimestampNanos(i));
+            }
+        }, main::post);
+        long before = allocatedBytes();
+        produce(channel::publish, channel::flush);
+        awaitReceived(result);
+        result.allocatedBytes = allocatedBytes() - before;
+        subscription.close();
+        return result;
+    }
+
+    @Test
+    public void channelAllocatesLessThanBroadcast() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // Warm up both paths so class loading is not measured
+        measureChannel();
+        measureBroadcast(context);
+
+        Result broadcast = measureBroadcast(context);
+        Result channel = measureChannel();
+        Log.i(LOG_TAG, broadcast.describe("broadcast"));
+        Log.i(LOG_TAG, channel.describe("channel"));
+
+        assertEquals(SAMPLES, channel.received);
+        assertTrue(channel.allocatedBytes < broadcast.allocatedBytes);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.phonesensorreader;
+
+import androidx.annotation.Nullable;
+
+/** Classifies the activity from the features of the latest sensor windows. */
+public interface ActivityClassifier {
+    /**
+     * Called on the sample consumer thread for every accelerometer window, so implementations
+     * should return in microseconds and not allocate.
+     *
+     * @param gyroscope the latest gyroscope window, or null if the device has none
+     */
+    Classification classify(WindowFeatures accelerometer, @Nullable WindowFeatures gyroscope);
+}
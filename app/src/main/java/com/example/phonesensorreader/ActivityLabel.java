@@ -0,0 +1,54 @@
+package com.example.phonesensorreader;
+
+import java.util.Locale;
+
+/** Activities the app predicts, plus {@link #UNKNOWN} when a response names none of them. */
+public enum ActivityLabel {
+    WALKING("walk"),
+    RUNNING("run"),
+    SITTING("sit"),
+    UNKNOWN(null);
+
+    private final String stem;
+
+    ActivityLabel(String stem) {
+        this.stem = stem;
+    }
+
+    /** The activity mentioned first in a free-text model response, e.g. "Running." or "The user is walking". */
+    public static ActivityLabel parse(String text) {
+        if (text == null) {
+            return UNKNOWN;
+        }
+        String lower = text.toLowerCase(Locale.US);
+        ActivityLabel best = UNKNOWN;
+        int bestIndex = Integer.MAX_VALUE;
+        for (ActivityLabel label : values()) {
+            if (label.stem == null) {
+                continue;
+            }
+            int index = indexOfWord(lower, label.stem);
+            if (index >= 0 && index < bestIndex) {
+                best = label;
+                bestIndex = index;
+            }
+        }
+        return best;
+    }
+
+    /** Index of a word starting with {@code stem}, so "sit" matches "sitting" but not "position". */
+    private static int indexOfWord(String text, String stem) {
+        int from = 0;
+        while (true) {
+            int index = text.indexOf(stem, from);
+            if (index < 0 || index == 0 || !Character.isLetter(text.charAt(index - 1))) {
+                return index;
+            }
+            from = index + 1;
+        }
+    }
+
+    public String displayName() {
+        return name().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.phonesensorreader;
+
+import java.util.Locale;
+
+/** One activity prediction with where it came from and how long it took to produce. */
+public class ActivityPrediction {
+    public enum Source {
+        /** The on-device {@link ActivityClassifier}. */
+        CLASSIFIER,
+        /** The local completion server. */
+        LLM,
+        /** An earlier answer of the completion server, reused by {@link InferenceCache}. */
+        CACHE
+    }
+
+    private final ActivityLabel label;
+    private final Source source;
+    private final double confidence;
+    private final String responseText;
+    private final long latencyNanos;
+    private final long predictedAtMillis;
+
+    public ActivityPrediction(ActivityLabel label, Source source, double confidence, String responseText,
+                              long latencyNanos, long predictedAtMillis) {
+        this.label = label;
+        this.source = source;
+        this.confidence = confidence;
+        this.responseText = responseText;
+        this.latencyNanos = latencyNanos;
+        this.predictedAtMillis = predictedAtMillis;
+    }
+
+    public ActivityLabel getLabel() {
+        return label;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /** Classifier confidence between 0 and 1, NaN for LLM answers. */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /** Raw text the model answered with, or a description of the classifier result. */
+    public String getResponseText() {
+        return responseText;
+    }
+
+    /** From handing over the window or prompt to having the answer. */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getLatencyMillis() {
+        return latencyNanos / 1_000_000L;
+    }
+
+    /** Wall clock time the prediction was received. */
+    public long getPredictedAtMillis() {
+        return predictedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s by %s (%.3f ms)", label.displayName(),
+                source.name().toLowerCase(Locale.US), latencyNanos / 1e6);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.phonesensorreader;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Answers confident windows with a fast {@link ActivityClassifier} and leaves the rest for
+ * the LLM, which only ever sees the windows the classifier can't separate.
+ */
+public class CascadeClassifier {
+    private final ActivityClassifier classifier;
+    private final double minConfidence;
+
+    private long classifiedCount;
+    private long escalatedCount;
+    private long totalClassifyNanos;
+
+    public CascadeClassifier(ActivityClassifier classifier, double minConfidence) {
+        this.classifier = classifier;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * The classifier's prediction, or null when its confidence is below the threshold and the
+     * window should be escalated. Not thread safe.
+     */
+    @Nullable
+    public ActivityPrediction classify(WindowFeatures accelerometer, @Nullable WindowFeatures gyroscope) {
+        long start = System.nanoTime();
+        Classification classification = classifier.classify(accelerometer, gyroscope);
+        long elapsed = System.nanoTime() - start;
+        totalClassifyNanos += elapsed;
+        if (classification.getLabel() == ActivityLabel.UNKNOWN || classification.getConfidence() < minConfidence) {
+            escalatedCount++;
+            return null;
+        }
+        classifiedCount++;
+        return new ActivityPrediction(classification.getLabel(), ActivityPrediction.Source.CLASSIFIER,
+                classification.getConfidence(), classification.toString(), elapsed, System.currentTimeMillis());
+    }
+
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+
+    /** Windows answered by the classifier. */
+    public long getClassifiedCount() {
+        return classifiedCount;
+    }
+
+    /** Windows left for the LLM. */
+    public long getEscalatedCount() {
+        return escalatedCount;
+    }
+
+    public long getMeanClassifyNanos() {
+        long windows = classifiedCount + escalatedCount;
+        return windows == 0 ? 0 : totalClassifyNanos / windows;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.phonesensorreader;
+
+/**
+ * Adds every sample of a registered sensor to its channels of a {@link SensorStatistics},
+ * laid out as in the {@link SensorRegistry}. Samples of other sensors are ignored.
+ */
+public class ChannelAccumulator implements SampleSink {
+    private final SensorRegistry registry;
+    private final SensorStatistics statistics;
+
+    public ChannelAccumulator(SensorRegistry registry, SensorStatistics statistics) {
+        if (statistics.getChannelCount() < registry.getChannelCount()) {
+            throw new IllegalArgumentException("Statistics have " + statistics.getChannelCount()
+                    + " channels, the registry needs " + registry.getChannelCount());
+        }
+        this.registry = registry;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        int index = registry.indexOf(sensorType);
+        if (index < 0) {
+            return;
+        }
+        int channel = registry.getFirstChannel(index);
+        int dimensions = registry.getDimensions(index);
+        statistics.add(channel, x);
+        if (dimensions > 1) {
+            statistics.add(channel + 1, y);
+        }
+        if (dimensions > 2) {
+            statistics.add(channel + 2, z);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.phonesensorreader;
+
+import java.util.Locale;
+
+/** Result of an {@link ActivityClassifier}: a label and how sure the classifier is of it. */
+public final class Classification {
+    private final ActivityLabel label;
+    private final double confidence;
+
+    public Classification(ActivityLabel label, double confidence) {
+        this.label = label;
+        this.confidence = confidence;
+    }
+
+    public ActivityLabel getLabel() {
+        return label;
+    }
+
+    /** Between 0 and 1, e.g. the share of training windows in a decision tree leaf with this label. */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s (%.2f)", label.displayName(), confidence);
+    }
+}
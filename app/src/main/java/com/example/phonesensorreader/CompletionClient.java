@@ -0,0 +1,445 @@
+package com.example.phonesensorreader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Shared client for the local completion server.
+ *
+ * One OkHttp client with a keep-alive connection pool serves every request, so inference
+ * calls reuse an open connection instead of paying connection setup each time, and the
+ * dispatcher caps how many requests run at once.
+ *
+ * Requests submitted with a key are coalesced: per key there is at most one request in
+ * flight and one waiting. A newer request replaces the waiting one, whose callback is told
+ * it was dropped, so a slow model never works through a backlog of stale sensor windows.
+ * Requests without a key are independent but are rejected once {@link Config#maxQueuedRequests}
+ * are waiting.
+ */
+public class CompletionClient {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    public static final String DROPPED = "Dropped: superseded by a newer request";
+    public static final String QUEUE_FULL = "Rejected: request queue is full";
+    public static final String CANCELED = "Canceled";
+
+    public interface ResponseCallback {
+        /** Called on an OkHttp thread. */
+        void onResponse(String body, long latencyMillis);
+
+        /** Called on an OkHttp thread, or on the submitting thread for dropped and rejected requests. */
+        void onFailure(String message);
+    }
+
+    public static class Config {
+        String endpoint = "http://127.0.0.1:8080/completion";
+        long connectTimeoutMillis = 5_000;
+        // Generation can take a while on a phone, the read timeout is per read not per call
+        long readTimeoutMillis = 120_000;
+        int maxIdleConnections = 2;
+        long keepAliveMillis = 5 * 60_000;
+        int maxConcurrentRequests = 1;
+        int maxQueuedRequests = 4;
+
+        public Config endpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        public Config connectTimeoutMillis(long millis) {
+            this.connectTimeoutMillis = millis;
+            return this;
+        }
+
+        public Config readTimeoutMillis(long millis) {
+            this.readTimeoutMillis = millis;
+            return this;
+        }
+
+        public Config keepAlive(int maxIdleConnections, long keepAliveMillis) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = keepAliveMillis;
+            return this;
+        }
+
+        public Config maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public Config maxQueuedRequests(int maxQueuedRequests) {
+            this.maxQueuedRequests = maxQueuedRequests;
+            return this;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+    }
+
+    private static CompletionClient shared;
+
+    /** The process-wide client, created with the default {@link Config} on first use. */
+    public static synchronized CompletionClient getShared() {
+        if (shared == null) {
+            shared = new CompletionClient(new Config());
+        }
+        return shared;
+    }
+
+    /** Replaces the process-wide client, cancelling everything the previous one was doing. */
+    public static synchronized void configureShared(Config config) {
+        if (shared != null) {
+            shared.shutdown();
+        }
+        shared = new CompletionClient(config);
+    }
+
+    /** A request waiting for its key's in-flight request to finish. */
+    private abstract static class Submission {
+        final String key;
+
+        Submission(String key) {
+            this.key = key;
+        }
+
+        abstract Call newCall();
+
+        /** Sends {@code call}. Not under the slots lock, a failing call may call back right away. */
+        abstract void enqueue(Call call);
+
+        abstract void fail(String message);
+    }
+
+    /** When the dispatcher ran a call, after any wait in its queue, set by {@link #startClock}. */
+    private static final class CallClock {
+        volatile long startNanos;
+    }
+
+    private static Response startClock(Interceptor.Chain chain) throws IOException {
+        CallClock clock = chain.request().tag(CallClock.class);
+        if (clock != null) {
+            clock.startNanos = System.nanoTime();
+        }
+        return chain.proceed(chain.request());
+    }
+
+    private static class Slot {
+        Call inFlight;
+        Submission waiting;
+    }
+
+    private final Config config;
+    private final OkHttpClient httpClient;
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+
+    public CompletionClient(Config config) {
+        this.config = config;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.maxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(config.maxConcurrentRequests);
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(config.maxIdleConnections, config.keepAliveMillis, TimeUnit.MILLISECONDS))
+                .connectTimeout(config.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(config.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .addInterceptor(CompletionClient::startClock)
+                .build();
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Posts {@code json} and delivers the whole response body.
+     *
+     * @param key coalescing key, or null for an independent request
+     */
+    public void complete(String key, String json, ResponseCallback callback) {
+        submit(new Submission(key) {
+            private final CallClock clock = new CallClock();
+
+            @Override
+            Call newCall() {
+                return httpClient.newCall(buildRequest(json, false, clock));
+            }
+
+            @Override
+            void enqueue(Call call) {
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        finished(key, call, false);
+                        callback.onFailure(call.isCanceled() ? CANCELED : "Failed: " + e.getMessage());
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        long startNanos = clock.startNanos;
+                        timeToFirstByte.recordSince(startNanos);
+                        String body;
+                        try (ResponseBody responseBody = response.body()) {
+                            body = responseBody == null ? "" : responseBody.string();
+                        } catch (IOException e) {
+                            onFailure(call, e);
+                            return;
+                        }
+                        boolean ok = response.isSuccessful();
+                        long latencyNanos = System.nanoTime() - startNanos;
+                        responseTime.record(latencyNanos);
+                        finished(key, call, ok);
+                        if (ok) {
+                            callback.onResponse(body, latencyNanos / 1_000_000L);
+                        } else {
+                            callback.onFailure("Error: " + response.code() + " - " + body);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            void fail(String message) {
+                callback.onFailure(message);
+            }
+        });
+    }
+
+    /**
+     * Posts {@code json}, which should set {@code "stream": true}, and streams the tokens to
+     * {@code listener} through {@code delivery} as described in {@link StreamingCompletion}.
+     *
+     * @param key coalescing key, or null for an independent request
+     */
+    public void stream(String key, String json, StreamingCompletion.Listener listener, Executor delivery,
+                       long minDeliveryIntervalMillis) {
+        submit(new Submission(key) {
+            private final CallClock clock = new CallClock();
+
+            @Override
+            Call newCall() {
+                return httpClient.newCall(buildRequest(json, true, clock));
+            }
+
+            @Override
+            void enqueue(Call call) {
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        finished(key, call, false);
+                        String message = call.isCanceled() ? CANCELED : "Failed: " + e.getMessage();
+                        delivery.execute(() -> listener.onError(message));
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        long startNanos = clock.startNanos;
+                        timeToFirstByte.recordSince(startNanos);
+                        boolean ok = response.isSuccessful();
+                        try (ResponseBody body = response.body()) {
+                            if (!ok || body == null) {
+                                delivery.execute(() -> listener.onError("Error: " + response.code()));
+                            } else {
+                                StreamingCompletion completion = new StreamingCompletion(listener, delivery,
+                                        minDeliveryIntervalMillis);
+                                completion.markRequestStart(startNanos);
+                                ok = completion.read(body.byteStream());
+                            }
+                        } catch (IOException e) {
+                            ok = false;
+                            String message = call.isCanceled() ? CANCELED : "Failed: " + e.getMessage();
+                            delivery.execute(() -> listener.onError(message));
+                        }
+                        responseTime.recordSince(startNanos);
+                        finished(key, call, ok);
+                    }
+                });
+            }
+
+            @Override
+            void fail(String message) {
+                delivery.execute(() -> listener.onError(message));
+            }
+        });
+    }
+
+    private Request buildRequest(String json, boolean streaming, CallClock clock) {
+        return new Request.Builder()
+                .url(config.endpoint)
+                .tag(CallClock.class, clock)
+                .header("Accept", streaming ? "text/event-stream" : "application/json")
+                .post(RequestBody.create(json, JSON))
+                .build();
+    }
+
+    private void submit(Submission submission) {
+        Submission dropped = null;
+        Call call = null;
+        boolean rejected = false;
+        synchronized (slots) {
+            if (submission.key == null) {
+                if (httpClient.dispatcher().queuedCallsCount() >= config.maxQueuedRequests) {
+                    rejected = true;
+                } else {
+                    call = submission.newCall();
+                }
+            } else {
+                Slot slot = slots.get(submission.key);
+                if (slot == null) {
+                    slot = new Slot();
+                    slots.put(submission.key, slot);
+                }
+                if (slot.inFlight == null) {
+                    call = submission.newCall();
+                    slot.inFlight = call;
+                } else {
+                    dropped = slot.waiting;
+                    slot.waiting = submission;
+                }
+            }
+        }
+        if (call != null) {
+            submission.enqueue(call);
+        }
+        if (rejected) {
+            rejectedCount.incrementAndGet();
+            submission.fail(QUEUE_FULL);
+        }
+        if (dropped != null) {
+            droppedCount.incrementAndGet();
+            dropped.fail(DROPPED);
+        }
+    }
+
+    /** Releases the key's slot and starts the request waiting behind {@code call}, if any. */
+    private void finished(String key, Call call, boolean success) {
+        (success ? completedCount : failedCount).incrementAndGet();
+        if (key == null) {
+            return;
+        }
+        Submission next;
+        Call nextCall;
+        synchronized (slots) {
+            Slot slot = slots.get(key);
+            if (slot == null || slot.inFlight != call) {
+                return;
+            }
+            next = slot.waiting;
+            slot.waiting = null;
+            if (next == null) {
+                slots.remove(key);
+                return;
+            }
+            // Holds the slot until it is sent, a cancel in between cancels it
+            nextCall = next.newCall();
+            slot.inFlight = nextCall;
+        }
+        next.enqueue(nextCall);
+    }
+
+    /** Cancels the in-flight and waiting request of {@code key}. */
+    public void cancel(String key) {
+        Call inFlight;
+        Submission waiting;
+        synchronized (slots) {
+            Slot slot = slots.remove(key);
+            if (slot == null) {
+                return;
+            }
+            inFlight = slot.inFlight;
+            waiting = slot.waiting;
+        }
+        if (waiting != null) {
+            waiting.fail(CANCELED);
+        }
+        if (inFlight != null) {
+            inFlight.cancel();
+        }
+    }
+
+    /** Cancels everything and releases idle connections. The client remains usable. */
+    public void cancelAll() {
+        Map<String, Slot> cancelled;
+        synchronized (slots) {
+            cancelled = new HashMap<>(slots);
+            slots.clear();
+        }
+        for (Slot slot : cancelled.values()) {
+            if (slot.waiting != null) {
+                slot.waiting.fail(CANCELED);
+            }
+            // Possibly not enqueued yet, so not known to the dispatcher
+            if (slot.inFlight != null) {
+                slot.inFlight.cancel();
+            }
+        }
+        httpClient.dispatcher().cancelAll();
+    }
+
+    /** Cancels everything and stops the dispatcher threads. */
+    public void shutdown() {
+        cancelAll();
+        httpClient.connectionPool().evictAll();
+        httpClient.dispatcher().executorService().shutdown();
+    }
+
+    public int getRunningCount() {
+        return httpClient.dispatcher().runningCallsCount();
+    }
+
+    public int getQueuedCount() {
+        return httpClient.dispatcher().queuedCallsCount();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Time from the dispatcher starting a request until its response headers arrived. Waiting
+     * in the dispatcher's queue is not included.
+     */
+    public LatencyHistogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /** Time from the dispatcher starting a request until its whole response body was read. */
+    public LatencyHistogram getResponseTime() {
+        return responseTime;
+    }
+}
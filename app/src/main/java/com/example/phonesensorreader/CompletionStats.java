@@ -0,0 +1,44 @@
+package com.example.phonesensorreader;
+
+import java.util.Locale;
+
+/** Timing of one streamed completion. Times are measured from when the request was sent. */
+public class CompletionStats {
+    private final long timeToFirstTokenMillis;
+    private final long totalMillis;
+    private final int tokenCount;
+
+    public CompletionStats(long timeToFirstTokenMillis, long totalMillis, int tokenCount) {
+        this.timeToFirstTokenMillis = timeToFirstTokenMillis;
+        this.totalMillis = totalMillis;
+        this.tokenCount = tokenCount;
+    }
+
+    /** -1 if no token arrived. */
+    public long getTimeToFirstTokenMillis() {
+        return timeToFirstTokenMillis;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /** Generation rate after the first token, 0 if fewer than two tokens arrived. */
+    public double getTokensPerSecond() {
+        long generationMillis = totalMillis - timeToFirstTokenMillis;
+        if (tokenCount < 2 || timeToFirstTokenMillis < 0 || generationMillis <= 0) {
+            return 0;
+        }
+        return (tokenCount - 1) * 1000.0 / generationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "ttft=%dms total=%dms tokens=%d rate=%.1f tok/s",
+                timeToFirstTokenMillis, totalMillis, tokenCount, getTokensPerSecond());
+    }
+}
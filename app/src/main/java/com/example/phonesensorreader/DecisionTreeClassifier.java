@@ -0,0 +1,161 @@
+package com.example.phonesensorreader;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Binary decision tree over a handful of orientation independent window features.
+ *
+ * The model is a text file with one node per line, {@code #} starts a comment:
+ * <pre>
+ * &lt;id&gt; split &lt;FEATURE&gt; &lt;threshold&gt; &lt;id if &lt;= threshold&gt; &lt;id if &gt; threshold&gt;
+ * &lt;id&gt; leaf &lt;LABEL&gt; &lt;confidence&gt;
+ * </pre>
+ * Node 0 is the root. Nodes are flattened into arrays, so classifying is a few comparisons
+ * and array reads with no allocation.
+ */
+public class DecisionTreeClassifier implements ActivityClassifier {
+    /** Standard deviation of the acceleration vector, m/s². */
+    public static final int ACC_STD = 0;
+    /** Dominant frequency of the accelerometer axis that moves most, Hz. */
+    public static final int ACC_DOMINANT_HZ = 1;
+    /** Largest peak to peak range of an accelerometer axis, m/s². */
+    public static final int ACC_RANGE = 2;
+    /** Standard deviation of the angular velocity vector, rad/s, 0 without a gyroscope. */
+    public static final int GYRO_STD = 3;
+    static final String[] FEATURE_NAMES = {"ACC_STD", "ACC_DOMINANT_HZ", "ACC_RANGE", "GYRO_STD"};
+
+    private static final int LEAF = -1;
+
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] left;
+    private final int[] right;
+    private final Classification[] leaves;
+    private final double[] values = new double[FEATURE_NAMES.length];
+
+    private DecisionTreeClassifier(int nodeCount) {
+        feature = new int[nodeCount];
+        threshold = new double[nodeCount];
+        left = new int[nodeCount];
+        right = new int[nodeCount];
+        leaves = new Classification[nodeCount];
+    }
+
+    public static DecisionTreeClassifier load(InputStream in) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (!content.isEmpty()) {
+                lines.add(content.split("\\s+"));
+            }
+        }
+        if (lines.isEmpty()) {
+            throw new IOException("Empty decision tree");
+        }
+        DecisionTreeClassifier tree = new DecisionTreeClassifier(lines.size());
+        boolean[] defined = new boolean[lines.size()];
+        for (String[] fields : lines) {
+            int id = parseNodeId(fields[0], lines.size());
+            if (defined[id]) {
+                throw new IOException("Node " + id + " defined twice");
+            }
+            defined[id] = true;
+            try {
+                if (fields.length == 6 && fields[1].equals("split")) {
+                    tree.feature[id] = featureIndex(fields[2]);
+                    tree.threshold[id] = Double.parseDouble(fields[3]);
+                    tree.left[id] = parseNodeId(fields[4], lines.size());
+                    tree.right[id] = parseNodeId(fields[5], lines.size());
+                    if (tree.left[id] <= id || tree.right[id] <= id) {
+                        throw new IOException("Node " + id + " must point to later nodes");
+                    }
+                } else if (fields.length == 4 && fields[1].equals("leaf")) {
+                    tree.feature[id] = LEAF;
+                    tree.leaves[id] = new Classification(ActivityLabel.valueOf(fields[2]), Double.parseDouble(fields[3]));
+                } else {
+                    throw new IOException("Malformed node: " + String.join(" ", fields));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed node: " + String.join(" ", fields), e);
+            }
+        }
+        return tree;
+    }
+
+    private static int parseNodeId(String field, int nodeCount) throws IOException {
+        try {
+            int id = Integer.parseInt(field);
+            if (id >= 0 && id < nodeCount) {
+                return id;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IOException("Bad node id " + field + ", expected 0.." + (nodeCount - 1));
+    }
+
+    private static int featureIndex(String name) {
+        for (int i = 0; i < FEATURE_NAMES.length; i++) {
+            if (FEATURE_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown feature " + name);
+    }
+
+    public int getNodeCount() {
+        return feature.length;
+    }
+
+    /** Not thread safe, the feature vector is reused between calls. */
+    @Override
+    public Classification classify(WindowFeatures accelerometer, @Nullable WindowFeatures gyroscope) {
+        extractFeatures(accelerometer, gyroscope, values);
+        int node = 0;
+        while (feature[node] != LEAF) {
+            node = values[feature[node]] <= threshold[node] ? left[node] : right[node];
+        }
+        return leaves[node];
+    }
+
+    static void extractFeatures(WindowFeatures accelerometer, @Nullable WindowFeatures gyroscope, double[] out) {
+        double accVariance = 0;
+        double accRange = 0;
+        int movingAxis = 0;
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            double std = accelerometer.getStdDev(axis);
+            accVariance += std * std;
+            accRange = Math.max(accRange, accelerometer.getMax(axis) - accelerometer.getMin(axis));
+            if (std > accelerometer.getStdDev(movingAxis)) {
+                movingAxis = axis;
+            }
+        }
+        double gyroVariance = 0;
+        if (gyroscope != null && gyroscope.getSampleCount() > 0) {
+            for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+                gyroVariance += gyroscope.getStdDev(axis) * gyroscope.getStdDev(axis);
+            }
+        }
+        out[ACC_STD] = Math.sqrt(accVariance);
+        out[ACC_DOMINANT_HZ] = accelerometer.getDominantFrequencyHz(movingAxis);
+        out[ACC_RANGE] = accRange;
+        out[GYRO_STD] = Math.sqrt(gyroVariance);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "DecisionTreeClassifier(%d nodes)", getNodeCount());
+    }
+}
@@ -0,0 +1,453 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how hard to sample from how much the phone moves.
+ *
+ * The standard deviation of the acceleration magnitude over short detection windows drives a
+ * state machine. {@link Mode#ACTIVE} samples at the configured rates and holds the wake lock.
+ * After a stretch of still windows the policy drops to {@link Mode#STILL}: accelerometer only,
+ * at a low rate with batching and no wake lock. It returns to ACTIVE at the end of the first
+ * window that moves, so within one feature window of the motion starting. A long stillness
+ * drops to {@link Mode#DORMANT}, where no sensor streams and the significant motion trigger
+ * wakes the session up.
+ *
+ * Pure Java and driven by sample timestamps, so recorded or synthetic sessions can be replayed
+ * through different policies to compare their wakeups. Methods are synchronized as the trigger
+ * arrives on another thread than the samples; the listener is called outside the lock.
+ */
+public class DutyCyclePolicy implements SampleSink {
+    // Rough figures for a mid-range phone, for comparing policies rather than predicting battery life
+    static final double WAKEUP_MILLIJOULES = 1.5;
+    static final double AWAKE_MILLIWATTS = 25;
+    static final double ACCELEROMETER_MILLIWATTS = 0.5;
+    static final double GYROSCOPE_MILLIWATTS = 5;
+    // Rate of a sensor registered at RATE_DEVICE_MAX, for the estimates
+    static final double ASSUMED_DEVICE_MAX_HZ = 200;
+    // The significant motion sensor needs a few seconds of walking to fire
+    static final long SIGNIFICANT_MOTION_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    public enum Mode {
+        ACTIVE, STILL, DORMANT
+    }
+
+    /**
+     * What a mode registers: sensor rates, 0 for a sensor left off and
+     * {@link SamplingConfig#RATE_DEVICE_MAX} as usual, batching and the wake lock.
+     */
+    public static final class Profile {
+        private final double accelerometerRateHz;
+        private final double gyroscopeRateHz;
+        private final int maxReportLatencyUs;
+        private final boolean holdsWakeLock;
+
+        public Profile(double accelerometerRateHz, double gyroscopeRateHz, int maxReportLatencyUs,
+                       boolean holdsWakeLock) {
+            this.accelerometerRateHz = accelerometerRateHz;
+            this.gyroscopeRateHz = gyroscopeRateHz;
+            this.maxReportLatencyUs = Math.max(0, maxReportLatencyUs);
+            this.holdsWakeLock = holdsWakeLock;
+        }
+
+        public double getAccelerometerRateHz() {
+            return accelerometerRateHz;
+        }
+
+        public double getGyroscopeRateHz() {
+            return gyroscopeRateHz;
+        }
+
+        public int getMaxReportLatencyUs() {
+            return maxReportLatencyUs;
+        }
+
+        public boolean holdsWakeLock() {
+            return holdsWakeLock;
+        }
+
+        public boolean uses(int sensorType) {
+            return rateHz(sensorType) != 0;
+        }
+
+        public double rateHz(int sensorType) {
+            switch (sensorType) {
+                case Sensor.TYPE_ACCELEROMETER:
+                    return accelerometerRateHz;
+                case Sensor.TYPE_GYROSCOPE:
+                    return gyroscopeRateHz;
+                default:
+                    return 0;
+            }
+        }
+
+        public SamplingConfig toSamplingConfig() {
+            return new SamplingConfig(accelerometerRateHz, gyroscopeRateHz, maxReportLatencyUs);
+        }
+
+        /**
+         * Times per minute the application processor takes sensor events: once per FIFO flush
+         * when batching, once per sample otherwise, per sensor.
+         */
+        public double getWakeupsPerMinute() {
+            return sensorWakeupsPerMinute(accelerometerRateHz) + sensorWakeupsPerMinute(gyroscopeRateHz);
+        }
+
+        private double sensorWakeupsPerMinute(double rateHz) {
+            if (rateHz == 0) {
+                return 0;
+            }
+            double periodSeconds = 1 / (rateHz < 0 ? ASSUMED_DEVICE_MAX_HZ : rateHz);
+            return 60 / Math.max(periodSeconds, maxReportLatencyUs / 1e6);
+        }
+
+        /**
+         * Estimated average power of the wakeups, the wake lock and the sensors. Only the
+         * accelerometer and gyroscope count, the service registers nothing else while STILL.
+         */
+        public double getEstimatedMilliwatts() {
+            return getWakeupsPerMinute() / 60 * WAKEUP_MILLIJOULES
+                    + (holdsWakeLock ? AWAKE_MILLIWATTS : 0)
+                    + (accelerometerRateHz != 0 ? ACCELEROMETER_MILLIWATTS : 0)
+                    + (gyroscopeRateHz != 0 ? GYROSCOPE_MILLIWATTS : 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "acc=%.1fHz gyro=%.1fHz latency=%dms%s", accelerometerRateHz,
+                    gyroscopeRateHz, maxReportLatencyUs / 1000, holdsWakeLock ? " wakelock" : "");
+        }
+    }
+
+    public static class Config {
+        Profile active = profile(SamplingConfig.defaults(), true);
+        // Fast enough for running cadence without aliasing, one detection window of batching
+        Profile still = new Profile(10, 0, 500_000, false);
+        boolean significantMotion;
+        long windowMillis = 1_000;
+        // Magnitude standard deviations, m/s²: sitting and fidgeting stay under the first,
+        // walking is well above the second
+        double stillThreshold = 0.4;
+        double motionThreshold = 0.6;
+        long stillAfterMillis = 30_000;
+        long dormantAfterMillis = 5 * 60_000;
+
+        /** Sampling while the phone moves, with the wake lock held. */
+        public Config active(SamplingConfig sampling) {
+            this.active = profile(sampling, true);
+            return this;
+        }
+
+        public Config still(Profile still) {
+            this.still = still;
+            return this;
+        }
+
+        /** Whether the device has a significant motion sensor to go dormant on. */
+        public Config significantMotion(boolean available) {
+            this.significantMotion = available;
+            return this;
+        }
+
+        public Config windowMillis(long windowMillis) {
+            this.windowMillis = windowMillis;
+            return this;
+        }
+
+        public Config thresholds(double stillThreshold, double motionThreshold) {
+            this.stillThreshold = stillThreshold;
+            this.motionThreshold = motionThreshold;
+            return this;
+        }
+
+        /** How long the phone stays still before each step down, Long.MAX_VALUE for never. */
+        public Config stillAfterMillis(long stillAfterMillis, long dormantAfterMillis) {
+            this.stillAfterMillis = stillAfterMillis;
+            this.dormantAfterMillis = dormantAfterMillis;
+            return this;
+        }
+
+        private static Profile profile(SamplingConfig sampling, boolean holdsWakeLock) {
+            return new Profile(sampling.getAccelerometerRateHz(), sampling.getGyroscopeRateHz(),
+                    sampling.getMaxReportLatencyUs(), holdsWakeLock);
+        }
+    }
+
+    /** One change of mode, with what it costs in power and in how late motion is noticed. */
+    public static final class Transition {
+        private final Mode from;
+        private final Mode to;
+        private final long timestampNanos;
+        private final String reason;
+        private final Profile fromProfile;
+        private final Profile toProfile;
+        private final long latencyNanos;
+
+        Transition(Mode from, Mode to, long timestampNanos, String reason, Profile fromProfile, Profile toProfile,
+                   long latencyNanos) {
+            this.from = from;
+            this.to = to;
+            this.timestampNanos = timestampNanos;
+            this.reason = reason;
+            this.fromProfile = fromProfile;
+            this.toProfile = toProfile;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public Mode getFrom() {
+            return from;
+        }
+
+        public Mode getTo() {
+            return to;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /** What the new mode registers, no sensor at all for DORMANT. */
+        public Profile getProfile() {
+            return toProfile;
+        }
+
+        /**
+         * Going up, how long after the motion started the policy noticed it, including the FIFO
+         * latency of the mode it left. Going down, how late the new mode will notice motion.
+         */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public double getMilliwattsSaved() {
+            return fromProfile.getEstimatedMilliwatts() - toProfile.getEstimatedMilliwatts();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s -> %s at %.3fs (%s): wakeups %.0f -> %.0f/min, about %.1f -> %.1f mW,"
+                            + " latency %.2fs", from, to, timestampNanos / 1e9, reason,
+                    fromProfile.getWakeupsPerMinute(), toProfile.getWakeupsPerMinute(),
+                    fromProfile.getEstimatedMilliwatts(), toProfile.getEstimatedMilliwatts(), latencyNanos / 1e9);
+        }
+    }
+
+    public interface Listener {
+        /** Called on the thread that fed the sample or the trigger which caused the transition. */
+        void onTransition(Transition transition);
+    }
+
+    private static final Profile DORMANT_PROFILE = new Profile(0, 0, 0, false);
+
+    private final Profile active;
+    private final Profile still;
+    private final boolean significantMotion;
+    private final long windowNanos;
+    private final double stillThreshold;
+    private final double motionThreshold;
+    private final long stillAfterNanos;
+    private final long dormantAfterNanos;
+    @Nullable
+    private final Listener listener;
+
+    private Mode mode = Mode.ACTIVE;
+    // Welford over the accelerometer magnitude in the current detection window
+    private long windowStartNanos = -1;
+    private int windowCount;
+    private double windowMean;
+    private double windowSquares;
+    // Start of the still windows so far, -1 after a window that moved
+    private long stillSinceNanos = -1;
+    // Time spent in each mode before the current one started, for the wakeup estimate
+    private final long[] modeNanos = new long[Mode.values().length];
+    private long modeSinceNanos = -1;
+    private long firstTimestampNanos = -1;
+    private long lastTimestampNanos;
+    private int transitionCount;
+
+    public DutyCyclePolicy(Config config, @Nullable Listener listener) {
+        if (config.windowMillis <= 0 || config.stillThreshold > config.motionThreshold) {
+            throw new IllegalArgumentException("Invalid duty cycle: window=" + config.windowMillis
+                    + "ms, thresholds " + config.stillThreshold + "/" + config.motionThreshold);
+        }
+        this.active = config.active;
+        this.still = config.still;
+        this.significantMotion = config.significantMotion;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(config.windowMillis);
+        this.stillThreshold = config.stillThreshold;
+        this.motionThreshold = config.motionThreshold;
+        this.stillAfterNanos = TimeUnit.MILLISECONDS.toNanos(config.stillAfterMillis);
+        this.dormantAfterNanos = TimeUnit.MILLISECONDS.toNanos(config.dormantAfterMillis);
+        this.listener = listener;
+    }
+
+    /** Always samples at the active rates, the baseline to compare other policies against. */
+    public static DutyCyclePolicy alwaysActive(SamplingConfig sampling) {
+        return new DutyCyclePolicy(new Config().active(sampling).stillAfterMillis(Long.MAX_VALUE, Long.MAX_VALUE),
+                null);
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        Transition transition;
+        synchronized (this) {
+            if (firstTimestampNanos < 0) {
+                firstTimestampNanos = timestampNanos;
+                modeSinceNanos = timestampNanos;
+            }
+            lastTimestampNanos = Math.max(lastTimestampNanos, timestampNanos);
+            if (sensorType != Sensor.TYPE_ACCELEROMETER || mode == Mode.DORMANT) {
+                return; // Nothing streams while dormant, late samples from the FIFO are ignored
+            }
+            transition = addMagnitude(timestampNanos, Math.sqrt(x * x + y * y + z * z));
+        }
+        if (transition != null && listener != null) {
+            listener.onTransition(transition);
+        }
+    }
+
+    /** The significant motion sensor fired, wakes a dormant session. */
+    public void onSignificantMotion(long timestampNanos) {
+        Transition transition = null;
+        synchronized (this) {
+            if (mode == Mode.DORMANT) {
+                transition = enter(Mode.ACTIVE, Math.max(lastTimestampNanos, timestampNanos), "significant motion",
+                        SIGNIFICANT_MOTION_LATENCY_NANOS);
+            }
+        }
+        if (transition != null && listener != null) {
+            listener.onTransition(transition);
+        }
+    }
+
+    @Nullable
+    private Transition addMagnitude(long timestampNanos, double magnitude) {
+        Transition transition = null;
+        if (windowStartNanos >= 0 && timestampNanos - windowStartNanos >= windowNanos) {
+            if (windowCount >= 2) {
+                transition = evaluate(Math.sqrt(windowSquares / windowCount), timestampNanos);
+            }
+            windowStartNanos = -1;
+        }
+        if (windowStartNanos < 0) {
+            windowStartNanos = timestampNanos;
+            windowCount = 0;
+            windowMean = 0;
+            windowSquares = 0;
+        }
+        windowCount++;
+        double delta = magnitude - windowMean;
+        windowMean += delta / windowCount;
+        windowSquares += delta * (magnitude - windowMean);
+        return transition;
+    }
+
+    /** Runs at the end of each detection window. */
+    @Nullable
+    private Transition evaluate(double stdDev, long endNanos) {
+        if (mode == Mode.STILL && stdDev >= motionThreshold) {
+            stillSinceNanos = -1;
+            // The FIFO held the window's last samples for up to its report latency
+            long latencyNanos = endNanos - windowStartNanos + TimeUnit.MICROSECONDS.toNanos(still.getMaxReportLatencyUs());
+            return enter(Mode.ACTIVE, endNanos, String.format(Locale.US, "moving, std %.2f", stdDev), latencyNanos);
+        }
+        if (stdDev >= stillThreshold) {
+            stillSinceNanos = -1;
+            return null;
+        }
+        if (stillSinceNanos < 0) {
+            stillSinceNanos = windowStartNanos;
+        }
+        long stillNanos = endNanos - stillSinceNanos;
+        if (mode == Mode.ACTIVE && stillNanos >= stillAfterNanos) {
+            return enter(Mode.STILL, endNanos, String.format(Locale.US, "still for %.0fs", stillNanos / 1e9),
+                    windowNanos + TimeUnit.MICROSECONDS.toNanos(still.getMaxReportLatencyUs()));
+        }
+        if (mode == Mode.STILL && significantMotion && stillNanos >= dormantAfterNanos) {
+            return enter(Mode.DORMANT, endNanos, String.format(Locale.US, "still for %.0fs", stillNanos / 1e9),
+                    SIGNIFICANT_MOTION_LATENCY_NANOS);
+        }
+        return null;
+    }
+
+    private Transition enter(Mode next, long timestampNanos, String reason, long latencyNanos) {
+        Mode previous = mode;
+        if (modeSinceNanos >= 0) {
+            modeNanos[previous.ordinal()] += Math.max(0, timestampNanos - modeSinceNanos);
+        }
+        modeSinceNanos = timestampNanos;
+        mode = next;
+        windowStartNanos = -1;
+        transitionCount++;
+        return new Transition(previous, next, timestampNanos, reason, getProfile(previous), getProfile(next),
+                latencyNanos);
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    public Profile getProfile(Mode mode) {
+        switch (mode) {
+            case ACTIVE:
+                return active;
+            case STILL:
+                return still;
+            default:
+                return DORMANT_PROFILE;
+        }
+    }
+
+    public synchronized int getTransitionCount() {
+        return transitionCount;
+    }
+
+    /** Time spent in {@code mode} up to {@code nowNanos}, on the clock of the sample timestamps. */
+    public synchronized long getTimeInModeNanos(Mode mode, long nowNanos) {
+        long nanos = modeNanos[mode.ordinal()];
+        if (mode == this.mode && modeSinceNanos >= 0) {
+            nanos += Math.max(0, nowNanos - modeSinceNanos);
+        }
+        return nanos;
+    }
+
+    /** Estimated application processor wakeups from the first sample to {@code nowNanos}. */
+    public synchronized double getEstimatedWakeups(long nowNanos) {
+        double wakeups = 0;
+        for (Mode each : Mode.values()) {
+            wakeups += getProfile(each).getWakeupsPerMinute() * getTimeInModeNanos(each, nowNanos) / 60e9;
+        }
+        return wakeups;
+    }
+
+    /** Estimated energy of the sensors, wakeups and wake lock from the first sample to {@code nowNanos}. */
+    public synchronized double getEstimatedMillijoules(long nowNanos) {
+        double millijoules = 0;
+        for (Mode each : Mode.values()) {
+            millijoules += getProfile(each).getEstimatedMilliwatts() * getTimeInModeNanos(each, nowNanos) / 1e9;
+        }
+        return millijoules;
+    }
+
+    /** Time in each mode and the estimated wakeups per minute up to {@code now}, on the sample clock. */
+    public synchronized String summarize(long now) {
+        long total = firstTimestampNanos < 0 ? 0 : now - firstTimestampNanos;
+        StringBuilder out = new StringBuilder();
+        for (Mode each : Mode.values()) {
+            out.append(String.format(Locale.US, "%s=%.0fs ", each, getTimeInModeNanos(each, now) / 1e9));
+        }
+        out.append(String.format(Locale.US, "transitions=%d wakeups=%.1f/min energy=%.1fmW", transitionCount,
+                total > 0 ? getEstimatedWakeups(now) * 60e9 / total : 0,
+                total > 0 ? getEstimatedMillijoules(now) * 1e9 / total : 0));
+        return out.toString();
+    }
+}
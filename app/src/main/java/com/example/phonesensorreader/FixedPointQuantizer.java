@@ -0,0 +1,93 @@
+package com.example.phonesensorreader;
+
+/**
+ * Rounds sensor values to a fixed number of decimal places without allocating.
+ *
+ * Gives the same results as {@code new BigDecimal(value).setScale(decimals, HALF_UP).floatValue()}:
+ * a float times a power of ten of up to 8 decimals fits the 53 bits of a double exactly, so
+ * the half-up decision is made on the exact product, and dividing the rounded integer back
+ * is correctly rounded. Values can also be kept as scaled integers ({@link #encode}) for
+ * storage and transport, and written as plain decimals into a StringBuilder for prompts.
+ */
+public class FixedPointQuantizer {
+    public static final int MAX_DECIMALS = 8;
+    // Floats from 2^23 on have no fraction to round
+    private static final float MIN_INTEGRAL_FLOAT = 1 << 23;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+
+    private final int decimals;
+    private final long scale;
+    private final double scaleAsDouble;
+
+    public FixedPointQuantizer(int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + MAX_DECIMALS + ": " + decimals);
+        }
+        this.decimals = decimals;
+        this.scale = POWERS_OF_TEN[decimals];
+        this.scaleAsDouble = scale;
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    /** Fixed-point units per 1.0, 10^decimals. */
+    public long getScale() {
+        return scale;
+    }
+
+    /**
+     * {@code value} in units of 10^-decimals, ties rounded away from zero.
+     *
+     * @throws IllegalArgumentException for NaN, infinities and values whose scaled form
+     *                                  does not fit a long
+     */
+    public long encode(float value) {
+        double scaled = value * scaleAsDouble; // Exact, see the class comment
+        if (!(Math.abs(scaled) < 0x1p63)) {
+            throw new IllegalArgumentException("Can't encode " + value + " with " + decimals + " decimals");
+        }
+        double magnitude = Math.abs(scaled);
+        double floor = Math.floor(magnitude);
+        long rounded = (long) floor + (magnitude - floor >= 0.5 ? 1 : 0);
+        return scaled < 0 ? -rounded : rounded;
+    }
+
+    /** The float nearest to {@code fixed} units of 10^-decimals. */
+    public float decode(long fixed) {
+        return (float) (fixed / scaleAsDouble);
+    }
+
+    /** {@code value} rounded half up to the configured decimals; NaN and infinities pass through. */
+    public float round(float value) {
+        if (!(Math.abs(value) < MIN_INTEGRAL_FLOAT)) {
+            return value;
+        }
+        return decode(encode(value));
+    }
+
+    /**
+     * Appends {@code value} rounded half up, with exactly the configured number of decimals and
+     * never in exponent notation, e.g. "-0.000120" for -1.2e-4 at 6 decimals.
+     */
+    public StringBuilder append(StringBuilder out, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return out.append(value);
+        }
+        long fixed = encode(value);
+        if (fixed < 0) {
+            out.append('-');
+        }
+        long magnitude = Math.abs(fixed);
+        out.append(magnitude / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long fraction = magnitude % scale;
+            for (int digit = decimals - 1; digit >= 0; digit--) {
+                out.append((char) ('0' + fraction / POWERS_OF_TEN[digit] % 10));
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.phonesensorreader;
+
+/**
+ * Orientation and gravity-free acceleration at one accelerometer timestamp, produced by
+ * {@link SensorFusion}. Instances are reused, copy them with {@link #copyFrom} to keep one.
+ *
+ * The world frame has Z pointing up, opposite to gravity. Without a magnetometer the heading
+ * around Z is arbitrary, so only the world Z component is comparable between sessions.
+ */
+public class FusedMotion {
+    public static final int AXES = 3;
+
+    long timestampNanos;
+    // Rotation from device to world coordinates
+    double qw = 1;
+    double qx;
+    double qy;
+    double qz;
+    final double[] gravity = new double[AXES];
+    final double[] linearAcceleration = new double[AXES];
+    final double[] worldLinearAcceleration = new double[AXES];
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public double getQuaternionW() {
+        return qw;
+    }
+
+    public double getQuaternionX() {
+        return qx;
+    }
+
+    public double getQuaternionY() {
+        return qy;
+    }
+
+    public double getQuaternionZ() {
+        return qz;
+    }
+
+    /** Gravity in device coordinates, m/s². */
+    public double getGravity(int axis) {
+        return gravity[axis];
+    }
+
+    /** Acceleration without gravity in device coordinates, m/s². */
+    public double getLinearAcceleration(int axis) {
+        return linearAcceleration[axis];
+    }
+
+    /** Acceleration without gravity in world coordinates, m/s². */
+    public double getWorldLinearAcceleration(int axis) {
+        return worldLinearAcceleration[axis];
+    }
+
+    /** Angle between the device Z axis and up, in degrees: 0 lying face up, 90 upright. */
+    public double getTiltDegrees() {
+        double up = 1 - 2 * (qx * qx + qy * qy);
+        return Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, up))));
+    }
+
+    public void copyFrom(FusedMotion other) {
+        timestampNanos = other.timestampNanos;
+        qw = other.qw;
+        qx = other.qx;
+        qy = other.qy;
+        qz = other.qz;
+        System.arraycopy(other.gravity, 0, gravity, 0, AXES);
+        System.arraycopy(other.linearAcceleration, 0, linearAcceleration, 0, AXES);
+        System.arraycopy(other.worldLinearAcceleration, 0, worldLinearAcceleration, 0, AXES);
+    }
+}
@@ -4,79 +4,66 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
+/**
+ * Main-thread facade over the shared {@link CompletionClient}. Instances are cheap; they no
+ * longer own a thread or a connection.
+ */
 public class HttpRequestTask {
     private static final String LOG_TAG = "HttpRequestTask";
+    // Streamed tokens reach the main looper at most 20 times per second
+    private static final long MIN_CHUNK_DELIVERY_INTERVAL_MILLIS = 50;
 
     public interface AsyncResponse {
         void processFinish(String output);
     }
 
-    private AsyncResponse delegate;
-    private ExecutorService executorService;
-    private Handler mainHandler;
+    private final AsyncResponse delegate;
+    private final CompletionClient client;
+    private final Handler mainHandler;
 
     public HttpRequestTask(AsyncResponse delegate) {
+        this(delegate, CompletionClient.getShared());
+    }
+
+    public HttpRequestTask(AsyncResponse delegate, CompletionClient client) {
         this.delegate = delegate;
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.client = client;
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
 
     public void execute(String... params) {
         String json = params[0];
-        String urlString = "http://127.0.0.1:8080/completion"; // Ensure this is consistent
-        Log.d(LOG_TAG, "Connecting to server at: " + urlString);
+        Log.d(LOG_TAG, "Connecting to server at: " + client.getConfig().getEndpoint());
 
-        executorService.execute(new Runnable() {
+        client.complete(null, json, new CompletionClient.ResponseCallback() {
             @Override
-            public void run() {
-                try {
-                    URL url = new URL(urlString);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setRequestProperty("Accept", "text/event-stream");
-                    conn.setDoOutput(true);
-
-                    try (OutputStream os = conn.getOutputStream()) {
-                        byte[] input = json.getBytes("utf-8");
-                        os.write(input, 0, input.length);
-                    }
-
-                    int responseCode = conn.getResponseCode();
-                    Log.d(LOG_TAG, "Response Code: " + responseCode);
-
-                    StringBuilder response = new StringBuilder();
-                    try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                            responseCode == HttpURLConnection.HTTP_OK ? conn.getInputStream() : conn.getErrorStream(), "utf-8"))) {
-                        String responseLine;
-                        while ((responseLine = br.readLine()) != null) {
-                            response.append(responseLine.trim());
-                        }
-                    }
-
-                    String result = responseCode == HttpURLConnection.HTTP_OK
-                            ? response.toString()
-                            : "Error: " + responseCode + " - " + response.toString();
-
-                    Log.d(LOG_TAG, "Response from server: " + result);
-                    postResult(result);
+            public void onResponse(String body, long latencyMillis) {
+                Log.d(LOG_TAG, "Response from server in " + latencyMillis + " ms: " + body);
+                postResult(body);
+            }
 
-                } catch (Exception e) {
-                    Log.e(LOG_TAG, "Exception occurred: " + e.getMessage(), e);
-                    postResult("Failed");
-                }
+            @Override
+            public void onFailure(String message) {
+                Log.e(LOG_TAG, "Request failed: " + message);
+                postResult(message);
             }
         });
     }
 
+    /**
+     * Streams the completion for {@code json}, which should set {@code "stream": true}.
+     * Chunks, completion and errors are delivered to {@code listener} on the main thread.
+     * A newer request with the same {@code key} replaces one still waiting to be sent.
+     */
+    public void executeStreaming(String key, String json, StreamingCompletion.Listener listener) {
+        Log.d(LOG_TAG, "Streaming from server at: " + client.getConfig().getEndpoint());
+        client.stream(key, json, listener, mainHandler::post, MIN_CHUNK_DELIVERY_INTERVAL_MILLIS);
+    }
+
+    public void cancel(String key) {
+        client.cancel(key);
+    }
+
     private void postResult(String result) {
         mainHandler.post(new Runnable() {
             @Override
@@ -0,0 +1,188 @@
+package com.example.phonesensorreader;
+
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Recent answers of the LLM keyed on the features of the window they classified, so a window
+ * that looks like one the model already answered reuses its label instead of another request.
+ *
+ * The key quantizes the accelerometer deviations, signal magnitude area and cadence and the
+ * gyroscope deviations on coarse grids, logarithmic for the deviations so "nearby" scales with
+ * the signal, and packs them into a long. The cache keeps the most recently used entries up to
+ * its capacity, and drops entries older than the time to live so a slow change of activity
+ * still reaches the model. Thread safe.
+ */
+public class InferenceCache {
+    /** Key of a request that must not be answered from the cache. */
+    public static final long NO_KEY = -1;
+
+    // Seven bits per field, so a key is never negative
+    private static final int FIELD_BITS = 7;
+    private static final int MAX_BUCKET = (1 << FIELD_BITS) - 2;
+    private static final int MISSING = MAX_BUCKET + 1;
+    // Deviations below the floor, about what fidgeting and sensor noise reach, share bucket 0.
+    // Above it each bucket is STD_RATIO wider
+    private static final double ACCELERATION_STD_FLOOR = 0.5;
+    private static final double ROTATION_STD_FLOOR = 0.1;
+    private static final double STD_RATIO = 1.5;
+    private static final double SMA_FLOOR = 1;
+    private static final double SMA_RATIO = 1.25;
+    private static final double CADENCE_STEP = 6;
+
+    /** One cached answer. */
+    public static final class Entry {
+        private final ActivityLabel label;
+        private final String responseText;
+        private final long latencyNanos;
+        private final long createdAtNanos;
+
+        Entry(ActivityLabel label, String responseText, long latencyNanos, long createdAtNanos) {
+            this.label = label;
+            this.responseText = responseText;
+            this.latencyNanos = latencyNanos;
+            this.createdAtNanos = createdAtNanos;
+        }
+
+        public ActivityLabel getLabel() {
+            return label;
+        }
+
+        public String getResponseText() {
+            return responseText;
+        }
+
+        /** How long the model took for the answer, saved by every hit. */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<Long, Entry> entries;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+    private long savedNanos;
+
+    public InferenceCache(int capacity, long ttlMillis) {
+        this(capacity, ttlMillis, System::nanoTime);
+    }
+
+    InferenceCache(int capacity, long ttlMillis, LongSupplier clock) {
+        if (capacity <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid cache: capacity=" + capacity + ", ttl=" + ttlMillis + "ms");
+        }
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<Long, Entry>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > InferenceCache.this.capacity) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** The key of an accelerometer window and the gyroscope window beside it, if any. */
+    public static long keyOf(WindowFeatures accelerometer, @Nullable WindowFeatures gyroscope) {
+        long key = 0;
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            key = append(key, logBucket(accelerometer.getStdDev(axis), ACCELERATION_STD_FLOOR, STD_RATIO));
+        }
+        key = append(key, logBucket(accelerometer.getSignalMagnitudeArea(), SMA_FLOOR, SMA_RATIO));
+        key = append(key, Math.min(MAX_BUCKET, (int) (accelerometer.getCadenceStepsPerMinute() / CADENCE_STEP)));
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            key = append(key, gyroscope == null ? MISSING
+                    : logBucket(gyroscope.getStdDev(axis), ROTATION_STD_FLOOR, STD_RATIO));
+        }
+        return key;
+    }
+
+    private static long append(long key, int bucket) {
+        return (key << FIELD_BITS) | bucket;
+    }
+
+    private static int logBucket(double value, double floor, double ratio) {
+        if (!(value >= floor)) {
+            return 0;
+        }
+        return (int) Math.min(MAX_BUCKET, 1 + Math.floor(Math.log(value / floor) / Math.log(ratio)));
+    }
+
+    /** The answer cached under {@code key}, or null if there is none or it expired. */
+    @Nullable
+    public synchronized Entry get(long key) {
+        Entry entry = entries.get(key);
+        if (entry != null && clock.getAsLong() - entry.createdAtNanos > ttlNanos) {
+            entries.remove(key);
+            expiredCount++;
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        savedNanos += entry.latencyNanos;
+        return entry;
+    }
+
+    public synchronized void put(long key, ActivityLabel label, String responseText, long latencyNanos) {
+        if (key == NO_KEY) {
+            return;
+        }
+        entries.put(key, new Entry(label, responseText, latencyNanos, clock.getAsLong()));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Entries dropped because the cache was full. */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Entries dropped because they outlived the time to live. */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    public synchronized double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /** Sum over hits of the model latency of the answer they reused. */
+    public synchronized long getSavedNanos() {
+        return savedNanos;
+    }
+}
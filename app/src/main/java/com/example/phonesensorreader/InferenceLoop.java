@@ -0,0 +1,247 @@
+package com.example.phonesensorreader;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically asks the local completion server to classify the latest sensor window.
+ *
+ * Every interval the prompt source is polled for a compact prompt (null while there is
+ * nothing new to classify) and the prompt is sent under a single coalescing key, so if the
+ * model is slower than the interval only the newest window waits behind the running request.
+ * With an {@link InferenceCache}, a request whose features were answered recently is answered
+ * from the cache without calling the model.
+ */
+public class InferenceLoop {
+    private static final String LOG_TAG = "InferenceLoop";
+    static final String REQUEST_KEY = "activity";
+    // One word is enough, a few extra tokens leave room for punctuation and a leading space
+    private static final int MAX_PREDICTED_TOKENS = 8;
+
+    public interface PromptSource {
+        /** The prompt for the newest window, or null to skip this round. */
+        String nextPrompt();
+    }
+
+    /** A prompt and the {@link InferenceCache} key of the features it describes. */
+    public static final class Request {
+        private final String prompt;
+        private final long cacheKey;
+
+        public Request(String prompt, long cacheKey) {
+            this.prompt = prompt;
+            this.cacheKey = cacheKey;
+        }
+
+        public String getPrompt() {
+            return prompt;
+        }
+
+        /** {@link InferenceCache#NO_KEY} to always ask the model. */
+        public long getCacheKey() {
+            return cacheKey;
+        }
+    }
+
+    public interface RequestSource {
+        /** The request for the newest window, or null to skip this round. */
+        @Nullable
+        Request nextRequest();
+    }
+
+    public interface Listener {
+        /** Called on an HTTP client thread, or on the loop's thread for cached answers. */
+        void onPrediction(ActivityPrediction prediction);
+
+        void onInferenceError(String message);
+    }
+
+    private final CompletionClient client;
+    private final RequestSource requestSource;
+    @Nullable
+    private final InferenceCache cache;
+    private final Listener listener;
+    private final long intervalMillis;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong predictionCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong cachedCount = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private volatile long lastLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private final LatencyHistogram promptBuildLatency = new LatencyHistogram();
+    private final LatencyHistogram inferenceLatency = new LatencyHistogram();
+
+    public InferenceLoop(CompletionClient client, PromptSource promptSource, Listener listener, long intervalMillis) {
+        this(client, () -> {
+            String prompt = promptSource.nextPrompt();
+            return prompt == null ? null : new Request(prompt, InferenceCache.NO_KEY);
+        }, listener, intervalMillis, null);
+    }
+
+    /** @param cache answers requests with a recently answered key, null to always ask the model */
+    public InferenceLoop(CompletionClient client, RequestSource requestSource, Listener listener, long intervalMillis,
+                         @Nullable InferenceCache cache) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive: " + intervalMillis);
+        }
+        this.client = client;
+        this.requestSource = requestSource;
+        this.cache = cache;
+        this.listener = listener;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "InferenceLoop"));
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops scheduling and cancels the request in flight. */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        client.cancel(REQUEST_KEY);
+    }
+
+    /**
+     * One round: poll the request source and answer its request from the cache or the model, if
+     * any. A failing round is counted and reported, an exception escaping it would end the schedule.
+     */
+    void runOnce() {
+        try {
+            requestNext();
+        } catch (RuntimeException e) {
+            errorCount.incrementAndGet();
+            try {
+                listener.onInferenceError("Inference round failed: " + e);
+            } catch (RuntimeException listenerError) {
+                Log.e(LOG_TAG, "Inference round failed", e);
+                Log.e(LOG_TAG, "Reporting the failure failed", listenerError);
+            }
+        }
+    }
+
+    private void requestNext() {
+        long startNanos = System.nanoTime();
+        Request request = requestSource.nextRequest();
+        if (request == null) {
+            return;
+        }
+        promptBuildLatency.recordSince(startNanos);
+        long cacheKey = request.getCacheKey();
+        if (cache != null && cacheKey != InferenceCache.NO_KEY) {
+            InferenceCache.Entry cached = cache.get(cacheKey);
+            if (cached != null) {
+                cachedCount.incrementAndGet();
+                listener.onPrediction(new ActivityPrediction(cached.getLabel(), ActivityPrediction.Source.CACHE,
+                        Double.NaN, cached.getResponseText(), System.nanoTime() - startNanos,
+                        System.currentTimeMillis()));
+                return;
+            }
+        }
+        String json = requestJson(request.getPrompt());
+        requestCount.incrementAndGet();
+        client.complete(REQUEST_KEY, json, new CompletionClient.ResponseCallback() {
+            @Override
+            public void onResponse(String body, long latencyMillis) {
+                String content;
+                try {
+                    content = new JSONObject(body).optString("content", "");
+                } catch (JSONException e) {
+                    onFailure("Malformed response: " + body);
+                    return;
+                }
+                long inferenceNanos = System.nanoTime() - startNanos;
+                inferenceLatency.record(inferenceNanos);
+                recordLatency(latencyMillis);
+                predictionCount.incrementAndGet();
+                ActivityLabel label = ActivityLabel.parse(content);
+                if (cache != null && label != ActivityLabel.UNKNOWN) {
+                    cache.put(cacheKey, label, content.trim(), inferenceNanos);
+                }
+                listener.onPrediction(new ActivityPrediction(label, ActivityPrediction.Source.LLM,
+                        Double.NaN, content.trim(), latencyMillis * 1_000_000L, System.currentTimeMillis()));
+            }
+
+            @Override
+            public void onFailure(String message) {
+                errorCount.incrementAndGet();
+                listener.onInferenceError(message);
+            }
+        });
+    }
+
+    /** The prompt goes first so requests with the same prompt prefix share their leading bytes. */
+    static String requestJson(String prompt) {
+        StringBuilder request = new StringBuilder(prompt.length() + 128).append("{\"prompt\":");
+        PromptBuilder.appendJsonString(request, prompt);
+        return request.append(",\"n_predict\":").append(MAX_PREDICTED_TOKENS)
+                .append(",\"temperature\":0,\"stream\":false,\"cache_prompt\":true}").toString();
+    }
+
+    private void recordLatency(long latencyMillis) {
+        lastLatencyMillis = latencyMillis;
+        totalLatencyMillis.addAndGet(latencyMillis);
+        if (latencyMillis > maxLatencyMillis) {
+            maxLatencyMillis = latencyMillis;
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getPredictionCount() {
+        return predictionCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /** Requests answered from the cache, not counted as requests or predictions. */
+    public long getCachedCount() {
+        return cachedCount.get();
+    }
+
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /** Time the prompt source took to build each prompt sent. */
+    public LatencyHistogram getPromptBuildLatency() {
+        return promptBuildLatency;
+    }
+
+    /** Time from polling the prompt source until the prediction was parsed, per prediction. */
+    public LatencyHistogram getInferenceLatency() {
+        return inferenceLatency;
+    }
+
+    public long getMeanLatencyMillis() {
+        long predictions = predictionCount.get();
+        return predictions == 0 ? 0 : totalLatencyMillis.get() / predictions;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.phonesensorreader;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram in the style of HdrHistogram: log-linear buckets with 32 linear steps
+ * per power of two, so every recorded value is kept to within 1/32 (about 3%) of its size
+ * from nanoseconds to hours, in a fixed 15 KB.
+ *
+ * Recording is two atomic adds and never allocates, so any thread can record on a hot path.
+ * Reading takes a copy of the buckets, which may miss values recorded meanwhile.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS per power of two up to 2^63
+    static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /** Records one latency, negative values as 0. */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        totalNanos.addAndGet(value);
+    }
+
+    /** Records the time from {@code startNanos}, a {@link System#nanoTime()} reading, until now. */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts.set(bucket, 0);
+        }
+        totalNanos.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /** Largest value that falls into {@code bucket}. */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /** Count, mean and percentiles of everything recorded so far. */
+    public Summary summarize() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            copy[bucket] = counts.get(bucket);
+            count += copy[bucket];
+        }
+        long total = totalNanos.get();
+        return new Summary(count, count == 0 ? 0 : total / count,
+                valueAt(copy, count, 0.50), valueAt(copy, count, 0.90), valueAt(copy, count, 0.99),
+                valueAt(copy, count, 1.0));
+    }
+
+    /** Highest value of the bucket holding the value at {@code fraction} of {@code count}. */
+    private static long valueAt(long[] counts, long count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return highestValueOf(bucket);
+            }
+        }
+        return highestValueOf(counts.length - 1);
+    }
+
+    /** Immutable summary, in nanoseconds; percentiles and max are bucket upper bounds. */
+    public static final class Summary {
+        private final long count;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        Summary(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    count, meanNanos / 1e6, p50Nanos / 1e6, p90Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+}
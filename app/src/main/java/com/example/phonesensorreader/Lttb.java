@@ -0,0 +1,72 @@
+package com.example.phonesensorreader;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson, 2013).
+ *
+ * Keeps the first and last point and, from each of the buckets in between, the point that
+ * forms the largest triangle with the previously kept point and the average of the next
+ * bucket. The result follows the visual shape of the line with far fewer points.
+ */
+public final class Lttb {
+    private Lttb() {
+    }
+
+    /**
+     * Downsamples the first {@code count} points of {@code xs}/{@code ys} to at most
+     * {@code threshold} points in {@code outX}/{@code outY} and returns how many were written.
+     * Input X must not decrease. Output arrays must not be the input arrays.
+     */
+    public static int downsample(double[] xs, double[] ys, int count, int threshold, double[] outX, double[] outY) {
+        if (threshold >= count || threshold < 3) {
+            int n = Math.min(count, outX.length);
+            System.arraycopy(xs, 0, outX, 0, n);
+            System.arraycopy(ys, 0, outY, 0, n);
+            return n;
+        }
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int kept = 0;
+        int previous = 0;
+        outX[kept] = xs[0];
+        outY[kept++] = ys[0];
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the last point for the final bucket
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageX = 0;
+            double averageY = 0;
+            if (nextStart >= nextEnd) {
+                averageX = xs[count - 1];
+                averageY = ys[count - 1];
+            } else {
+                for (int i = nextStart; i < nextEnd; i++) {
+                    averageX += xs[i];
+                    averageY += ys[i];
+                }
+                averageX /= nextEnd - nextStart;
+                averageY /= nextEnd - nextStart;
+            }
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double previousX = xs[previous];
+            double previousY = ys[previous];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle area, the factor doesn't change the maximum
+                double area = Math.abs((previousX - averageX) * (ys[i] - previousY)
+                        - (previousX - xs[i]) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            outX[kept] = xs[chosen];
+            outY[kept++] = ys[chosen];
+            previous = chosen;
+        }
+        outX[kept] = xs[count - 1];
+        outY[kept++] = ys[count - 1];
+        return kept;
+    }
+}
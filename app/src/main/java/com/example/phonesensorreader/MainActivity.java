@@ -1,32 +1,52 @@
 package com.example.phonesensorreader;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.hardware.Sensor;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
 import android.widget.Button;
+import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.jjoe64.graphview.GraphView;
 import com.jjoe64.graphview.LegendRenderer;
-import com.jjoe64.graphview.series.DataPoint;
-import com.jjoe64.graphview.series.LineGraphSeries;
 import com.jjoe64.graphview.series.Series;
 
+import java.util.Locale;
 
-public class MainActivity extends AppCompatActivity {
 
-    private LineGraphSeries<DataPoint> seriesAccX, seriesAccY, seriesAccZ;
-    private LineGraphSeries<DataPoint> seriesGyroX, seriesGyroY, seriesGyroZ;
+public class MainActivity extends AppCompatActivity {
 
+    // One minute of both sensors at up to 100 Hz kept raw, then three levels of 8x decimated
+    // min/max buckets reaching back almost three hours. The graphs open on the last VISIBLE_SECONDS.
+    private static final int PLOT_RAW_POINTS = 60 * 100;
+    private static final int PLOT_LEVEL_BUCKETS = 2048;
+    private static final int PLOT_LEVEL_FACTOR = 8;
+    private static final int PLOT_LEVELS = 3;
+    private static final double VISIBLE_SECONDS = 10;
+
+    private final PlotHistory accPlot = newPlotHistory();
+    private final PlotHistory gyroPlot = newPlotHistory();
+    private GraphView graphAcc;
+    private GraphView graphGyro;
+    // X axis is seconds since the first sample received
+    private long firstTimestampNanos = -1;
     private double graphLastXValue = 0d;
-    private BroadcastReceiver sensorDataReceiver;
+    // Pinching changes the span; the graphs keep scrolling with new data unless panned back
+    private double visibleSeconds = VISIBLE_SECONDS;
+    private boolean followLatest = true;
+    private boolean redrawScheduled;
+    private final Choreographer.FrameCallback redrawCallback = this::redrawGraphs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private SampleChannel.Listener sampleListener;
+    private SampleChannel.Subscription sampleSubscription;
+    private PredictionChannel.Listener predictionListener;
+    private PredictionChannel.Subscription predictionSubscription;
 
     private static final String LOG_TAG="Main Activity";
 
@@ -47,23 +67,16 @@ public class MainActivity extends AppCompatActivity {
             isRunning = true;
         }
 
-        GraphView graphAcc = findViewById(R.id.graphAcc);
-        GraphView graphGyro = findViewById(R.id.graphGyro);
+        graphAcc = findViewById(R.id.graphAcc);
+        graphGyro = findViewById(R.id.graphGyro);
 
         // Create series with colors and background shading
-        seriesAccX = createSeries("Acc X", 0xFF0000FF, 0x220000FF); // Blue
-        seriesAccY = createSeries("Acc Y", 0xFF00FF00, 0x2200FF00); // Green
-        seriesAccZ = createSeries("Acc Z", 0xFFFF0000, 0x22FF0000); // Red
-        seriesGyroX = createSeries("Gyro X", 0xFF0000FF, 0x220000FF); // Blue
-        seriesGyroY = createSeries("Gyro Y", 0xFF00FF00, 0x2200FF00); // Green
-        seriesGyroZ = createSeries("Gyro Z", 0xFFFF0000, 0x22FF0000); // Red
-
-        graphAcc.addSeries(seriesAccX);
-        graphAcc.addSeries(seriesAccY);
-        graphAcc.addSeries(seriesAccZ);
-        graphGyro.addSeries(seriesGyroX);
-        graphGyro.addSeries(seriesGyroY);
-        graphGyro.addSeries(seriesGyroZ);
+        graphAcc.addSeries(createSeries("Acc X", accPlot, 0, 0xFF0000FF, 0x220000FF)); // Blue
+        graphAcc.addSeries(createSeries("Acc Y", accPlot, 1, 0xFF00FF00, 0x2200FF00)); // Green
+        graphAcc.addSeries(createSeries("Acc Z", accPlot, 2, 0xFFFF0000, 0x22FF0000)); // Red
+        graphGyro.addSeries(createSeries("Gyro X", gyroPlot, 0, 0xFF0000FF, 0x220000FF)); // Blue
+        graphGyro.addSeries(createSeries("Gyro Y", gyroPlot, 1, 0xFF00FF00, 0x2200FF00)); // Green
+        graphGyro.addSeries(createSeries("Gyro Z", gyroPlot, 2, 0xFFFF0000, 0x22FF0000)); // Red
 
         // Set titles for the graphs
         graphAcc.setTitle("Accelerometer");
@@ -75,6 +88,7 @@ public class MainActivity extends AppCompatActivity {
         setupGraphView(graphAcc);
         setupGraphView(graphGyro);
 
+        TextView activityLabel = findViewById(R.id.activityLabel);
         Button btnStart = findViewById(R.id.btnStart);
         Button btnStop = findViewById(R.id.btnStop);
         //Button openWebViewButton = findViewById(R.id.open_webview_button);
@@ -84,7 +98,11 @@ public class MainActivity extends AppCompatActivity {
             startService(serviceIntent);
         });
 
+        // Load the chat page while recording, Stop only has to hand it the prompt
+        WebViewHost.getShared(this).preload();
+
         btnStop.setOnClickListener(v -> {
+            PromptBridge.getShared().markStopRequested();
             // Stop the sensor service
             Intent serviceIntent = new Intent(MainActivity.this, PhoneSensorService.class);
             stopService(serviceIntent);
@@ -94,37 +112,81 @@ public class MainActivity extends AppCompatActivity {
             startActivity(intent);
         });
 
-        sensorDataReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                int sensorType = intent.getIntExtra(PhoneSensorService.EXTRA_SENSOR_TYPE, -1);
-                float[] sensorValues = intent.getFloatArrayExtra(PhoneSensorService.EXTRA_SENSOR_VALUES);
-                if (sensorValues != null) {
-                    graphLastXValue += 0.1d;
-                    if (sensorType == Sensor.TYPE_ACCELEROMETER) {
-                        seriesAccX.appendData(new DataPoint(graphLastXValue, sensorValues[0]), true, 40);
-                        seriesAccY.appendData(new DataPoint(graphLastXValue, sensorValues[1]), true, 40);
-                        seriesAccZ.appendData(new DataPoint(graphLastXValue, sensorValues[2]), true, 40);
-                    } else if (sensorType == Sensor.TYPE_GYROSCOPE) {
-                        seriesGyroX.appendData(new DataPoint(graphLastXValue, sensorValues[0]), true, 40);
-                        seriesGyroY.appendData(new DataPoint(graphLastXValue, sensorValues[1]), true, 40);
-                        seriesGyroZ.appendData(new DataPoint(graphLastXValue, sensorValues[2]), true, 40);
-                    }
-
-                    // Adjust X bounds
-                    if (graphLastXValue > 10) {
-                        graphAcc.getViewport().setMinX(graphLastXValue - 10);
-                        graphAcc.getViewport().setMaxX(graphLastXValue);
-                        graphGyro.getViewport().setMinX(graphLastXValue - 10);
-                        graphGyro.getViewport().setMaxX(graphLastXValue);
-                    }
+        // Batches arrive on the main thread at display rate at most, see SampleChannel
+        sampleListener = batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                int sensorType = batch.getSensorType(i);
+                PlotHistory plot = sensorType == Sensor.TYPE_ACCELEROMETER ? accPlot
+                        : sensorType == Sensor.TYPE_GYROSCOPE ? gyroPlot : null;
+                if (plot == null) {
+                    continue;
+                }
+                long timestampNanos = batch.getTimestampNanos(i);
+                if (firstTimestampNanos < 0) {
+                    firstTimestampNanos = timestampNanos;
                 }
+                double x = (timestampNanos - firstTimestampNanos) / 1e9;
+                plot.append(x, batch.getX(i), batch.getY(i), batch.getZ(i));
+                graphLastXValue = Math.max(graphLastXValue, x);
+            }
+            scheduleRedraw();
+        };
+
+        predictionListener = (prediction, meanLatencyMillis) -> {
+            String label = prediction.getLabel().name().toLowerCase(Locale.US);
+            if (prediction.getSource() == ActivityPrediction.Source.CLASSIFIER) {
+                activityLabel.setText(String.format(Locale.US, "%s (classifier, %.0f%%)",
+                        label, prediction.getConfidence() * 100));
+            } else if (prediction.getSource() == ActivityPrediction.Source.CACHE) {
+                activityLabel.setText(label + " (LLM, cached)");
+            } else {
+                long latency = prediction.getLatencyMillis();
+                long meanLatency = meanLatencyMillis > 0 ? meanLatencyMillis : latency;
+                activityLabel.setText(label + " (LLM, " + latency + " ms, mean " + meanLatency + " ms)");
             }
         };
     }
 
-    private LineGraphSeries<DataPoint> createSeries(String title, int color, int backgroundColor) {
-        LineGraphSeries<DataPoint> series = new LineGraphSeries<>(new DataPoint[]{});
+    /** Redraws both graphs on the next frame, however many batches arrive before it. */
+    private void scheduleRedraw() {
+        if (!redrawScheduled) {
+            redrawScheduled = true;
+            Choreographer.getInstance().postFrameCallback(redrawCallback);
+        }
+    }
+
+    private void redrawGraphs(long frameTimeNanos) {
+        redrawScheduled = false;
+        // Adjust X bounds once per frame
+        if (followLatest && graphLastXValue > visibleSeconds) {
+            setXBounds(graphAcc, graphLastXValue - visibleSeconds, graphLastXValue);
+            setXBounds(graphGyro, graphLastXValue - visibleSeconds, graphLastXValue);
+        }
+        graphAcc.onDataChanged(true, false);
+        graphGyro.onDataChanged(true, false);
+    }
+
+    private static void setXBounds(GraphView graph, double minX, double maxX) {
+        graph.getViewport().setMinX(minX);
+        graph.getViewport().setMaxX(maxX);
+    }
+
+    private static PlotHistory newPlotHistory() {
+        return new PlotHistory(PLOT_RAW_POINTS, PLOT_LEVEL_BUCKETS, PLOT_LEVEL_FACTOR, PLOT_LEVELS);
+    }
+
+    /** Keeps both graphs on the span the user pinched or scrolled to. */
+    private void onXBoundsChanged(GraphView source, double minX, double maxX) {
+        visibleSeconds = Math.max(maxX - minX, 0.1);
+        // Back at the newest sample, within a small part of the span, resumes following it
+        followLatest = maxX >= graphLastXValue - visibleSeconds * 0.02;
+        GraphView other = source == graphAcc ? graphGyro : graphAcc;
+        setXBounds(other, minX, maxX);
+        other.onDataChanged(true, false);
+    }
+
+    private PlotSeries createSeries(String title, PlotHistory plot, int axis, int color, int backgroundColor) {
+        PlotSeries series = new PlotSeries(plot, axis);
         series.setTitle(title);
         series.setColor(color);
         series.setDrawBackground(true);
@@ -135,7 +197,7 @@ public class MainActivity extends AppCompatActivity {
     private void setupGraphView(GraphView graph) {
         graph.getViewport().setXAxisBoundsManual(true);
         graph.getViewport().setMinX(0);
-        graph.getViewport().setMaxX(10);
+        graph.getViewport().setMaxX(VISIBLE_SECONDS);
         graph.getViewport().setScalable(true);
         graph.getViewport().setScrollable(true);
         graph.getViewport().setScalableY(true);
@@ -148,17 +210,32 @@ public class MainActivity extends AppCompatActivity {
         graph.getGridLabelRenderer().setHorizontalLabelsColor(0xFF000000);
         graph.getLegendRenderer().setVisible(true);
         graph.getLegendRenderer().setAlign(LegendRenderer.LegendAlign.TOP);
+        graph.getViewport().setOnXAxisBoundsChangedListener((minX, maxX, reason) -> onXBoundsChanged(graph, minX, maxX));
+        // Min/max pairs per pixel column, so the series never draws more than the screen can show
+        graph.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+            for (Series<?> series : graph.getSeries()) {
+                if (series instanceof PlotSeries) {
+                    ((PlotSeries) series).setMaxPoints(2 * Math.max(1, right - left));
+                }
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        registerReceiver(sensorDataReceiver, new IntentFilter(PhoneSensorService.ACTION_SENSOR_DATA),RECEIVER_EXPORTED);
+        sampleSubscription = SampleChannel.getShared().subscribe(sampleListener, mainHandler::post);
+        predictionSubscription = PredictionChannel.getShared().subscribe(predictionListener, mainHandler::post);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        unregisterReceiver(sensorDataReceiver);
+        sampleSubscription.close();
+        if (redrawScheduled) {
+            Choreographer.getInstance().removeFrameCallback(redrawCallback);
+            redrawScheduled = false;
+        }
+        predictionSubscription.close();
     }
 }
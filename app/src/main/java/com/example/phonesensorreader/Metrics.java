@@ -0,0 +1,177 @@
+package com.example.phonesensorreader;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and latency histograms of the sensor-to-prediction pipeline.
+ *
+ * Components keep their own {@link AtomicLong} counters and {@link LatencyHistogram}s and
+ * record into them directly; the registry only names them, so recording costs no lookup.
+ * Gauges are read when a snapshot is taken. Register at setup time, the registry methods
+ * take a lock.
+ */
+public class Metrics {
+    // Stages of the pipeline, see PhoneSensorService
+    public static final String SENSOR_EVENTS = "sensor.events";
+    public static final String SENSOR_SKIPPED = "sensor.skipped";
+    public static final String SENSOR_INGEST = "sensor.ingest";
+    public static final String BUFFER_OVERRUNS = "buffer.overruns";
+    public static final String AGGREGATION_BATCH = "aggregation.batch";
+    public static final String UI_DELIVERY = "ui.delivery";
+    public static final String UI_DROPPED = "ui.dropped";
+    public static final String PROMPT_BUILD = "inference.prompt";
+    public static final String HTTP_FIRST_BYTE = "http.first_byte";
+    public static final String HTTP_RESPONSE = "http.response";
+    public static final String INFERENCE_TOTAL = "inference.total";
+    public static final String DUTY_CYCLE_TRANSITIONS = "dutycycle.transitions";
+    public static final String INFERENCE_CACHE_HITS = "inference.cache.hits";
+    public static final String INFERENCE_CACHE_MISSES = "inference.cache.misses";
+    public static final String INFERENCE_CACHE_EVICTIONS = "inference.cache.evictions";
+    public static final String INFERENCE_CACHE_EXPIRED = "inference.cache.expired";
+    public static final String INFERENCE_CACHE_HIT_RATIO = "inference.cache.hit_permille";
+    public static final String INFERENCE_CACHE_SAVED = "inference.cache.saved_ms";
+    public static final String UPLOAD_BATCH = "upload.batch";
+    public static final String UPLOAD_BYTES_SENT = "upload.bytes_sent";
+    public static final String UPLOAD_BYTES_PER_HOUR = "upload.bytes_per_hour";
+    public static final String UPLOAD_COMPRESSION_RATIO = "upload.compression_ratio_x100";
+    public static final String UPLOAD_RETRIES = "upload.retries";
+    public static final String UPLOAD_FAILURES = "upload.failures";
+    public static final String WEBVIEW_PROMPT_READY = "webview.prompt_ready";
+    public static final String WEBVIEW_PAGE_LOAD = "webview.page_load";
+
+    private static Metrics shared;
+
+    /** The process-wide registry. */
+    public static synchronized Metrics getShared() {
+        if (shared == null) {
+            shared = new Metrics();
+        }
+        return shared;
+    }
+
+    private final Map<String, AtomicLong> counters = new TreeMap<>();
+    private final Map<String, LongSupplier> gauges = new TreeMap<>();
+    private final Map<String, LatencyHistogram> histograms = new TreeMap<>();
+
+    /** The counter called {@code name}, created on first use. */
+    public synchronized AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counter = new AtomicLong();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /** The histogram called {@code name}, created on first use. */
+    public synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /** Publishes a histogram a component owns under {@code name}, replacing any previous one. */
+    public synchronized void register(String name, LatencyHistogram histogram) {
+        histograms.put(name, histogram);
+    }
+
+    /** Reads {@code value} under {@code name} in every snapshot. */
+    public synchronized void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /** Forgets everything, e.g. at the start of a recording session. */
+    public synchronized void clear() {
+        counters.clear();
+        gauges.clear();
+        histograms.clear();
+    }
+
+    public synchronized Snapshot snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().get());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        Map<String, LatencyHistogram.Summary> summaries = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet()) {
+            summaries.put(histogram.getKey(), histogram.getValue().summarize());
+        }
+        return new Snapshot(System.currentTimeMillis(), values, summaries);
+    }
+
+    /** Values of every counter and gauge and summaries of every histogram at one time. */
+    public static final class Snapshot {
+        private final long timeMillis;
+        private final Map<String, Long> values;
+        private final Map<String, LatencyHistogram.Summary> histograms;
+
+        Snapshot(long timeMillis, Map<String, Long> values, Map<String, LatencyHistogram.Summary> histograms) {
+            this.timeMillis = timeMillis;
+            this.values = Collections.unmodifiableMap(values);
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /** Counters and gauges by name, sorted. */
+        public Map<String, Long> getValues() {
+            return values;
+        }
+
+        /** Histogram summaries by name, sorted. */
+        public Map<String, LatencyHistogram.Summary> getHistograms() {
+            return histograms;
+        }
+
+        /** Value of counter or gauge {@code name}, or -1 if there is none. */
+        public long getValue(String name) {
+            Long value = values.get(name);
+            return value == null ? -1 : value;
+        }
+
+        /** One JSON object: time, counters and gauges as numbers, histograms in nanoseconds. */
+        public StringBuilder appendJson(StringBuilder out) {
+            out.append("{\"time\":").append(timeMillis);
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                out.append(',');
+                PromptBuilder.appendJsonString(out, value.getKey()).append(':').append(value.getValue());
+            }
+            for (Map.Entry<String, LatencyHistogram.Summary> histogram : histograms.entrySet()) {
+                LatencyHistogram.Summary summary = histogram.getValue();
+                out.append(',');
+                PromptBuilder.appendJsonString(out, histogram.getKey())
+                        .append(":{\"count\":").append(summary.getCount())
+                        .append(",\"mean\":").append(summary.getMeanNanos())
+                        .append(",\"p50\":").append(summary.getP50Nanos())
+                        .append(",\"p90\":").append(summary.getP90Nanos())
+                        .append(",\"p99\":").append(summary.getP99Nanos())
+                        .append(",\"max\":").append(summary.getMaxNanos()).append('}');
+            }
+            return out.append('}');
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                out.append(value.getKey()).append('=').append(value.getValue()).append('\n');
+            }
+            for (Map.Entry<String, LatencyHistogram.Summary> histogram : histograms.entrySet()) {
+                out.append(histogram.getKey()).append(": ").append(histogram.getValue()).append('\n');
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.phonesensorreader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends a {@link Metrics} snapshot to a file every interval, one JSON object per line,
+ * and a last one when stopped.
+ */
+public class MetricsDumper {
+    private final Metrics metrics;
+    private final File file;
+    private final long intervalMillis;
+    private ScheduledExecutorService scheduler;
+    private volatile long writtenCount;
+    private volatile long failedCount;
+
+    public MetricsDumper(Metrics metrics, File file, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive: " + intervalMillis);
+        }
+        this.metrics = metrics;
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "MetricsDumper"));
+        scheduler.scheduleWithFixedDelay(this::scheduledDump, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the schedule and writes the final snapshot. */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        dump();
+    }
+
+    // A dump that waited for the lock while stop ran must not write after the final snapshot
+    private synchronized void scheduledDump() {
+        if (scheduler != null) {
+            dump();
+        }
+    }
+
+    /** Appends one snapshot. Failures are counted, the next interval tries again. */
+    synchronized void dump() {
+        StringBuilder line = metrics.snapshot().appendJson(new StringBuilder()).append('\n');
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            writtenCount++;
+        } catch (IOException e) {
+            failedCount++;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+}
@@ -7,91 +7,174 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.ServiceInfo;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.os.PowerManager;
-import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PhoneSensorService extends Service implements SensorEventListener {
     private static final String LOG_TAG = "PhoneSensorService";
     private static final String CHANNEL_ID = "SensorDataChannel";
     private SensorManager sensorManager;
-    private Sensor accelerometer;
-    private Sensor gyroscope;
-    private static final int SAMPLING_INTERVAL_MICROSECONDS = 100000; // 10Hz
+    // What to record, see SensorRegistry; the arrays below are indexed like it
+    private final SensorRegistry sensorRegistry = SensorRegistry.createDefault();
+    // Null where the device lacks the sensor
+    private Sensor[] sensors;
     private static final int MAX_TIME_RECORDING_IN_SECONDS = 60; // 5 minutes
-
-    private HashMap<String, ArrayList<Float>> aggregatedData;
-    private long lastSampleTime;
+    // Long sessions renew a ten minute wake lock until they reach twelve hours
+    private static final long LONG_SESSION_MAX_MILLIS = TimeUnit.HOURS.toMillis(12);
+    private static final long LONG_SESSION_WAKE_LOCK_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // Recent samples a long session keeps in memory before spilling them to the file, about 5 minutes
+    private static final long LONG_SESSION_MEMORY_BUDGET_BYTES = 4L * 1024 * 1024;
+    // About 40 s of both sensors at 100 Hz before the producer starts dropping samples
+    private static final int SAMPLE_BUFFER_CAPACITY = 8192;
+    private static final int SAMPLE_BATCH_SIZE = 256;
+    private static final long CONSUMER_POLL_INTERVAL_MILLIS = 20;
+    // Ten minutes of both sensors at 100 Hz per file chunk, about 2.9 MB
+    private static final int SESSION_CHUNK_RECORDS = 120_000;
+    private static final int SESSION_CHECKPOINT_INTERVAL = 1024;
+    private static final String SESSION_DIRECTORY = "sessions";
+    private static final long DEFAULT_INFERENCE_INTERVAL_MILLIS = 5_000;
+    private static final String ACTIVITY_MODEL_ASSET = "activity_tree.txt";
+    // A phone left on a desk repeats one answer for hours, the time to live still rechecks it
+    private static final int INFERENCE_CACHE_CAPACITY = 64;
+    private static final long INFERENCE_CACHE_TTL_MILLIS = 10 * 60_000;
+    // Windows the decision tree is less sure about than this go to the LLM
+    private static final double MIN_CLASSIFIER_CONFIDENCE = 0.8;
+    // Precision of the values broadcast to the UI
+    private static final FixedPointQuantizer VALUE_QUANTIZER = new FixedPointQuantizer(6);
+    // Horizons of the rolling statistics logged at the end of a session
+    private static final long[] ROLLING_HORIZONS_MINUTES = {1, 10, 60};
+    private static final String METRICS_DIRECTORY = "metrics";
+
+    // Statistics, windows, fusion, classifier and prompts, fed on the consumer thread
+    private SensorPipeline pipeline;
+    // Outlives inference loops, so a restart with another interval keeps the answers
+    private InferenceCache inferenceCache;
+    private SampleRingBuffer sampleBuffer;
+    private SampleConsumer sampleConsumer;
+    // Samples for the UI, see MainActivity
+    private SampleChannel sampleChannel;
+    // At most one of these is open, set on the main thread before sensors are registered
+    @Nullable
+    private volatile SessionRecorder sessionRecorder;
+    @Nullable
+    private volatile SpillingRecorder spillingRecorder;
+    // Null for sensors that are not registered
+    private RateDecimator[] decimators;
+    // Started and stopped on the main thread, read on HTTP client threads
+    @Nullable
+    private volatile InferenceLoop inferenceLoop;
+    private Metrics metrics;
+    private AtomicLong sensorEventCount;
+    private AtomicLong sensorSkippedCount;
+    private LatencyHistogram ingestLatency;
+    private LatencyHistogram batchLatency;
+    private MetricsDumper metricsDumper;
     private PowerManager.WakeLock wakeLock;
-
-    public static final String ACTION_SENSOR_DATA = "com.example.phonesensorreader.ACTION_SENSOR_DATA";
-    public static final String EXTRA_SENSOR_TYPE = "com.example.phonesensorreader.EXTRA_SENSOR_TYPE";
-    public static final String EXTRA_SENSOR_VALUES = "com.example.phonesensorreader.EXTRA_SENSOR_VALUES";
-    private float avgAccX;
-    private float avgAccY;
-    private float avgAccZ;
-    private float avgGyroX;
-    private float avgGyroY;
-    private float avgGyroZ;
+    private final Handler wakeLockHandler = new Handler(Looper.getMainLooper());
+    private final Runnable wakeLockRenewal = this::renewWakeLock;
+    // Set when the service is first started
+    @Nullable
+    private WakeLockPolicy wakeLockPolicy;
+    private long sessionStartRealtimeMillis;
+    // Set by starts with EXTRA_DUTY_CYCLE, fed on the consumer thread, applied on the main thread
+    @Nullable
+    private volatile DutyCyclePolicy dutyCyclePolicy;
+    @Nullable
+    private Sensor significantMotionSensor;
+    // Wakes the processor from suspend as still mode lets the wake lock go
+    @Nullable
+    private Sensor wakeUpAccelerometer;
+    private boolean significantMotionRequested;
+    private AtomicLong dutyCycleTransitionCount;
+    // Set when the first start names a collector
+    @Nullable
+    private SessionUploader sessionUploader;
+    private final TriggerEventListener significantMotionListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            significantMotionRequested = false;
+            DutyCyclePolicy policy = dutyCyclePolicy;
+            if (policy != null) {
+                policy.onSignificantMotion(event.timestamp);
+            }
+        }
+    };
+
+    // Optional start extras, see SamplingConfig
+    public static final String EXTRA_ACC_RATE_HZ = "com.example.phonesensorreader.EXTRA_ACC_RATE_HZ";
+    public static final String EXTRA_GYRO_RATE_HZ = "com.example.phonesensorreader.EXTRA_GYRO_RATE_HZ";
+    public static final String EXTRA_MAX_REPORT_LATENCY_US = "com.example.phonesensorreader.EXTRA_MAX_REPORT_LATENCY_US";
+    // Milliseconds between inference rounds while recording, 0 turns continuous inference off
+    public static final String EXTRA_INFERENCE_INTERVAL_MILLIS = "com.example.phonesensorreader.EXTRA_INFERENCE_INTERVAL_MILLIS";
+    // Record for hours within a fixed memory budget, see SpillingRecorder and WakeLockPolicy
+    public static final String EXTRA_LONG_SESSION = "com.example.phonesensorreader.EXTRA_LONG_SESSION";
+    // Lower the sampling while the phone is still, see DutyCyclePolicy
+    public static final String EXTRA_DUTY_CYCLE = "com.example.phonesensorreader.EXTRA_DUTY_CYCLE";
+    // Collector URL finished sessions are uploaded to, see SessionUploader, absent for none
+    public static final String EXTRA_UPLOAD_ENDPOINT = "com.example.phonesensorreader.EXTRA_UPLOAD_ENDPOINT";
+    // Milliseconds between pipeline metrics snapshots appended to a file, 0 or absent for none
+    public static final String EXTRA_METRICS_DUMP_INTERVAL_MILLIS = "com.example.phonesensorreader.EXTRA_METRICS_DUMP_INTERVAL_MILLIS";
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(LOG_TAG, "Service onCreate");
-        aggregatedData = new HashMap<>();
+        pipeline = new SensorPipeline(sensorRegistry, loadCascadeClassifier(), this::publishPrediction);
+        inferenceCache = new InferenceCache(INFERENCE_CACHE_CAPACITY, INFERENCE_CACHE_TTL_MILLIS);
+        sensors = new Sensor[sensorRegistry.size()];
+        decimators = new RateDecimator[sensorRegistry.size()];
+        sampleBuffer = new SampleRingBuffer(SAMPLE_BUFFER_CAPACITY);
+        sampleChannel = SampleChannel.getShared();
+        registerMetrics();
+        sampleConsumer = new SampleConsumer(sampleBuffer, new ConsumerSink(),
+                SAMPLE_BATCH_SIZE, CONSUMER_POLL_INTERVAL_MILLIS);
+        sampleConsumer.start();
         sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
 
 
         if (sensorManager != null) {
-            accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-            gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
-
-            if (accelerometer != null) {
-                sensorManager.registerListener(this, accelerometer, SAMPLING_INTERVAL_MICROSECONDS);
-            }
-            if (gyroscope != null) {
-                sensorManager.registerListener(this, gyroscope, SAMPLING_INTERVAL_MICROSECONDS);
+            for (int index = 0; index < sensorRegistry.size(); index++) {
+                sensors[index] = sensorManager.getDefaultSensor(sensorRegistry.getSpec(index).getSensorType());
+                if (sensors[index] == null) {
+                    Log.d(LOG_TAG, "No " + sensorRegistry.getSpec(index) + " on this device");
+                }
             }
+            significantMotionSensor = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+            wakeUpAccelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, true);
         }
         int processor= Runtime.getRuntime().availableProcessors();
         Log.d(LOG_TAG, "Number of CPU core processors="+processor);
 
-        // Acquire a partial wake lock to keep the CPU running even when the screen is off
+        // A partial wake lock keeps the CPU running even when the screen is off, taken when the session starts
         PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
         if (powerManager != null) {
             wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "PhoneSensorService::WakeLock");
-            wakeLock.acquire(MAX_TIME_RECORDING_IN_SECONDS * 1000L);
+            wakeLock.setReferenceCounted(false);
         }
     }
 
@@ -107,21 +190,400 @@ public class PhoneSensorService extends Service implements SensorEventListener {
                 .build();
 
         startForeground(1, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        if (wakeLockPolicy == null) {
+            // The first start decides the kind of session, later ones only change the sampling
+            boolean longSession = intent != null && intent.getBooleanExtra(EXTRA_LONG_SESSION, false);
+            wakeLockPolicy = longSession
+                    ? new WakeLockPolicy(LONG_SESSION_MAX_MILLIS, LONG_SESSION_WAKE_LOCK_LEASE_MILLIS)
+                    : WakeLockPolicy.fixed(MAX_TIME_RECORDING_IN_SECONDS * 1000L);
+            sessionStartRealtimeMillis = SystemClock.elapsedRealtime();
+            openSessionRecorder(longSession);
+            renewWakeLock();
+            if (intent != null) {
+                startMetricsDumper(intent.getLongExtra(EXTRA_METRICS_DUMP_INTERVAL_MILLIS, 0));
+                startUploader(intent.getStringExtra(EXTRA_UPLOAD_ENDPOINT));
+            }
+        }
+        SamplingConfig samplingConfig = readSamplingConfig(intent);
+        startDutyCycle(intent != null && intent.getBooleanExtra(EXTRA_DUTY_CYCLE, false), samplingConfig);
+        registerSensors(samplingConfig, null, false);
+        startInference(intent == null ? DEFAULT_INFERENCE_INTERVAL_MILLIS
+                : intent.getLongExtra(EXTRA_INFERENCE_INTERVAL_MILLIS, DEFAULT_INFERENCE_INTERVAL_MILLIS));
         Log.d(LOG_TAG, "Service started");
         return START_NOT_STICKY;
     }
 
+    private SamplingConfig readSamplingConfig(@Nullable Intent intent) {
+        SamplingConfig defaults = SamplingConfig.defaults();
+        if (intent == null) {
+            return defaults;
+        }
+        return new SamplingConfig(
+                intent.getDoubleExtra(EXTRA_ACC_RATE_HZ, defaults.getAccelerometerRateHz()),
+                intent.getDoubleExtra(EXTRA_GYRO_RATE_HZ, defaults.getGyroscopeRateHz()),
+                intent.getIntExtra(EXTRA_MAX_REPORT_LATENCY_US, defaults.getMaxReportLatencyUs()));
+    }
+
+    /** Names the counters and histograms of every pipeline stage in a fresh {@link Metrics#getShared()}. */
+    private void registerMetrics() {
+        metrics = Metrics.getShared();
+        metrics.clear();
+        sensorEventCount = metrics.counter(Metrics.SENSOR_EVENTS);
+        sensorSkippedCount = metrics.counter(Metrics.SENSOR_SKIPPED);
+        ingestLatency = metrics.histogram(Metrics.SENSOR_INGEST);
+        batchLatency = metrics.histogram(Metrics.AGGREGATION_BATCH);
+        metrics.gauge(Metrics.BUFFER_OVERRUNS, sampleBuffer::getOverrunCount);
+        metrics.register(Metrics.UI_DELIVERY, sampleChannel.getDeliveryLatency());
+        metrics.gauge(Metrics.UI_DROPPED, sampleChannel::getDroppedSamples);
+        CompletionClient client = CompletionClient.getShared();
+        metrics.register(Metrics.HTTP_FIRST_BYTE, client.getTimeToFirstByte());
+        metrics.register(Metrics.HTTP_RESPONSE, client.getResponseTime());
+        dutyCycleTransitionCount = metrics.counter(Metrics.DUTY_CYCLE_TRANSITIONS);
+        metrics.gauge(Metrics.INFERENCE_CACHE_HITS, inferenceCache::getHitCount);
+        metrics.gauge(Metrics.INFERENCE_CACHE_MISSES, inferenceCache::getMissCount);
+        metrics.gauge(Metrics.INFERENCE_CACHE_EVICTIONS, inferenceCache::getEvictionCount);
+        metrics.gauge(Metrics.INFERENCE_CACHE_EXPIRED, inferenceCache::getExpiredCount);
+        metrics.gauge(Metrics.INFERENCE_CACHE_HIT_RATIO, () -> Math.round(inferenceCache.getHitRatio() * 1000));
+        metrics.gauge(Metrics.INFERENCE_CACHE_SAVED, () -> inferenceCache.getSavedNanos() / 1_000_000);
+        metrics.register(Metrics.WEBVIEW_PROMPT_READY, PromptBridge.getShared().getPromptReadyLatency());
+        metrics.register(Metrics.WEBVIEW_PAGE_LOAD, WebViewHost.getPageLoadLatency());
+    }
+
+    /** Replaces the duty cycle policy, the session starts out sampling at the configured rates. */
+    private void startDutyCycle(boolean enabled, SamplingConfig samplingConfig) {
+        cancelSignificantMotion();
+        DutyCyclePolicy previous = dutyCyclePolicy;
+        if (previous != null) {
+            // Sensor timestamps count from boot like elapsedRealtimeNanos on current devices
+            Log.d(LOG_TAG, "Duty cycle: " + previous.summarize(SystemClock.elapsedRealtimeNanos()));
+        }
+        if (!enabled) {
+            dutyCyclePolicy = null;
+            return;
+        }
+        DutyCyclePolicy.Config config = new DutyCyclePolicy.Config()
+                .active(samplingConfig)
+                .significantMotion(significantMotionSensor != null);
+        if (wakeUpAccelerometer == null) {
+            // Batches of a non-wakeup sensor wait for something else to wake the processor
+            DutyCyclePolicy.Profile still = config.still;
+            config.still(new DutyCyclePolicy.Profile(still.getAccelerometerRateHz(), still.getGyroscopeRateHz(),
+                    still.getMaxReportLatencyUs(), true));
+        }
+        dutyCyclePolicy = new DutyCyclePolicy(config,
+                transition -> wakeLockHandler.post(() -> applyDutyCycle(transition)));
+        Log.d(LOG_TAG, "Duty cycling: active " + config.active + ", still " + config.still
+                + (significantMotionSensor != null ? ", dormant on significant motion" : ""));
+    }
+
+    /** Registers what the policy's new mode samples and takes or lets go of the wake lock. On the main thread. */
+    private void applyDutyCycle(DutyCyclePolicy.Transition transition) {
+        if (dutyCyclePolicy == null || sensorManager == null) {
+            return; // Stopped or replaced since the transition was posted
+        }
+        Log.d(LOG_TAG, "Duty cycle " + transition);
+        dutyCycleTransitionCount.incrementAndGet();
+        DutyCyclePolicy.Profile profile = transition.getProfile();
+        if (transition.getTo() == DutyCyclePolicy.Mode.DORMANT) {
+            sensorManager.unregisterListener(this);
+            significantMotionRequested = significantMotionSensor != null
+                    && sensorManager.requestTriggerSensor(significantMotionListener, significantMotionSensor);
+        } else {
+            cancelSignificantMotion();
+            // Still, only what the profile samples runs, as DutyCyclePolicy's power estimates assume
+            registerSensors(profile.toSamplingConfig(),
+                    transition.getTo() == DutyCyclePolicy.Mode.STILL ? profile : null, !profile.holdsWakeLock());
+        }
+        if (profile.holdsWakeLock()) {
+            renewWakeLock();
+        } else {
+            wakeLockHandler.removeCallbacks(wakeLockRenewal);
+            if (wakeLock != null && wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+        }
+    }
+
+    private void cancelSignificantMotion() {
+        if (significantMotionRequested && sensorManager != null) {
+            sensorManager.cancelTriggerSensor(significantMotionListener, significantMotionSensor);
+        }
+        significantMotionRequested = false;
+    }
+
+    private void startMetricsDumper(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            return;
+        }
+        File directory = new File(getFilesDir(), METRICS_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create metrics directory " + directory);
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        File file = new File(directory, "metrics-" + format.format(new Date()) + ".jsonl");
+        metricsDumper = new MetricsDumper(metrics, file, intervalMillis);
+        metricsDumper.start();
+        Log.d(LOG_TAG, "Writing metrics every " + intervalMillis + "ms to " + file);
+    }
+
+    /** Uploads the sessions recorded before this one, and this one once it is closed. */
+    private void startUploader(@Nullable String endpoint) {
+        if (endpoint == null || endpoint.isEmpty()) {
+            return;
+        }
+        SessionUploader uploader = new SessionUploader(new SessionUploader.Config().endpoint(endpoint));
+        metrics.register(Metrics.UPLOAD_BATCH, uploader.getBatchLatency());
+        metrics.gauge(Metrics.UPLOAD_BYTES_SENT, uploader::getBytesSent);
+        metrics.gauge(Metrics.UPLOAD_BYTES_PER_HOUR, uploader::getBytesPerHour);
+        metrics.gauge(Metrics.UPLOAD_COMPRESSION_RATIO, () -> Math.round(uploader.getCompressionRatio() * 100));
+        metrics.gauge(Metrics.UPLOAD_RETRIES, uploader::getRetryCount);
+        metrics.gauge(Metrics.UPLOAD_FAILURES, uploader::getFailedCount);
+        SessionRecorder recorder = sessionRecorder;
+        SpillingRecorder spilling = spillingRecorder;
+        File recording = recorder != null ? recorder.getFile() : spilling != null ? spilling.getFile() : null;
+        sessionUploader = uploader;
+        uploader.enqueueAll(new File(getFilesDir(), SESSION_DIRECTORY), recording);
+        Log.d(LOG_TAG, "Uploading sessions to " + endpoint);
+    }
+
+    /** Takes the wake lock for the next lease of the session policy and schedules its renewal. */
+    private void renewWakeLock() {
+        // Transitions renew right away, keep a single renewal scheduled
+        wakeLockHandler.removeCallbacks(wakeLockRenewal);
+        if (wakeLock == null || wakeLockPolicy == null) {
+            return;
+        }
+        long elapsedMillis = SystemClock.elapsedRealtime() - sessionStartRealtimeMillis;
+        long leaseMillis = wakeLockPolicy.nextLeaseMillis(elapsedMillis);
+        if (leaseMillis == 0) {
+            Log.d(LOG_TAG, "Session reached " + elapsedMillis + "ms, letting the wake lock go");
+            if (wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+            return;
+        }
+        wakeLock.acquire(leaseMillis);
+        long renewDelayMillis = wakeLockPolicy.renewDelayMillis(elapsedMillis, leaseMillis);
+        if (renewDelayMillis > 0) {
+            wakeLockHandler.postDelayed(wakeLockRenewal, renewDelayMillis);
+        }
+    }
+
+    /**
+     * (Re)registers the sensors, only those {@code only} samples unless it is null, and the
+     * wake-up accelerometer if {@code wakeUp} and there is one. Called on the main thread, which
+     * is also where sensor events arrive.
+     */
+    private void registerSensors(SamplingConfig config, @Nullable DutyCyclePolicy.Profile only, boolean wakeUp) {
+        if (sensorManager == null) {
+            return;
+        }
+        sensorManager.unregisterListener(this);
+        double[] windowRatesHz = new double[sensorRegistry.size()];
+        for (int index = 0; index < sensorRegistry.size(); index++) {
+            if (sensors[index] == null) {
+                continue;
+            }
+            if (only != null && !only.uses(sensorRegistry.getSpec(index).getSensorType())) {
+                decimators[index] = null;
+                continue;
+            }
+            Sensor sensor = wakeUp && wakeUpAccelerometer != null
+                    && sensorRegistry.getSpec(index).getSensorType() == Sensor.TYPE_ACCELEROMETER
+                    ? wakeUpAccelerometer : sensors[index];
+            decimators[index] = registerSensor(sensor, rateHz(sensorRegistry.getSpec(index), config),
+                    config.getMaxReportLatencyUs());
+            windowRatesHz[index] = windowRateHz(decimators[index]);
+        }
+        // Batched sensors flush their FIFOs independently, let the accelerometer wait for two report latencies
+        long maxGyroWaitNanos = Math.max(2 * TimeUnit.MICROSECONDS.toNanos(config.getMaxReportLatencyUs()),
+                TimeUnit.MILLISECONDS.toNanos(4 * CONSUMER_POLL_INTERVAL_MILLIS));
+        pipeline.configure(windowRatesHz, maxGyroWaitNanos);
+    }
+
+    /** The configured rate for the accelerometer and gyroscope, the registry default for others. */
+    private static double rateHz(SensorSpec spec, SamplingConfig config) {
+        switch (spec.getSensorType()) {
+            case Sensor.TYPE_ACCELEROMETER:
+                return config.getAccelerometerRateHz();
+            case Sensor.TYPE_GYROSCOPE:
+                return config.getGyroscopeRateHz();
+            default:
+                return spec.getDefaultRateHz();
+        }
+    }
+
+    private static double windowRateHz(RateDecimator decimator) {
+        // An unthrottled sensor without a known minimum delay has no nominal rate, assume the default
+        return decimator.getPeriodNanos() > 0 ? 1e9 / decimator.getPeriodNanos() : SamplingConfig.DEFAULT_RATE_HZ;
+    }
+
+    @Nullable
+    private CascadeClassifier loadCascadeClassifier() {
+        try (InputStream in = getAssets().open(ACTIVITY_MODEL_ASSET)) {
+            DecisionTreeClassifier tree = DecisionTreeClassifier.load(in);
+            Log.d(LOG_TAG, "Loaded " + tree + " from " + ACTIVITY_MODEL_ASSET);
+            return new CascadeClassifier(tree, MIN_CLASSIFIER_CONFIDENCE);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Can't load " + ACTIVITY_MODEL_ASSET + ", every window goes to the LLM", e);
+            return null;
+        }
+    }
+
+    private void startInference(long intervalMillis) {
+        stopInference();
+        if (intervalMillis <= 0) {
+            return;
+        }
+        inferenceLoop = new InferenceLoop(CompletionClient.getShared(), pipeline::nextInferenceRequest,
+                new InferenceLoop.Listener() {
+                    @Override
+                    public void onPrediction(ActivityPrediction prediction) {
+                        publishPrediction(prediction);
+                    }
+
+                    @Override
+                    public void onInferenceError(String message) {
+                        Log.w(LOG_TAG, "Inference failed: " + message);
+                    }
+                }, intervalMillis, inferenceCache);
+        metrics.register(Metrics.PROMPT_BUILD, inferenceLoop.getPromptBuildLatency());
+        metrics.register(Metrics.INFERENCE_TOTAL, inferenceLoop.getInferenceLatency());
+        inferenceLoop.start();
+    }
+
+    private void stopInference() {
+        if (inferenceLoop == null) {
+            return;
+        }
+        inferenceLoop.stop();
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "Inference: requests=%d, predictions=%d, cached=%d, errors=%d, latency mean=%dms max=%dms",
+                inferenceLoop.getRequestCount(), inferenceLoop.getPredictionCount(), inferenceLoop.getCachedCount(),
+                inferenceLoop.getErrorCount(), inferenceLoop.getMeanLatencyMillis(), inferenceLoop.getMaxLatencyMillis()));
+        inferenceLoop = null;
+    }
+
+    /**
+     * Runs on the consumer thread for classifier predictions, on an HTTP client thread for LLM ones
+     * and on the inference loop's thread for cached ones.
+     */
+    private void publishPrediction(ActivityPrediction prediction) {
+        Log.d(LOG_TAG, "Predicted " + prediction + ": " + prediction.getResponseText());
+        InferenceLoop loop = inferenceLoop;
+        PredictionChannel.getShared().publish(prediction, loop != null ? loop.getMeanLatencyMillis() : 0);
+    }
+
+    private RateDecimator registerSensor(Sensor sensor, double rateHz, int requestedLatencyUs) {
+        int periodUs = SamplingConfig.samplingPeriodUs(rateHz, sensor.getMinDelay());
+        int latencyUs = SamplingConfig.maxReportLatencyUs(requestedLatencyUs, periodUs, sensor.getFifoMaxEventCount());
+        // The sensor may deliver faster than requested, the decimator enforces the rate on event timestamps
+        RateDecimator decimator = new RateDecimator(SamplingConfig.effectiveRateHz(rateHz, sensor.getMinDelay()));
+        sensorManager.registerListener(this, sensor, periodUs, latencyUs);
+        Log.d(LOG_TAG, String.format(Locale.US, "Registered %s: period=%dus, maxReportLatency=%dus, fifo=%d",
+                sensor.getName(), periodUs, latencyUs, sensor.getFifoMaxEventCount()));
+        return decimator;
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         sensorManager.unregisterListener(this);
+        stopInference();
+        startDutyCycle(false, SamplingConfig.defaults());
+        wakeLockHandler.removeCallbacksAndMessages(null);
         if (wakeLock != null && wakeLock.isHeld()) {
             wakeLock.release();
         }
+        sampleConsumer.stop(); // drains the buffer, statistics are complete after this
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "Sample buffer: offered=%d, drained=%d, overruns=%d, batches=%d, maxBatch=%d, drainLatency mean=%.2fms max=%.2fms",
+                sampleBuffer.getOfferedCount(), sampleConsumer.getDrainedCount(), sampleBuffer.getOverrunCount(),
+                sampleConsumer.getBatchCount(), sampleConsumer.getMaxBatchSize(),
+                sampleConsumer.getMeanDrainLatencyNanos() / 1e6, sampleConsumer.getMaxDrainLatencyNanos() / 1e6));
+        closeSessionRecorder();
+        if (sessionUploader != null) {
+            sessionUploader.shutdown(); // the upload of this session goes on in the background
+        }
+        pipeline.finish();
+        SensorFusion sensorFusion = pipeline.getSensorFusion();
+        if (sensorFusion != null) {
+            Log.d(LOG_TAG, String.format(Locale.US, "Fusion: motions=%d, without gyroscope=%d",
+                    sensorFusion.getMotionCount(), sensorFusion.getHeldRateCount()));
+        }
+        CascadeClassifier cascadeClassifier = pipeline.getClassifier();
+        if (cascadeClassifier != null) {
+            Log.d(LOG_TAG, String.format(Locale.US, "Classifier: classified=%d, escalated=%d, mean=%dns",
+                    cascadeClassifier.getClassifiedCount(), cascadeClassifier.getEscalatedCount(),
+                    cascadeClassifier.getMeanClassifyNanos()));
+        }
         computeAndLogStatistics(); // Log the final aggregated results
+        if (metricsDumper != null) {
+            metricsDumper.stop();
+            metricsDumper = null;
+        }
+        Log.d(LOG_TAG, "Metrics:\n" + metrics.snapshot());
         Log.d(LOG_TAG, "Service onDestroy");
     }
 
+    /** Opens the raw recording, or a compressed one that stays within a memory budget for long sessions. */
+    private void openSessionRecorder(boolean longSession) {
+        File directory = new File(getFilesDir(), SESSION_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create session directory " + directory);
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long now = System.currentTimeMillis();
+        String name = "session-" + format.format(new Date(now));
+        File file = new File(directory, name + (longSession ? SpillingRecorder.FILE_EXTENSION : SessionFormat.FILE_EXTENSION));
+        try {
+            if (longSession) {
+                spillingRecorder = new SpillingRecorder(file, now, LONG_SESSION_MEMORY_BUDGET_BYTES);
+                Log.d(LOG_TAG, "Recording compressed samples to " + file + ", "
+                        + spillingRecorder.getBlockRecords() + " samples in memory");
+            } else {
+                sessionRecorder = new SessionRecorder(file, now, SESSION_CHUNK_RECORDS, SESSION_CHECKPOINT_INTERVAL);
+                Log.d(LOG_TAG, "Recording raw samples to " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Can't open session file " + file, e);
+        }
+    }
+
+    private void closeSessionRecorder() {
+        SessionRecorder recorder = sessionRecorder;
+        if (recorder != null) {
+            try {
+                recorder.close();
+                Log.d(LOG_TAG, "Recorded " + recorder.getRecordCount() + " samples to " + recorder.getFile());
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Can't close session file " + recorder.getFile(), e);
+            }
+            sessionRecorder = null;
+            if (sessionUploader != null) {
+                sessionUploader.enqueue(recorder.getFile());
+            }
+        }
+        SpillingRecorder spilling = spillingRecorder;
+        if (spilling != null) {
+            try {
+                spilling.close();
+                Log.d(LOG_TAG, String.format(Locale.US, "Recorded %d samples in %d chunks, %d bytes, to %s",
+                        spilling.getRecordCount(), spilling.getChunkCount(), spilling.getFileBytes(), spilling.getFile()));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Can't close session file " + spilling.getFile(), e);
+            }
+            spillingRecorder = null;
+            if (sessionUploader != null) {
+                sessionUploader.enqueue(spilling.getFile());
+            }
+        }
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -130,104 +592,111 @@ public class PhoneSensorService extends Service implements SensorEventListener {
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-
-       long currentTime = System.currentTimeMillis();
-        if (currentTime - lastSampleTime < 100) {
-            return; // Skip if less than 100ms has passed since the last sample
+        long startNanos = System.nanoTime();
+        sensorEventCount.incrementAndGet();
+        int sensorType = event.sensor.getType();
+        int index = sensorRegistry.indexOf(sensorType);
+        if (index < 0) {
+            return; // Ignore unregistered sensor types
         }
-        lastSampleTime = currentTime;
-        String keyPrefix;
-
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            keyPrefix = "ACC";
-        } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-            keyPrefix = "GYRO";
-        } else {
-            return; // Ignore other sensor types
-        }
-        addAggregatedMeasurement(keyPrefix + "_X", event.values[0]);
-        addAggregatedMeasurement(keyPrefix + "_Y", event.values[1]);
-        addAggregatedMeasurement(keyPrefix + "_Z", event.values[2]);
-
-        // Truncate sensor values to 6 decimal places before broadcasting
-        float[] truncatedValues = new float[event.values.length];
-        for (int i = 0; i < event.values.length; i++) {
-            truncatedValues[i] = new BigDecimal(event.values[i]).setScale(6, RoundingMode.HALF_UP).floatValue();
+        RateDecimator decimator = decimators[index];
+        if (decimator == null || !decimator.accept(event.timestamp)) {
+            sensorSkippedCount.incrementAndGet();
+            return; // Skip events between output slots of this sensor
         }
+        // Everything else happens on the consumer thread
+        float[] values = event.values;
+        int dimensions = sensorRegistry.getDimensions(index);
+        sampleBuffer.offer(event.timestamp, sensorType, values[0],
+                dimensions > 1 ? values[1] : 0, dimensions > 2 ? values[2] : 0);
+        ingestLatency.recordSince(startNanos);
+    }
 
+    /** Runs on the {@link SampleConsumer} thread. */
+    private class ConsumerSink implements SampleSink {
+        // Start of the batch being drained, 0 between batches
+        private long batchStartNanos;
 
-        Log.d(LOG_TAG, "Broadcasting sensor data: " + Arrays.toString(truncatedValues));
-        Intent intent = new Intent(ACTION_SENSOR_DATA);
-        intent.putExtra(EXTRA_SENSOR_TYPE, event.sensor.getType());
-        intent.putExtra(EXTRA_SENSOR_VALUES, truncatedValues);
-        sendBroadcast(intent);
-    }
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            if (batchStartNanos == 0) {
+                batchStartNanos = System.nanoTime();
+            }
+            SessionRecorder recorder = sessionRecorder;
+            if (recorder != null) {
+                recorder.onSample(timestampNanos, sensorType, x, y, z);
+            }
+            SpillingRecorder spilling = spillingRecorder;
+            if (spilling != null) {
+                spilling.onSample(timestampNanos, sensorType, x, y, z);
+            }
+            pipeline.onSample(timestampNanos, sensorType, x, y, z);
+            DutyCyclePolicy policy = dutyCyclePolicy;
+            if (policy != null) {
+                policy.onSample(timestampNanos, sensorType, x, y, z);
+            }
 
-    private void addAggregatedMeasurement(String key, float measurement) {
-        if (aggregatedData == null) {
-            Log.e(LOG_TAG, "Can't add measurement. Aggregated data bundle is null");
-            return;
+            if (sampleChannel.hasSubscribers()) {
+                // Round sensor values to 6 decimal places before publishing
+                sampleChannel.publish(timestampNanos, sensorType,
+                        VALUE_QUANTIZER.round(x), VALUE_QUANTIZER.round(y), VALUE_QUANTIZER.round(z));
+            }
         }
 
-        // Retrieve or create the list for the given key
-        ArrayList<Float> measurements = aggregatedData.get(key);
-        if (measurements == null) {
-            measurements = new ArrayList<>();
-            aggregatedData.put(key, measurements);
+        @Override
+        public void onBatchEnd() {
+            SessionRecorder recorder = sessionRecorder;
+            if (recorder != null) {
+                recorder.onBatchEnd();
+            }
+            sampleChannel.flush();
+            if (batchStartNanos != 0) {
+                batchLatency.recordSince(batchStartNanos);
+                batchStartNanos = 0;
+            }
         }
-
-        float roundedMeasurement = new BigDecimal(measurement).setScale(6, RoundingMode.HALF_UP).floatValue();
-        measurements.add(roundedMeasurement);
     }
 
     private void computeAndLogStatistics() {
-        for (String key : aggregatedData.keySet()) {
-            ArrayList<Float> values = aggregatedData.get(key);
-            if (values.isEmpty()) continue;
-
-            float sum = 0, min = Float.MAX_VALUE, max = Float.MIN_VALUE;
-            for (float value : values) {
-                sum += value;
-                if (value < min) min = value;
-                if (value > max) max = value;
-            }
-            float avg = sum / values.size();
+        SensorStatistics statistics = pipeline.getStatistics();
+        SensorStatistics linearStatistics = pipeline.getLinearStatistics();
+        for (int channel = 0; channel < statistics.getChannelCount(); channel++) {
+            if (statistics.getCount(channel) == 0) continue;
+
+            float avg = (float) statistics.getMean(channel);
+            float min = (float) statistics.getMin(channel);
+            float max = (float) statistics.getMax(channel);
+            float stdDev = (float) statistics.getStdDev(channel);
+
+            Log.d(LOG_TAG, String.format(Locale.US, "%s: Avg=%.6f, Min=%.6f, Max=%.6f, StdDev=%.6f",
+                    sensorRegistry.getChannelName(channel), avg, min, max, stdDev));
+        }
+        for (int channel = 0; channel < SensorPipeline.LINEAR_CHANNEL_NAMES.length; channel++) {
+            if (linearStatistics.getCount(channel) == 0) continue;
+            Log.d(LOG_TAG, String.format(Locale.US, "%s: Min=%.6f, Max=%.6f, StdDev=%.6f",
+                    SensorPipeline.LINEAR_CHANNEL_NAMES[channel],
+                    linearStatistics.getMin(channel), linearStatistics.getMax(channel), linearStatistics.getStdDev(channel)));
+        }
+        logRollingStatistics();
+        sendSensorDataToWebView();
+    }
 
-            float varianceSum = 0;
-            for (float value : values) {
-                varianceSum += Math.pow(value - avg, 2);
-            }
-            float stdDev = (float) Math.sqrt(varianceSum / values.size());
-            float roundedAvg = new BigDecimal(avg).setScale(6, RoundingMode.HALF_UP).floatValue();
-
-            Log.d(LOG_TAG, String.format(Locale.US, "%s: Avg=%.6f, Min=%.6f, Max=%.6f, StdDev=%.6f", key, avg, min, max, stdDev));
-            // Store the calculated averages in the corresponding ArrayLists
-            switch (key) {
-                case "ACC_X":
-                    avgAccX=roundedAvg;
-                    break;
-                case "ACC_Y":
-                    avgAccY=roundedAvg;
-                    break;
-                case "ACC_Z":
-                    avgAccZ=roundedAvg;
-                    break;
-                case "GYRO_X":
-                    avgGyroX=roundedAvg;
-                    break;
-                case "GYRO_Y":
-                    avgGyroY=roundedAvg;
-                    break;
-                case "GYRO_Z":
-                    avgGyroZ=roundedAvg;
-                    break;
+    /** Statistics over the last minute, ten minutes and hour of the session. */
+    private void logRollingStatistics() {
+        SensorStatistics recent = new SensorStatistics(1);
+        for (long minutes : ROLLING_HORIZONS_MINUTES) {
+            long horizonNanos = TimeUnit.MINUTES.toNanos(minutes);
+            RollingStatistics rolling = pipeline.getRollingStatistics(horizonNanos);
+            for (int channel = 0; channel < sensorRegistry.getChannelCount(); channel++) {
+                rolling.summarize(channel, horizonNanos, recent, 0);
+                if (recent.getCount(0) == 0) continue;
+                Log.d(LOG_TAG, String.format(Locale.US, "%s last %d min: Avg=%.6f, Min=%.6f, Max=%.6f, StdDev=%.6f",
+                        sensorRegistry.getChannelName(channel), minutes, recent.getMean(0),
+                        recent.getMin(0), recent.getMax(0), recent.getStdDev(0)));
             }
         }
-        // Clear the data after computing statistics
-       // aggregatedData.clear();
-        Log.d(LOG_TAG, String.format(Locale.US, "AccX=%.6f, AccY=%.6f, AccZ=%.6f, GyroX=%.6f, GyroY=%.6f, GyroZ=%.6f", avgAccX, avgAccY, avgAccZ, avgGyroX, avgGyroY, avgGyroZ));
-        sendSensorDataToWebView();
     }
+
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
         // Do something here if sensor accuracy changes
@@ -248,33 +717,16 @@ public class PhoneSensorService extends Service implements SensorEventListener {
         }
     }
 
-    private void sendSensorDataToServer(String prompt) {
-        SharedPreferences sharedPreferences = this.getSharedPreferences("APP_PREFS", Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString("PROMPT", prompt);
-        editor.apply();
-    }
-
     private void sendSensorDataToWebView() {
-        try {
-
-            String systemPrompt = "Objective: You are predicting user activity as walking, running, or sitting based on sensor data inputs. " +
-                    "Background: Data was collected  using the smartphones inbuilt motion sensors over a specific time. The resulting data was consolidated into a single dataset for analysis, as shown in the Sensor Data Input below. " +
-                    "Sensor details: We collect raw sensor data from accelerometer and gyroscope " +
-                    "Accelerometer measures linear acceleration in three dimensions (Acc X, Acc Y, Acc Z) typically measured in meters per second squared (m/s²) " +
-                    "Gyroscope measures rotational velocity in three axes (Gyro X, Gyro Y and Gyro Z)typically measured in degrees per second (°/s). " +
-                    "Sensor data input: ";
-                    String accData = "ACC_X:" + avgAccX + " m/s², ACC_Y:" + avgAccY + " m/s², ACC_Z:" + avgAccZ;
-                    String gyroData = " m/s², GYRO_X:" + avgGyroX + " °/s, GYRO_Y:" + avgGyroY + " °/s, GYRO_Z:" + avgGyroZ +" °/s";
-
-            String fullPrompt = systemPrompt + " " + accData + gyroData;
-            Log.d(LOG_TAG, "Prepared sensor data JSON: " + fullPrompt);
-            sendSensorDataToServer(fullPrompt);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            Log.e(LOG_TAG, "Error preparing sensor data JSON", e);
-       }
+        String prompt;
+        int windowCount;
+        synchronized (pipeline) {
+            prompt = pipeline.buildSummaryPrompt();
+            windowCount = pipeline.getLastPromptWindowCount();
+        }
+        Log.d(LOG_TAG, "Prepared prompt with " + windowCount + " windows, about "
+                + PromptBuilder.estimateTokens(prompt) + " tokens: " + prompt);
+        PromptBridge.getShared().offer(prompt, windowCount);
     }
 }
 
@@ -0,0 +1,130 @@
+package com.example.phonesensorreader;
+
+/**
+ * Fixed-capacity history of three-axis points for plotting, oldest first.
+ *
+ * X and each axis live in primitive ring arrays, so appending never allocates and the
+ * oldest point is overwritten once the buffer is full. X must not decrease between appends,
+ * which lets {@link #lowerBound(double)} find the visible range by binary search.
+ * Not thread safe, the UI thread both writes and draws.
+ */
+public class PlotBuffer {
+    public static final int AXES = 3;
+
+    private final double[] xs;
+    private final double[][] ys = new double[AXES][];
+    private int start;
+    private int size;
+
+    public PlotBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        xs = new double[capacity];
+        for (int axis = 0; axis < AXES; axis++) {
+            ys[axis] = new double[capacity];
+        }
+    }
+
+    public void append(double x, double y0, double y1, double y2) {
+        int index;
+        if (size == xs.length) {
+            index = start;
+            start = start + 1 == xs.length ? 0 : start + 1;
+        } else {
+            index = physical(size);
+            size++;
+        }
+        xs[index] = x;
+        ys[0][index] = y0;
+        ys[1][index] = y1;
+        ys[2][index] = y2;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getCapacity() {
+        return xs.length;
+    }
+
+    private int physical(int i) {
+        int index = start + i;
+        return index >= xs.length ? index - xs.length : index;
+    }
+
+    public double getX(int i) {
+        return xs[physical(i)];
+    }
+
+    public double getY(int axis, int i) {
+        return ys[axis][physical(i)];
+    }
+
+    /** Index of the first point with x at or after {@code x}, {@link #size()} if there is none. */
+    public int lowerBound(double x) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (xs[physical(middle)] < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Smallest value of {@code axis} over points {@code from} (inclusive) to {@code to} (exclusive), NaN if empty. */
+    public double getMinY(int axis, int from, int to) {
+        double min = Double.NaN;
+        double[] values = ys[axis];
+        for (int i = from; i < to; i++) {
+            double value = values[physical(i)];
+            if (!(value >= min)) min = value;
+        }
+        return min;
+    }
+
+    /** Largest value of {@code axis} over points {@code from} (inclusive) to {@code to} (exclusive), NaN if empty. */
+    public double getMaxY(int axis, int from, int to) {
+        double max = Double.NaN;
+        double[] values = ys[axis];
+        for (int i = from; i < to; i++) {
+            double value = values[physical(i)];
+            if (!(value <= max)) max = value;
+        }
+        return max;
+    }
+
+    /**
+     * Copies the points with {@code fromX <= x <= untilX} of one axis into the given arrays,
+     * as many as fit, and returns how many were copied.
+     */
+    public int snapshot(int axis, double fromX, double untilX, double[] outX, double[] outY) {
+        int from = lowerBound(fromX);
+        int count = 0;
+        double[] values = ys[axis];
+        for (int i = from; i < size && count < outX.length; i++) {
+            int index = physical(i);
+            if (xs[index] > untilX) {
+                break;
+            }
+            outX[count] = xs[index];
+            outY[count] = values[index];
+            count++;
+        }
+        return count;
+    }
+}
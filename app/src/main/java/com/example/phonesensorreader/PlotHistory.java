@@ -0,0 +1,488 @@
+package com.example.phonesensorreader;
+
+/**
+ * Long three-axis history for plotting at a cost that depends on the screen, not the span.
+ *
+ * Recent points are kept raw in a {@link PlotBuffer}. Behind it is a chain of levels: every
+ * {@code factor} raw points fold into a bucket of level 1, every {@code factor} level 1 buckets
+ * into one of level 2, and so on. A bucket keeps the minimum and maximum of each axis and
+ * where they occurred, so peaks survive any amount of decimation, and each level holds a
+ * fixed number of buckets, so it covers {@code factor} times the time of the level below.
+ *
+ * {@link #query} picks the finest level that still covers the requested range and has at
+ * most {@code factor} entries per output bucket, then reduces it to min/max pairs, so a query
+ * touches O(output points) entries whether it spans ten seconds or an hour.
+ * {@link #queryLttb} additionally smooths that envelope with {@link Lttb}.
+ * The extremes of the whole history are kept up to date as points arrive, so reading them
+ * per frame costs nothing unless the point holding one was just dropped.
+ * Not thread safe.
+ */
+public class PlotHistory {
+    public static final int AXES = PlotBuffer.AXES;
+    /** LTTB picks from this many times the requested points. */
+    static final int LTTB_OVERSAMPLE = 4;
+
+    /** Ring of committed buckets plus the bucket being filled. */
+    private final class Level {
+        final int factor;
+        final Level next;
+        final double[] startX;
+        final double[] endX;
+        final double[][] minY = new double[AXES][];
+        final double[][] minAt = new double[AXES][];
+        final double[][] maxY = new double[AXES][];
+        final double[][] maxAt = new double[AXES][];
+        int start;
+        int size;
+
+        int openCount;
+        double openStartX;
+        double openEndX;
+        final double[] openMinY = new double[AXES];
+        final double[] openMinAt = new double[AXES];
+        final double[] openMaxY = new double[AXES];
+        final double[] openMaxAt = new double[AXES];
+
+        Level(int capacity, int factor, Level next) {
+            this.factor = factor;
+            this.next = next;
+            startX = new double[capacity];
+            endX = new double[capacity];
+            for (int axis = 0; axis < AXES; axis++) {
+                minY[axis] = new double[capacity];
+                minAt[axis] = new double[capacity];
+                maxY[axis] = new double[capacity];
+                maxAt[axis] = new double[capacity];
+            }
+        }
+
+        int physical(int i) {
+            int index = start + i;
+            return index >= startX.length ? index - startX.length : index;
+        }
+
+        void addPoint(double x, double y0, double y1, double y2) {
+            open(x, x);
+            mergeAxis(0, y0, x, y0, x);
+            mergeAxis(1, y1, x, y1, x);
+            mergeAxis(2, y2, x, y2, x);
+            closeIfFull();
+        }
+
+        void addBucket(Level from, int index) {
+            open(from.startX[index], from.endX[index]);
+            for (int axis = 0; axis < AXES; axis++) {
+                mergeAxis(axis, from.minY[axis][index], from.minAt[axis][index],
+                        from.maxY[axis][index], from.maxAt[axis][index]);
+            }
+            closeIfFull();
+        }
+
+        private void open(double bucketStartX, double bucketEndX) {
+            if (openCount == 0) {
+                openStartX = bucketStartX;
+                for (int axis = 0; axis < AXES; axis++) {
+                    openMinY[axis] = Double.POSITIVE_INFINITY;
+                    openMaxY[axis] = Double.NEGATIVE_INFINITY;
+                }
+            }
+            openEndX = bucketEndX;
+            openCount++;
+        }
+
+        private void mergeAxis(int axis, double min, double minX, double max, double maxX) {
+            if (min < openMinY[axis]) {
+                openMinY[axis] = min;
+                openMinAt[axis] = minX;
+            }
+            if (max > openMaxY[axis]) {
+                openMaxY[axis] = max;
+                openMaxAt[axis] = maxX;
+            }
+        }
+
+        private void closeIfFull() {
+            if (openCount < factor) {
+                return;
+            }
+            int index;
+            if (size == startX.length) {
+                index = start;
+                if (next == null) {
+                    // Gone from the history altogether
+                    for (int axis = 0; axis < AXES; axis++) {
+                        dropped(axis, minY[axis][index], minAt[axis][index], maxY[axis][index], maxAt[axis][index]);
+                    }
+                }
+                start = start + 1 == startX.length ? 0 : start + 1;
+            } else {
+                index = physical(size);
+                size++;
+            }
+            startX[index] = openStartX;
+            endX[index] = openEndX;
+            for (int axis = 0; axis < AXES; axis++) {
+                minY[axis][index] = openMinY[axis];
+                minAt[axis][index] = openMinAt[axis];
+                maxY[axis][index] = openMaxY[axis];
+                maxAt[axis][index] = openMaxAt[axis];
+            }
+            openCount = 0;
+            if (next != null) {
+                next.addBucket(this, index);
+            }
+        }
+
+        void clear() {
+            start = 0;
+            size = 0;
+            openCount = 0;
+        }
+    }
+
+    private final PlotBuffer raw;
+    private final Level[] levels;
+    private final int factor;
+    private double[] scratchX = new double[0];
+    private double[] scratchY = new double[0];
+    private int lastQueryVisited;
+    // Extremes of each axis over everything retained and where they are, the newest on ties,
+    // kept up to date on append and recomputed only once the point holding one is dropped
+    private final double[] lowest = new double[AXES];
+    private final double[] lowestAt = new double[AXES];
+    private final double[] highest = new double[AXES];
+    private final double[] highestAt = new double[AXES];
+    private boolean extremesStale;
+    private int extremeScans;
+
+    /**
+     * @param rawCapacity most recent points kept at full resolution
+     * @param levelCapacity buckets per level
+     * @param factor entries of one level per bucket of the next, at least 2
+     * @param levelCount decimated levels behind the raw points
+     */
+    public PlotHistory(int rawCapacity, int levelCapacity, int factor, int levelCount) {
+        if (factor < 2 || levelCapacity <= 0 || levelCount < 0) {
+            throw new IllegalArgumentException("Invalid levels: capacity=" + levelCapacity
+                    + ", factor=" + factor + ", count=" + levelCount);
+        }
+        this.raw = new PlotBuffer(rawCapacity);
+        this.factor = factor;
+        this.levels = new Level[levelCount];
+        Level next = null;
+        for (int level = levelCount - 1; level >= 0; level--) {
+            levels[level] = new Level(levelCapacity, factor, next);
+            next = levels[level];
+        }
+        resetExtremes();
+    }
+
+    /** X must not decrease between appends. */
+    public void append(double x, double y0, double y1, double y2) {
+        if (raw.size() == raw.getCapacity()) {
+            for (int axis = 0; axis < AXES; axis++) {
+                double y = raw.getY(axis, 0);
+                dropped(axis, y, raw.getX(0), y, raw.getX(0));
+            }
+        }
+        raw.append(x, y0, y1, y2);
+        if (levels.length > 0) {
+            levels[0].addPoint(x, y0, y1, y2);
+        }
+        if (!extremesStale) {
+            mergeExtremes(0, y0, x, y0, x);
+            mergeExtremes(1, y1, x, y1, x);
+            mergeExtremes(2, y2, x, y2, x);
+        }
+    }
+
+    public void clear() {
+        raw.clear();
+        for (Level level : levels) {
+            level.clear();
+        }
+        resetExtremes();
+    }
+
+    public boolean isEmpty() {
+        return raw.isEmpty();
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    // Sources: 0 is the raw buffer, s > 0 is levels[s - 1] including its open bucket
+
+    private int entryCount(int source) {
+        if (source == 0) {
+            return raw.size();
+        }
+        Level level = levels[source - 1];
+        return level.size + (level.openCount > 0 ? 1 : 0);
+    }
+
+    private double entryStartX(int source, int i) {
+        if (source == 0) {
+            return raw.getX(i);
+        }
+        Level level = levels[source - 1];
+        return i < level.size ? level.startX[level.physical(i)] : level.openStartX;
+    }
+
+    private double entryEndX(int source, int i) {
+        if (source == 0) {
+            return raw.getX(i);
+        }
+        Level level = levels[source - 1];
+        return i < level.size ? level.endX[level.physical(i)] : level.openEndX;
+    }
+
+    /** First entry ending at or after {@code x}. */
+    private int firstEndingAtOrAfter(int source, double x) {
+        int low = 0;
+        int high = entryCount(source);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entryEndX(source, middle) < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** First entry starting after {@code x}. */
+    private int firstStartingAfter(int source, double x) {
+        int low = 0;
+        int high = entryCount(source);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entryStartX(source, middle) <= x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** The finest source holding everything that is still retained anywhere. */
+    private int oldestSource() {
+        int oldest = 0;
+        double oldestX = raw.isEmpty() ? Double.POSITIVE_INFINITY : raw.getX(0);
+        for (int source = 1; source <= levels.length; source++) {
+            if (entryCount(source) > 0 && entryStartX(source, 0) < oldestX) {
+                oldest = source;
+                oldestX = entryStartX(source, 0);
+            }
+        }
+        return oldest;
+    }
+
+    public double getOldestX() {
+        return isEmpty() ? Double.NaN : entryStartX(oldestSource(), 0);
+    }
+
+    public double getNewestX() {
+        return isEmpty() ? Double.NaN : raw.getX(raw.size() - 1);
+    }
+
+    /** Smallest value of {@code axis} in the whole history, NaN if empty. */
+    public double getMinY(int axis) {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+        updateExtremes();
+        return lowest[axis];
+    }
+
+    /** Largest value of {@code axis} in the whole history, NaN if empty. */
+    public double getMaxY(int axis) {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+        updateExtremes();
+        return highest[axis];
+    }
+
+    private void resetExtremes() {
+        for (int axis = 0; axis < AXES; axis++) {
+            lowest[axis] = Double.POSITIVE_INFINITY;
+            highest[axis] = Double.NEGATIVE_INFINITY;
+        }
+        extremesStale = false;
+    }
+
+    private void mergeExtremes(int axis, double min, double minX, double max, double maxX) {
+        if (min < lowest[axis] || (min == lowest[axis] && minX >= lowestAt[axis])) {
+            lowest[axis] = min;
+            lowestAt[axis] = minX;
+        }
+        if (max > highest[axis] || (max == highest[axis] && maxX >= highestAt[axis])) {
+            highest[axis] = max;
+            highestAt[axis] = maxX;
+        }
+    }
+
+    /** Called for an entry about to be overwritten, in case it holds an extreme. */
+    private void dropped(int axis, double min, double minX, double max, double maxX) {
+        if ((min == lowest[axis] && minX == lowestAt[axis]) || (max == highest[axis] && maxX == highestAt[axis])) {
+            extremesStale = true;
+        }
+    }
+
+    /** Scans every source, raw points and all buckets including the open ones. */
+    private void updateExtremes() {
+        if (!extremesStale) {
+            return;
+        }
+        resetExtremes();
+        extremeScans++;
+        for (int axis = 0; axis < AXES; axis++) {
+            for (int i = 0; i < raw.size(); i++) {
+                mergeExtremes(axis, raw.getY(axis, i), raw.getX(i), raw.getY(axis, i), raw.getX(i));
+            }
+            for (Level level : levels) {
+                for (int i = 0; i < level.size; i++) {
+                    int index = level.physical(i);
+                    mergeExtremes(axis, level.minY[axis][index], level.minAt[axis][index],
+                            level.maxY[axis][index], level.maxAt[axis][index]);
+                }
+                if (level.openCount > 0) {
+                    mergeExtremes(axis, level.openMinY[axis], level.openMinAt[axis],
+                            level.openMaxY[axis], level.openMaxAt[axis]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes at most {@code maxPoints} points of {@code axis} covering {@code fromX} to
+     * {@code untilX}, plus one entry beyond each end so a line reaches the edges, and returns
+     * how many were written. Raw points are returned as they are when they fit, otherwise
+     * each output pair is the minimum and maximum, in time order, of a run of entries.
+     */
+    public int query(int axis, double fromX, double untilX, int maxPoints, double[] outX, double[] outY) {
+        lastQueryVisited = 0;
+        int limit = Math.min(maxPoints, outX.length);
+        if (isEmpty() || limit <= 0) {
+            return 0;
+        }
+        int buckets = Math.max(1, limit / 2);
+        double oldestX = entryStartX(oldestSource(), 0);
+        int coarsest = -1;
+        for (int source = 0; source <= levels.length; source++) {
+            int count = entryCount(source);
+            // A source that lost the start of the range is only usable if nothing older is left
+            if (count == 0 || entryStartX(source, 0) > Math.max(fromX, oldestX)) {
+                continue;
+            }
+            int first = Math.max(0, firstEndingAtOrAfter(source, fromX) - 1);
+            int end = Math.min(count, firstStartingAfter(source, untilX) + 1);
+            int visible = end - first;
+            if (source == 0 && visible <= limit) {
+                lastQueryVisited = visible;
+                for (int i = 0; i < visible; i++) {
+                    outX[i] = raw.getX(first + i);
+                    outY[i] = raw.getY(axis, first + i);
+                }
+                return visible;
+            }
+            if (visible <= (long) buckets * factor) {
+                lastQueryVisited = visible;
+                return emitMinMax(source, axis, first, end, buckets, outX, outY);
+            }
+            coarsest = source;
+        }
+        if (coarsest < 0) {
+            return 0;
+        }
+        // Even the coarsest level has more than factor entries per output bucket
+        int first = Math.max(0, firstEndingAtOrAfter(coarsest, fromX) - 1);
+        int end = Math.min(entryCount(coarsest), firstStartingAfter(coarsest, untilX) + 1);
+        lastQueryVisited = end - first;
+        return emitMinMax(coarsest, axis, first, end, buckets, outX, outY);
+    }
+
+    private int emitMinMax(int source, int axis, int first, int end, int buckets, double[] outX, double[] outY) {
+        int visible = end - first;
+        int perBucket = (visible + buckets - 1) / buckets;
+        Level level = source == 0 ? null : levels[source - 1];
+        int written = 0;
+        for (int groupStart = first; groupStart < end; groupStart += perBucket) {
+            int groupEnd = Math.min(end, groupStart + perBucket);
+            double min = Double.POSITIVE_INFINITY;
+            double minX = 0;
+            double max = Double.NEGATIVE_INFINITY;
+            double maxX = 0;
+            for (int i = groupStart; i < groupEnd; i++) {
+                double entryMin;
+                double entryMinX;
+                double entryMax;
+                double entryMaxX;
+                if (level == null) {
+                    entryMin = entryMax = raw.getY(axis, i);
+                    entryMinX = entryMaxX = raw.getX(i);
+                } else if (i < level.size) {
+                    int index = level.physical(i);
+                    entryMin = level.minY[axis][index];
+                    entryMinX = level.minAt[axis][index];
+                    entryMax = level.maxY[axis][index];
+                    entryMaxX = level.maxAt[axis][index];
+                } else {
+                    entryMin = level.openMinY[axis];
+                    entryMinX = level.openMinAt[axis];
+                    entryMax = level.openMaxY[axis];
+                    entryMaxX = level.openMaxAt[axis];
+                }
+                if (entryMin < min) {
+                    min = entryMin;
+                    minX = entryMinX;
+                }
+                if (entryMax > max) {
+                    max = entryMax;
+                    maxX = entryMaxX;
+                }
+            }
+            if (minX == maxX) {
+                outX[written] = minX;
+                outY[written++] = min;
+            } else if (minX < maxX) {
+                outX[written] = minX;
+                outY[written++] = min;
+                outX[written] = maxX;
+                outY[written++] = max;
+            } else {
+                outX[written] = maxX;
+                outY[written++] = max;
+                outX[written] = minX;
+                outY[written++] = min;
+            }
+        }
+        return written;
+    }
+
+    /** Like {@link #query} but reduces a denser min/max envelope to {@code maxPoints} with LTTB. */
+    public int queryLttb(int axis, double fromX, double untilX, int maxPoints, double[] outX, double[] outY) {
+        int limit = Math.min(maxPoints, outX.length);
+        int oversampled = limit * LTTB_OVERSAMPLE;
+        if (scratchX.length < oversampled) {
+            scratchX = new double[oversampled];
+            scratchY = new double[oversampled];
+        }
+        int count = query(axis, fromX, untilX, oversampled, scratchX, scratchY);
+        return Lttb.downsample(scratchX, scratchY, count, limit, outX, outY);
+    }
+
+    /** Times the extremes had to be found by scanning the history. */
+    int getExtremeScans() {
+        return extremeScans;
+    }
+
+    /** Entries the last {@link #query} read after its binary searches. */
+    int getLastQueryVisited() {
+        return lastQueryVisited;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.phonesensorreader;
+
+import com.jjoe64.graphview.series.DataPointInterface;
+import com.jjoe64.graphview.series.LineGraphSeries;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Line series that draws one axis of a {@link PlotHistory} instead of a list of DataPoints.
+ *
+ * {@link #getValues} asks the history for at most {@link #setMaxPoints} points of the visible
+ * range, raw when zoomed in and min/max envelopes when zoomed out, and walks them with one
+ * reused iterator and point, so drawing allocates nothing however long the history is.
+ * GraphView only reads each point while iterating; a tap listener, which would keep the points,
+ * is not supported.
+ */
+public class PlotSeries extends LineGraphSeries<DataPointInterface> {
+    /** Until the graph is laid out, enough for a phone held sideways. */
+    public static final int DEFAULT_MAX_POINTS = 2 * 1080;
+
+    private final PlotHistory history;
+    private final int axis;
+    private double[] xs = new double[DEFAULT_MAX_POINTS];
+    private double[] ys = new double[DEFAULT_MAX_POINTS];
+    private final PointIterator iterator = new PointIterator();
+
+    public PlotSeries(PlotHistory history, int axis) {
+        this.history = history;
+        this.axis = axis;
+    }
+
+    /** Points drawn per frame, two per horizontal pixel keeps every peak visible. */
+    public void setMaxPoints(int maxPoints) {
+        if (maxPoints != xs.length && maxPoints > 0) {
+            xs = new double[maxPoints];
+            ys = new double[maxPoints];
+        }
+    }
+
+    @Override
+    public double getLowestValueX() {
+        return history.isEmpty() ? 0 : history.getOldestX();
+    }
+
+    @Override
+    public double getHighestValueX() {
+        return history.isEmpty() ? 0 : history.getNewestX();
+    }
+
+    @Override
+    public double getLowestValueY() {
+        return history.isEmpty() ? 0 : history.getMinY(axis);
+    }
+
+    @Override
+    public double getHighestValueY() {
+        return history.isEmpty() ? 0 : history.getMaxY(axis);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return history.isEmpty();
+    }
+
+    /**
+     * Points from {@code from} to {@code until}, plus one on each side so the line reaches the
+     * edges of the viewport, as BaseSeries does. The iterator is reused by the next call.
+     */
+    @Override
+    public Iterator<DataPointInterface> getValues(double from, double until) {
+        iterator.reset(history.query(axis, from, until, xs.length, xs, ys));
+        return iterator;
+    }
+
+    private final class PointIterator implements Iterator<DataPointInterface>, DataPointInterface {
+        private int next;
+        private int end;
+        private double x;
+        private double y;
+
+        void reset(int count) {
+            this.next = 0;
+            this.end = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public DataPointInterface next() {
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+            x = xs[next];
+            y = ys[next];
+            next++;
+            return this;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.phonesensorreader;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * In-process channel from the service's predictions to the UI, so they never leave the app.
+ *
+ * Predictions come a few per window at most, each is delivered to every subscriber on its
+ * executor. {@link #publish} may be called from any thread.
+ */
+public class PredictionChannel {
+    public interface Listener {
+        /**
+         * Called on the subscription's executor.
+         *
+         * @param meanLatencyMillis mean LLM round trip of the session so far, 0 if there was none
+         */
+        void onPrediction(ActivityPrediction prediction, long meanLatencyMillis);
+    }
+
+    /** Returned by {@link #subscribe}, {@link #close()} stops deliveries. */
+    public final class Subscription {
+        private final Listener listener;
+        private final Executor executor;
+        private volatile boolean closed;
+
+        Subscription(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void deliver(ActivityPrediction prediction, long meanLatencyMillis) {
+            executor.execute(() -> {
+                if (!closed) {
+                    listener.onPrediction(prediction, meanLatencyMillis);
+                }
+            });
+        }
+
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+        }
+    }
+
+    private static PredictionChannel shared;
+
+    /** The process-wide channel the service publishes to. */
+    public static synchronized PredictionChannel getShared() {
+        if (shared == null) {
+            shared = new PredictionChannel();
+        }
+        return shared;
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /** Starts delivering predictions to {@code listener} on {@code executor}, e.g. a main thread Handler's post. */
+    public Subscription subscribe(Listener listener, Executor executor) {
+        Subscription subscription = new Subscription(listener, executor);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void publish(ActivityPrediction prediction, long meanLatencyMillis) {
+        for (Subscription subscription : subscriptions) {
+            subscription.deliver(prediction, meanLatencyMillis);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.phonesensorreader;
+
+import android.webkit.JavascriptInterface;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Hands the session summary prompt to the chat page and its answers back, as the JavaScript
+ * interface of {@link WebViewHost}.
+ *
+ * The service offers each prompt here and the page takes it as JSON, so the prompt is never
+ * spliced into a script and no page has to be loaded to deliver it. Each offer gets a new
+ * version and is taken once. The time from {@link #markStopRequested()} until the page reports
+ * the prompt in its input is recorded as the Stop-to-prompt-ready latency. Thread safe: the
+ * page calls in on a WebView binder thread.
+ *
+ * The bridge only answers while {@link #setPageTrusted} says the chat page is loaded, any
+ * other page gets no prompts and cannot report results.
+ */
+public class PromptBridge {
+    public static final String JS_NAME = "PhoneSensorBridge";
+
+    public interface Listener {
+        /** A new prompt is waiting, called on the thread that offered it. */
+        void onPromptOffered(long version);
+
+        /**
+         * The page put prompt {@code version} into its input, {@code stopToReadyNanos} after
+         * Stop, or -1 if Stop was not marked. Called on a WebView binder thread.
+         */
+        void onPromptApplied(long version, long stopToReadyNanos);
+
+        /** The page's latest answer, called on a WebView binder thread. */
+        void onResult(String text);
+    }
+
+    private static PromptBridge shared;
+
+    public static synchronized PromptBridge getShared() {
+        if (shared == null) {
+            shared = new PromptBridge();
+        }
+        return shared;
+    }
+
+    private final LatencyHistogram promptReadyLatency = new LatencyHistogram();
+    @Nullable
+    private Listener listener;
+    private long version;
+    @Nullable
+    private String pendingJson;
+    private long stopRequestedNanos = -1;
+    @Nullable
+    private String lastResult;
+    private volatile boolean pageTrusted;
+
+    public synchronized void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Set by the WebView's client as pages start loading, true only for the chat page's origin. */
+    public void setPageTrusted(boolean pageTrusted) {
+        this.pageTrusted = pageTrusted;
+    }
+
+    /** Starts the Stop-to-prompt-ready measurement, on the Stop button. */
+    public synchronized void markStopRequested() {
+        stopRequestedNanos = System.nanoTime();
+    }
+
+    /**
+     * Replaces the prompt waiting for the page and returns its version.
+     *
+     * @param windowCount feature windows the prompt describes
+     */
+    public long offer(String prompt, int windowCount) {
+        StringBuilder json = new StringBuilder(prompt.length() + 96);
+        long offered;
+        Listener current;
+        synchronized (this) {
+            offered = ++version;
+            json.append("{\"version\":").append(offered)
+                    .append(",\"windows\":").append(windowCount)
+                    .append(",\"tokens\":").append(PromptBuilder.estimateTokens(prompt))
+                    .append(",\"prompt\":");
+            pendingJson = PromptBuilder.appendJsonString(json, prompt).append('}').toString();
+            current = listener;
+        }
+        if (current != null) {
+            current.onPromptOffered(offered);
+        }
+        return offered;
+    }
+
+    public synchronized boolean hasPendingPrompt() {
+        return pendingJson != null;
+    }
+
+    /** The waiting prompt as {@code {"version","windows","tokens","prompt"}}, or "null" once taken. */
+    @JavascriptInterface
+    public synchronized String takePrompt() {
+        if (!pageTrusted) {
+            return "null";
+        }
+        String json = pendingJson;
+        pendingJson = null;
+        return json == null ? "null" : json;
+    }
+
+    @JavascriptInterface
+    public void onPromptApplied(long appliedVersion) {
+        if (!pageTrusted) {
+            return;
+        }
+        Listener current;
+        long latencyNanos = -1;
+        synchronized (this) {
+            if (stopRequestedNanos >= 0) {
+                latencyNanos = System.nanoTime() - stopRequestedNanos;
+                promptReadyLatency.record(latencyNanos);
+                stopRequestedNanos = -1;
+            }
+            current = listener;
+        }
+        if (current != null) {
+            current.onPromptApplied(appliedVersion, latencyNanos);
+        }
+    }
+
+    @JavascriptInterface
+    public void onResult(String text) {
+        if (!pageTrusted) {
+            return;
+        }
+        Listener current;
+        synchronized (this) {
+            lastResult = text;
+            current = listener;
+        }
+        if (current != null) {
+            current.onResult(text);
+        }
+    }
+
+    @Nullable
+    public synchronized String getLastResult() {
+        return lastResult;
+    }
+
+    /** Time from the Stop button until the page had the session's prompt in its input. */
+    public LatencyHistogram getPromptReadyLatency() {
+        return promptReadyLatency;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.phonesensorreader;
+
+/**
+ * Builds the prompts sent to the local LLM from compiled {@link PromptTemplate}s.
+ *
+ * Every prompt starts with a static prefix, rendered once per builder from the sensor
+ * registry, that is byte for byte the same in every request, so a server started with
+ * prompt caching only evaluates the part after it. The variable part is kept within a token
+ * budget by including as many feature windows as fit, newest first, in full while there is
+ * room and then with the standard deviation only. The newest window is always included.
+ * Not thread safe.
+ */
+public class PromptBuilder {
+    static final String CLASSIFICATION_PREFIX =
+            "Classify the phone user's activity as walking, running or sitting from motion sensor features.{units}"
+                    + " Each window gives per axis the standard deviation (std), minimum, maximum and dominant"
+                    + " frequency in Hz, the step cadence per minute if there is one, then the signal magnitude area (SMA)."
+                    + " Windows are listed newest first.\n";
+    static final String CLASSIFICATION_BODY = "Features:{windows}\nAnswer with one word.\nActivity:";
+    static final String SUMMARY_PREFIX =
+            "Objective: You are predicting user activity as walking, running, or sitting based on sensor data inputs."
+                    + " Background: Data was collected using the smartphone's inbuilt motion sensors over a specific"
+                    + " time and consolidated into the summary below.{units}\nSensor data input:";
+    static final String SUMMARY_BODY = "{averages}{linear}{windows}";
+
+    private static final char[] AXIS_NAMES = {'X', 'Y', 'Z'};
+    private static final FixedPointQuantizer AVERAGE_QUANTIZER = new FixedPointQuantizer(6);
+    private static final FixedPointQuantizer FEATURE_QUANTIZER = new FixedPointQuantizer(3);
+    private static final FixedPointQuantizer FREQUENCY_QUANTIZER = new FixedPointQuantizer(2);
+
+    private final SensorRegistry registry;
+    private final int tokenBudget;
+    private final String classificationPrefix;
+    private final String summaryPrefix;
+    private final PromptTemplate classificationBody = PromptTemplate.compile(CLASSIFICATION_BODY);
+    private final PromptTemplate summaryBody = PromptTemplate.compile(SUMMARY_BODY);
+    private final int classificationWindowsSlot = classificationBody.indexOf("windows");
+    private final int summaryAveragesSlot = summaryBody.indexOf("averages");
+    private final int summaryLinearSlot = summaryBody.indexOf("linear");
+    private final int summaryWindowsSlot = summaryBody.indexOf("windows");
+    // Prefix and literal text of the body
+    private final int classificationFixedTokens;
+    private final int summaryFixedTokens;
+    private int lastWindowCount;
+
+    /** @param tokenBudget estimated tokens a prompt may take, see {@link #estimateTokens} */
+    public PromptBuilder(SensorRegistry registry, int tokenBudget) {
+        this.registry = registry;
+        this.tokenBudget = tokenBudget;
+        PromptTemplate.Slots units = (out, slot) -> appendUnits(out);
+        classificationPrefix = PromptTemplate.compile(CLASSIFICATION_PREFIX).render(new StringBuilder(), units).toString();
+        summaryPrefix = PromptTemplate.compile(SUMMARY_PREFIX).render(new StringBuilder(), units).toString();
+        PromptTemplate.Slots empty = (out, slot) -> { };
+        classificationFixedTokens = estimateTokens(classificationPrefix)
+                + estimateTokens(classificationBody.render(new StringBuilder(), empty));
+        summaryFixedTokens = estimateTokens(summaryPrefix) + estimateTokens(summaryBody.render(new StringBuilder(), empty));
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    /** Static start of every classification prompt. */
+    public String getClassificationPrefix() {
+        return classificationPrefix;
+    }
+
+    /** Static start of every session summary prompt. */
+    public String getSummaryPrefix() {
+        return summaryPrefix;
+    }
+
+    /** Feature windows included in the last prompt built. */
+    public int getLastWindowCount() {
+        return lastWindowCount;
+    }
+
+    /** Prompt asking for a one word activity for the recent windows of {@code histories}. */
+    public String buildClassificationPrompt(WindowHistory... histories) {
+        StringBuilder windows = new StringBuilder();
+        appendWindows(windows, histories, tokenBudget - classificationFixedTokens);
+        StringBuilder out = new StringBuilder(classificationPrefix.length() + windows.length() + 64)
+                .append(classificationPrefix);
+        return classificationBody.render(out, (o, slot) -> {
+            if (slot == classificationWindowsSlot) {
+                o.append(windows);
+            }
+        }).toString();
+    }
+
+    /**
+     * Prompt describing a whole session: the average of every channel of {@code statistics},
+     * laid out by the registry, the spread of {@code linear} acceleration if it has samples,
+     * and the recent windows of {@code histories}.
+     */
+    public String buildSummaryPrompt(SensorStatistics statistics, SensorStatistics linear, WindowHistory... histories) {
+        StringBuilder averages = new StringBuilder();
+        appendAverages(averages, statistics);
+        StringBuilder linearSpread = new StringBuilder();
+        if (linear.getCount(0) > 0) {
+            linearSpread.append(" Linear acceleration with gravity removed, Z pointing up, std:");
+            for (int axis = 0; axis < linear.getChannelCount() && axis < AXIS_NAMES.length; axis++) {
+                linearSpread.append(' ').append(AXIS_NAMES[axis]).append('=');
+                FEATURE_QUANTIZER.append(linearSpread, (float) linear.getStdDev(axis));
+            }
+            linearSpread.append(" m/s².");
+        }
+        StringBuilder windows = new StringBuilder();
+        appendWindows(windows, histories,
+                tokenBudget - summaryFixedTokens - estimateTokens(averages) - estimateTokens(linearSpread));
+        StringBuilder out = new StringBuilder(summaryPrefix.length() + averages.length() + linearSpread.length()
+                + windows.length()).append(summaryPrefix);
+        return summaryBody.render(out, (o, slot) -> {
+            if (slot == summaryAveragesSlot) {
+                o.append(averages);
+            } else if (slot == summaryLinearSlot) {
+                o.append(linearSpread);
+            } else if (slot == summaryWindowsSlot) {
+                o.append(windows);
+            }
+        }).toString();
+    }
+
+    private void appendUnits(StringBuilder out) {
+        out.append(" Units:");
+        for (int index = 0; index < registry.size(); index++) {
+            SensorSpec spec = registry.getSpec(index);
+            out.append(index == 0 ? " " : ", ").append(spec.getName()).append(' ').append(spec.getUnit());
+        }
+        out.append('.');
+    }
+
+    private void appendAverages(StringBuilder out, SensorStatistics statistics) {
+        for (int index = 0; index < registry.size(); index++) {
+            int first = registry.getFirstChannel(index);
+            int dimensions = registry.getDimensions(index);
+            if (statistics.getCount(first) == 0) {
+                continue;
+            }
+            out.append(out.length() == 0 ? " Session averages: " : "; ").append(registry.getSpec(index).getName());
+            for (int axis = 0; axis < dimensions; axis++) {
+                if (dimensions > 1) {
+                    out.append(' ').append(AXIS_NAMES[axis]);
+                }
+                out.append('=');
+                AVERAGE_QUANTIZER.append(out, (float) statistics.getMean(first + axis));
+            }
+        }
+        if (out.length() > 0) {
+            out.append('.');
+        }
+    }
+
+    /** Windows newest first, alternating between the histories, within {@code budget} tokens. */
+    private void appendWindows(StringBuilder out, WindowHistory[] histories, int budget) {
+        int maxAge = 0;
+        for (WindowHistory history : histories) {
+            maxAge = Math.max(maxAge, history.size());
+        }
+        int used = 0;
+        int count = 0;
+        for (int age = 0; age < maxAge; age++) {
+            for (WindowHistory history : histories) {
+                if (age >= history.size()) {
+                    continue;
+                }
+                int start = out.length();
+                appendWindow(out, history.get(age), age, true);
+                int tokens = estimateTokens(out, start, out.length());
+                if (used + tokens > budget) {
+                    out.setLength(start);
+                    appendWindow(out, history.get(age), age, false);
+                    tokens = estimateTokens(out, start, out.length());
+                    if (used + tokens > budget && count > 0) {
+                        out.setLength(start);
+                        lastWindowCount = count;
+                        return;
+                    }
+                }
+                used += tokens;
+                count++;
+            }
+        }
+        lastWindowCount = count;
+    }
+
+    private void appendWindow(StringBuilder out, WindowFeatures features, int age, boolean full) {
+        int index = registry.indexOf(features.getSensorType());
+        out.append(' ').append(index < 0 ? "SENSOR" + features.getSensorType() : registry.getSpec(index).getName())
+                .append(" window ").append(age + 1).append(" (");
+        FREQUENCY_QUANTIZER.append(out, (float) (features.getSampleCount() / features.getSampleRateHz()));
+        out.append(" s): std");
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            appendAxis(out, axis, FEATURE_QUANTIZER, features.getStdDev(axis));
+        }
+        if (full) {
+            out.append("; min");
+            for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+                appendAxis(out, axis, FEATURE_QUANTIZER, features.getMin(axis));
+            }
+            out.append("; max");
+            for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+                appendAxis(out, axis, FEATURE_QUANTIZER, features.getMax(axis));
+            }
+            out.append("; dominant");
+            for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+                appendAxis(out, axis, FREQUENCY_QUANTIZER, features.getDominantFrequencyHz(axis));
+            }
+            if (features.getCadenceStepsPerMinute() > 0) {
+                out.append("; cadence=").append(Math.round(features.getCadenceStepsPerMinute()));
+            }
+        }
+        out.append("; SMA=");
+        FEATURE_QUANTIZER.append(out, (float) features.getSignalMagnitudeArea()).append('.');
+    }
+
+    private static void appendAxis(StringBuilder out, int axis, FixedPointQuantizer quantizer, double value) {
+        out.append(' ').append(AXIS_NAMES[axis]).append('=');
+        quantizer.append(out, (float) value);
+    }
+
+    /**
+     * Rough upper estimate of the tokens {@code text} takes, as there is no tokenizer on the
+     * phone: one per digit, as Llama tokenizers split numbers into single digits, and one per
+     * four other characters.
+     */
+    public static int estimateTokens(CharSequence text) {
+        return estimateTokens(text, 0, text.length());
+    }
+
+    static int estimateTokens(CharSequence text, int start, int end) {
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            }
+        }
+        return digits + (end - start - digits + 3) / 4;
+    }
+
+    /**
+     * Appends {@code text} as a quoted JSON string. The result is also a safe JavaScript string
+     * literal inside an HTML page: line and paragraph separators are escaped, as is the slash
+     * of "</".
+     */
+    public static StringBuilder appendJsonString(StringBuilder out, CharSequence text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '/':
+                    out.append(i > 0 && text.charAt(i - 1) == '<' ? "\\/" : "/");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        for (int pad = hex.length(); pad < 4; pad++) {
+                            out.append('0');
+                        }
+                        out.append(hex);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.phonesensorreader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prompt text with named {@code {slot}} placeholders, parsed once.
+ *
+ * Rendering appends the literal text and lets a {@link Slots} callback write each slot
+ * straight into the StringBuilder. Slot names are lower case letters and underscores;
+ * the literal text can't contain braces.
+ */
+public class PromptTemplate {
+
+    public interface Slots {
+        /** Appends the value of slot number {@code slot}, see {@link #indexOf}. */
+        void append(StringBuilder out, int slot);
+    }
+
+    private final String text;
+    // literals[i] comes before slot i, the last one after the last slot
+    private final String[] literals;
+    private final String[] slotNames;
+
+    private PromptTemplate(String text, String[] literals, String[] slotNames) {
+        this.text = text;
+        this.literals = literals;
+        this.slotNames = slotNames;
+    }
+
+    public static PromptTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '}') {
+                throw new IllegalArgumentException("Unopened } at " + i + " in template: " + text);
+            }
+            if (c != '{') {
+                continue;
+            }
+            int end = text.indexOf('}', i);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed { at " + i + " in template: " + text);
+            }
+            String name = text.substring(i + 1, end);
+            if (!isSlotName(name)) {
+                throw new IllegalArgumentException("Invalid slot {" + name + "} in template: " + text);
+            }
+            literals.add(text.substring(start, i));
+            slotNames.add(name);
+            start = end + 1;
+            i = end;
+        }
+        literals.add(text.substring(start));
+        return new PromptTemplate(text, literals.toArray(new String[0]), slotNames.toArray(new String[0]));
+    }
+
+    private static boolean isSlotName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < 'a' || c > 'z') && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getSlotCount() {
+        return slotNames.length;
+    }
+
+    /** Number of the slot called {@code name}, to compare against in {@link Slots#append}. */
+    public int indexOf(String name) {
+        for (int slot = 0; slot < slotNames.length; slot++) {
+            if (slotNames[slot].equals(name)) {
+                return slot;
+            }
+        }
+        throw new IllegalArgumentException("No slot {" + name + "} in template: " + text);
+    }
+
+    public StringBuilder render(StringBuilder out, Slots slots) {
+        for (int slot = 0; slot < slotNames.length; slot++) {
+            out.append(literals[slot]);
+            slots.append(out, slot);
+        }
+        return out.append(literals[slotNames.length]);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.phonesensorreader;
+
+/**
+ * Decimates one sensor stream to a target rate using the event timestamps.
+ *
+ * Output slots are laid out on a fixed grid of {@code 1 / targetRate} seconds, so the
+ * average output rate is exact and does not drift. An event is accepted if it falls within
+ * half an input period of the next slot, which keeps the output rate correct when the input
+ * rate is only slightly higher than the target or jitters around it. After a gap (sensor
+ * paused, device suspended) the grid restarts instead of emitting a burst to catch up.
+ */
+public class RateDecimator {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long periodNanos;
+
+    private boolean started;
+    private long lastInputTimestamp;
+    private long nextDueTimestamp;
+    // Smoothed input inter-arrival time, used as the acceptance tolerance
+    private long inputPeriodNanos;
+
+    private long acceptedCount;
+    private long droppedCount;
+
+    /** A target rate of zero or less passes every event through. */
+    public RateDecimator(double targetRateHz) {
+        this.periodNanos = targetRateHz > 0 ? Math.round(NANOS_PER_SECOND / targetRateHz) : 0;
+    }
+
+    public boolean accept(long timestampNanos) {
+        if (!started) {
+            started = true;
+            lastInputTimestamp = timestampNanos;
+            return emit(timestampNanos);
+        }
+        long interval = timestampNanos - lastInputTimestamp;
+        lastInputTimestamp = timestampNanos;
+        if (interval > 0 && (periodNanos == 0 || interval <= periodNanos)) {
+            // Gaps longer than an output period would inflate the tolerance, leave them out
+            inputPeriodNanos = inputPeriodNanos == 0 ? interval : (inputPeriodNanos * 7 + interval) / 8;
+        }
+        if (periodNanos == 0) {
+            acceptedCount++;
+            return true;
+        }
+        if (timestampNanos - nextDueTimestamp >= periodNanos) {
+            // Missed at least one whole slot: restart the grid at this event
+            return emit(timestampNanos);
+        }
+        long tolerance = Math.min(inputPeriodNanos / 2, periodNanos / 2);
+        if (timestampNanos >= nextDueTimestamp - tolerance) {
+            acceptedCount++;
+            nextDueTimestamp += periodNanos;
+            return true;
+        }
+        droppedCount++;
+        return false;
+    }
+
+    private boolean emit(long timestampNanos) {
+        acceptedCount++;
+        nextDueTimestamp = timestampNanos + periodNanos;
+        return true;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public void reset() {
+        started = false;
+        inputPeriodNanos = 0;
+        acceptedCount = 0;
+        droppedCount = 0;
+    }
+}
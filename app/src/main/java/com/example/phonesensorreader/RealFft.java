@@ -0,0 +1,138 @@
+package com.example.phonesensorreader;
+
+/**
+ * Radix-2 FFT of real signals of one fixed power-of-two size.
+ *
+ * The {@code n} real samples are transformed as {@code n / 2} complex ones and the two
+ * interleaved half spectra separated afterwards, so a transform costs about half of a complex
+ * FFT of the same size. The twiddle and bit reversal tables are computed once by the
+ * constructor and transforms run in place, so they allocate nothing. Instances are immutable
+ * and may be shared between threads.
+ */
+public class RealFft {
+    private final int size;
+    private final int half;
+    // cos and sin of 2*pi*k/size for k < size/2; the complex FFT of size/2 uses every other entry
+    private final double[] cosTable;
+    private final double[] sinTable;
+    // Bit reversed index of each complex sample, for the size/2 point FFT
+    private final int[] reversed;
+
+    public RealFft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two of at least 2: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        cosTable = new double[half];
+        sinTable = new double[half];
+        for (int k = 0; k < half; k++) {
+            cosTable[k] = Math.cos(2 * Math.PI * k / size);
+            sinTable[k] = Math.sin(2 * Math.PI * k / size);
+        }
+        reversed = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (Integer.SIZE - bits);
+        }
+    }
+
+    public static boolean isPowerOfTwo(int size) {
+        return size >= 2 && Integer.bitCount(size) == 1;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Replaces the {@code size} real samples in {@code data} by their spectrum
+     * {@code X[k] = sum x[i] exp(-2 pi i k / size)}, packed as {@code data[0] = X[0]},
+     * {@code data[1] = X[size/2]}, both real, and {@code data[2k], data[2k+1]} the real and
+     * imaginary part of {@code X[k]} for {@code 0 < k < size/2}.
+     */
+    public void forward(double[] data) {
+        if (data.length < size) {
+            throw new IllegalArgumentException("data holds " + data.length + " of " + size + " samples");
+        }
+        complexForward(data);
+        // Split Z = FFT(x[2i] + i x[2i+1]) into the spectra of the even and odd samples and
+        // combine them, k and half - k together as each needs the other's Z
+        double z0 = data[0];
+        double z1 = data[1];
+        data[0] = z0 + z1;
+        data[1] = z0 - z1;
+        for (int k = 1; k <= half / 2; k++) {
+            int m = half - k;
+            double zkRe = data[2 * k];
+            double zkIm = data[2 * k + 1];
+            double zmRe = data[2 * m];
+            double zmIm = data[2 * m + 1];
+            // E = (Z[k] + conj Z[m]) / 2, O = (Z[k] - conj Z[m]) / 2i, X[k] = E + w^k O
+            double evenRe = (zkRe + zmRe) / 2;
+            double evenIm = (zkIm - zmIm) / 2;
+            double oddRe = (zkIm + zmIm) / 2;
+            double oddIm = -(zkRe - zmRe) / 2;
+            double wRe = cosTable[k];
+            double wIm = -sinTable[k];
+            double rotatedRe = oddRe * wRe - oddIm * wIm;
+            double rotatedIm = oddRe * wIm + oddIm * wRe;
+            data[2 * k] = evenRe + rotatedRe;
+            data[2 * k + 1] = evenIm + rotatedIm;
+            if (m != k) {
+                // X[m] = conj E + w^m conj O, with w^m = -conj w^k
+                data[2 * m] = evenRe - rotatedRe;
+                data[2 * m + 1] = rotatedIm - evenIm;
+            }
+        }
+    }
+
+    /**
+     * Transforms {@code data} in place and writes {@code |X[k]|^2} for {@code 0 <= k <= size/2}
+     * into {@code power}, which must hold {@code size/2 + 1} values.
+     */
+    public void powerSpectrum(double[] data, double[] power) {
+        if (power.length < half + 1) {
+            throw new IllegalArgumentException("power holds " + power.length + " of " + (half + 1) + " bins");
+        }
+        forward(data);
+        power[0] = data[0] * data[0];
+        power[half] = data[1] * data[1];
+        for (int k = 1; k < half; k++) {
+            power[k] = data[2 * k] * data[2 * k] + data[2 * k + 1] * data[2 * k + 1];
+        }
+    }
+
+    /** Iterative decimation in time FFT of the size/2 complex samples interleaved in data. */
+    private void complexForward(double[] data) {
+        for (int i = 0; i < half; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double re = data[2 * i];
+                double im = data[2 * i + 1];
+                data[2 * i] = data[2 * j];
+                data[2 * i + 1] = data[2 * j + 1];
+                data[2 * j] = re;
+                data[2 * j + 1] = im;
+            }
+        }
+        for (int span = 1; span < half; span *= 2) {
+            // Twiddle exp(-2 pi i j / (2 span)) is entry j * half / span of the size point table
+            int stride = half / span;
+            for (int start = 0; start < half; start += 2 * span) {
+                for (int j = 0, twiddle = 0; j < span; j++, twiddle += stride) {
+                    int a = 2 * (start + j);
+                    int b = a + 2 * span;
+                    double wRe = cosTable[twiddle];
+                    double wIm = -sinTable[twiddle];
+                    double bRe = data[b] * wRe - data[b + 1] * wIm;
+                    double bIm = data[b] * wIm + data[b + 1] * wRe;
+                    data[b] = data[a] - bRe;
+                    data[b + 1] = data[a + 1] - bIm;
+                    data[a] += bRe;
+                    data[a + 1] += bIm;
+                }
+            }
+        }
+    }
+}
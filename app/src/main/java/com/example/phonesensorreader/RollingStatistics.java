@@ -0,0 +1,101 @@
+package com.example.phonesensorreader;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of each registered channel over the last N seconds, minutes or hours of a
+ * session that may run for days, in constant memory.
+ *
+ * Samples are accumulated into time buckets of {@code bucketNanos} by sample timestamp,
+ * kept in a ring of {@code bucketCount} buckets per channel. A query merges the buckets
+ * covering the horizon, so any horizon up to {@code bucketNanos * bucketCount} can be asked
+ * for, rounded up to whole buckets. The newest bucket is the one holding the newest sample,
+ * so a stream that pauses keeps reporting the data before the pause.
+ * Not thread safe, meant to be fed on the sample thread.
+ */
+public class RollingStatistics implements SampleSink {
+    private final SensorRegistry registry;
+    private final int channelCount;
+    private final long bucketNanos;
+    private final int bucketCount;
+    // Channel c of bucket slot b is channel b * channelCount + c
+    private final SensorStatistics buckets;
+    // Bucket number (timestamp / bucketNanos) held in each slot, -1 when empty
+    private final long[] slotBucket;
+    private long newestBucket = Long.MIN_VALUE;
+
+    public RollingStatistics(SensorRegistry registry, long bucketNanos, int bucketCount) {
+        if (bucketNanos <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Invalid buckets: " + bucketCount + " x " + bucketNanos + "ns");
+        }
+        this.registry = registry;
+        this.channelCount = registry.getChannelCount();
+        this.bucketNanos = bucketNanos;
+        this.bucketCount = bucketCount;
+        this.buckets = new SensorStatistics(Math.max(1, channelCount * bucketCount));
+        this.slotBucket = new long[bucketCount];
+        Arrays.fill(slotBucket, -1);
+    }
+
+    /** Longest horizon that can be summarized. */
+    public long getMaxHorizonNanos() {
+        return bucketNanos * bucketCount;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        int index = registry.indexOf(sensorType);
+        if (index < 0 || timestampNanos < 0) {
+            return;
+        }
+        long bucket = timestampNanos / bucketNanos;
+        if (newestBucket != Long.MIN_VALUE && bucket <= newestBucket - bucketCount) {
+            return; // Older than anything kept
+        }
+        int slot = (int) (bucket % bucketCount);
+        if (slotBucket[slot] != bucket) {
+            int first = slot * channelCount;
+            for (int channel = 0; channel < channelCount; channel++) {
+                buckets.reset(first + channel);
+            }
+            slotBucket[slot] = bucket;
+        }
+        newestBucket = Math.max(newestBucket, bucket);
+        int channel = slot * channelCount + registry.getFirstChannel(index);
+        int dimensions = registry.getDimensions(index);
+        buckets.add(channel, x);
+        if (dimensions > 1) {
+            buckets.add(channel + 1, y);
+        }
+        if (dimensions > 2) {
+            buckets.add(channel + 2, z);
+        }
+    }
+
+    /**
+     * Resets {@code outChannel} of {@code out} to the statistics of {@code channel} over the
+     * last {@code horizonNanos}, ending with the newest sample.
+     */
+    public void summarize(int channel, long horizonNanos, SensorStatistics out, int outChannel) {
+        out.reset(outChannel);
+        if (newestBucket == Long.MIN_VALUE) {
+            return;
+        }
+        long span = Math.min(bucketCount, Math.max(1, (horizonNanos + bucketNanos - 1) / bucketNanos));
+        for (long bucket = newestBucket - span + 1; bucket <= newestBucket; bucket++) {
+            if (bucket < 0) {
+                continue;
+            }
+            int slot = (int) (bucket % bucketCount);
+            if (slotBucket[slot] == bucket) {
+                out.merge(outChannel, buckets, slot * channelCount + channel);
+            }
+        }
+    }
+
+    public void clear() {
+        buckets.reset();
+        Arrays.fill(slotBucket, -1);
+        newestBucket = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.phonesensorreader;
+
+/**
+ * Samples handed to a {@link SampleChannel} subscriber in one callback, oldest first.
+ *
+ * Backed by primitive arrays used as a ring: once full, appending overwrites the oldest
+ * sample, so a subscriber that falls behind sees the most recent samples and a drop count
+ * instead of a growing queue. Instances are reused, subscribers must not keep them.
+ */
+public class SampleBatch {
+    private final long[] timestamps;
+    private final int[] sensorTypes;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final int mask;
+    private int start;
+    private int size;
+    private long droppedCount;
+
+    public SampleBatch(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        timestamps = new long[capacity];
+        sensorTypes = new int[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+        mask = capacity - 1;
+    }
+
+    void append(long timestampNanos, int sensorType, float x, float y, float z) {
+        int index;
+        if (size == timestamps.length) {
+            index = start;
+            start = (start + 1) & mask;
+            droppedCount++;
+        } else {
+            index = (start + size) & mask;
+            size++;
+        }
+        timestamps[index] = timestampNanos;
+        sensorTypes[index] = sensorType;
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+    }
+
+    void clear() {
+        start = 0;
+        size = 0;
+        droppedCount = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    /** Samples overwritten before they could be delivered, since the previous batch. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getTimestampNanos(int i) {
+        return timestamps[(start + i) & mask];
+    }
+
+    public int getSensorType(int i) {
+        return sensorTypes[(start + i) & mask];
+    }
+
+    public float getX(int i) {
+        return x[(start + i) & mask];
+    }
+
+    public float getY(int i) {
+        return y[(start + i) & mask];
+    }
+
+    public float getZ(int i) {
+        return z[(start + i) & mask];
+    }
+
+    /** Calls {@code sink} for every sample, oldest first, without {@link SampleSink#onBatchEnd}. */
+    public void forEach(SampleSink sink) {
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) & mask;
+            sink.onSample(timestamps[index], sensorTypes[index], x[index], y[index], z[index]);
+        }
+    }
+}
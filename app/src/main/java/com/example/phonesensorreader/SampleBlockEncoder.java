@@ -0,0 +1,391 @@
+package com.example.phonesensorreader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Packs samples into self-contained compressed blocks for upload.
+ *
+ * Samples are collected per sensor in primitive columns. A block stores each sensor's
+ * timestamps as delta-of-deltas and each axis as deltas of fixed-point values (see
+ * {@link FixedPointQuantizer}), all as zigzag varints, plus one byte per sample naming its
+ * sensor so the decoder restores the original interleaving; the block is then deflated.
+ * Steady sampling makes most delta-of-deltas zero and smooth signals give small value deltas,
+ * which takes motion data to a fraction of the 24 bytes per sample of a {@link SessionRecorder}
+ * file. Timestamps are exact, values are rounded to the configured decimals. NaN and the
+ * infinities, which {@link FixedPointQuantizer#encode} can't represent, are stored as the fixed
+ * values it never produces ({@link #NAN}, {@link #POSITIVE_INFINITY}, {@link #NEGATIVE_INFINITY});
+ * values too large for the decimals become infinities.
+ *
+ * <pre>
+ * block, deflated
+ *   byte   version
+ *   byte   decimals
+ *   varint sample count n
+ *   varint sensor count s
+ *   s x (varint sensor type, varint sample count)
+ *   n x byte sensor index
+ *   per sensor: timestamps, then x, y and z deltas, zigzag varints
+ * </pre>
+ *
+ * Once its buffers have grown to the block size, encoding allocates nothing. Not thread safe.
+ */
+public class SampleBlockEncoder implements SampleSink, Closeable {
+    static final int VERSION = 1;
+    // Sensor indexes are stored as single bytes
+    static final int MAX_SENSORS = 256;
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final int INITIAL_CAPACITY = 256;
+    // Scaled values are below 2^63 in magnitude, so the two extremes of a long are free
+    static final long NAN = Long.MIN_VALUE;
+    static final long POSITIVE_INFINITY = Long.MAX_VALUE;
+    static final long NEGATIVE_INFINITY = -Long.MAX_VALUE;
+
+    private static final class Column {
+        int sensorType;
+        int size;
+        long[] timestamps = new long[INITIAL_CAPACITY];
+        long[] xs = new long[INITIAL_CAPACITY];
+        long[] ys = new long[INITIAL_CAPACITY];
+        long[] zs = new long[INITIAL_CAPACITY];
+
+        void add(long timestamp, long x, long y, long z) {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                zs = Arrays.copyOf(zs, capacity);
+            }
+            timestamps[size] = timestamp;
+            xs[size] = x;
+            ys[size] = y;
+            zs[size] = z;
+            size++;
+        }
+    }
+
+    private final FixedPointQuantizer quantizer;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    // Columns of the current block first, kept for reuse after them
+    private Column[] columns = new Column[0];
+    private int columnCount;
+    private byte[] sensorIndexes = new byte[INITIAL_CAPACITY];
+    private int sampleCount;
+
+    private byte[] encoded = new byte[INITIAL_CAPACITY];
+    private int encodedLength;
+    private byte[] compressed = new byte[INITIAL_CAPACITY];
+    private int compressedLength;
+
+    /** @param decimals decimal places kept of each value, see {@link FixedPointQuantizer} */
+    public SampleBlockEncoder(int decimals) {
+        this.quantizer = new FixedPointQuantizer(decimals);
+    }
+
+    /**
+     * Adds a sample to the current block.
+     *
+     * @throws IllegalArgumentException for the sensor after {@link #MAX_SENSORS} in one block
+     */
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        int index = columnIndex(sensorType);
+        columns[index].add(timestampNanos, toFixed(x), toFixed(y), toFixed(z));
+        if (sampleCount == sensorIndexes.length) {
+            sensorIndexes = Arrays.copyOf(sensorIndexes, sampleCount * 2);
+        }
+        sensorIndexes[sampleCount++] = (byte) index;
+    }
+
+    private long toFixed(float value) {
+        if (Float.isNaN(value)) {
+            return NAN;
+        }
+        if (Math.abs(value * (double) quantizer.getScale()) < 0x1p63) {
+            return quantizer.encode(value);
+        }
+        return value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY;
+    }
+
+    private static float toFloat(FixedPointQuantizer quantizer, long fixed) {
+        if (fixed == NAN) {
+            return Float.NaN;
+        }
+        if (fixed == POSITIVE_INFINITY) {
+            return Float.POSITIVE_INFINITY;
+        }
+        if (fixed == NEGATIVE_INFINITY) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return quantizer.decode(fixed);
+    }
+
+    private int columnIndex(int sensorType) {
+        for (int index = 0; index < columnCount; index++) {
+            if (columns[index].sensorType == sensorType) {
+                return index;
+            }
+        }
+        if (columnCount == MAX_SENSORS) {
+            throw new IllegalArgumentException("More than " + MAX_SENSORS + " sensors in one block");
+        }
+        if (columnCount == columns.length) {
+            columns = Arrays.copyOf(columns, columnCount + 4);
+        }
+        if (columns[columnCount] == null) {
+            columns[columnCount] = new Column();
+        }
+        columns[columnCount].sensorType = sensorType;
+        return columnCount++;
+    }
+
+    /** Drops the samples added since the last block. */
+    public void clear() {
+        for (int index = 0; index < columnCount; index++) {
+            columns[index].size = 0;
+        }
+        columnCount = 0;
+        sampleCount = 0;
+    }
+
+    /** Samples added since the last block. */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Encodes and deflates the samples added since the last block into {@link #getBlock()} and
+     * starts the next block.
+     *
+     * @return the length of the block
+     */
+    public int finishBlock() {
+        int capacity = 2 + 2 * MAX_VARINT_BYTES + columnCount * 2 * MAX_VARINT_BYTES
+                + sampleCount * (1 + 4 * MAX_VARINT_BYTES);
+        if (encoded.length < capacity) {
+            encoded = new byte[capacity];
+        }
+        encodedLength = 0;
+        encoded[encodedLength++] = VERSION;
+        encoded[encodedLength++] = (byte) quantizer.getDecimals();
+        putVarint(sampleCount);
+        putVarint(columnCount);
+        for (int index = 0; index < columnCount; index++) {
+            putVarint(columns[index].sensorType & 0xffffffffL);
+            putVarint(columns[index].size);
+        }
+        System.arraycopy(sensorIndexes, 0, encoded, encodedLength, sampleCount);
+        encodedLength += sampleCount;
+        for (int index = 0; index < columnCount; index++) {
+            Column column = columns[index];
+            long previous = 0;
+            long previousDelta = 0;
+            for (int i = 0; i < column.size; i++) {
+                long delta = column.timestamps[i] - previous;
+                putZigzag(delta - previousDelta);
+                previous = column.timestamps[i];
+                previousDelta = delta;
+            }
+            putDeltas(column.xs, column.size);
+            putDeltas(column.ys, column.size);
+            putDeltas(column.zs, column.size);
+        }
+        clear();
+        compressedLength = deflate(encodedLength);
+        return compressedLength;
+    }
+
+    private void putDeltas(long[] values, int count) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            putZigzag(values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    private void putZigzag(long value) {
+        putVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7fL) != 0) {
+            encoded[encodedLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        encoded[encodedLength++] = (byte) value;
+    }
+
+    private int deflate(int length) {
+        deflater.reset();
+        deflater.setInput(encoded, 0, length);
+        deflater.finish();
+        int written = 0;
+        while (!deflater.finished()) {
+            if (written == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            written += deflater.deflate(compressed, written, compressed.length - written);
+        }
+        return written;
+    }
+
+    /** The last finished block, valid for {@link #getBlockLength()} bytes until the next one. */
+    public byte[] getBlock() {
+        return compressed;
+    }
+
+    public int getBlockLength() {
+        return compressedLength;
+    }
+
+    /** Length of the last block before deflating. */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private static final class Reader {
+        final byte[] data;
+        final int end;
+        int position;
+
+        Reader(byte[] data, int end) {
+            this.data = data;
+            this.end = end;
+        }
+
+        int readByte() throws IOException {
+            if (position == end) {
+                throw new IOException("Truncated block");
+            }
+            return data[position++] & 0xff;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readZigzag() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readCount(int max) throws IOException {
+            long count = readVarint();
+            if (count < 0 || count > max) {
+                throw new IOException("Bad count " + count);
+            }
+            return (int) count;
+        }
+    }
+
+    /**
+     * Delivers the samples of a block in the order they were added, followed by one batch end,
+     * and returns how many.
+     */
+    public static int decode(byte[] block, int offset, int length, SampleSink sink) throws IOException {
+        Inflater inflater = new Inflater();
+        byte[] data = new byte[Math.max(INITIAL_CAPACITY, length * 4)];
+        int dataLength = 0;
+        try {
+            inflater.setInput(block, offset, length);
+            while (!inflater.finished()) {
+                if (dataLength == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                int inflated = inflater.inflate(data, dataLength, data.length - dataLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated block");
+                }
+                dataLength += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block", e);
+        } finally {
+            inflater.end();
+        }
+
+        Reader reader = new Reader(data, dataLength);
+        if (reader.readByte() != VERSION) {
+            throw new IOException("Unsupported block version");
+        }
+        FixedPointQuantizer quantizer;
+        try {
+            quantizer = new FixedPointQuantizer(reader.readByte());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad block", e);
+        }
+        // Every sample takes at least five bytes
+        int sampleCount = reader.readCount(dataLength / 5);
+        int columnCount = reader.readCount(MAX_SENSORS);
+        int[] sensorTypes = new int[columnCount];
+        long[][] timestamps = new long[columnCount][];
+        float[][][] values = new float[columnCount][WindowFeatures.AXES][];
+        int total = 0;
+        for (int index = 0; index < columnCount; index++) {
+            sensorTypes[index] = (int) reader.readVarint();
+            int size = reader.readCount(sampleCount - total);
+            total += size;
+            timestamps[index] = new long[size];
+            for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+                values[index][axis] = new float[size];
+            }
+        }
+        if (total != sampleCount) {
+            throw new IOException("Sensor sample counts add up to " + total + ", not " + sampleCount);
+        }
+        int indexesAt = reader.position;
+        if (dataLength - indexesAt < sampleCount) {
+            throw new IOException("Truncated block");
+        }
+        reader.position += sampleCount;
+        for (int index = 0; index < columnCount; index++) {
+            long timestamp = 0;
+            long delta = 0;
+            long[] column = timestamps[index];
+            for (int i = 0; i < column.length; i++) {
+                delta += reader.readZigzag();
+                timestamp += delta;
+                column[i] = timestamp;
+            }
+            for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+                float[] axisValues = values[index][axis];
+                long fixed = 0;
+                for (int i = 0; i < axisValues.length; i++) {
+                    fixed += reader.readZigzag();
+                    axisValues[i] = toFloat(quantizer, fixed);
+                }
+            }
+        }
+
+        int[] next = new int[columnCount];
+        for (int i = 0; i < sampleCount; i++) {
+            int index = data[indexesAt + i] & 0xff;
+            if (index >= columnCount || next[index] == timestamps[index].length) {
+                throw new IOException("Bad sensor index at sample " + i);
+            }
+            int at = next[index]++;
+            sink.onSample(timestamps[index][at], sensorTypes[index],
+                    values[index][0][at], values[index][1][at], values[index][2][at]);
+        }
+        sink.onBatchEnd();
+        return sampleCount;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.phonesensorreader;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process publish/subscribe channel from the sample consumer to the UI.
+ *
+ * The producer appends samples and calls {@link #flush()} at the end of each drained batch.
+ * Each subscriber gets at most one batch in flight and at most one batch per delivery
+ * interval, whatever the sensor rate. Samples arriving meanwhile collect in the subscriber's
+ * next batch, which overwrites its oldest samples when full rather than queueing frames.
+ * Samples held back that way go out once the delivery in flight finishes or the interval
+ * ends, without waiting for the next flush.
+ *
+ * {@link #publish} and {@link #flush} must be called from a single producer thread.
+ */
+public class SampleChannel {
+    public static final double DEFAULT_MAX_DELIVERY_RATE_HZ = 60;
+    // Over two seconds of both sensors at 100 Hz, a longer stall on the UI thread drops samples
+    public static final int DEFAULT_BATCH_CAPACITY = 512;
+
+    public interface Listener {
+        /** Called on the subscription's executor. The batch is only valid during the call. */
+        void onSamples(SampleBatch batch);
+    }
+
+    /** Returned by {@link #subscribe}, {@link #close()} stops deliveries. */
+    public final class Subscription implements Runnable {
+        private final Listener listener;
+        private final Executor executor;
+        private SampleBatch pending;
+        private SampleBatch delivering;
+        // Guarded by this
+        private boolean inFlight;
+        private boolean trailingFlushScheduled;
+        private long lastDeliveryNanos;
+        private volatile boolean closed;
+        private final Runnable trailingFlush = () -> {
+            synchronized (this) {
+                trailingFlushScheduled = false;
+            }
+            flush(System.nanoTime());
+        };
+
+        Subscription(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+            this.pending = new SampleBatch(batchCapacity);
+            this.delivering = new SampleBatch(batchCapacity);
+            this.lastDeliveryNanos = System.nanoTime() - minDeliveryIntervalNanos;
+        }
+
+        synchronized void append(long timestampNanos, int sensorType, float x, float y, float z) {
+            pending.append(timestampNanos, sensorType, x, y, z);
+        }
+
+        void flush(long now) {
+            synchronized (this) {
+                if (closed || inFlight || pending.size() == 0) {
+                    return; // A delivery in flight flushes again when it is done
+                }
+                long waitNanos = minDeliveryIntervalNanos - (now - lastDeliveryNanos);
+                if (waitNanos > 0) {
+                    if (!trailingFlushScheduled) {
+                        trailingFlushScheduled = true;
+                        trailingFlushTimer().schedule(trailingFlush, waitNanos, TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+                SampleBatch batch = pending;
+                pending = delivering;
+                delivering = batch;
+                inFlight = true;
+                lastDeliveryNanos = now;
+            }
+            executor.execute(this);
+        }
+
+        /** Delivers the swapped out batch, runs on the executor. */
+        @Override
+        public void run() {
+            SampleBatch batch;
+            long flushNanos;
+            synchronized (this) {
+                batch = delivering;
+                flushNanos = lastDeliveryNanos;
+            }
+            if (!closed) {
+                deliveryLatency.recordSince(flushNanos);
+                deliveredBatches.incrementAndGet();
+                deliveredSamples.addAndGet(batch.size());
+                droppedSamples.addAndGet(batch.getDroppedCount());
+                listener.onSamples(batch);
+            }
+            synchronized (this) {
+                batch.clear();
+                inFlight = false;
+            }
+            // Samples that came in during the delivery
+            flush(System.nanoTime());
+        }
+
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+        }
+    }
+
+    private static SampleChannel shared;
+    private static ScheduledExecutorService trailingFlushTimer;
+
+    private static synchronized ScheduledExecutorService trailingFlushTimer() {
+        if (trailingFlushTimer == null) {
+            trailingFlushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SampleChannel");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return trailingFlushTimer;
+    }
+
+    /** The process-wide channel the service publishes to. */
+    public static synchronized SampleChannel getShared() {
+        if (shared == null) {
+            shared = new SampleChannel(DEFAULT_BATCH_CAPACITY, DEFAULT_MAX_DELIVERY_RATE_HZ);
+        }
+        return shared;
+    }
+
+    private final int batchCapacity;
+    private final long minDeliveryIntervalNanos;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong publishedSamples = new AtomicLong();
+    private final AtomicLong deliveredBatches = new AtomicLong();
+    private final AtomicLong deliveredSamples = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    /**
+     * @param batchCapacity power of two, the most samples a subscriber can fall behind by
+     * @param maxDeliveryRateHz per subscriber, 0 or less delivers on every flush
+     */
+    public SampleChannel(int batchCapacity, double maxDeliveryRateHz) {
+        if (batchCapacity <= 0 || Integer.bitCount(batchCapacity) != 1) {
+            throw new IllegalArgumentException("batchCapacity must be a power of two: " + batchCapacity);
+        }
+        this.batchCapacity = batchCapacity;
+        this.minDeliveryIntervalNanos = maxDeliveryRateHz > 0 ? Math.round(1e9 / maxDeliveryRateHz) : 0;
+    }
+
+    /** Starts delivering batches to {@code listener} on {@code executor}, e.g. a main thread Handler's post. */
+    public Subscription subscribe(Listener listener, Executor executor) {
+        Subscription subscription = new Subscription(listener, executor);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public void publish(long timestampNanos, int sensorType, float x, float y, float z) {
+        publishedSamples.incrementAndGet();
+        for (Subscription subscription : subscriptions) {
+            subscription.append(timestampNanos, sensorType, x, y, z);
+        }
+    }
+
+    /** Hands pending samples to every subscriber that is due a delivery, later to the others. */
+    public void flush() {
+        long now = System.nanoTime();
+        for (Subscription subscription : subscriptions) {
+            subscription.flush(now);
+        }
+    }
+
+    public long getPublishedSamples() {
+        return publishedSamples.get();
+    }
+
+    public long getDeliveredBatches() {
+        return deliveredBatches.get();
+    }
+
+    public long getDeliveredSamples() {
+        return deliveredSamples.get();
+    }
+
+    /** Samples overwritten in a subscriber's batch before delivery, summed over subscribers. */
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    /** Time from a flush handing a batch over until its delivery starts on the subscriber's executor. */
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.phonesensorreader;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated thread that drains a {@link SampleRingBuffer} in batches into a {@link SampleSink}.
+ *
+ * The thread polls at a fixed interval instead of being signalled by the producer, so the
+ * sensor callback never pays for a wakeup. Drain latency is the time between the oldest
+ * sample of a batch being offered and the batch being drained.
+ */
+public class SampleConsumer implements Runnable {
+    private static final String LOG_TAG = "SampleConsumer";
+
+    private final SampleRingBuffer buffer;
+    private final SampleSink sink;
+    private final int maxBatch;
+    private final long pollIntervalNanos;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    private volatile long batchCount;
+    private volatile long drainedCount;
+    private volatile long lastDrainLatencyNanos;
+    private volatile long maxDrainLatencyNanos;
+    private volatile long totalDrainLatencyNanos;
+    private volatile int maxBatchSize;
+
+    public SampleConsumer(SampleRingBuffer buffer, SampleSink sink, int maxBatch, long pollIntervalMillis) {
+        this.buffer = buffer;
+        this.sink = sink;
+        this.maxBatch = maxBatch;
+        this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, LOG_TAG);
+        thread.start();
+    }
+
+    /** Stops the thread after draining everything that was offered before this call. */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (drainOnce() == 0) {
+                    LockSupport.parkNanos(pollIntervalNanos);
+                }
+            }
+            while (drainOnce() > 0) {
+                // flush what is left after stop()
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Sample consumer failed", e);
+            throw e;
+        }
+    }
+
+    /** Drains one batch and updates the drain metrics. Must only be called from the consumer thread. */
+    int drainOnce() {
+        int count = buffer.drain(sink, maxBatch);
+        if (count > 0) {
+            long latency = System.nanoTime() - buffer.getOldestEnqueueTime();
+            lastDrainLatencyNanos = latency;
+            if (latency > maxDrainLatencyNanos) maxDrainLatencyNanos = latency;
+            totalDrainLatencyNanos += latency;
+            if (count > maxBatchSize) maxBatchSize = count;
+            drainedCount += count;
+            batchCount++;
+        }
+        return count;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getDrainedCount() {
+        return drainedCount;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getLastDrainLatencyNanos() {
+        return lastDrainLatencyNanos;
+    }
+
+    public long getMaxDrainLatencyNanos() {
+        return maxDrainLatencyNanos;
+    }
+
+    public long getMeanDrainLatencyNanos() {
+        long batches = batchCount;
+        return batches == 0 ? 0 : totalDrainLatencyNanos / batches;
+    }
+}
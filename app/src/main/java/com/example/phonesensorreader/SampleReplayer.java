@@ -0,0 +1,130 @@
+package com.example.phonesensorreader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes a {@link SampleSource} into a {@link SampleSink}, either as fast as the sink takes
+ * the samples or paced by their timestamps at a multiple of real time.
+ *
+ * Replaying a recorded session or a synthetic signal through a {@link SensorPipeline} runs
+ * the same processing as a live session, so it serves as a throughput benchmark and as a
+ * deterministic regression test off the phone. Not thread safe.
+ */
+public class SampleReplayer {
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    public static final double REAL_TIME = 1;
+
+    private final double speed;
+    private long sampleCount;
+    private long elapsedNanos;
+    private long maxLagNanos;
+
+    /** Thrown from the pacing sink to unwind the source when the thread is interrupted. */
+    private static final class Interrupted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Interrupted() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** @param speed multiple of real time, {@link #AS_FAST_AS_POSSIBLE} for no pacing */
+    public SampleReplayer(double speed) {
+        if (speed < 0 || Double.isNaN(speed)) {
+            throw new IllegalArgumentException("speed must not be negative: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Delivers every sample of {@code source} to {@code sink} and returns how many.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while pacing
+     */
+    public long replay(SampleSource source, SampleSink sink) throws IOException {
+        sampleCount = 0;
+        maxLagNanos = 0;
+        long start = System.nanoTime();
+        try {
+            source.forEach(speed > 0 && !Double.isInfinite(speed) ? new PacingSink(sink, start) : new CountingSink(sink));
+        } catch (Interrupted e) {
+            throw new InterruptedIOException("Replay interrupted after " + sampleCount + " samples");
+        } finally {
+            elapsedNanos = System.nanoTime() - start;
+        }
+        return sampleCount;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /** Samples delivered by the last replay. */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getSamplesPerSecond() {
+        return elapsedNanos == 0 ? 0 : sampleCount * 1e9 / elapsedNanos;
+    }
+
+    /** How far behind its schedule a paced replay fell at worst, 0 when not paced. */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    private class CountingSink implements SampleSink {
+        final SampleSink sink;
+
+        CountingSink(SampleSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            sampleCount++;
+            sink.onSample(timestampNanos, sensorType, x, y, z);
+        }
+
+        @Override
+        public void onBatchEnd() {
+            sink.onBatchEnd();
+        }
+    }
+
+    /** Holds every sample back until its timestamp, relative to the first one, is due. */
+    private class PacingSink extends CountingSink {
+        private final long startNanos;
+        private long firstTimestampNanos;
+
+        PacingSink(SampleSink sink, long startNanos) {
+            super(sink);
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            if (sampleCount == 0) {
+                firstTimestampNanos = timestampNanos;
+            }
+            long dueNanos = startNanos + (long) ((timestampNanos - firstTimestampNanos) / speed);
+            long now = System.nanoTime();
+            while (now < dueNanos) {
+                LockSupport.parkNanos(dueNanos - now);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new Interrupted();
+                }
+                now = System.nanoTime();
+            }
+            maxLagNanos = Math.max(maxLagNanos, now - dueNanos);
+            super.onSample(timestampNanos, sensorType, x, y, z);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.phonesensorreader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer ring buffer of primitive sample records.
+ *
+ * The sensor callback thread calls {@link #offer} and a single consumer thread calls
+ * {@link #drain}. Neither side locks or allocates; when the buffer is full the new sample
+ * is dropped and counted as an overrun so the producer never blocks.
+ */
+public class SampleRingBuffer {
+    private final int capacity;
+    private final int mask;
+    private final long[] timestamps;
+    private final long[] enqueueTimes;
+    private final int[] sensorTypes;
+    private final float[] values;
+
+    // Next slot to write, only advanced by the producer
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to read, only advanced by the consumer
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    // Producer-local copy of tail, refreshed only when the buffer looks full
+    private long cachedTail;
+    private long oldestEnqueueTime;
+
+    public SampleRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.enqueueTimes = new long[capacity];
+        this.sensorTypes = new int[capacity];
+        this.values = new float[capacity * 3];
+    }
+
+    /** Producer side. Returns false and counts an overrun if the buffer is full. */
+    public boolean offer(long timestampNanos, int sensorType, float x, float y, float z) {
+        long index = head.get();
+        if (index - cachedTail >= capacity) {
+            cachedTail = tail.get();
+            if (index - cachedTail >= capacity) {
+                overruns.lazySet(overruns.get() + 1);
+                return false;
+            }
+        }
+        int slot = (int) index & mask;
+        timestamps[slot] = timestampNanos;
+        enqueueTimes[slot] = System.nanoTime();
+        sensorTypes[slot] = sensorType;
+        values[slot * 3] = x;
+        values[slot * 3 + 1] = y;
+        values[slot * 3 + 2] = z;
+        head.lazySet(index + 1); // publishes the slot to the consumer
+        return true;
+    }
+
+    /**
+     * Consumer side. Delivers up to {@code maxBatch} samples in FIFO order, then calls
+     * {@link SampleSink#onBatchEnd()} if anything was delivered. Returns the batch size.
+     */
+    public int drain(SampleSink sink, int maxBatch) {
+        long start = tail.get();
+        long available = head.get() - start;
+        int count = (int) Math.min(available, maxBatch);
+        if (count <= 0) {
+            return 0;
+        }
+        oldestEnqueueTime = enqueueTimes[(int) start & mask];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (start + i) & mask;
+            sink.onSample(timestamps[slot], sensorTypes[slot],
+                    values[slot * 3], values[slot * 3 + 1], values[slot * 3 + 2]);
+        }
+        tail.lazySet(start + count); // frees the slots for the producer
+        sink.onBatchEnd();
+        return count;
+    }
+
+    /** Consumer side. {@link System#nanoTime()} at which the oldest sample of the last batch was offered. */
+    public long getOldestEnqueueTime() {
+        return oldestEnqueueTime;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Number of samples waiting to be drained. Approximate while both sides are running. */
+    public int size() {
+        long size = head.get() - tail.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public long getOverrunCount() {
+        return overruns.get();
+    }
+
+    public long getOfferedCount() {
+        return head.get();
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.phonesensorreader;
+
+/**
+ * Receives primitive sensor samples. Implementations must not retain references to
+ * caller-owned arrays, so producers can deliver samples without allocating.
+ */
+public interface SampleSink {
+    void onSample(long timestampNanos, int sensorType, float x, float y, float z);
+
+    /** Called after a batch of samples has been delivered. */
+    default void onBatchEnd() {
+    }
+}
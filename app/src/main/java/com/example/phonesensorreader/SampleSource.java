@@ -0,0 +1,13 @@
+package com.example.phonesensorreader;
+
+import java.io.IOException;
+
+/**
+ * A finite stream of sensor samples that can be pushed through a {@link SampleSink}, such as
+ * a recorded session or a synthetic signal. Live sensors reach the pipeline through
+ * {@link SampleRingBuffer} and {@link SampleConsumer} instead.
+ */
+public interface SampleSource {
+    /** Delivers every sample in timestamp order, with a batch end after each batch. */
+    void forEach(SampleSink sink) throws IOException;
+}
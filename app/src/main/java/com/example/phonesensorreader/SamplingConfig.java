@@ -0,0 +1,69 @@
+package com.example.phonesensorreader;
+
+/**
+ * Per-sensor sampling rates and the hardware batching latency used when registering sensors.
+ */
+public class SamplingConfig {
+    /** Rate value meaning "as fast as the sensor can deliver". */
+    public static final double RATE_DEVICE_MAX = -1;
+
+    public static final double DEFAULT_RATE_HZ = 10;
+    public static final int DEFAULT_MAX_REPORT_LATENCY_US = 1_000_000;
+
+    private final double accelerometerRateHz;
+    private final double gyroscopeRateHz;
+    private final int maxReportLatencyUs;
+
+    public SamplingConfig(double accelerometerRateHz, double gyroscopeRateHz, int maxReportLatencyUs) {
+        this.accelerometerRateHz = accelerometerRateHz;
+        this.gyroscopeRateHz = gyroscopeRateHz;
+        this.maxReportLatencyUs = Math.max(0, maxReportLatencyUs);
+    }
+
+    public static SamplingConfig defaults() {
+        return new SamplingConfig(DEFAULT_RATE_HZ, DEFAULT_RATE_HZ, DEFAULT_MAX_REPORT_LATENCY_US);
+    }
+
+    public double getAccelerometerRateHz() {
+        return accelerometerRateHz;
+    }
+
+    public double getGyroscopeRateHz() {
+        return gyroscopeRateHz;
+    }
+
+    public int getMaxReportLatencyUs() {
+        return maxReportLatencyUs;
+    }
+
+    /**
+     * Sampling period to request from the sensor, clamped to its minimum delay. A sensor
+     * minimum delay of zero means it is not a streaming sensor and the period is used as is.
+     */
+    public static int samplingPeriodUs(double rateHz, int sensorMinDelayUs) {
+        if (rateHz <= 0) {
+            return Math.max(0, sensorMinDelayUs);
+        }
+        int periodUs = (int) Math.round(1_000_000 / rateHz);
+        return Math.max(periodUs, sensorMinDelayUs);
+    }
+
+    /** Effective rate after clamping to the sensor, used to configure the decimator. */
+    public static double effectiveRateHz(double rateHz, int sensorMinDelayUs) {
+        int periodUs = samplingPeriodUs(rateHz, sensorMinDelayUs);
+        return periodUs > 0 ? 1_000_000.0 / periodUs : 0;
+    }
+
+    /**
+     * Batching latency that fits in the sensor FIFO at the given period, so the hub does not
+     * drop events while the application processor sleeps. Zero disables batching.
+     */
+    public static int maxReportLatencyUs(int requestedLatencyUs, int samplingPeriodUs, int fifoMaxEventCount) {
+        if (requestedLatencyUs <= 0 || fifoMaxEventCount <= 0 || samplingPeriodUs <= 0) {
+            return 0;
+        }
+        // Leave some headroom because the FIFO may be shared with other sensors
+        long fifoLatencyUs = (long) samplingPeriodUs * fifoMaxEventCount / 2;
+        return (int) Math.min(requestedLatencyUs, fifoLatencyUs);
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.phonesensorreader;
+
+/**
+ * Complementary filter fusing accelerometer and gyroscope samples into orientation and
+ * gravity-free acceleration.
+ *
+ * The orientation quaternion is integrated from the gyroscope, and at every accelerometer
+ * sample it is pulled towards the measured gravity direction with a time constant of
+ * {@code timeConstantSeconds} (the explicit complementary filter of Mahony et al. with a
+ * proportional term only). Samples close to 1 g get the full correction, samples far from it
+ * (steps, impacts) progressively less, so gravity is not confused with motion.
+ *
+ * The two sensors are not synchronized and may arrive in separate batches, so accelerometer
+ * samples wait until a gyroscope sample at or after their timestamp is seen. The orientation
+ * is then integrated up to exactly that timestamp using the gyroscope rate interpolated
+ * between the surrounding samples. A sample that waited {@code maxGyroWaitNanos} of
+ * accelerometer time, or that no longer fits the pending buffer, is processed with the last
+ * gyroscope rate held instead, which also covers devices without a gyroscope.
+ *
+ * One {@link FusedMotion} is emitted per accelerometer sample. All state is preallocated, so
+ * the steady state allocates nothing. Not thread safe, meant to run on the sample thread.
+ */
+public class SensorFusion implements SampleSink {
+
+    public interface Listener {
+        /** Called on the sample thread; {@code motion} is reused after the call returns. */
+        void onMotion(FusedMotion motion);
+    }
+
+    public static final double STANDARD_GRAVITY = 9.80665;
+    private static final int PENDING_CAPACITY = 1024;
+    // Longer gyroscope gaps are a pause, not something to interpolate across
+    private static final long MAX_GYRO_GAP_NANOS = 500_000_000L;
+    // Full correction within this fraction of 1 g, none beyond GRAVITY_REJECT
+    private static final double GRAVITY_TRUST = 0.1;
+    private static final double GRAVITY_REJECT = 0.5;
+
+    private final int accelerometerType;
+    private final int gyroscopeType;
+    private final double gain;
+    private long maxGyroWaitNanos;
+    private final Listener listener;
+    private final FusedMotion motion = new FusedMotion();
+
+    // Accelerometer samples waiting for the gyroscope to pass them
+    private final long[] pendingTimestamps = new long[PENDING_CAPACITY];
+    private final float[][] pendingValues = new float[FusedMotion.AXES][PENDING_CAPACITY];
+    private int pendingStart;
+    private int pendingSize;
+    private long newestAccelerometerTimestamp;
+
+    private boolean initialized;
+    // Orientation at orientationTimestamp, rotating device to world coordinates
+    private double qw = 1;
+    private double qx;
+    private double qy;
+    private double qz;
+    private long orientationTimestamp;
+    private long lastCorrectionTimestamp;
+
+    private boolean hasGyroscope;
+    private long lastGyroTimestamp;
+    private double lastGyroX;
+    private double lastGyroY;
+    private double lastGyroZ;
+
+    private long motionCount;
+    private long heldRateCount;
+
+    /**
+     * @param timeConstantSeconds how quickly the accelerometer corrects gyroscope drift;
+     *                            longer trusts the gyroscope more
+     * @param maxGyroWaitNanos    how far the accelerometer may run ahead of the gyroscope, at
+     *                            least the sensors' maximum report latency
+     */
+    public SensorFusion(int accelerometerType, int gyroscopeType, double timeConstantSeconds, long maxGyroWaitNanos,
+                        Listener listener) {
+        if (timeConstantSeconds <= 0 || maxGyroWaitNanos < 0) {
+            throw new IllegalArgumentException("Invalid fusion: timeConstant=" + timeConstantSeconds
+                    + "s maxGyroWait=" + maxGyroWaitNanos + "ns");
+        }
+        this.accelerometerType = accelerometerType;
+        this.gyroscopeType = gyroscopeType;
+        this.gain = 1 / timeConstantSeconds;
+        this.maxGyroWaitNanos = maxGyroWaitNanos;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        if (sensorType == accelerometerType) {
+            onAccelerometer(timestampNanos, x, y, z);
+        } else if (sensorType == gyroscopeType) {
+            onGyroscope(timestampNanos, x, y, z);
+        }
+    }
+
+    private void onAccelerometer(long timestampNanos, float x, float y, float z) {
+        if (pendingSize == PENDING_CAPACITY) {
+            releaseOldestWithHeldRate();
+        }
+        int index = pendingIndex(pendingSize++);
+        pendingTimestamps[index] = timestampNanos;
+        pendingValues[0][index] = x;
+        pendingValues[1][index] = y;
+        pendingValues[2][index] = z;
+        newestAccelerometerTimestamp = Math.max(newestAccelerometerTimestamp, timestampNanos);
+        // Arrived after the gyroscope already passed it
+        while (pendingSize > 0 && hasGyroscope && pendingTimestamps[pendingStart] <= lastGyroTimestamp) {
+            releaseOldest();
+        }
+        while (pendingSize > 0 && pendingTimestamps[pendingStart] < newestAccelerometerTimestamp - maxGyroWaitNanos) {
+            releaseOldestWithHeldRate();
+        }
+    }
+
+    private void onGyroscope(long timestampNanos, double x, double y, double z) {
+        boolean interpolate = hasGyroscope && timestampNanos - lastGyroTimestamp <= MAX_GYRO_GAP_NANOS;
+        if (hasGyroscope && timestampNanos <= lastGyroTimestamp) {
+            return; // Out of order
+        }
+        if (!interpolate) {
+            // First sample, or after a pause: hold this rate back to the previous orientation
+            lastGyroTimestamp = timestampNanos;
+            lastGyroX = x;
+            lastGyroY = y;
+            lastGyroZ = z;
+            hasGyroscope = true;
+        }
+        long previousTimestamp = lastGyroTimestamp;
+        double span = Math.max(1, timestampNanos - previousTimestamp);
+        while (pendingSize > 0 && pendingTimestamps[pendingStart] <= timestampNanos) {
+            long sampleTimestamp = pendingTimestamps[pendingStart];
+            integrateInterpolated(sampleTimestamp, previousTimestamp, span, x, y, z);
+            releaseOldest();
+        }
+        integrateInterpolated(timestampNanos, previousTimestamp, span, x, y, z);
+        lastGyroTimestamp = timestampNanos;
+        lastGyroX = x;
+        lastGyroY = y;
+        lastGyroZ = z;
+    }
+
+    /**
+     * Integrates to {@code toTimestamp} with the rate at the middle of the step, interpolated
+     * between the last gyroscope sample and the one at {@code previousTimestamp + span}.
+     */
+    private void integrateInterpolated(long toTimestamp, long previousTimestamp, double span,
+                                       double x, double y, double z) {
+        if (!initialized || toTimestamp <= orientationTimestamp) {
+            return;
+        }
+        double middle = (orientationTimestamp + toTimestamp) / 2.0;
+        double t = Math.max(0, Math.min(1, (middle - previousTimestamp) / span));
+        integrate(toTimestamp,
+                lastGyroX + (x - lastGyroX) * t,
+                lastGyroY + (y - lastGyroY) * t,
+                lastGyroZ + (z - lastGyroZ) * t);
+    }
+
+    private void integrate(long toTimestamp, double rateX, double rateY, double rateZ) {
+        if (!initialized || toTimestamp <= orientationTimestamp) {
+            return;
+        }
+        double seconds = Math.min(toTimestamp - orientationTimestamp, MAX_GYRO_GAP_NANOS) / 1e9;
+        rotate(rateX * seconds, rateY * seconds, rateZ * seconds);
+        orientationTimestamp = toTimestamp;
+    }
+
+    private void releaseOldestWithHeldRate() {
+        long timestamp = pendingTimestamps[pendingStart];
+        if (hasGyroscope && timestamp - lastGyroTimestamp <= MAX_GYRO_GAP_NANOS) {
+            integrate(timestamp, lastGyroX, lastGyroY, lastGyroZ);
+        } else {
+            integrate(timestamp, 0, 0, 0);
+        }
+        heldRateCount++;
+        releaseOldest();
+    }
+
+    /**
+     * Changes how far the accelerometer may run ahead of the gyroscope when the sensors are
+     * registered again with another report latency, keeping the orientation estimate.
+     */
+    public void setMaxGyroWaitNanos(long maxGyroWaitNanos) {
+        if (maxGyroWaitNanos < 0) {
+            throw new IllegalArgumentException("Invalid fusion: maxGyroWait=" + maxGyroWaitNanos + "ns");
+        }
+        this.maxGyroWaitNanos = maxGyroWaitNanos;
+    }
+
+    /** Processes every waiting accelerometer sample, e.g. when the stream ends. */
+    public void flush() {
+        while (pendingSize > 0) {
+            releaseOldestWithHeldRate();
+        }
+    }
+
+    private int pendingIndex(int i) {
+        int index = pendingStart + i;
+        return index >= PENDING_CAPACITY ? index - PENDING_CAPACITY : index;
+    }
+
+    private void releaseOldest() {
+        int index = pendingStart;
+        pendingStart = pendingIndex(1);
+        pendingSize--;
+        correct(pendingTimestamps[index], pendingValues[0][index], pendingValues[1][index], pendingValues[2][index]);
+    }
+
+    /** Applies the accelerometer correction at {@code timestampNanos} and emits the motion. */
+    private void correct(long timestampNanos, double ax, double ay, double az) {
+        double norm = Math.sqrt(ax * ax + ay * ay + az * az);
+        if (norm == 0) {
+            return;
+        }
+        double nx = ax / norm;
+        double ny = ay / norm;
+        double nz = az / norm;
+        if (!initialized) {
+            // Rotate the measured up direction onto world Z, heading is arbitrary
+            initialized = true;
+            if (nz < -0.999999) {
+                qw = 0;
+                qx = 1;
+                qy = 0;
+                qz = 0;
+            } else {
+                qw = 1 + nz;
+                qx = ny;
+                qy = -nx;
+                qz = 0;
+                normalize();
+            }
+            orientationTimestamp = timestampNanos;
+            lastCorrectionTimestamp = timestampNanos;
+        } else {
+            // Late samples are corrected at the current orientation, at most one gyroscope period off
+            double seconds = Math.max(0, Math.min(timestampNanos - lastCorrectionTimestamp, MAX_GYRO_GAP_NANOS)) / 1e9;
+            lastCorrectionTimestamp = Math.max(lastCorrectionTimestamp, timestampNanos);
+            double deviation = Math.abs(norm - STANDARD_GRAVITY) / STANDARD_GRAVITY;
+            double trust = deviation <= GRAVITY_TRUST ? 1
+                    : Math.max(0, (GRAVITY_REJECT - deviation) / (GRAVITY_REJECT - GRAVITY_TRUST));
+            double step = gain * trust * seconds;
+            if (step > 0) {
+                // Error between measured and estimated up, in device coordinates
+                double ux = 2 * (qx * qz - qw * qy);
+                double uy = 2 * (qy * qz + qw * qx);
+                double uz = 1 - 2 * (qx * qx + qy * qy);
+                rotate((ny * uz - nz * uy) * step, (nz * ux - nx * uz) * step, (nx * uy - ny * ux) * step);
+            }
+        }
+        emit(timestampNanos, ax, ay, az);
+    }
+
+    private void emit(long timestampNanos, double ax, double ay, double az) {
+        double ux = 2 * (qx * qz - qw * qy);
+        double uy = 2 * (qy * qz + qw * qx);
+        double uz = 1 - 2 * (qx * qx + qy * qy);
+        motion.timestampNanos = timestampNanos;
+        motion.qw = qw;
+        motion.qx = qx;
+        motion.qy = qy;
+        motion.qz = qz;
+        motion.gravity[0] = ux * STANDARD_GRAVITY;
+        motion.gravity[1] = uy * STANDARD_GRAVITY;
+        motion.gravity[2] = uz * STANDARD_GRAVITY;
+        double lx = ax - motion.gravity[0];
+        double ly = ay - motion.gravity[1];
+        double lz = az - motion.gravity[2];
+        motion.linearAcceleration[0] = lx;
+        motion.linearAcceleration[1] = ly;
+        motion.linearAcceleration[2] = lz;
+        // v + 2w(q x v) + 2q x (q x v)
+        double cx = qy * lz - qz * ly;
+        double cy = qz * lx - qx * lz;
+        double cz = qx * ly - qy * lx;
+        motion.worldLinearAcceleration[0] = lx + 2 * (qw * cx + qy * cz - qz * cy);
+        motion.worldLinearAcceleration[1] = ly + 2 * (qw * cy + qz * cx - qx * cz);
+        motion.worldLinearAcceleration[2] = lz + 2 * (qw * cz + qx * cy - qy * cx);
+        motionCount++;
+        listener.onMotion(motion);
+    }
+
+    /** Applies a rotation of {@code (rx, ry, rz)} radians about device axes. */
+    private void rotate(double rx, double ry, double rz) {
+        double angle = Math.sqrt(rx * rx + ry * ry + rz * rz);
+        if (angle == 0) {
+            return;
+        }
+        double half = angle / 2;
+        double s = Math.sin(half) / angle;
+        double dw = Math.cos(half);
+        double dx = rx * s;
+        double dy = ry * s;
+        double dz = rz * s;
+        double w = qw * dw - qx * dx - qy * dy - qz * dz;
+        double x = qw * dx + qx * dw + qy * dz - qz * dy;
+        double y = qw * dy - qx * dz + qy * dw + qz * dx;
+        double z = qw * dz + qx * dy - qy * dx + qz * dw;
+        qw = w;
+        qx = x;
+        qy = y;
+        qz = z;
+        normalize();
+    }
+
+    private void normalize() {
+        double norm = Math.sqrt(qw * qw + qx * qx + qy * qy + qz * qz);
+        qw /= norm;
+        qx /= norm;
+        qy /= norm;
+        qz /= norm;
+    }
+
+    public long getMotionCount() {
+        return motionCount;
+    }
+
+    /** Accelerometer samples processed without a gyroscope sample after them. */
+    public long getHeldRateCount() {
+        return heldRateCount;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The processing core of a recording session, independent of where the samples come from:
+ * running statistics, rolling statistics, feature windows, sensor fusion, the cascade
+ * classifier and the prompts for the LLM.
+ *
+ * {@link PhoneSensorService} feeds it live sensor samples on its consumer thread, a
+ * {@link SampleReplayer} feeds it a recorded or synthetic {@link SampleSource}.
+ * {@link #onSample} must be called from a single thread; the prompt methods may be called
+ * from any thread.
+ */
+public class SensorPipeline implements SampleSink {
+    public static final double WINDOW_SECONDS = 2.56;
+    public static final double WINDOW_OVERLAP = 0.5;
+    private static final double FUSION_TIME_CONSTANT_SECONDS = 1;
+    // Estimated prompt tokens, leaves most of a 2048 token context for the server's own template
+    private static final int PROMPT_TOKEN_BUDGET = 512;
+    // Windows per sensor the prompts can choose from
+    private static final int PROMPT_WINDOW_HISTORY = 4;
+
+    // Gravity-free acceleration in world coordinates, from SensorFusion
+    public static final String[] LINEAR_CHANNEL_NAMES = {"LIN_X", "LIN_Y", "LIN_Z"};
+
+    public interface Listener {
+        /** Called on the sample thread for every window the classifier is confident about. */
+        void onPrediction(ActivityPrediction prediction);
+    }
+
+    private final SensorRegistry registry;
+    @Nullable
+    private final CascadeClassifier classifier;
+    private final Listener listener;
+
+    // One channel per sensor axis, laid out by the registry
+    private final SensorStatistics statistics;
+    private final ChannelAccumulator channelAccumulator;
+    private final SensorStatistics linearStatistics;
+    // Per second over the last ten minutes and per minute over the last twelve hours
+    private final RollingStatistics secondStatistics;
+    private final RollingStatistics minuteStatistics;
+    // Rates set by configure, possibly on another thread, applied on the sample thread
+    @Nullable
+    private volatile Configuration pendingConfiguration;
+    // Only the accelerometer and gyroscope are windowed, the other entries are null
+    private final WindowFeatureExtractor[] windowExtractors;
+    @Nullable
+    private volatile SensorFusion sensorFusion;
+    // Recent closed windows per sensor and the prompts built from them, guarded by this
+    private final WindowHistory accelerometerWindows = new WindowHistory(PROMPT_WINDOW_HISTORY);
+    private final WindowHistory gyroscopeWindows = new WindowHistory(PROMPT_WINDOW_HISTORY);
+    private final PromptBuilder promptBuilder;
+    // Set when the classifier left the latest accelerometer window to the LLM, guarded by this
+    private boolean escalationPending;
+    private long windowCount;
+    private long sampleCount;
+
+    /** @param classifier answers confident windows, null to leave every window to the LLM */
+    public SensorPipeline(SensorRegistry registry, @Nullable CascadeClassifier classifier, Listener listener) {
+        this.registry = registry;
+        this.classifier = classifier;
+        this.listener = listener;
+        statistics = new SensorStatistics(registry.getChannelCount());
+        channelAccumulator = new ChannelAccumulator(registry, statistics);
+        linearStatistics = new SensorStatistics(LINEAR_CHANNEL_NAMES.length);
+        secondStatistics = new RollingStatistics(registry, TimeUnit.SECONDS.toNanos(1), 600);
+        minuteStatistics = new RollingStatistics(registry, TimeUnit.MINUTES.toNanos(1), 720);
+        windowExtractors = new WindowFeatureExtractor[registry.size()];
+        promptBuilder = new PromptBuilder(registry, PROMPT_TOKEN_BUDGET);
+    }
+
+    private static final class Configuration {
+        final double[] windowRatesHz;
+        final long maxGyroWaitNanos;
+
+        Configuration(double[] windowRatesHz, long maxGyroWaitNanos) {
+            this.windowRatesHz = windowRatesHz.clone();
+            this.maxGyroWaitNanos = maxGyroWaitNanos;
+        }
+    }
+
+    /**
+     * Sets the sample rates the feature windows and fusion expect, from the next sample on.
+     *
+     * Sensors whose rate is unchanged keep their open windows and fusion keeps its orientation,
+     * so the sensors can be registered again, e.g. by the duty cycle, without losing state. A
+     * sensor that changes rate starts a new window. One that stops loses its recent windows, so
+     * the classifier and prompts don't go on reading them.
+     *
+     * @param windowRatesHz per registry index, the rate samples arrive at, 0 for absent sensors
+     * @param maxGyroWaitNanos how long fusion holds an accelerometer sample for the gyroscope
+     */
+    public void configure(double[] windowRatesHz, long maxGyroWaitNanos) {
+        pendingConfiguration = new Configuration(windowRatesHz, maxGyroWaitNanos);
+    }
+
+    /** Applies the latest configure call on the sample thread. */
+    private void applyConfiguration() {
+        Configuration configuration = pendingConfiguration;
+        if (configuration == null) {
+            return;
+        }
+        pendingConfiguration = null;
+        for (int index = 0; index < registry.size(); index++) {
+            int sensorType = registry.getSpec(index).getSensorType();
+            double rateHz = configuration.windowRatesHz[index];
+            if (sensorType != Sensor.TYPE_ACCELEROMETER && sensorType != Sensor.TYPE_GYROSCOPE) {
+                continue;
+            }
+            WindowFeatureExtractor current = windowExtractors[index];
+            if (rateHz <= 0) {
+                if (current != null && sensorType == Sensor.TYPE_GYROSCOPE) {
+                    synchronized (this) {
+                        gyroscopeWindows.clear();
+                    }
+                }
+                windowExtractors[index] = null;
+            } else if (current == null || current.getSampleRateHz() != rateHz) {
+                windowExtractors[index] = new WindowFeatureExtractor(sensorType,
+                        rateHz, WINDOW_SECONDS, WINDOW_OVERLAP, this::onWindowFeatures);
+            }
+        }
+        SensorFusion fusion = sensorFusion;
+        if (fusion == null) {
+            sensorFusion = new SensorFusion(Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+                    FUSION_TIME_CONSTANT_SECONDS, configuration.maxGyroWaitNanos, this::onFusedMotion);
+        } else {
+            fusion.setMaxGyroWaitNanos(configuration.maxGyroWaitNanos);
+        }
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        if (pendingConfiguration != null) {
+            applyConfiguration();
+        }
+        sampleCount++;
+        channelAccumulator.onSample(timestampNanos, sensorType, x, y, z);
+        secondStatistics.onSample(timestampNanos, sensorType, x, y, z);
+        minuteStatistics.onSample(timestampNanos, sensorType, x, y, z);
+        int index = registry.indexOf(sensorType);
+        WindowFeatureExtractor windows = index < 0 ? null : windowExtractors[index];
+        if (windows != null) {
+            windows.onSample(timestampNanos, sensorType, x, y, z);
+        }
+        SensorFusion fusion = sensorFusion;
+        if (fusion != null) {
+            fusion.onSample(timestampNanos, sensorType, x, y, z);
+        }
+    }
+
+    /** Processes the samples fusion still holds, at the end of a session. */
+    public void finish() {
+        SensorFusion fusion = sensorFusion;
+        if (fusion != null) {
+            fusion.flush();
+        }
+    }
+
+    private void onFusedMotion(FusedMotion motion) {
+        for (int axis = 0; axis < LINEAR_CHANNEL_NAMES.length; axis++) {
+            linearStatistics.add(axis, motion.getWorldLinearAcceleration(axis));
+        }
+    }
+
+    /**
+     * Runs on the sample thread each time a window closes. Accelerometer windows are
+     * classified right away, those the classifier is unsure about wait for the inference loop.
+     */
+    private void onWindowFeatures(WindowFeatures features) {
+        ActivityPrediction prediction = null;
+        synchronized (this) {
+            windowCount++;
+            if (features.getSensorType() != Sensor.TYPE_ACCELEROMETER) {
+                gyroscopeWindows.add(features);
+                return;
+            }
+            accelerometerWindows.add(features);
+            if (classifier != null) {
+                prediction = classifier.classify(accelerometerWindows.get(0),
+                        gyroscopeWindows.size() > 0 ? gyroscopeWindows.get(0) : null);
+            }
+            escalationPending = prediction == null;
+        }
+        if (prediction != null) {
+            listener.onPrediction(prediction);
+        }
+    }
+
+    /** The classification prompt for the latest window if the classifier escalated it, otherwise null. */
+    @Nullable
+    public synchronized String nextInferencePrompt() {
+        if (!escalationPending) {
+            return null;
+        }
+        escalationPending = false;
+        return promptBuilder.buildClassificationPrompt(accelerometerWindows, gyroscopeWindows);
+    }
+
+    /**
+     * Like {@link #nextInferencePrompt()}, with the {@link InferenceCache} key of the latest
+     * window so a window like one already answered can skip the model.
+     */
+    @Nullable
+    public synchronized InferenceLoop.Request nextInferenceRequest() {
+        if (!escalationPending) {
+            return null;
+        }
+        long key = InferenceCache.keyOf(accelerometerWindows.get(0),
+                gyroscopeWindows.size() > 0 ? gyroscopeWindows.get(0) : null);
+        return new InferenceLoop.Request(nextInferencePrompt(), key);
+    }
+
+    /** Prompt summarizing the whole session, see {@link PromptBuilder#buildSummaryPrompt}. */
+    public synchronized String buildSummaryPrompt() {
+        return promptBuilder.buildSummaryPrompt(statistics, linearStatistics, accelerometerWindows, gyroscopeWindows);
+    }
+
+    /** Feature windows included in the last prompt built. */
+    public synchronized int getLastPromptWindowCount() {
+        return promptBuilder.getLastWindowCount();
+    }
+
+    public SensorRegistry getRegistry() {
+        return registry;
+    }
+
+    /** Running statistics of every channel, read on the sample thread or after it stopped. */
+    public SensorStatistics getStatistics() {
+        return statistics;
+    }
+
+    public SensorStatistics getLinearStatistics() {
+        return linearStatistics;
+    }
+
+    /** The finest rolling statistics that reach {@code horizonNanos} back. */
+    public RollingStatistics getRollingStatistics(long horizonNanos) {
+        return horizonNanos <= secondStatistics.getMaxHorizonNanos() ? secondStatistics : minuteStatistics;
+    }
+
+    @Nullable
+    public SensorFusion getSensorFusion() {
+        return sensorFusion;
+    }
+
+    @Nullable
+    public CascadeClassifier getClassifier() {
+        return classifier;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Accelerometer and gyroscope windows closed so far. */
+    public synchronized long getWindowCount() {
+        return windowCount;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The sensors the service records and how their values map to statistics channels.
+ *
+ * Each registered sensor gets a dense index in registration order and a run of consecutive
+ * channels, one per dimension. Looking up a sensor type is one array read in a table indexed
+ * by the type, so dispatching an event costs the same however many sensors are registered.
+ * Register everything before sharing the registry between threads.
+ */
+public class SensorRegistry {
+    private final List<SensorSpec> specs = new ArrayList<>();
+    private final List<String> channelNames = new ArrayList<>();
+    private int[] indexByType = new int[0];
+    private int[] firstChannel = new int[0];
+    private int[] dimensions = new int[0];
+
+    /** Accelerometer and gyroscope for activity recognition, plus context sensors at low rates. */
+    public static SensorRegistry createDefault() {
+        SensorRegistry registry = new SensorRegistry();
+        registry.register(new SensorSpec(Sensor.TYPE_ACCELEROMETER, "ACC", 3, "m/s²", SamplingConfig.DEFAULT_RATE_HZ));
+        registry.register(new SensorSpec(Sensor.TYPE_GYROSCOPE, "GYRO", 3, "rad/s", SamplingConfig.DEFAULT_RATE_HZ));
+        registry.register(new SensorSpec(Sensor.TYPE_MAGNETIC_FIELD, "MAG", 3, "µT", SamplingConfig.DEFAULT_RATE_HZ));
+        registry.register(new SensorSpec(Sensor.TYPE_PRESSURE, "PRESSURE", 1, "hPa", 1));
+        return registry;
+    }
+
+    /** Adds {@code spec} and returns its index. */
+    public int register(SensorSpec spec) {
+        int type = spec.getSensorType();
+        if (indexOf(type) >= 0) {
+            throw new IllegalArgumentException("Sensor type " + type + " is already registered as " + getSpec(indexOf(type)));
+        }
+        if (type >= indexByType.length) {
+            int oldLength = indexByType.length;
+            indexByType = Arrays.copyOf(indexByType, type + 1);
+            Arrays.fill(indexByType, oldLength, indexByType.length, -1);
+        }
+        int index = specs.size();
+        specs.add(spec);
+        indexByType[type] = index;
+        firstChannel = Arrays.copyOf(firstChannel, index + 1);
+        dimensions = Arrays.copyOf(dimensions, index + 1);
+        firstChannel[index] = channelNames.size();
+        dimensions[index] = spec.getDimensions();
+        for (int axis = 0; axis < spec.getDimensions(); axis++) {
+            channelNames.add(spec.getChannelName(axis));
+        }
+        return index;
+    }
+
+    /** Index of the sensor of {@code sensorType}, -1 if it is not registered. */
+    public int indexOf(int sensorType) {
+        return sensorType >= 0 && sensorType < indexByType.length ? indexByType[sensorType] : -1;
+    }
+
+    public int size() {
+        return specs.size();
+    }
+
+    public SensorSpec getSpec(int index) {
+        return specs.get(index);
+    }
+
+    public int getFirstChannel(int index) {
+        return firstChannel[index];
+    }
+
+    public int getDimensions(int index) {
+        return dimensions[index];
+    }
+
+    /** Channels of all registered sensors together. */
+    public int getChannelCount() {
+        return channelNames.size();
+    }
+
+    public String getChannelName(int channel) {
+        return channelNames.get(channel);
+    }
+
+    /** Unit of the values of {@code channel}. */
+    public String getChannelUnit(int channel) {
+        for (int index = specs.size() - 1; index >= 0; index--) {
+            if (channel >= firstChannel[index]) {
+                return specs.get(index).getUnit();
+            }
+        }
+        throw new IndexOutOfBoundsException("Channel " + channel);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.phonesensorreader;
+
+/**
+ * Description of one sensor the service can record: its Android sensor type, how many values
+ * each event carries, their unit and the rate to sample it at unless configured otherwise.
+ */
+public final class SensorSpec {
+    private static final char[] AXIS_NAMES = {'X', 'Y', 'Z'};
+
+    private final int sensorType;
+    private final String name;
+    private final int dimensions;
+    private final String unit;
+    private final double defaultRateHz;
+
+    /**
+     * @param name          short upper case name used for channels and in prompts, e.g. "ACC"
+     * @param dimensions    values used per event, 1 to 3
+     * @param defaultRateHz see {@link SamplingConfig}; 0 or less is as fast as the sensor delivers
+     */
+    public SensorSpec(int sensorType, String name, int dimensions, String unit, double defaultRateHz) {
+        if (sensorType < 0 || dimensions < 1 || dimensions > AXIS_NAMES.length) {
+            throw new IllegalArgumentException("Invalid sensor " + name + ": type=" + sensorType
+                    + ", dimensions=" + dimensions);
+        }
+        this.sensorType = sensorType;
+        this.name = name;
+        this.dimensions = dimensions;
+        this.unit = unit;
+        this.defaultRateHz = defaultRateHz;
+    }
+
+    public int getSensorType() {
+        return sensorType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public double getDefaultRateHz() {
+        return defaultRateHz;
+    }
+
+    /** "ACC_X" for three-axis sensors, just the name for scalar ones. */
+    public String getChannelName(int axis) {
+        return dimensions == 1 ? name : name + "_" + AXIS_NAMES[axis];
+    }
+
+    @Override
+    public String toString() {
+        return name + "(type " + sensorType + ", " + dimensions + " x " + unit + ")";
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.phonesensorreader;
+
+/**
+ * Streaming per-channel statistics (count, mean, variance, min, max).
+ *
+ * All state lives in one flat {@code double[]} so {@link #add(int, double)} is O(1) and
+ * allocation free, and memory stays constant no matter how many samples are added.
+ * Mean and variance use Welford's online update, which is numerically stable over long runs.
+ */
+public class SensorStatistics {
+    private static final int COUNT = 0;
+    private static final int MEAN = 1;
+    private static final int M2 = 2;
+    private static final int MIN = 3;
+    private static final int MAX = 4;
+    private static final int STRIDE = 5;
+
+    private final int channelCount;
+    private final double[] state;
+
+    public SensorStatistics(int channelCount) {
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("channelCount must be positive: " + channelCount);
+        }
+        this.channelCount = channelCount;
+        this.state = new double[channelCount * STRIDE];
+        reset();
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public void add(int channel, double value) {
+        int base = channel * STRIDE;
+        double count = state[base + COUNT] + 1;
+        double delta = value - state[base + MEAN];
+        double mean = state[base + MEAN] + delta / count;
+        state[base + COUNT] = count;
+        state[base + MEAN] = mean;
+        state[base + M2] += delta * (value - mean);
+        if (value < state[base + MIN]) state[base + MIN] = value;
+        if (value > state[base + MAX]) state[base + MAX] = value;
+    }
+
+    public long getCount(int channel) {
+        return (long) state[channel * STRIDE + COUNT];
+    }
+
+    public double getMean(int channel) {
+        return getCount(channel) == 0 ? Double.NaN : state[channel * STRIDE + MEAN];
+    }
+
+    /** Population variance, i.e. the sum of squared deviations divided by the count. */
+    public double getVariance(int channel) {
+        int base = channel * STRIDE;
+        double count = state[base + COUNT];
+        return count == 0 ? Double.NaN : state[base + M2] / count;
+    }
+
+    public double getStdDev(int channel) {
+        return Math.sqrt(getVariance(channel));
+    }
+
+    public double getMin(int channel) {
+        return getCount(channel) == 0 ? Double.NaN : state[channel * STRIDE + MIN];
+    }
+
+    public double getMax(int channel) {
+        return getCount(channel) == 0 ? Double.NaN : state[channel * STRIDE + MAX];
+    }
+
+    /**
+     * Adds everything {@code other} accumulated in {@code otherChannel} to {@code channel},
+     * exactly as if its values had been added here (Chan et al. parallel update).
+     */
+    public void merge(int channel, SensorStatistics other, int otherChannel) {
+        int base = channel * STRIDE;
+        int otherBase = otherChannel * STRIDE;
+        double otherCount = other.state[otherBase + COUNT];
+        if (otherCount == 0) {
+            return;
+        }
+        double count = state[base + COUNT];
+        double total = count + otherCount;
+        double delta = other.state[otherBase + MEAN] - state[base + MEAN];
+        state[base + MEAN] += delta * otherCount / total;
+        state[base + M2] += other.state[otherBase + M2] + delta * delta * count * otherCount / total;
+        state[base + COUNT] = total;
+        state[base + MIN] = Math.min(state[base + MIN], other.state[otherBase + MIN]);
+        state[base + MAX] = Math.max(state[base + MAX], other.state[otherBase + MAX]);
+    }
+
+    public void reset(int channel) {
+        int base = channel * STRIDE;
+        state[base + COUNT] = 0;
+        state[base + MEAN] = 0;
+        state[base + M2] = 0;
+        state[base + MIN] = Double.POSITIVE_INFINITY;
+        state[base + MAX] = Double.NEGATIVE_INFINITY;
+    }
+
+    public void reset() {
+        for (int channel = 0; channel < channelCount; channel++) {
+            reset(channel);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.phonesensorreader;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+/** Statistics and feature table of one recorded session, computed by {@link SessionAnalyzer}. */
+public class SessionAnalysis {
+
+    /** One closed feature window, labeled for accelerometer windows when there is a classifier. */
+    public static final class Row {
+        private final WindowFeatures features = new WindowFeatures();
+        private final int closingRecord;
+        @Nullable
+        private ActivityLabel label;
+        private double confidence = Double.NaN;
+
+        Row(WindowFeatures features, int closingRecord) {
+            this.features.copyFrom(features);
+            this.closingRecord = closingRecord;
+        }
+
+        public WindowFeatures getFeatures() {
+            return features;
+        }
+
+        /** Index of the record that closed the window, windows are in this order. */
+        public int getClosingRecord() {
+            return closingRecord;
+        }
+
+        @Nullable
+        public ActivityLabel getLabel() {
+            return label;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        void setClassification(Classification classification) {
+            label = classification.getLabel();
+            confidence = classification.getConfidence();
+        }
+    }
+
+    private final SensorRegistry registry;
+    private final SensorStatistics statistics;
+    private final List<Row> rows;
+    private final int recordCount;
+
+    SessionAnalysis(SensorRegistry registry, SensorStatistics statistics, List<Row> rows, int recordCount) {
+        this.registry = registry;
+        this.statistics = statistics;
+        this.rows = Collections.unmodifiableList(rows);
+        this.recordCount = recordCount;
+    }
+
+    /** Statistics of every channel over the whole session, laid out by the registry. */
+    public SensorStatistics getStatistics() {
+        return statistics;
+    }
+
+    /** Windows of all sensors in the order a live session would have closed them. */
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    public int getRowCount(int sensorType) {
+        int count = 0;
+        for (Row row : rows) {
+            if (row.features.getSensorType() == sensorType) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /** Writes the feature table as CSV with a header line, one line per window. */
+    public void appendCsv(Appendable out) throws IOException {
+        out.append("sensor,start_ns,end_ns,samples");
+        String[] axes = {"x", "y", "z"};
+        String[] names = {"mean", "std", "min", "max", "energy", "zcr", "dominant_hz"};
+        for (String name : names) {
+            for (String axis : axes) {
+                out.append(',').append(name).append('_').append(axis);
+            }
+        }
+        for (double edge : WindowFeatures.BAND_EDGES_HZ) {
+            out.append(",band_").append(Long.toString(Math.round(edge))).append("hz");
+        }
+        out.append(",cadence_spm,sma,label,confidence\n");
+        StringBuilder line = new StringBuilder();
+        for (Row row : rows) {
+            WindowFeatures features = row.features;
+            int index = registry.indexOf(features.getSensorType());
+            line.setLength(0);
+            line.append(index < 0 ? "SENSOR" + features.getSensorType() : registry.getSpec(index).getName())
+                    .append(',').append(features.getStartTimestampNanos())
+                    .append(',').append(features.getEndTimestampNanos())
+                    .append(',').append(features.getSampleCount());
+            appendAxes(line, features::getMean);
+            appendAxes(line, features::getStdDev);
+            appendAxes(line, features::getMin);
+            appendAxes(line, features::getMax);
+            appendAxes(line, features::getEnergy);
+            appendAxes(line, features::getZeroCrossingRate);
+            appendAxes(line, features::getDominantFrequencyHz);
+            for (int band = 0; band < WindowFeatures.BANDS; band++) {
+                line.append(',').append(features.getBandEnergy(band));
+            }
+            line.append(',').append(features.getCadenceStepsPerMinute());
+            line.append(',').append(features.getSignalMagnitudeArea()).append(',');
+            if (row.label != null) {
+                line.append(row.label.name()).append(',').append(row.confidence);
+            } else {
+                line.append(',');
+            }
+            out.append(line).append('\n');
+        }
+    }
+
+    private static void appendAxes(StringBuilder line, IntToDoubleFunction feature) {
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            line.append(',').append(feature.applyAsDouble(axis));
+        }
+    }
+}
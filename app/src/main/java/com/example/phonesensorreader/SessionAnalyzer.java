@@ -0,0 +1,368 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Recomputes the statistics and feature windows of recorded sessions on every core.
+ *
+ * A session is split into chunks of consecutive records that are analyzed in parallel on a
+ * {@link ForkJoinPool} and merged pairwise: statistics with the parallel update of
+ * {@link SensorStatistics#merge}, feature rows in record order. The windows are exactly
+ * those a live {@link WindowFeatureExtractor} would have closed over the whole file. A first
+ * parallel pass counts each sensor's samples and window restarts per chunk, so every chunk
+ * knows where the windows it closes started, even in earlier chunks, and replays just those
+ * samples before its own.
+ */
+public class SessionAnalyzer {
+    public static final int DEFAULT_CHUNK_RECORDS = 1 << 16;
+
+    private final SensorRegistry registry;
+    @Nullable
+    private final ActivityClassifier classifier;
+    private final ForkJoinPool pool;
+    private final int chunkRecords;
+    // The windowed sensors and an extractor of each, for its window length, hop and gap
+    private final int[] windowedTypes;
+    private final double[] windowedRatesHz;
+    private final WindowFeatureExtractor[] prototypes;
+
+    /**
+     * @param windowRatesHz per registry index, the rate the sensor was recorded at, 0 for none;
+     *                      like in {@link SensorPipeline#configure} only the accelerometer and
+     *                      gyroscope are windowed
+     * @param classifier labels accelerometer windows with the latest gyroscope window, may be null
+     */
+    public SessionAnalyzer(SensorRegistry registry, double[] windowRatesHz, @Nullable ActivityClassifier classifier,
+                           ForkJoinPool pool, int chunkRecords) {
+        if (chunkRecords <= 0) {
+            throw new IllegalArgumentException("chunkRecords must be positive: " + chunkRecords);
+        }
+        this.registry = registry;
+        this.classifier = classifier;
+        this.pool = pool;
+        this.chunkRecords = chunkRecords;
+        List<Integer> types = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        for (int index = 0; index < registry.size(); index++) {
+            int sensorType = registry.getSpec(index).getSensorType();
+            if (windowRatesHz[index] > 0
+                    && (sensorType == Sensor.TYPE_ACCELEROMETER || sensorType == Sensor.TYPE_GYROSCOPE)) {
+                types.add(sensorType);
+                rates.add(windowRatesHz[index]);
+            }
+        }
+        windowedTypes = new int[types.size()];
+        windowedRatesHz = new double[types.size()];
+        prototypes = new WindowFeatureExtractor[types.size()];
+        for (int s = 0; s < windowedTypes.length; s++) {
+            windowedTypes[s] = types.get(s);
+            windowedRatesHz[s] = rates.get(s);
+            prototypes[s] = newExtractor(s, features -> { });
+        }
+    }
+
+    private WindowFeatureExtractor newExtractor(int s, WindowFeatureExtractor.FeatureListener listener) {
+        return new WindowFeatureExtractor(windowedTypes[s], windowedRatesHz[s],
+                SensorPipeline.WINDOW_SECONDS, SensorPipeline.WINDOW_OVERLAP, listener);
+    }
+
+    public SessionAnalysis analyze(SessionReader reader) {
+        return pool.invoke(new SessionTask(reader));
+    }
+
+    /** Analyzes the sessions in parallel with each other as well as within each one. */
+    public List<SessionAnalysis> analyze(List<File> files) throws IOException {
+        List<SessionReader> readers = new ArrayList<>();
+        try {
+            for (File file : files) {
+                readers.add(new SessionReader(file));
+            }
+            List<SessionTask> tasks = new ArrayList<>();
+            for (SessionReader reader : readers) {
+                tasks.add(new SessionTask(reader));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+            List<SessionAnalysis> analyses = new ArrayList<>();
+            for (SessionTask task : tasks) {
+                analyses.add(task.join());
+            }
+            return analyses;
+        } finally {
+            for (SessionReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /** Per windowed sensor: its samples in a chunk and where windows restart after a gap. */
+    private static final class ChunkScan {
+        final int[] count;
+        final long[] firstTimestamp;
+        final long[] lastTimestamp;
+        // Position within the chunk's samples of the sensor, -1 if none; a gap before the
+        // chunk's first sample is only known once the previous chunk is scanned
+        final int[] lastRestart;
+
+        ChunkScan(int sensors) {
+            count = new int[sensors];
+            firstTimestamp = new long[sensors];
+            lastTimestamp = new long[sensors];
+            lastRestart = new int[sensors];
+        }
+    }
+
+    /** Where the windows closed in a chunk start: the sensor position to replay from, per windowed sensor. */
+    private static final class ChunkStart {
+        final int[] position;
+        final int[] replayFrom;
+
+        ChunkStart(int sensors) {
+            position = new int[sensors];
+            replayFrom = new int[sensors];
+        }
+    }
+
+    private static final class Partial {
+        final SensorStatistics statistics;
+        final List<SessionAnalysis.Row> rows;
+
+        Partial(SensorStatistics statistics, List<SessionAnalysis.Row> rows) {
+            this.statistics = statistics;
+            this.rows = rows;
+        }
+    }
+
+    private final class SessionTask extends RecursiveTask<SessionAnalysis> {
+        private static final long serialVersionUID = 1L;
+
+        private final SessionReader reader;
+        private final int chunks;
+        private ChunkScan[] scans;
+        private ChunkStart[] starts;
+
+        SessionTask(SessionReader reader) {
+            this.reader = reader;
+            this.chunks = Math.max(1, (reader.getRecordCount() + chunkRecords - 1) / chunkRecords);
+        }
+
+        private int chunkStart(int chunk) {
+            return (int) Math.min(reader.getRecordCount(), (long) chunk * chunkRecords);
+        }
+
+        @Override
+        protected SessionAnalysis compute() {
+            scans = new ChunkScan[chunks];
+            new ScanTask(this, 0, chunks).invoke();
+            starts = resolveStarts();
+            Partial merged = new ChunkTask(this, 0, chunks).invoke();
+            if (classifier != null) {
+                label(merged.rows);
+            }
+            return new SessionAnalysis(registry, merged.statistics, merged.rows, reader.getRecordCount());
+        }
+
+        void scan(int chunk) {
+            ChunkScan scan = new ChunkScan(windowedTypes.length);
+            for (int s = 0; s < windowedTypes.length; s++) {
+                int sensorType = windowedTypes[s];
+                long gapNanos = prototypes[s].getGapNanos();
+                int count = 0;
+                int lastRestart = -1;
+                long previous = 0;
+                for (int i = chunkStart(chunk), end = chunkStart(chunk + 1); i < end; i++) {
+                    if (reader.getSensorType(i) != sensorType) {
+                        continue;
+                    }
+                    long timestamp = reader.getTimestamp(i);
+                    if (count == 0) {
+                        scan.firstTimestamp[s] = timestamp;
+                    } else if (timestamp - previous > gapNanos) {
+                        lastRestart = count;
+                    }
+                    previous = timestamp;
+                    count++;
+                }
+                scan.count[s] = count;
+                scan.lastTimestamp[s] = previous;
+                scan.lastRestart[s] = lastRestart;
+            }
+            scans[chunk] = scan;
+        }
+
+        /** Sequential prefix over the chunk scans, cheap next to the chunks themselves. */
+        private ChunkStart[] resolveStarts() {
+            ChunkStart[] result = new ChunkStart[chunks];
+            for (int s = 0; s < windowedTypes.length; s++) {
+                int length = prototypes[s].getWindowLength();
+                int hop = prototypes[s].getHop();
+                long gapNanos = prototypes[s].getGapNanos();
+                int position = 0;
+                int restart = 0;
+                long previous = 0;
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    if (result[chunk] == null) {
+                        result[chunk] = new ChunkStart(windowedTypes.length);
+                    }
+                    // Windows close every hop samples after a restart once full, so a fresh
+                    // extractor started on that phase closes the same windows
+                    int firstStart = position - length + 1;
+                    int replayFrom = firstStart <= restart ? restart : restart + (firstStart - restart) / hop * hop;
+                    result[chunk].position[s] = position;
+                    result[chunk].replayFrom[s] = replayFrom;
+                    ChunkScan scan = scans[chunk];
+                    if (scan.count[s] == 0) {
+                        continue;
+                    }
+                    if (position > 0 && scan.firstTimestamp[s] - previous > gapNanos) {
+                        restart = position;
+                    }
+                    if (scan.lastRestart[s] >= 0) {
+                        restart = position + scan.lastRestart[s];
+                    }
+                    position += scan.count[s];
+                    previous = scan.lastTimestamp[s];
+                }
+            }
+            return result;
+        }
+
+        Partial analyze(int chunk) {
+            int from = chunkStart(chunk);
+            int to = chunkStart(chunk + 1);
+            SensorStatistics statistics = new SensorStatistics(registry.getChannelCount());
+            ChannelAccumulator accumulator = new ChannelAccumulator(registry, statistics);
+            for (int i = from; i < to; i++) {
+                reader.read(i, accumulator);
+            }
+            List<SessionAnalysis.Row> rows = new ArrayList<>();
+            for (int s = 0; s < windowedTypes.length; s++) {
+                windows(s, from, to, starts[chunk], rows);
+            }
+            if (windowedTypes.length > 1) {
+                rows.sort(Comparator.comparingInt(SessionAnalysis.Row::getClosingRecord));
+            }
+            return new Partial(statistics, rows);
+        }
+
+        /** Adds the windows of sensor {@code s} that close in records {@code [from, to)}. */
+        private void windows(int s, int from, int to, ChunkStart start, List<SessionAnalysis.Row> rows) {
+            int sensorType = windowedTypes[s];
+            // Walk back to the sample the replay starts at
+            int record = from;
+            for (int before = start.position[s] - start.replayFrom[s]; before > 0; ) {
+                record--;
+                if (reader.getSensorType(record) == sensorType) {
+                    before--;
+                }
+            }
+            int firstClosing = from;
+            int[] closing = {0};
+            WindowFeatureExtractor extractor = newExtractor(s, features -> {
+                if (closing[0] >= firstClosing) {
+                    rows.add(new SessionAnalysis.Row(features, closing[0]));
+                }
+            });
+            for (int i = record; i < to; i++) {
+                if (reader.getSensorType(i) == sensorType) {
+                    closing[0] = i;
+                    reader.read(i, extractor);
+                }
+            }
+        }
+    }
+
+    private final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SessionTask session;
+        private final int from;
+        private final int to;
+
+        ScanTask(SessionTask session, int from, int to) {
+            this.session = session;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                session.scan(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScanTask(session, from, middle), new ScanTask(session, middle, to));
+        }
+    }
+
+    private final class ChunkTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final SessionTask session;
+        private final int from;
+        private final int to;
+
+        ChunkTask(SessionTask session, int from, int to) {
+            this.session = session;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from == 1) {
+                return session.analyze(from);
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask right = new ChunkTask(session, middle, to);
+            right.fork();
+            Partial left = new ChunkTask(session, from, middle).compute();
+            return merge(left, right.join());
+        }
+    }
+
+    private Partial merge(Partial left, Partial right) {
+        for (int channel = 0; channel < left.statistics.getChannelCount(); channel++) {
+            left.statistics.merge(channel, right.statistics, channel);
+        }
+        left.rows.addAll(right.rows);
+        return left;
+    }
+
+    /** Labels accelerometer rows as the live cascade would, with the latest gyroscope window. */
+    private void label(List<SessionAnalysis.Row> rows) {
+        WindowFeatures gyroscope = null;
+        for (SessionAnalysis.Row row : rows) {
+            WindowFeatures features = row.getFeatures();
+            if (features.getSensorType() == Sensor.TYPE_GYROSCOPE) {
+                gyroscope = features;
+            } else if (features.getSensorType() == Sensor.TYPE_ACCELEROMETER) {
+                row.setClassification(classifier.classify(features, gyroscope));
+            }
+        }
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getChunkRecords() {
+        return chunkRecords;
+    }
+}
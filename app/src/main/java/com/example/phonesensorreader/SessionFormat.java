@@ -0,0 +1,71 @@
+package com.example.phonesensorreader;
+
+/**
+ * Layout of the binary session files written by {@link SessionRecorder}.
+ *
+ * All values are little-endian. The file starts with a fixed header followed by fixed-width
+ * records; unused space at the end of a pre-sized file is zero filled. A cleanly closed file
+ * ends with a time index: the smallest and largest timestamp of each block of records, so
+ * range queries on interleaved, batched streams only read the blocks that overlap them.
+ *
+ * <pre>
+ * header (64 bytes)
+ *   0  int   magic "PSR1"
+ *   4  short version
+ *   6  short record size
+ *   8  long  session start, wall clock millis
+ *  16  long  committed record count (last checkpoint)
+ *  24  int   flags
+ *  28  int   records per index block, 0 for no index
+ * record (24 bytes)
+ *   0  long  event timestamp, nanoseconds
+ *   8  float x
+ *  12  float y
+ *  16  float z
+ *  20  int   sensor type, written last so a non-zero value marks a complete record
+ * index entry (16 bytes), one per block, right after the last record
+ *   0  long  smallest timestamp in the block
+ *   8  long  largest timestamp in the block
+ * </pre>
+ */
+final class SessionFormat {
+    static final int MAGIC = 0x31525350; // "PSR1" in little-endian byte order
+    static final short VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 24;
+
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_RECORD_SIZE = 6;
+    static final int HEADER_START_TIME = 8;
+    static final int HEADER_COMMITTED_COUNT = 16;
+    static final int HEADER_FLAGS = 24;
+    static final int HEADER_INDEX_BLOCK = 28;
+
+    static final int FLAG_CLOSED = 1;
+    static final int FLAG_UNORDERED = 2;
+
+    static final int RECORD_TIMESTAMP = 0;
+    static final int RECORD_X = 8;
+    static final int RECORD_Y = 12;
+    static final int RECORD_Z = 16;
+    static final int RECORD_SENSOR_TYPE = 20;
+
+    // 24 KiB of records per entry, an hour at 200 Hz indexes in under 12 KiB
+    static final int INDEX_BLOCK_RECORDS = 1024;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    static final String FILE_EXTENSION = ".psr";
+
+    private SessionFormat() {
+    }
+
+    static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    static int indexEntries(int records, int blockRecords) {
+        return (records + blockRecords - 1) / blockRecords;
+    }
+}
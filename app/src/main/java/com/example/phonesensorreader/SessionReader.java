@@ -0,0 +1,236 @@
+package com.example.phonesensorreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a session file written by {@link SessionRecorder}.
+ *
+ * If the recorder did not close the file (process killed, crash), the records written after
+ * the last header checkpoint are recovered by scanning forward while the sensor type marker
+ * of each record is set.
+ *
+ * Range queries binary search time-ordered files. Files with interleaved, batched streams
+ * are not, those use the time index of a cleanly closed file to read only the blocks that
+ * overlap the range, and a full scan otherwise.
+ */
+public class SessionReader implements SampleSource, Closeable {
+    // Same as the live consumer's largest batch
+    static final int REPLAY_BATCH_RECORDS = 256;
+
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final long startTimeMillis;
+    private final int recordCount;
+    private final int recoveredCount;
+    private final boolean closedCleanly;
+    private final boolean ordered;
+    // Records per block and the timestamp span of each, null without a usable index
+    private final int indexBlockRecords;
+    private final long[] blockMinTimestamps;
+    private final long[] blockMaxTimestamps;
+    private int rangeRecordsExamined;
+
+    public SessionReader(File file) throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size < SessionFormat.HEADER_SIZE) {
+                throw new IOException("Not a session file, too short: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(SessionFormat.HEADER_MAGIC) != SessionFormat.MAGIC) {
+                throw new IOException("Not a session file, bad magic: " + file);
+            }
+            if (buffer.getShort(SessionFormat.HEADER_VERSION) != SessionFormat.VERSION
+                    || buffer.getShort(SessionFormat.HEADER_RECORD_SIZE) != SessionFormat.RECORD_SIZE) {
+                throw new IOException("Unsupported session file version: " + file);
+            }
+            startTimeMillis = buffer.getLong(SessionFormat.HEADER_START_TIME);
+            int flags = buffer.getInt(SessionFormat.HEADER_FLAGS);
+            int fileCapacity = (buffer.capacity() - SessionFormat.HEADER_SIZE) / SessionFormat.RECORD_SIZE;
+            int committed = (int) Math.min(buffer.getLong(SessionFormat.HEADER_COMMITTED_COUNT), fileCapacity);
+            closedCleanly = (flags & SessionFormat.FLAG_CLOSED) != 0;
+
+            int count = committed;
+            if (!closedCleanly) {
+                while (count < fileCapacity && sensorTypeAt(count) != 0) {
+                    count++;
+                }
+            }
+            recordCount = count;
+            recoveredCount = count - committed;
+            ordered = (flags & SessionFormat.FLAG_UNORDERED) == 0 && (recoveredCount == 0 || checkOrdered(committed));
+
+            int blockRecords = buffer.getInt(SessionFormat.HEADER_INDEX_BLOCK);
+            int entries = blockRecords > 0 ? SessionFormat.indexEntries(recordCount, blockRecords) : 0;
+            long indexEnd = SessionFormat.recordOffset(recordCount) + (long) entries * SessionFormat.INDEX_ENTRY_SIZE;
+            // close() marks the file before it trims the tail and appends the index, only a file
+            // that ends where the index does has all of it
+            if (closedCleanly && blockRecords > 0 && indexEnd == size) {
+                indexBlockRecords = blockRecords;
+                blockMinTimestamps = new long[entries];
+                blockMaxTimestamps = new long[entries];
+                for (int block = 0; block < entries; block++) {
+                    int offset = SessionFormat.recordOffset(recordCount) + block * SessionFormat.INDEX_ENTRY_SIZE;
+                    blockMinTimestamps[block] = buffer.getLong(offset);
+                    blockMaxTimestamps[block] = buffer.getLong(offset + 8);
+                }
+            } else {
+                indexBlockRecords = 0;
+                blockMinTimestamps = null;
+                blockMaxTimestamps = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private boolean checkOrdered(int from) {
+        for (int i = Math.max(1, from); i < recordCount; i++) {
+            if (getTimestamp(i) < getTimestamp(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int sensorTypeAt(int index) {
+        return buffer.getInt(SessionFormat.recordOffset(index) + SessionFormat.RECORD_SENSOR_TYPE);
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public boolean wasClosedCleanly() {
+        return closedCleanly;
+    }
+
+    /** Records found after the last checkpoint of a file that was not closed cleanly. */
+    public int getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    public long getTimestamp(int index) {
+        return buffer.getLong(SessionFormat.recordOffset(index) + SessionFormat.RECORD_TIMESTAMP);
+    }
+
+    public int getSensorType(int index) {
+        return sensorTypeAt(index);
+    }
+
+    public float getX(int index) {
+        return buffer.getFloat(SessionFormat.recordOffset(index) + SessionFormat.RECORD_X);
+    }
+
+    public float getY(int index) {
+        return buffer.getFloat(SessionFormat.recordOffset(index) + SessionFormat.RECORD_Y);
+    }
+
+    public float getZ(int index) {
+        return buffer.getFloat(SessionFormat.recordOffset(index) + SessionFormat.RECORD_Z);
+    }
+
+    public void read(int index, SampleSink sink) {
+        int offset = SessionFormat.recordOffset(index);
+        sink.onSample(buffer.getLong(offset + SessionFormat.RECORD_TIMESTAMP),
+                buffer.getInt(offset + SessionFormat.RECORD_SENSOR_TYPE),
+                buffer.getFloat(offset + SessionFormat.RECORD_X),
+                buffer.getFloat(offset + SessionFormat.RECORD_Y),
+                buffer.getFloat(offset + SessionFormat.RECORD_Z));
+    }
+
+    /** Delivers records {@code [from, to)} in file order followed by one batch end. */
+    public void read(int from, int to, SampleSink sink) {
+        for (int i = from; i < to; i++) {
+            read(i, sink);
+        }
+        sink.onBatchEnd();
+    }
+
+    /** Delivers every record in batches of {@link #REPLAY_BATCH_RECORDS}. */
+    @Override
+    public void forEach(SampleSink sink) {
+        for (int from = 0; from < recordCount; from += REPLAY_BATCH_RECORDS) {
+            read(from, Math.min(recordCount, from + REPLAY_BATCH_RECORDS), sink);
+        }
+    }
+
+    /** Index of the first record with a timestamp at or after {@code timestampNanos}, for time-ordered files. */
+    public int lowerBound(long timestampNanos) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestampNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Delivers the records with {@code fromNanos <= timestamp < toNanos}. */
+    public void forEachInRange(long fromNanos, long toNanos, SampleSink sink) {
+        rangeRecordsExamined = 0;
+        if (ordered) {
+            int end = lowerBound(toNanos);
+            for (int i = lowerBound(fromNanos); i < end; i++) {
+                read(i, sink);
+            }
+        } else if (blockMinTimestamps != null) {
+            for (int block = 0; block < blockMinTimestamps.length; block++) {
+                if (blockMaxTimestamps[block] >= fromNanos && blockMinTimestamps[block] < toNanos) {
+                    int from = block * indexBlockRecords;
+                    scan(from, Math.min(recordCount, from + indexBlockRecords), fromNanos, toNanos, sink);
+                }
+            }
+        } else {
+            scan(0, recordCount, fromNanos, toNanos, sink);
+        }
+        sink.onBatchEnd();
+    }
+
+    private void scan(int from, int to, long fromNanos, long toNanos, SampleSink sink) {
+        for (int i = from; i < to; i++) {
+            long timestamp = getTimestamp(i);
+            if (timestamp >= fromNanos && timestamp < toNanos) {
+                read(i, sink);
+            }
+        }
+        rangeRecordsExamined += to - from;
+    }
+
+    /** Records the last {@link #forEachInRange} scanned, 0 when it could binary search. */
+    int getRangeRecordsExamined() {
+        return rangeRecordsExamined;
+    }
+
+    /** Whether range queries on a file with unordered records can skip to the blocks they need. */
+    public boolean hasTimeIndex() {
+        return blockMinTimestamps != null;
+    }
+
+    public boolean isTimeOrdered() {
+        return ordered;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+}
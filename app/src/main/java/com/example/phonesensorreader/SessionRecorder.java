@@ -0,0 +1,181 @@
+package com.example.phonesensorreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends raw samples to a memory-mapped session file (see {@link SessionFormat}).
+ *
+ * The file is pre-sized and mapped once, so recording a sample is a handful of stores into
+ * the page cache with no allocation and no system call. When the mapping is full it is
+ * extended by another chunk. The committed record count in the header is checkpointed
+ * every batch; a file that was not closed cleanly is recovered by {@link SessionReader}.
+ *
+ * Not thread safe: all calls must come from the same thread (the sample consumer).
+ */
+public class SessionRecorder implements SampleSink, Closeable {
+    private static final int MAX_RECORDS = (Integer.MAX_VALUE - SessionFormat.HEADER_SIZE) / SessionFormat.RECORD_SIZE;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final int growthRecords;
+    private final int checkpointInterval;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+    private int flags;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private boolean closed;
+
+    /**
+     * @param capacityRecords    records to pre-size the file for, also the growth increment
+     * @param checkpointInterval records between header checkpoints in addition to one per batch
+     */
+    public SessionRecorder(File file, long startTimeMillis, int capacityRecords, int checkpointInterval) throws IOException {
+        if (capacityRecords <= 0 || capacityRecords > MAX_RECORDS) {
+            throw new IllegalArgumentException("capacityRecords out of range: " + capacityRecords);
+        }
+        this.file = file;
+        this.growthRecords = capacityRecords;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            randomAccessFile.setLength(0); // a new session never appends to stale records
+            map(capacityRecords);
+            buffer.putInt(SessionFormat.HEADER_MAGIC, SessionFormat.MAGIC);
+            buffer.putShort(SessionFormat.HEADER_VERSION, SessionFormat.VERSION);
+            buffer.putShort(SessionFormat.HEADER_RECORD_SIZE, (short) SessionFormat.RECORD_SIZE);
+            buffer.putLong(SessionFormat.HEADER_START_TIME, startTimeMillis);
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private void map(int records) throws IOException {
+        long size = SessionFormat.HEADER_SIZE + (long) records * SessionFormat.RECORD_SIZE;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = records;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        if (closed) {
+            return;
+        }
+        if (count == capacity && !grow()) {
+            return;
+        }
+        int offset = SessionFormat.recordOffset(count);
+        buffer.putLong(offset + SessionFormat.RECORD_TIMESTAMP, timestampNanos);
+        buffer.putFloat(offset + SessionFormat.RECORD_X, x);
+        buffer.putFloat(offset + SessionFormat.RECORD_Y, y);
+        buffer.putFloat(offset + SessionFormat.RECORD_Z, z);
+        buffer.putInt(offset + SessionFormat.RECORD_SENSOR_TYPE, sensorType);
+        count++;
+        if (timestampNanos < lastTimestamp) {
+            flags |= SessionFormat.FLAG_UNORDERED; // range queries go through the time index
+        }
+        lastTimestamp = timestampNanos;
+        if (count % checkpointInterval == 0) {
+            checkpoint();
+        }
+    }
+
+    @Override
+    public void onBatchEnd() {
+        if (!closed) {
+            checkpoint();
+        }
+    }
+
+    private boolean grow() {
+        int newCapacity = (int) Math.min((long) capacity + growthRecords, MAX_RECORDS);
+        if (newCapacity == capacity) {
+            return false;
+        }
+        try {
+            map(newCapacity);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void checkpoint() {
+        buffer.putLong(SessionFormat.HEADER_COMMITTED_COUNT, count);
+        buffer.putInt(SessionFormat.HEADER_FLAGS, flags);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRecordCount() {
+        return count;
+    }
+
+    /** Flushes the mapping to storage. Costs a system call, so call it sparingly. */
+    public void force() {
+        if (!closed) {
+            checkpoint();
+            buffer.force();
+        }
+    }
+
+    /** Marks the file as cleanly closed, trims the unused pre-sized tail and appends the time index. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        ByteBuffer index = buildIndex();
+        flags |= SessionFormat.FLAG_CLOSED;
+        checkpoint();
+        buffer.putInt(SessionFormat.HEADER_INDEX_BLOCK, SessionFormat.INDEX_BLOCK_RECORDS);
+        buffer.force();
+        closed = true;
+        buffer = null;
+        try {
+            // Closed first, so recovery never takes the index for records. Until the file ends
+            // with the complete index, SessionReader ignores it.
+            long position = SessionFormat.recordOffset(count);
+            channel.truncate(position);
+            while (index.hasRemaining()) {
+                position += channel.write(index, position);
+            }
+            channel.force(false);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private ByteBuffer buildIndex() {
+        int blockRecords = SessionFormat.INDEX_BLOCK_RECORDS;
+        int entries = SessionFormat.indexEntries(count, blockRecords);
+        ByteBuffer index = ByteBuffer.allocate(entries * SessionFormat.INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int block = 0; block < entries; block++) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = block * blockRecords, end = Math.min(count, i + blockRecords); i < end; i++) {
+                long timestamp = buffer.getLong(SessionFormat.recordOffset(i) + SessionFormat.RECORD_TIMESTAMP);
+                min = Math.min(min, timestamp);
+                max = Math.max(max, timestamp);
+            }
+            index.putLong(min).putLong(max);
+        }
+        index.flip();
+        return index;
+    }
+}
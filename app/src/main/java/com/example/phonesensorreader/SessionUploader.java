@@ -0,0 +1,457 @@
+package com.example.phonesensorreader;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Uploads recorded sessions to a collector in compressed batches.
+ *
+ * Each batch is one {@link SampleBlockEncoder} block of up to {@link Config#recordsPerBatch}
+ * samples, posted with the session name and the index of its first sample. The collector
+ * answers with the index it expects next as {@code {"next":N}}, and an upload starts by asking
+ * for it, so a session cut off by a failure or a restart resumes where the collector stopped.
+ * A collector that expected another index answers 409 with its own, and the upload continues
+ * from there. Failed batches are retried with exponential backoff.
+ *
+ * <pre>
+ * GET  endpoint?session=NAME                      -> {"next":N}, 404 for an unknown session
+ * POST endpoint?session=NAME&amp;offset=F&amp;count=C block -> {"next":F+C}, 409 {"next":N}
+ * </pre>
+ *
+ * {@link #enqueue} uploads one file at a time on a low priority thread of its own, reading
+ * closed session files, so the sampling path never waits on the network. A file the collector
+ * acknowledged to the end gets a {@link #UPLOADED_SUFFIX} marker next to it, and
+ * {@link #enqueueAll} leaves it alone until it changes or the endpoint does.
+ */
+public class SessionUploader {
+    private static final String LOG_TAG = "SessionUploader";
+    private static final MediaType BLOCK = MediaType.get("application/octet-stream");
+    private static final long NANOS_PER_HOUR = TimeUnit.HOURS.toNanos(1);
+    public static final String UPLOADED_SUFFIX = ".uploaded";
+
+    public static class Config {
+        String endpoint = "http://127.0.0.1:8090/sessions";
+        int recordsPerBatch = 8192;
+        // Below the resolution of phone accelerometers and gyroscopes
+        int decimals = 3;
+        int maxAttempts = 5;
+        long initialBackoffMillis = 1_000;
+        long maxBackoffMillis = 60_000;
+        long connectTimeoutMillis = 10_000;
+        long readTimeoutMillis = 30_000;
+
+        public Config endpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        public Config recordsPerBatch(int recordsPerBatch) {
+            this.recordsPerBatch = recordsPerBatch;
+            return this;
+        }
+
+        public Config decimals(int decimals) {
+            this.decimals = decimals;
+            return this;
+        }
+
+        /** Attempts per batch before the upload gives up, and resyncs per upload. */
+        public Config maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Config backoff(long initialMillis, long maxMillis) {
+            this.initialBackoffMillis = initialMillis;
+            this.maxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        public Config timeouts(long connectMillis, long readMillis) {
+            this.connectTimeoutMillis = connectMillis;
+            this.readTimeoutMillis = readMillis;
+            return this;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+    }
+
+    /** The collector expects another offset than the batch was sent with. */
+    private static final class OffsetMismatch extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final long next;
+
+        OffsetMismatch(long next) {
+            super(null, null, false, false);
+            this.next = next;
+        }
+    }
+
+    private final Config config;
+    private final OkHttpClient httpClient;
+    private final LongSupplier clock;
+    private final long createdAtNanos;
+    private ExecutorService executor;
+
+    private final AtomicLong uploadedRecords = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    public SessionUploader(Config config) {
+        this(config, System::nanoTime);
+    }
+
+    SessionUploader(Config config, LongSupplier clock) {
+        if (config.recordsPerBatch <= 0 || config.maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid upload config: batch=" + config.recordsPerBatch
+                    + ", attempts=" + config.maxAttempts);
+        }
+        this.config = config;
+        this.clock = clock;
+        this.createdAtNanos = clock.getAsLong();
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(config.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(config.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /** Uploads {@code file} in the background after the uploads enqueued before it. */
+    public synchronized void enqueue(File file) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, LOG_TAG);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        executor.execute(() -> {
+            try {
+                long records = upload(file);
+                Log.d(LOG_TAG, "Uploaded " + file.getName() + ", " + records + " samples on the collector");
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Upload of " + file.getName() + " failed, resumes next time", e);
+            }
+        });
+    }
+
+    /** Enqueues every session file in {@code directory} but {@code except} not uploaded yet, oldest first. */
+    public void enqueueAll(File directory, @Nullable File except) {
+        for (File file : pendingUploads(directory, except)) {
+            enqueue(file);
+        }
+    }
+
+    List<File> pendingUploads(File directory, @Nullable File except) {
+        List<File> pending = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SessionFormat.FILE_EXTENSION)
+                || name.endsWith(SpillingRecorder.FILE_EXTENSION));
+        if (files == null) {
+            return pending;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.equals(except) && !isUploaded(file)) {
+                pending.add(file);
+            }
+        }
+        return pending;
+    }
+
+    /** Whether the collector acknowledged all of {@code file} as it is now. */
+    public boolean isUploaded(File file) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(uploadedMarker(file)), StandardCharsets.UTF_8))) {
+            return uploadedMark(file).equals(reader.readLine());
+        } catch (IOException e) {
+            return false; // No marker yet
+        }
+    }
+
+    private void markUploaded(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(uploadedMarker(file))) {
+            out.write((uploadedMark(file) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // The file as it was uploaded and where to
+    private String uploadedMark(File file) {
+        return file.length() + " " + config.endpoint;
+    }
+
+    static File uploadedMarker(File file) {
+        return new File(file.getPath() + UPLOADED_SUFFIX);
+    }
+
+    /** Lets the enqueued uploads finish in the background, later ones start a new thread. */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Uploads the samples of a session file the collector does not have yet, named after the
+     * file, marks it uploaded and returns how many the collector has.
+     */
+    public long upload(File file) throws IOException {
+        String name = file.getName();
+        long records;
+        if (name.endsWith(SpillingRecorder.FILE_EXTENSION)) {
+            records = upload(name.substring(0, name.length() - SpillingRecorder.FILE_EXTENSION.length()),
+                    SpillingRecorder.source(file));
+        } else if (name.endsWith(SessionFormat.FILE_EXTENSION)) {
+            try (SessionReader reader = new SessionReader(file)) {
+                records = upload(name.substring(0, name.length() - SessionFormat.FILE_EXTENSION.length()), reader);
+            }
+        } else {
+            throw new IOException("Not a session file: " + file);
+        }
+        markUploaded(file);
+        return records;
+    }
+
+    /** Uploads the samples of {@code source} from the collector's offset on and returns the offset reached. */
+    public long upload(String session, SampleSource source) throws IOException {
+        try {
+            return uploadFromCollectorOffset(session, source);
+        } catch (IOException e) {
+            failedCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private long uploadFromCollectorOffset(String session, SampleSource source) throws IOException {
+        String sessionUrl = config.endpoint + "?session=" + encode(session);
+        long next = send(new Request.Builder().url(sessionUrl).build(), sessionUrl);
+        try (SampleBlockEncoder encoder = new SampleBlockEncoder(config.decimals)) {
+            for (int resync = 1; ; resync++) {
+                BatchSink batches = new BatchSink(sessionUrl, next, encoder);
+                try {
+                    source.forEach(batches);
+                    batches.flush();
+                    return batches.next;
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } catch (OffsetMismatch e) {
+                    if (resync == config.maxAttempts) {
+                        throw new IOException("Collector keeps moving the offset of " + session + ", now " + e.next);
+                    }
+                    next = e.next;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Can't encode " + session, e);
+        }
+    }
+
+    /** Skips the samples the collector has and sends the rest in batches. */
+    private final class BatchSink implements SampleSink {
+        private final String sessionUrl;
+        private final SampleBlockEncoder encoder;
+        private long index;
+        // The offset of the samples in the encoder, and the collector's once they are sent
+        long next;
+
+        BatchSink(String sessionUrl, long from, SampleBlockEncoder encoder) {
+            this.sessionUrl = sessionUrl;
+            this.next = from;
+            this.encoder = encoder;
+            encoder.clear(); // what a resync left behind
+        }
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            if (index++ < next) {
+                return;
+            }
+            encoder.onSample(timestampNanos, sensorType, x, y, z);
+            if (encoder.getSampleCount() == config.recordsPerBatch) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            int count = encoder.getSampleCount();
+            if (count == 0) {
+                return;
+            }
+            int length = encoder.finishBlock();
+            String url = sessionUrl + "&offset=" + next + "&count=" + count;
+            Request request = new Request.Builder().url(url)
+                    .post(RequestBody.create(Arrays.copyOf(encoder.getBlock(), length), BLOCK))
+                    .build();
+            long acknowledged = send(request, url);
+            if (acknowledged != next + count) {
+                throw new OffsetMismatch(acknowledged);
+            }
+            next = acknowledged;
+            uploadedRecords.addAndGet(count);
+            rawBytes.addAndGet((long) count * SessionFormat.RECORD_SIZE);
+            compressedBytes.addAndGet(length);
+            batchCount.incrementAndGet();
+        }
+    }
+
+    /** Sends {@code request} until the collector answers with its next offset, and returns it. */
+    private long send(Request request, String url) throws IOException {
+        long bodyLength = request.body() == null ? 0 : request.body().contentLength();
+        for (int attempt = 1; ; attempt++) {
+            long startNanos = System.nanoTime();
+            bytesSent.addAndGet(bodyLength);
+            int code = 0; // no answer
+            String text;
+            try (Response response = httpClient.newCall(request).execute()) {
+                ResponseBody body = response.body();
+                text = body == null ? "" : body.string();
+                code = response.code();
+                batchLatency.recordSince(startNanos);
+            } catch (IOException e) {
+                text = e.getMessage();
+            }
+            if ((code >= 200 && code < 300) || code == 409) {
+                return parseNext(text, url);
+            }
+            if (code == 404 && bodyLength == 0) {
+                return 0;
+            }
+            String failure = code == 0 ? "Failed: " + text : "Error: " + code + " - " + text;
+            if (code != 0 && code < 500 && code != 408 && code != 429) {
+                throw new IOException(failure + " for " + url);
+            }
+            if (attempt == config.maxAttempts) {
+                throw new IOException(failure + " for " + url + " after " + attempt + " attempts");
+            }
+            retryCount.incrementAndGet();
+            sleep(Math.min(config.maxBackoffMillis, config.initialBackoffMillis << Math.min(attempt - 1, 20)));
+        }
+    }
+
+    private static long parseNext(String text, String url) throws IOException {
+        try {
+            long next = new JSONObject(text).getLong("next");
+            if (next < 0) {
+                throw new IOException("Negative offset from " + url + ": " + text);
+            }
+            return next;
+        } catch (JSONException e) {
+            throw new IOException("Malformed answer from " + url + ": " + text, e);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** Samples the collector acknowledged. */
+    public long getUploadedRecords() {
+        return uploadedRecords.get();
+    }
+
+    /** Size of the acknowledged samples in {@link SessionRecorder} files, 24 bytes each. */
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    /** Size of the acknowledged blocks. */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /** Raw over compressed size of the acknowledged samples, 0 before the first batch. */
+    public double getCompressionRatio() {
+        long compressed = compressedBytes.get();
+        return compressed == 0 ? 0 : (double) rawBytes.get() / compressed;
+    }
+
+    /** Request bodies sent, retries included. */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /** Request bodies sent per hour since the uploader was created. */
+    public long getBytesPerHour() {
+        long elapsedNanos = clock.getAsLong() - createdAtNanos;
+        return elapsedNanos <= 0 ? 0 : (long) (bytesSent.get() * ((double) NANOS_PER_HOUR / elapsedNanos));
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /** Requests sent again after a failure. */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /** Uploads that gave up. */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /** Time of each request to the collector that got an answer. */
+    public LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.phonesensorreader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Records a session of any length within a fixed memory budget.
+ *
+ * The most recent samples are kept in memory in a block of primitive columns sized from the
+ * budget. When the block is full it is spilled to the file as one compressed chunk and reused,
+ * so memory stays the same however long the session runs. A chunk stores the block column by
+ * column, timestamps as deltas, and deflates it, which takes 100 Hz motion data to about a
+ * quarter of the 24 bytes per sample of a {@link SessionRecorder} file.
+ *
+ * File layout, little-endian: a header of magic "PSZ1", version, reserved short and the start
+ * time in epoch milliseconds; then chunks of record count, compressed length, first and last
+ * timestamp, followed by the compressed columns. A chunk cut short by a crash is ignored by
+ * {@link #read}, and the samples still in memory at that point are lost.
+ *
+ * Not thread safe: all calls must come from the same thread (the sample consumer).
+ */
+public class SpillingRecorder implements SampleSink, Closeable {
+    static final int MAGIC = 0x315a5350; // "PSZ1" in little-endian byte order
+    static final short VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int CHUNK_HEADER_SIZE = 24;
+    static final String FILE_EXTENSION = ".psz";
+
+    // Timestamp delta, sensor type and three values
+    private static final int ENCODED_RECORD_SIZE = 8 + 4 + 3 * 4;
+    // Columns, their encoding and the compressed copy
+    static final int MEMORY_PER_RECORD = 3 * ENCODED_RECORD_SIZE;
+    static final int MIN_BLOCK_RECORDS = 256;
+
+    private final File file;
+    private final FileOutputStream out;
+    private final int blockRecords;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final long[] timestamps;
+    private final int[] sensorTypes;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private int size;
+
+    private final byte[] encoded;
+    private final ByteBuffer encodedBuffer;
+    private byte[] compressed;
+    private final byte[] chunkHeader = new byte[CHUNK_HEADER_SIZE];
+    private final ByteBuffer chunkHeaderBuffer = ByteBuffer.wrap(chunkHeader).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long spilledCount;
+    private long chunkCount;
+    private long fileBytes;
+    private long droppedCount;
+    private boolean failed;
+    private boolean closed;
+
+    /** @param memoryBudgetBytes memory for the in-memory block and its compression buffers */
+    public SpillingRecorder(File file, long startTimeMillis, long memoryBudgetBytes) throws IOException {
+        this.file = file;
+        this.blockRecords = (int) Math.max(MIN_BLOCK_RECORDS, Math.min(memoryBudgetBytes / MEMORY_PER_RECORD,
+                Integer.MAX_VALUE / ENCODED_RECORD_SIZE / 2));
+        timestamps = new long[blockRecords];
+        sensorTypes = new int[blockRecords];
+        xs = new float[blockRecords];
+        ys = new float[blockRecords];
+        zs = new float[blockRecords];
+        encoded = new byte[blockRecords * ENCODED_RECORD_SIZE];
+        encodedBuffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        compressed = new byte[encoded.length];
+        out = new FileOutputStream(file);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(startTimeMillis);
+        try {
+            out.write(header.array());
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        fileBytes = FILE_HEADER_SIZE;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        if (closed) {
+            return;
+        }
+        if (failed) {
+            droppedCount++;
+            return;
+        }
+        timestamps[size] = timestampNanos;
+        sensorTypes[size] = sensorType;
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        if (++size == blockRecords) {
+            spill();
+        }
+    }
+
+    /** Compresses the in-memory block into one chunk at the end of the file. */
+    private void spill() {
+        int count = size;
+        encodedBuffer.clear();
+        long previous = timestamps[0];
+        for (int i = 0; i < count; i++) {
+            encodedBuffer.putLong(timestamps[i] - previous);
+            previous = timestamps[i];
+        }
+        for (int i = 0; i < count; i++) {
+            encodedBuffer.putInt(sensorTypes[i]);
+        }
+        putColumn(xs, count);
+        putColumn(ys, count);
+        putColumn(zs, count);
+        int length = deflate(encodedBuffer.position());
+
+        chunkHeaderBuffer.clear();
+        chunkHeaderBuffer.putInt(count).putInt(length).putLong(timestamps[0]).putLong(timestamps[count - 1]);
+        try {
+            out.write(chunkHeader);
+            out.write(compressed, 0, length);
+        } catch (IOException e) {
+            failed = true;
+            droppedCount += count;
+            size = 0;
+            return;
+        }
+        size = 0;
+        spilledCount += count;
+        chunkCount++;
+        fileBytes += CHUNK_HEADER_SIZE + length;
+    }
+
+    private void putColumn(float[] column, int count) {
+        for (int i = 0; i < count; i++) {
+            encodedBuffer.putInt(Float.floatToRawIntBits(column[i]));
+        }
+    }
+
+    private int deflate(int length) {
+        deflater.reset();
+        deflater.setInput(encoded, 0, length);
+        deflater.finish();
+        int written = 0;
+        while (!deflater.finished()) {
+            if (written == compressed.length) {
+                // Incompressible data, grows once in a while at most
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            written += deflater.deflate(compressed, written, compressed.length - written);
+        }
+        return written;
+    }
+
+    /** Samples not yet spilled, oldest first. */
+    public void readRecent(SampleSink sink) {
+        for (int i = 0; i < size; i++) {
+            sink.onSample(timestamps[i], sensorTypes[i], xs[i], ys[i], zs[i]);
+        }
+    }
+
+    public int getRecentCount() {
+        return size;
+    }
+
+    public int getBlockRecords() {
+        return blockRecords;
+    }
+
+    /** Bytes held in memory, constant for the life of the recorder. */
+    public long getMemoryBytes() {
+        return (long) blockRecords * ENCODED_RECORD_SIZE + encoded.length + compressed.length;
+    }
+
+    public long getRecordCount() {
+        return spilledCount + size;
+    }
+
+    public long getSpilledCount() {
+        return spilledCount;
+    }
+
+    public long getChunkCount() {
+        return chunkCount;
+    }
+
+    /** Bytes written to the file so far. */
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    /** Samples lost because the file could not be written. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Spills what is left in memory and closes the file. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (size > 0 && !failed) {
+                spill();
+            }
+        } finally {
+            closed = true;
+            deflater.end();
+            out.close();
+        }
+        if (failed) {
+            throw new IOException("Lost " + droppedCount + " samples writing " + file);
+        }
+    }
+
+    /**
+     * Delivers every sample of a file written by a SpillingRecorder to {@code sink} in
+     * recording order, stopping at a chunk cut short by a crash, and returns how many.
+     */
+    public static long read(File file, SampleSink sink) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] header = new byte[FILE_HEADER_SIZE];
+            in.readFully(header);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (headerBuffer.getInt() != MAGIC || headerBuffer.getShort() != VERSION) {
+                throw new IOException("Not a spilled session file: " + file);
+            }
+            byte[] chunkHeader = new byte[CHUNK_HEADER_SIZE];
+            ByteBuffer chunkHeaderBuffer = ByteBuffer.wrap(chunkHeader).order(ByteOrder.LITTLE_ENDIAN);
+            Inflater inflater = new Inflater();
+            byte[] compressed = new byte[0];
+            byte[] encoded = new byte[0];
+            long total = 0;
+            try {
+                while (readChunk(in, chunkHeader)) {
+                    chunkHeaderBuffer.clear();
+                    int count = chunkHeaderBuffer.getInt();
+                    int length = chunkHeaderBuffer.getInt();
+                    long timestamp = chunkHeaderBuffer.getLong();
+                    if (count <= 0 || length < 0) {
+                        throw new IOException("Corrupt chunk header in " + file);
+                    }
+                    if (compressed.length < length) {
+                        compressed = new byte[length];
+                    }
+                    if (!readChunk(in, compressed, length)) {
+                        break;
+                    }
+                    int encodedLength = count * ENCODED_RECORD_SIZE;
+                    if (encoded.length < encodedLength) {
+                        encoded = new byte[encodedLength];
+                    }
+                    inflater.reset();
+                    inflater.setInput(compressed, 0, length);
+                    if (inflater.inflate(encoded, 0, encodedLength) != encodedLength) {
+                        throw new IOException("Short chunk in " + file);
+                    }
+                    ByteBuffer columns = ByteBuffer.wrap(encoded, 0, encodedLength).order(ByteOrder.LITTLE_ENDIAN);
+                    int typesAt = count * 8;
+                    int xsAt = typesAt + count * 4;
+                    int ysAt = xsAt + count * 4;
+                    int zsAt = ysAt + count * 4;
+                    for (int i = 0; i < count; i++) {
+                        timestamp += columns.getLong(i * 8);
+                        sink.onSample(timestamp, columns.getInt(typesAt + i * 4),
+                                Float.intBitsToFloat(columns.getInt(xsAt + i * 4)),
+                                Float.intBitsToFloat(columns.getInt(ysAt + i * 4)),
+                                Float.intBitsToFloat(columns.getInt(zsAt + i * 4)));
+                    }
+                    sink.onBatchEnd();
+                    total += count;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt chunk in " + file, e);
+            } finally {
+                inflater.end();
+            }
+            return total;
+        }
+    }
+
+    /** The samples of {@code file}, see {@link #read}. */
+    public static SampleSource source(File file) {
+        return sink -> read(file, sink);
+    }
+
+    private static boolean readChunk(DataInputStream in, byte[] into) throws IOException {
+        return readChunk(in, into, into.length);
+    }
+
+    /** Reads exactly {@code length} bytes, false at the end of the file or a truncated tail. */
+    private static boolean readChunk(DataInputStream in, byte[] into, int length) throws IOException {
+        try {
+            in.readFully(into, 0, length);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.phonesensorreader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Incremental parser for server-sent events (text/event-stream).
+ *
+ * Lines are fed as they arrive; an event is dispatched at each blank line. Only the
+ * {@code event} and {@code data} fields are used, {@code id}, {@code retry} and comments
+ * are ignored.
+ */
+public class SseParser {
+
+    public interface Listener {
+        /** Returns false to stop parsing. */
+        boolean onEvent(String event, String data);
+    }
+
+    private final Listener listener;
+    private final StringBuilder data = new StringBuilder();
+    private String event = "";
+    private boolean hasData;
+
+    public SseParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Feeds one line without its terminator. Returns false if the listener asked to stop. */
+    public boolean feedLine(String line) {
+        if (line.isEmpty()) {
+            return dispatch();
+        }
+        if (line.charAt(0) == ':') {
+            return true; // comment or keep-alive
+        }
+        int colon = line.indexOf(':');
+        String field = colon < 0 ? line : line.substring(0, colon);
+        String value = "";
+        if (colon >= 0) {
+            int start = colon + 1 < line.length() && line.charAt(colon + 1) == ' ' ? colon + 2 : colon + 1;
+            value = line.substring(start);
+        }
+        if (field.equals("data")) {
+            if (hasData) {
+                data.append('\n');
+            }
+            data.append(value);
+            hasData = true;
+        } else if (field.equals("event")) {
+            event = value;
+        }
+        return true;
+    }
+
+    /** Reads lines until the stream ends or the listener stops, dispatching a trailing event. */
+    public void parse(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!feedLine(line)) {
+                return;
+            }
+        }
+        dispatch();
+    }
+
+    private boolean dispatch() {
+        if (!hasData) {
+            event = "";
+            return true;
+        }
+        String dispatchedEvent = event.isEmpty() ? "message" : event;
+        String dispatchedData = data.toString();
+        data.setLength(0);
+        hasData = false;
+        event = "";
+        return listener.onEvent(dispatchedEvent, dispatchedData);
+    }
+}
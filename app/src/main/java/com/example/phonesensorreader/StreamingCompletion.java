@@ -0,0 +1,158 @@
+package com.example.phonesensorreader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads one streamed completion from the llama.cpp {@code /completion} endpoint.
+ *
+ * Each server-sent event carries a JSON object whose {@code content} is the next token and
+ * whose {@code stop} flag ends the stream. Tokens are handed to the listener through the
+ * delivery executor (the main looper on Android), coalesced so that at most one delivery
+ * is posted per {@code minDeliveryIntervalMillis}. Tokens held back by the rate limit go out
+ * with the next token, once the interval has passed without one, or before the completion or
+ * error.
+ */
+public class StreamingCompletion {
+
+    public interface Listener {
+        void onChunk(String text);
+
+        void onComplete(String fullText, CompletionStats stats);
+
+        void onError(String message);
+    }
+
+    private final Listener listener;
+    private final Executor delivery;
+    private final long minDeliveryIntervalNanos;
+
+    private final StringBuilder fullText = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder();
+    private long requestStartNanos;
+    private long firstTokenNanos = -1;
+    private long lastDeliveryNanos;
+    private boolean idleFlushScheduled;
+    private int tokenCount;
+    private final Runnable idleFlush = () -> {
+        synchronized (this) {
+            idleFlushScheduled = false;
+            if (pending.length() > 0) {
+                lastDeliveryNanos = System.nanoTime();
+                flush();
+            }
+        }
+    };
+
+    public StreamingCompletion(Listener listener, Executor delivery, long minDeliveryIntervalMillis) {
+        this.listener = listener;
+        this.delivery = delivery;
+        this.minDeliveryIntervalNanos = minDeliveryIntervalMillis * 1_000_000L;
+    }
+
+    /** Sets when the request was sent, in {@link System#nanoTime} time, the reference for the time to first token. */
+    public void markRequestStart(long startNanos) {
+        requestStartNanos = startNanos;
+    }
+
+    /**
+     * Streams a response body until it ends. Returns false if an error was delivered to the
+     * listener instead of a completion.
+     */
+    public boolean read(InputStream body) throws IOException {
+        if (requestStartNanos == 0) {
+            requestStartNanos = System.nanoTime();
+        }
+        final String[] error = new String[1];
+        SseParser parser = new SseParser((event, data) -> {
+            try {
+                JSONObject object = new JSONObject(data);
+                String content = object.optString("content", "");
+                if (!content.isEmpty()) {
+                    onToken(content);
+                }
+                return !object.optBoolean("stop", false);
+            } catch (JSONException e) {
+                error[0] = "Malformed event: " + data;
+                return false;
+            }
+        });
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            parser.parse(reader);
+        } finally {
+            // Whatever arrived goes out before the caller reports a broken stream
+            synchronized (this) {
+                flush();
+            }
+        }
+        if (error[0] != null) {
+            postError(error[0]);
+            return false;
+        }
+        long now = System.nanoTime();
+        CompletionStats stats = new CompletionStats(
+                firstTokenNanos < 0 ? -1 : (firstTokenNanos - requestStartNanos) / 1_000_000L,
+                (now - requestStartNanos) / 1_000_000L, tokenCount);
+        String text = fullText.toString();
+        delivery.execute(() -> listener.onComplete(text, stats));
+        return true;
+    }
+
+    private void onToken(String content) {
+        long now = System.nanoTime();
+        if (firstTokenNanos < 0) {
+            firstTokenNanos = now;
+        }
+        tokenCount++;
+        fullText.append(content);
+        synchronized (this) {
+            pending.append(content);
+            long waitNanos = minDeliveryIntervalNanos - (now - lastDeliveryNanos);
+            if (waitNanos <= 0) {
+                lastDeliveryNanos = now;
+                flush();
+            } else if (!idleFlushScheduled) {
+                // The server may pause after this token, don't leave it waiting for the next one
+                idleFlushScheduled = true;
+                idleFlushTimer().schedule(idleFlush, waitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /** Posts the tokens held back so far, call while holding the lock. */
+    private void flush() {
+        if (pending.length() == 0) {
+            return;
+        }
+        String chunk = pending.toString();
+        pending.setLength(0);
+        delivery.execute(() -> listener.onChunk(chunk));
+    }
+
+    private void postError(String message) {
+        delivery.execute(() -> listener.onError(message));
+    }
+
+    private static ScheduledExecutorService idleFlushTimer;
+
+    private static synchronized ScheduledExecutorService idleFlushTimer() {
+        if (idleFlushTimer == null) {
+            idleFlushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "StreamingCompletion");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return idleFlushTimer;
+    }
+}
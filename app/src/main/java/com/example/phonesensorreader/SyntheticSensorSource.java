@@ -0,0 +1,155 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Accelerometer and gyroscope samples of a phone being walked, run or sat with, for replays
+ * without a recording.
+ *
+ * Each segment holds the phone in a random orientation and moves it with a random cadence
+ * and intensity drawn from ranges typical of pocket and hand held recordings, plus sensor
+ * noise. Both sensors are sampled at the same instants, the gyroscope first. The same seed
+ * and segments always give the same samples.
+ */
+public class SyntheticSensorSource implements SampleSource {
+    private static final double GRAVITY = 9.81;
+    private static final int BATCH_INSTANTS = 128;
+
+    private static final class Segment {
+        final ActivityLabel label;
+        final double seconds;
+
+        Segment(ActivityLabel label, double seconds) {
+            this.label = label;
+            this.seconds = seconds;
+        }
+    }
+
+    private final double rateHz;
+    private final long seed;
+    private final List<Segment> segments = new ArrayList<>();
+
+    public SyntheticSensorSource(double rateHz, long seed) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("rateHz must be positive: " + rateHz);
+        }
+        this.rateHz = rateHz;
+        this.seed = seed;
+    }
+
+    /** Appends {@code seconds} of {@code label}, one of walking, running or sitting. */
+    public SyntheticSensorSource add(ActivityLabel label, double seconds) {
+        segments.add(new Segment(label, seconds));
+        return this;
+    }
+
+    public double getRateHz() {
+        return rateHz;
+    }
+
+    /** Samples of both sensors over all segments. */
+    public long getSampleCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += 2 * instants(segment);
+        }
+        return count;
+    }
+
+    private int instants(Segment segment) {
+        return (int) (segment.seconds * rateHz);
+    }
+
+    @Override
+    public void forEach(SampleSink sink) {
+        Random random = new Random(seed);
+        long instant = 0;
+        for (Segment segment : segments) {
+            instant = generate(segment, instant, random, sink);
+        }
+        if (instant % BATCH_INSTANTS != 0) {
+            sink.onBatchEnd();
+        }
+    }
+
+    /** Delivers one segment starting at sample instant {@code first} and returns the instant after it. */
+    private long generate(Segment segment, long first, Random random, SampleSink sink) {
+        double cadenceHz;
+        double amplitude; // vertical acceleration, m/s²
+        double rotation; // rad/s
+        switch (segment.label) {
+            case WALKING:
+                cadenceHz = uniform(random, 1.4, 2.3);
+                amplitude = uniform(random, 1.2, 4.5);
+                rotation = uniform(random, 0.3, 1.0);
+                break;
+            case RUNNING:
+                cadenceHz = uniform(random, 2.3, 3.2);
+                amplitude = uniform(random, 4.5, 11);
+                rotation = uniform(random, 1.5, 3.0);
+                break;
+            case SITTING:
+                // Occasional slow fidgeting
+                cadenceHz = uniform(random, 0.1, 0.5);
+                amplitude = uniform(random, 0, 0.4);
+                rotation = uniform(random, 0, 0.05);
+                break;
+            default:
+                throw new IllegalArgumentException("No synthetic signal for " + segment.label);
+        }
+        double noise = uniform(random, 0.03, 0.15);
+        double phase = uniform(random, 0, 2 * Math.PI);
+        // Unit vector of gravity in phone coordinates and an orthogonal forward axis
+        double[] down = randomUnitVector(random);
+        double[] forward = orthogonalUnitVector(down, random);
+
+        int instants = instants(segment);
+        for (int i = 0; i < instants; i++) {
+            double t = i / rateHz;
+            double step = 2 * Math.PI * cadenceHz * t + phase;
+            double vertical = amplitude * (Math.sin(step) + 0.3 * Math.sin(2 * step + 1));
+            double sway = 0.4 * amplitude * Math.sin(step / 2);
+            long instant = first + i;
+            long timestamp = (long) (instant * 1e9 / rateHz);
+            sink.onSample(timestamp, Sensor.TYPE_GYROSCOPE,
+                    (float) (rotation * Math.sin(step / 2) + noise * 0.1 * random.nextGaussian()),
+                    (float) (rotation * 0.5 * Math.sin(step) + noise * 0.1 * random.nextGaussian()),
+                    (float) (rotation * 0.3 * Math.cos(step / 2) + noise * 0.1 * random.nextGaussian()));
+            sink.onSample(timestamp, Sensor.TYPE_ACCELEROMETER,
+                    (float) (down[0] * (GRAVITY + vertical) + forward[0] * sway + noise * random.nextGaussian()),
+                    (float) (down[1] * (GRAVITY + vertical) + forward[1] * sway + noise * random.nextGaussian()),
+                    (float) (down[2] * (GRAVITY + vertical) + forward[2] * sway + noise * random.nextGaussian()));
+            if ((instant + 1) % BATCH_INSTANTS == 0) {
+                sink.onBatchEnd();
+            }
+        }
+        return first + instants;
+    }
+
+    private static double uniform(Random random, double from, double to) {
+        return from + random.nextDouble() * (to - from);
+    }
+
+    private static double[] randomUnitVector(Random random) {
+        double[] v = {random.nextGaussian(), random.nextGaussian(), random.nextGaussian()};
+        return normalize(v);
+    }
+
+    private static double[] orthogonalUnitVector(double[] unit, Random random) {
+        double[] v = randomUnitVector(random);
+        double dot = v[0] * unit[0] + v[1] * unit[1] + v[2] * unit[2];
+        for (int axis = 0; axis < 3; axis++) {
+            v[axis] -= dot * unit[axis];
+        }
+        return normalize(v);
+    }
+
+    private static double[] normalize(double[] v) {
+        double norm = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        return new double[]{v[0] / norm, v[1] / norm, v[2] / norm};
+    }
+}
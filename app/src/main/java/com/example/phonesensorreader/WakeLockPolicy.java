@@ -0,0 +1,55 @@
+package com.example.phonesensorreader;
+
+/**
+ * How long a recording session keeps the CPU awake.
+ *
+ * Rather than one wake lock timeout for the whole session, the lock is taken for a lease that
+ * is renewed before it runs out, until the session reaches its maximum length. A process that
+ * dies or forgets to release the lock then holds it for one lease at most.
+ */
+public class WakeLockPolicy {
+    private final long maxSessionMillis;
+    private final long leaseMillis;
+
+    public WakeLockPolicy(long maxSessionMillis, long leaseMillis) {
+        if (maxSessionMillis <= 0 || leaseMillis <= 0) {
+            throw new IllegalArgumentException("Invalid wake lock policy: max=" + maxSessionMillis
+                    + "ms, lease=" + leaseMillis + "ms");
+        }
+        this.maxSessionMillis = maxSessionMillis;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /** A single lease covering the whole session, for short recordings. */
+    public static WakeLockPolicy fixed(long sessionMillis) {
+        return new WakeLockPolicy(sessionMillis, sessionMillis);
+    }
+
+    public long getMaxSessionMillis() {
+        return maxSessionMillis;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * Timeout for the lease taken {@code elapsedMillis} into the session, or 0 once the
+     * session has reached its maximum length and the lock should be let go.
+     */
+    public long nextLeaseMillis(long elapsedMillis) {
+        long remaining = maxSessionMillis - Math.max(0, elapsedMillis);
+        return remaining <= 0 ? 0 : Math.min(leaseMillis, remaining);
+    }
+
+    /**
+     * Milliseconds after taking a lease of {@code leaseMillis} to renew it, half way through
+     * so a late handler still renews in time. Negative if the lease should not be renewed.
+     */
+    public long renewDelayMillis(long elapsedMillis, long leaseMillis) {
+        if (leaseMillis <= 0 || elapsedMillis + leaseMillis >= maxSessionMillis) {
+            return -1; // The last lease runs out with the session
+        }
+        return Math.max(1, leaseMillis / 2);
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.phonesensorreader;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.WebChromeClient;
+import android.webkit.WebResourceError;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.annotation.Nullable;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * The chat page, loaded once per process and kept between visits of {@link WebViewActivity}.
+ *
+ * The page pulls prompts from {@link PromptBridge} through a fixed script injected after each
+ * load, so a new session's prompt reaches the already loaded page without a reload. Navigation
+ * stays on the origin of {@link #PAGE_URL} and the bridge only answers pages from it. Use on the
+ * main thread.
+ */
+public class WebViewHost implements PromptBridge.Listener {
+    private static final String LOG_TAG = "WebViewHost";
+    public static final String PAGE_URL = "http://127.0.0.1:8080/index-new.html";
+    // Where the page shows its latest answer
+    private static final String RESULT_SELECTOR = "#chat > :last-child";
+    private static final long RESULT_DEBOUNCE_MS = 500;
+    private static final long INPUT_POLL_MS = 50;
+
+    // Takes prompts from the bridge into #chat-input and reports answers back. Holds no data, the
+    // prompt only ever travels as a JSON value.
+    private static final String GLUE_SCRIPT = "(function() {"
+            + "if (window.phoneSensor) { window.phoneSensor.pull(); return; }"
+            + "var bridge = window." + PromptBridge.JS_NAME + ";"
+            + "var lastResult = null, resultTimer = null;"
+            + "function pull() {"
+            + "  var input = document.getElementById('chat-input');"
+            + "  if (!input) { setTimeout(pull, " + INPUT_POLL_MS + "); return; }"
+            + "  var data = JSON.parse(bridge.takePrompt());"
+            + "  if (!data) return;"
+            + "  input.value = data.prompt;"
+            + "  input.dispatchEvent(new Event('input', { bubbles: true }));"
+            + "  bridge.onPromptApplied(data.version);"
+            + "}"
+            + "function report() {"
+            + "  resultTimer = null;"
+            + "  var result = document.querySelector('" + RESULT_SELECTOR + "');"
+            + "  var text = result ? result.innerText : null;"
+            + "  if (text && text !== lastResult) { lastResult = text; bridge.onResult(text); }"
+            + "}"
+            + "new MutationObserver(function() {"
+            + "  if (resultTimer) clearTimeout(resultTimer);"
+            + "  resultTimer = setTimeout(report, " + RESULT_DEBOUNCE_MS + ");"
+            + "}).observe(document.body, { childList: true, subtree: true, characterData: true });"
+            + "window.phoneSensor = { pull: pull };"
+            + "pull();"
+            + "})()";
+    private static final String PULL_SCRIPT = "window.phoneSensor && window.phoneSensor.pull()";
+
+    /** Whether {@code url} has the scheme, host and port of {@link #PAGE_URL}. */
+    static boolean isPageOrigin(@Nullable String url) {
+        if (url == null) {
+            return false;
+        }
+        try {
+            URI page = URI.create(PAGE_URL);
+            URI uri = new URI(url);
+            return page.getScheme().equalsIgnoreCase(uri.getScheme())
+                    && page.getHost().equalsIgnoreCase(uri.getHost())
+                    && page.getPort() == uri.getPort();
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    // Application context only, activities come and go through the wrapper
+    @SuppressLint("StaticFieldLeak")
+    private static WebViewHost shared;
+
+    public static WebViewHost getShared(Context context) {
+        if (shared == null) {
+            shared = new WebViewHost(context.getApplicationContext());
+        }
+        return shared;
+    }
+
+    // Time from the start of a page load until it finished, what every Stop used to wait for
+    private static final LatencyHistogram pageLoadLatency = new LatencyHistogram();
+
+    public static LatencyHistogram getPageLoadLatency() {
+        return pageLoadLatency;
+    }
+
+    private final Context applicationContext;
+    private final MutableContextWrapper context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PromptBridge bridge = PromptBridge.getShared();
+    private WebView webView;
+    private boolean loading;
+    private boolean loaded;
+    private long loadStartNanos;
+
+    private WebViewHost(Context applicationContext) {
+        this.applicationContext = applicationContext;
+        context = new MutableContextWrapper(applicationContext);
+    }
+
+    /** Creates the WebView and starts loading the page, unless that already happened. */
+    @SuppressLint("SetJavaScriptEnabled")
+    public void preload() {
+        if (webView == null) {
+            webView = new WebView(context);
+            webView.getSettings().setJavaScriptEnabled(true);
+            webView.getSettings().setDomStorageEnabled(true);
+            webView.setWebChromeClient(new WebChromeClient());
+            webView.setWebViewClient(new Client());
+            webView.addJavascriptInterface(bridge, PromptBridge.JS_NAME);
+            bridge.setListener(this);
+        }
+        if (!loading && !loaded) {
+            loading = true;
+            webView.loadUrl(PAGE_URL);
+        }
+    }
+
+    /** Shows the page in {@code container}, loading it again if the last load failed. */
+    public void attach(ViewGroup container) {
+        preload();
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        context.setBaseContext(container.getContext());
+        container.addView(webView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        webView.onResume();
+        if (loaded && bridge.hasPendingPrompt()) {
+            webView.evaluateJavascript(PULL_SCRIPT, null);
+        }
+    }
+
+    /** Takes the page out of {@code container} and keeps it loaded for the next attach. */
+    public void detach(ViewGroup container) {
+        if (webView == null || webView.getParent() != container) {
+            return;
+        }
+        webView.onPause();
+        container.removeView(webView);
+        context.setBaseContext(applicationContext);
+    }
+
+    @Override
+    public void onPromptOffered(long version) {
+        handler.post(() -> {
+            if (webView == null || !loaded) {
+                preload(); // The page pulls when it finishes loading
+            } else {
+                webView.evaluateJavascript(PULL_SCRIPT, null);
+            }
+        });
+    }
+
+    @Override
+    public void onPromptApplied(long version, long stopToReadyNanos) {
+        if (stopToReadyNanos < 0) {
+            Log.d(LOG_TAG, "Prompt " + version + " ready in the page");
+            return;
+        }
+        Log.d(LOG_TAG, String.format(Locale.US, "Prompt %d ready in the page %.1f ms after Stop", version,
+                stopToReadyNanos / 1e6) + ", Stop to ready " + bridge.getPromptReadyLatency().summarize()
+                + ", page load " + pageLoadLatency.summarize());
+    }
+
+    @Override
+    public void onResult(String text) {
+        Log.d(LOG_TAG, "Answer in the page: " + text);
+    }
+
+    private final class Client extends WebViewClient {
+        @Override
+        public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+            String url = request.getUrl().toString();
+            if (isPageOrigin(url)) {
+                return false;
+            }
+            Log.w(LOG_TAG, "Not following a link off the chat page: " + url);
+            return true;
+        }
+
+        @Override
+        public void onPageStarted(WebView view, String url, @Nullable Bitmap favicon) {
+            bridge.setPageTrusted(isPageOrigin(url));
+            if (!isPageOrigin(url)) {
+                // Redirects and script navigation don't all go through shouldOverrideUrlLoading
+                Log.w(LOG_TAG, "Stopped loading " + url + ", not the chat page");
+                view.stopLoading();
+                loading = false;
+                loaded = false;
+                return;
+            }
+            loading = true;
+            loaded = false;
+            loadStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if (!loading) {
+                return; // Finished a load that failed
+            }
+            loading = false;
+            loaded = true;
+            pageLoadLatency.record(System.nanoTime() - loadStartNanos);
+            view.evaluateJavascript(GLUE_SCRIPT, null);
+        }
+
+        @Override
+        public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+            if (!request.isForMainFrame()) {
+                return;
+            }
+            Log.w(LOG_TAG, "Loading " + request.getUrl() + " failed: " + error.getDescription());
+            // The server in Termux may still be starting, the next attach or prompt loads again
+            loading = false;
+            loaded = false;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.phonesensorreader;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Incremental sliding-window feature extraction for one three-axis sensor.
+ *
+ * Samples of the configured sensor type are kept in preallocated circular buffers. Every
+ * {@code hop} samples once the window is full, the features of the last {@code length}
+ * samples are computed into a reused {@link WindowFeatures} and passed to the listener, so
+ * the steady state allocates nothing. A gap of more than a few sample periods restarts the
+ * window so it never spans a pause in the stream.
+ *
+ * Spectra are taken with a {@link RealFft} when the window length is a power of two, as it is
+ * for 2.56 s windows at 50, 100 or 200 Hz, and with a direct DFT otherwise. Each axis gives its
+ * dominant frequency; the acceleration magnitude, Hann windowed as it is independent of how the
+ * phone is held, gives the band energies and the step cadence.
+ */
+public class WindowFeatureExtractor implements SampleSink {
+
+    public interface FeatureListener {
+        /** Called on the sample thread; {@code features} is reused after the call returns. */
+        void onWindow(WindowFeatures features);
+    }
+
+    private static final double GAP_PERIODS = 3;
+    // Step frequencies of walking and running
+    private static final double MIN_STEP_HZ = 0.5;
+    private static final double MAX_STEP_HZ = 4;
+    // Magnitude power between them below which there is no cadence, (m/s²)²
+    private static final double MIN_STEP_ENERGY = 0.1;
+
+    private final int sensorType;
+    private final double sampleRateHz;
+    private final int length;
+    private final int hop;
+    private final long gapNanos;
+    private final FeatureListener listener;
+
+    private final float[][] samples;
+    private final long[] timestamps;
+    // One linearized axis, oldest sample first
+    private final double[] scratch;
+    @Nullable
+    private final RealFft fft;
+    // DFT twiddle table: cos and sin of 2*pi*i/length, only without an FFT
+    private final double[] cosTable;
+    private final double[] sinTable;
+    // Transformed in place by the FFT
+    private final double[] spectrumInput;
+    // |X[k]|^2 for bins 0 to length/2
+    private final double[] power;
+    private final double[] hann;
+    private final double hannGain;
+    // Band of each bin, and the bins of step frequencies
+    private final int[] binBands;
+    private final int minStepBin;
+    private final int maxStepBin;
+    private final WindowFeatures features = new WindowFeatures();
+
+    private int next;
+    private int filled;
+    private int sinceLastWindow;
+    private long lastTimestamp;
+
+    /**
+     * @param windowSeconds window length, e.g. 2.56 s
+     * @param overlap       fraction of the window shared with the next one, in {@code [0, 1)}
+     */
+    public WindowFeatureExtractor(int sensorType, double sampleRateHz, double windowSeconds, double overlap,
+                                  FeatureListener listener) {
+        if (sampleRateHz <= 0 || windowSeconds <= 0 || overlap < 0 || overlap >= 1) {
+            throw new IllegalArgumentException("Invalid window: rate=" + sampleRateHz
+                    + " length=" + windowSeconds + "s overlap=" + overlap);
+        }
+        this.sensorType = sensorType;
+        this.sampleRateHz = sampleRateHz;
+        this.length = Math.max(2, (int) Math.round(windowSeconds * sampleRateHz));
+        this.hop = Math.max(1, (int) Math.round(length * (1 - overlap)));
+        this.gapNanos = (long) (GAP_PERIODS * 1e9 / sampleRateHz);
+        this.listener = listener;
+        this.samples = new float[WindowFeatures.AXES][length];
+        this.timestamps = new long[length];
+        this.scratch = new double[length];
+        this.fft = RealFft.isPowerOfTwo(length) ? new RealFft(length) : null;
+        int tableLength = fft == null ? length : 0;
+        this.cosTable = new double[tableLength];
+        this.sinTable = new double[tableLength];
+        for (int i = 0; i < tableLength; i++) {
+            cosTable[i] = Math.cos(2 * Math.PI * i / length);
+            sinTable[i] = Math.sin(2 * Math.PI * i / length);
+        }
+        this.spectrumInput = new double[length];
+        this.power = new double[length / 2 + 1];
+        this.hann = WindowFunction.HANN.fill(new double[length]);
+        this.hannGain = WindowFunction.powerGain(hann);
+        this.binBands = new int[power.length];
+        for (int bin = 0; bin < power.length; bin++) {
+            double frequency = bin * sampleRateHz / length;
+            while (binBands[bin] + 1 < WindowFeatures.BANDS
+                    && WindowFeatures.BAND_EDGES_HZ[binBands[bin] + 1] <= frequency) {
+                binBands[bin]++;
+            }
+        }
+        this.minStepBin = Math.max(1, (int) Math.ceil(MIN_STEP_HZ * length / sampleRateHz));
+        this.maxStepBin = Math.min(length / 2, (int) Math.floor(MAX_STEP_HZ * length / sampleRateHz));
+    }
+
+    public double getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public int getWindowLength() {
+        return length;
+    }
+
+    public int getHop() {
+        return hop;
+    }
+
+    /** A sample further than this from the previous one starts a new window. */
+    public long getGapNanos() {
+        return gapNanos;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+        if (sensorType != this.sensorType) {
+            return;
+        }
+        if (filled > 0 && timestampNanos - lastTimestamp > gapNanos) {
+            reset();
+        }
+        lastTimestamp = timestampNanos;
+        samples[0][next] = x;
+        samples[1][next] = y;
+        samples[2][next] = z;
+        timestamps[next] = timestampNanos;
+        next = next + 1 == length ? 0 : next + 1;
+        if (filled < length) {
+            filled++;
+        }
+        sinceLastWindow++;
+        if (filled == length && sinceLastWindow >= hop) {
+            sinceLastWindow = 0;
+            computeFeatures();
+            listener.onWindow(features);
+        }
+    }
+
+    public void reset() {
+        next = 0;
+        filled = 0;
+        sinceLastWindow = 0;
+    }
+
+    private void computeFeatures() {
+        // With a full window, next is also the index of the oldest sample
+        features.sensorType = sensorType;
+        features.startTimestampNanos = timestamps[next];
+        features.endTimestampNanos = timestamps[next == 0 ? length - 1 : next - 1];
+        features.sampleCount = length;
+        features.sampleRateHz = sampleRateHz;
+        double absoluteSum = 0;
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            float[] axisSamples = samples[axis];
+            double sum = 0;
+            double squareSum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0, index = next; i < length; i++) {
+                double value = axisSamples[index];
+                scratch[i] = value;
+                sum += value;
+                squareSum += value * value;
+                absoluteSum += Math.abs(value);
+                if (value < min) min = value;
+                if (value > max) max = value;
+                index = index + 1 == length ? 0 : index + 1;
+            }
+            double mean = sum / length;
+            double varianceSum = 0;
+            int crossings = 0;
+            for (int i = 0; i < length; i++) {
+                double centered = scratch[i] - mean;
+                varianceSum += centered * centered;
+                if (i > 0 && (centered < 0) != (scratch[i - 1] < 0)) {
+                    crossings++;
+                }
+                scratch[i] = centered;
+            }
+            features.mean[axis] = mean;
+            features.stdDev[axis] = Math.sqrt(varianceSum / length);
+            features.min[axis] = min;
+            features.max[axis] = max;
+            features.energy[axis] = squareSum / length;
+            features.zeroCrossingRate[axis] = (double) crossings / (length - 1);
+            features.dominantFrequencyHz[axis] = dominantFrequency(scratch);
+        }
+        features.signalMagnitudeArea = absoluteSum / length;
+        computeMagnitudeSpectrum();
+    }
+
+    /** Band energies and cadence from the spectrum of the mean-removed, Hann windowed magnitude. */
+    private void computeMagnitudeSpectrum() {
+        double sum = 0;
+        for (int i = 0, index = next; i < length; i++) {
+            double x = samples[0][index];
+            double y = samples[1][index];
+            double z = samples[2][index];
+            scratch[i] = Math.sqrt(x * x + y * y + z * z);
+            sum += scratch[i];
+            index = index + 1 == length ? 0 : index + 1;
+        }
+        double mean = sum / length;
+        for (int i = 0; i < length; i++) {
+            scratch[i] = (scratch[i] - mean) * hann[i];
+        }
+        powerSpectrum(scratch);
+        // One-sided power: Parseval scaled by the window's gain, bins other than Nyquist count twice
+        double scale = 1 / ((double) length * length * hannGain);
+        Arrays.fill(features.bandEnergy, 0);
+        double stepEnergy = 0;
+        int peakBin = 0;
+        for (int bin = 1; bin < power.length; bin++) {
+            double binPower = (2 * bin == length ? 1 : 2) * power[bin] * scale;
+            features.bandEnergy[binBands[bin]] += binPower;
+            if (bin >= minStepBin && bin <= maxStepBin) {
+                stepEnergy += binPower;
+                if (peakBin == 0 || power[bin] > power[peakBin]) {
+                    peakBin = bin;
+                }
+            }
+        }
+        features.cadenceStepsPerMinute = stepEnergy < MIN_STEP_ENERGY ? 0
+                : 60 * (peakBin + interpolatePeak(peakBin)) * sampleRateHz / length;
+    }
+
+    /**
+     * Offset in bins of the true peak from {@code bin}, from a parabola through the log power
+     * of the bin and its neighbours, which is exact for a Gaussian and close for a Hann window.
+     */
+    private double interpolatePeak(int bin) {
+        if (bin < 2 || bin + 1 >= power.length) {
+            return 0;
+        }
+        double before = Math.log(power[bin - 1] + 1e-300);
+        double peak = Math.log(power[bin] + 1e-300);
+        double after = Math.log(power[bin + 1] + 1e-300);
+        double curvature = before - 2 * peak + after;
+        if (curvature >= 0) {
+            return 0;
+        }
+        double offset = 0.5 * (before - after) / curvature;
+        return Math.max(-0.5, Math.min(0.5, offset));
+    }
+
+    /** Peak of the power spectrum of a mean-removed signal, excluding DC. */
+    private double dominantFrequency(double[] signal) {
+        powerSpectrum(signal);
+        double bestPower = 1e-12; // a flat signal has no dominant frequency
+        int bestBin = 0;
+        for (int bin = 1; bin < power.length; bin++) {
+            if (power[bin] > bestPower) {
+                bestPower = power[bin];
+                bestBin = bin;
+            }
+        }
+        return bestBin * sampleRateHz / length;
+    }
+
+    /** Fills {@link #power} with the unnormalized power spectrum of {@code signal}, DC excluded. */
+    private void powerSpectrum(double[] signal) {
+        if (fft != null) {
+            System.arraycopy(signal, 0, spectrumInput, 0, length);
+            fft.powerSpectrum(spectrumInput, power);
+            power[0] = 0;
+            return;
+        }
+        power[0] = 0;
+        for (int bin = 1; bin < power.length; bin++) {
+            double real = 0;
+            double imaginary = 0;
+            for (int i = 0, phase = 0; i < length; i++) {
+                real += signal[i] * cosTable[phase];
+                imaginary -= signal[i] * sinTable[phase];
+                phase += bin;
+                if (phase >= length) phase -= length;
+            }
+            power[bin] = real * real + imaginary * imaginary;
+        }
+    }
+}
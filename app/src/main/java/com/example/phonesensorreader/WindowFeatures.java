@@ -0,0 +1,140 @@
+package com.example.phonesensorreader;
+
+import java.util.Locale;
+
+/**
+ * Features of one closed window of a three-axis sensor.
+ *
+ * Instances are reused by {@link WindowFeatureExtractor}; listeners that keep features beyond
+ * the callback must {@link #copyFrom copy} them.
+ */
+public class WindowFeatures {
+    public static final int AXES = 3;
+    // Lower edges of the spectral bands of the magnitude, the last band reaches the Nyquist frequency
+    public static final double[] BAND_EDGES_HZ = {0, 1, 2, 3, 5};
+    public static final int BANDS = BAND_EDGES_HZ.length;
+
+    int sensorType;
+    long startTimestampNanos;
+    long endTimestampNanos;
+    int sampleCount;
+    double sampleRateHz;
+    double signalMagnitudeArea;
+    final double[] mean = new double[AXES];
+    final double[] stdDev = new double[AXES];
+    final double[] min = new double[AXES];
+    final double[] max = new double[AXES];
+    final double[] energy = new double[AXES];
+    final double[] zeroCrossingRate = new double[AXES];
+    final double[] dominantFrequencyHz = new double[AXES];
+    final double[] bandEnergy = new double[BANDS];
+    double cadenceStepsPerMinute;
+
+    public int getSensorType() {
+        return sensorType;
+    }
+
+    public long getStartTimestampNanos() {
+        return startTimestampNanos;
+    }
+
+    public long getEndTimestampNanos() {
+        return endTimestampNanos;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /** Mean over the window of |x| + |y| + |z|. */
+    public double getSignalMagnitudeArea() {
+        return signalMagnitudeArea;
+    }
+
+    public double getMean(int axis) {
+        return mean[axis];
+    }
+
+    public double getStdDev(int axis) {
+        return stdDev[axis];
+    }
+
+    public double getMin(int axis) {
+        return min[axis];
+    }
+
+    public double getMax(int axis) {
+        return max[axis];
+    }
+
+    /** Mean of the squared samples. */
+    public double getEnergy(int axis) {
+        return energy[axis];
+    }
+
+    /** Fraction of consecutive sample pairs where the mean-removed signal changes sign. */
+    public double getZeroCrossingRate(int axis) {
+        return zeroCrossingRate[axis];
+    }
+
+    /** Frequency of the strongest non-DC spectral component, 0 for a flat signal. */
+    public double getDominantFrequencyHz(int axis) {
+        return dominantFrequencyHz[axis];
+    }
+
+    /**
+     * Power of the mean-removed magnitude {@code |(x, y, z)|} between {@code BAND_EDGES_HZ[band]}
+     * and the next edge; the bands add up to about the variance of the magnitude.
+     */
+    public double getBandEnergy(int band) {
+        return bandEnergy[band];
+    }
+
+    /**
+     * Steps per minute, from the strongest frequency of the magnitude between 0.5 and 4 Hz,
+     * 0 when the magnitude hardly varies there. Meaningful for the accelerometer.
+     */
+    public double getCadenceStepsPerMinute() {
+        return cadenceStepsPerMinute;
+    }
+
+    public void copyFrom(WindowFeatures other) {
+        sensorType = other.sensorType;
+        startTimestampNanos = other.startTimestampNanos;
+        endTimestampNanos = other.endTimestampNanos;
+        sampleCount = other.sampleCount;
+        sampleRateHz = other.sampleRateHz;
+        signalMagnitudeArea = other.signalMagnitudeArea;
+        System.arraycopy(other.mean, 0, mean, 0, AXES);
+        System.arraycopy(other.stdDev, 0, stdDev, 0, AXES);
+        System.arraycopy(other.min, 0, min, 0, AXES);
+        System.arraycopy(other.max, 0, max, 0, AXES);
+        System.arraycopy(other.energy, 0, energy, 0, AXES);
+        System.arraycopy(other.zeroCrossingRate, 0, zeroCrossingRate, 0, AXES);
+        System.arraycopy(other.dominantFrequencyHz, 0, dominantFrequencyHz, 0, AXES);
+        System.arraycopy(other.bandEnergy, 0, bandEnergy, 0, BANDS);
+        cadenceStepsPerMinute = other.cadenceStepsPerMinute;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "sensor=%d n=%d sma=%.4f", sensorType, sampleCount, signalMagnitudeArea));
+        char[] names = {'X', 'Y', 'Z'};
+        for (int axis = 0; axis < AXES; axis++) {
+            builder.append(String.format(Locale.US, " %c[mean=%.4f std=%.4f min=%.4f max=%.4f energy=%.4f zcr=%.3f f=%.2fHz]",
+                    names[axis], mean[axis], stdDev[axis], min[axis], max[axis], energy[axis],
+                    zeroCrossingRate[axis], dominantFrequencyHz[axis]));
+        }
+        builder.append(" bands=[");
+        for (int band = 0; band < BANDS; band++) {
+            builder.append(String.format(Locale.US, band == 0 ? "%.4f" : " %.4f", bandEnergy[band]));
+        }
+        builder.append(String.format(Locale.US, "] cadence=%.1f/min", cadenceStepsPerMinute));
+        return builder.toString();
+    }
+}
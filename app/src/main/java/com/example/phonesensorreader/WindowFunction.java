@@ -0,0 +1,45 @@
+package com.example.phonesensorreader;
+
+/**
+ * Tapers applied to a window of samples before a spectrum is taken, to trade frequency
+ * resolution for less leakage between bins. Coefficients are periodic, the DFT convention.
+ */
+public enum WindowFunction {
+    RECTANGULAR {
+        @Override
+        double coefficient(int i, int length) {
+            return 1;
+        }
+    },
+    HANN {
+        @Override
+        double coefficient(int i, int length) {
+            return 0.5 - 0.5 * Math.cos(2 * Math.PI * i / length);
+        }
+    },
+    HAMMING {
+        @Override
+        double coefficient(int i, int length) {
+            return 0.54 - 0.46 * Math.cos(2 * Math.PI * i / length);
+        }
+    };
+
+    abstract double coefficient(int i, int length);
+
+    /** Fills {@code coefficients} with the taper for a window of its length. */
+    public double[] fill(double[] coefficients) {
+        for (int i = 0; i < coefficients.length; i++) {
+            coefficients[i] = coefficient(i, coefficients.length);
+        }
+        return coefficients;
+    }
+
+    /** Mean of the squared coefficients, by which a tapered spectrum underestimates power. */
+    public static double powerGain(double[] coefficients) {
+        double sum = 0;
+        for (double coefficient : coefficients) {
+            sum += coefficient * coefficient;
+        }
+        return sum / coefficients.length;
+    }
+}
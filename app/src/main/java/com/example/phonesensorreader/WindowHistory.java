@@ -0,0 +1,49 @@
+package com.example.phonesensorreader;
+
+/**
+ * The most recent feature windows of one sensor, copied into preallocated slots.
+ * Not thread safe.
+ */
+public class WindowHistory {
+    private final WindowFeatures[] windows;
+    private int newest = -1;
+    private int size;
+
+    public WindowHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        windows = new WindowFeatures[capacity];
+        for (int i = 0; i < capacity; i++) {
+            windows[i] = new WindowFeatures();
+        }
+    }
+
+    /** Copies {@code features} in as the newest window, replacing the oldest when full. */
+    public void add(WindowFeatures features) {
+        newest = (newest + 1) % windows.length;
+        windows[newest].copyFrom(features);
+        size = Math.min(size + 1, windows.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return windows.length;
+    }
+
+    /** The window {@code age} windows before the newest one, 0 being the newest. */
+    public WindowFeatures get(int age) {
+        if (age < 0 || age >= size) {
+            throw new IndexOutOfBoundsException("Window " + age + " of " + size);
+        }
+        return windows[(newest - age + windows.length) % windows.length];
+    }
+
+    public void clear() {
+        newest = -1;
+        size = 0;
+    }
+}
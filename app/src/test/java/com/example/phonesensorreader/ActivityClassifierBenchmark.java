@@ -0,0 +1,47 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decision tree throughput on synthetic windows, to compare with the LLM round trip it
+ * replaces for confident windows.
+ */
+public class ActivityClassifierBenchmark {
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void decisionTreeThroughput() throws IOException {
+        List<SyntheticActivity.LabeledWindow> windows = SyntheticActivity.generate(20, 30, 50, 1);
+        DecisionTreeClassifier tree = DecisionTreeClassifierTest.loadModel();
+        int checksum = 0;
+        for (int round = 0; round < ROUNDS / 4; round++) {
+            checksum += classifyAll(tree, windows); // warm up
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            checksum += classifyAll(tree, windows);
+        }
+        long elapsed = System.nanoTime() - start;
+        long classified = (long) ROUNDS * windows.size();
+
+        System.out.printf("decision tree: %d windows in %d ms, %.0f ns per window, %.1f M windows/s (checksum %d)%n",
+                classified, elapsed / 1_000_000, elapsed / (double) classified, classified * 1e3 / elapsed, checksum);
+        // A window closes every 1.28 s, anything near a microsecond is free next to an LLM round trip
+        assertTrue(elapsed / (double) classified < 10_000);
+    }
+
+    private static int classifyAll(ActivityClassifier classifier, List<SyntheticActivity.LabeledWindow> windows) {
+        int correct = 0;
+        for (SyntheticActivity.LabeledWindow window : windows) {
+            if (classifier.classify(window.accelerometer, window.gyroscope).getLabel() == window.label) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+}
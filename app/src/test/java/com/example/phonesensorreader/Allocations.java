@@ -0,0 +1,20 @@
+package com.example.phonesensorreader;
+
+import java.lang.management.ManagementFactory;
+
+/** Counts the bytes a hot path allocates on the current thread, for tests and benchmarks. */
+final class Allocations {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    /** Bytes allocated by the current thread while running {@code body}. */
+    static long measure(Runnable body) {
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        body.run();
+        return THREADS.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.phonesensorreader;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead against a stub server that answers immediately: a fresh executor and
+ * HttpURLConnection per request (the previous HttpRequestTask) versus the shared client.
+ */
+public class CompletionClientBenchmark {
+    private static final int REQUESTS = 1000;
+    private static final String BODY = "{\"prompt\":\"ACC_X:0.1\",\"n_predict\":8}";
+
+    private static long oldPath(String endpoint) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            ExecutorService executor = Executors.newSingleThreadExecutor(); // one per HttpRequestTask, never shut down
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    HttpURLConnection conn = (HttpURLConnection) new URL(endpoint).openConnection();
+                    conn.setRequestMethod("POST");
+                    conn.setRequestProperty("Content-Type", "application/json");
+                    conn.setDoOutput(true);
+                    try (OutputStream os = conn.getOutputStream()) {
+                        os.write(BODY.getBytes(StandardCharsets.UTF_8));
+                    }
+                    try (InputStream in = conn.getInputStream()) {
+                        in.readAllBytes();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            done.await();
+            executor.shutdown(); // so the benchmark itself does not leak 2000 threads
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long sharedClient(CompletionClient client) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            client.complete(null, BODY, new CompletionClient.ResponseCallback() {
+                @Override
+                public void onResponse(String body, long latencyMillis) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(String message) {
+                    throw new RuntimeException(message);
+                }
+            });
+            done.await(10, TimeUnit.SECONDS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void perRequestOverhead() throws Exception {
+        // Without TCP_NODELAY the JDK server's separate header and body writes hit the 40 ms delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/completion", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            byte[] response = "{\"content\":\"sitting\",\"stop\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/completion";
+        CompletionClient client = new CompletionClient(new CompletionClient.Config().endpoint(endpoint));
+        try {
+            oldPath(endpoint); // warm up
+            sharedClient(client);
+            long old = oldPath(endpoint);
+            long shared = sharedClient(client);
+            System.out.printf("new executor + connection per request: %.1f us/request%n", old / 1e3 / REQUESTS);
+            System.out.printf("shared pooled client:                  %.1f us/request%n", shared / 1e3 / REQUESTS);
+        } finally {
+            client.shutdown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.phonesensorreader;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CompletionClientTest {
+    private HttpServer server;
+    private CompletionClient client;
+    private final List<String> receivedBodies = new CopyOnWriteArrayList<>();
+    private final AtomicInteger backendCalls = new AtomicInteger();
+    // Requests block in the server until released
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private volatile CountDownLatch firstRequestArrived = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/completion", exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            backendCalls.incrementAndGet();
+            receivedBodies.add(body);
+            firstRequestArrived.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = ("{\"content\":\"echo " + body + "\",\"stop\":true}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        client = new CompletionClient(new CompletionClient.Config()
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/completion")
+                .maxConcurrentRequests(1)
+                .maxQueuedRequests(2));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        client.shutdown();
+        server.stop(0);
+    }
+
+    private static class Result implements CompletionClient.ResponseCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String body;
+        volatile String failure;
+        volatile long latencyMillis = -1;
+
+        @Override
+        public void onResponse(String body, long latencyMillis) {
+            this.body = body;
+            this.latencyMillis = latencyMillis;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(String message) {
+            failure = message;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("timed out", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void completesRequest() throws Exception {
+        Result result = new Result();
+        client.complete(null, "a", result);
+        result.await();
+
+        assertEquals("{\"content\":\"echo a\",\"stop\":true}", result.body);
+        assertNull(result.failure);
+        assertEquals(1, client.getCompletedCount());
+    }
+
+    @Test
+    public void newerRequestReplacesWaitingOneForSameKey() throws Exception {
+        release = new CountDownLatch(1);
+        Result first = new Result();
+        Result stale = new Result();
+        Result latest = new Result();
+        client.complete("window", "first", first);
+        assertTrue(firstRequestArrived.await(10, TimeUnit.SECONDS));
+        client.complete("window", "stale", stale);
+        client.complete("window", "latest", latest);
+
+        stale.await();
+        assertEquals(CompletionClient.DROPPED, stale.failure);
+        release.countDown();
+        first.await();
+        latest.await();
+
+        assertNotNull(first.body);
+        assertTrue(latest.body.contains("echo latest"));
+        assertEquals(2, backendCalls.get());
+        assertEquals(List.of("first", "latest"), receivedBodies);
+        assertEquals(1, client.getDroppedCount());
+    }
+
+    @Test
+    public void differentKeysDoNotReplaceEachOther() throws Exception {
+        Result a = new Result();
+        Result b = new Result();
+        client.complete("a", "a", a);
+        client.complete("b", "b", b);
+        a.await();
+        b.await();
+
+        assertNotNull(a.body);
+        assertNotNull(b.body);
+        assertEquals(0, client.getDroppedCount());
+    }
+
+    @Test
+    public void rejectsUnkeyedRequestsWhenQueueIsFull() throws Exception {
+        release = new CountDownLatch(1);
+        Result running = new Result();
+        client.complete(null, "running", running);
+        assertTrue(firstRequestArrived.await(10, TimeUnit.SECONDS));
+        Result queued1 = new Result();
+        Result queued2 = new Result();
+        Result rejected = new Result();
+        client.complete(null, "q1", queued1);
+        client.complete(null, "q2", queued2);
+        client.complete(null, "rejected", rejected);
+
+        rejected.await();
+        assertEquals(CompletionClient.QUEUE_FULL, rejected.failure);
+        release.countDown();
+        running.await();
+        queued1.await();
+        queued2.await();
+        assertNull(queued2.failure);
+        assertEquals(3, backendCalls.get());
+        assertEquals(1, client.getRejectedCount());
+    }
+
+    @Test
+    public void latencyExcludesWaitInDispatcherQueue() throws Exception {
+        release = new CountDownLatch(1);
+        Result running = new Result();
+        Result queued = new Result();
+        client.complete(null, "running", running);
+        assertTrue(firstRequestArrived.await(10, TimeUnit.SECONDS));
+        client.complete(null, "queued", queued);
+        Thread.sleep(500);
+        release.countDown();
+        running.await();
+        queued.await();
+
+        assertTrue("running took " + running.latencyMillis + " ms", running.latencyMillis >= 500);
+        assertTrue("queued took " + queued.latencyMillis + " ms", queued.latencyMillis < 400);
+        assertEquals(2, client.getResponseTime().summarize().getCount());
+    }
+
+    @Test
+    public void cancelAllAbortsEveryRequest() throws Exception {
+        release = new CountDownLatch(1);
+        Result a = new Result();
+        Result b = new Result();
+        Result unkeyed = new Result();
+        client.complete("a", "a", a);
+        assertTrue(firstRequestArrived.await(10, TimeUnit.SECONDS));
+        client.complete("b", "b", b);
+        client.complete(null, "unkeyed", unkeyed);
+
+        client.cancelAll();
+        a.await();
+        b.await();
+        unkeyed.await();
+
+        assertEquals(CompletionClient.CANCELED, a.failure);
+        assertEquals(CompletionClient.CANCELED, b.failure);
+        assertEquals(CompletionClient.CANCELED, unkeyed.failure);
+        assertEquals(1, backendCalls.get());
+    }
+
+    @Test
+    public void cancelAbortsInFlightAndWaitingRequests() throws Exception {
+        release = new CountDownLatch(1);
+        Result inFlight = new Result();
+        Result waiting = new Result();
+        client.complete("window", "in flight", inFlight);
+        assertTrue(firstRequestArrived.await(10, TimeUnit.SECONDS));
+        client.complete("window", "waiting", waiting);
+
+        client.cancel("window");
+        waiting.await();
+        inFlight.await();
+
+        assertEquals(CompletionClient.CANCELED, waiting.failure);
+        assertEquals(CompletionClient.CANCELED, inFlight.failure);
+        release.countDown();
+        // The key is free again
+        Result next = new Result();
+        client.complete("window", "next", next);
+        next.await();
+        assertTrue(next.body.contains("echo next"));
+    }
+
+    @Test
+    public void sharedClientCanBeReconfigured() {
+        CompletionClient.configureShared(new CompletionClient.Config().endpoint("http://127.0.0.1:1/completion"));
+        assertEquals("http://127.0.0.1:1/completion", CompletionClient.getShared().getConfig().getEndpoint());
+        CompletionClient.configureShared(new CompletionClient.Config());
+        assertEquals("http://127.0.0.1:8080/completion", CompletionClient.getShared().getConfig().getEndpoint());
+    }
+}
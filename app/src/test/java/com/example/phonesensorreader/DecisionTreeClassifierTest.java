@@ -0,0 +1,123 @@
+package com.example.phonesensorreader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DecisionTreeClassifierTest {
+    // Unit tests run in the module directory
+    static final File MODEL = new File("src/main/assets/activity_tree.txt");
+    private static final double MIN_CONFIDENCE = 0.8;
+
+    private static List<SyntheticActivity.LabeledWindow> testSet;
+
+    @BeforeClass
+    public static void generateTestSet() {
+        testSet = SyntheticActivity.generate(40, 30, SamplingConfig.DEFAULT_RATE_HZ, 2024);
+    }
+
+    static DecisionTreeClassifier loadModel() throws IOException {
+        try (InputStream in = new FileInputStream(MODEL)) {
+            return DecisionTreeClassifier.load(in);
+        }
+    }
+
+    private static DecisionTreeClassifier parse(String model) throws IOException {
+        return DecisionTreeClassifier.load(new ByteArrayInputStream(model.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void bundledModelIsAccurateOnSyntheticWindows() throws IOException {
+        DecisionTreeClassifier tree = loadModel();
+        int correct = 0;
+        for (SyntheticActivity.LabeledWindow window : testSet) {
+            if (tree.classify(window.accelerometer, window.gyroscope).getLabel() == window.label) {
+                correct++;
+            }
+        }
+        double accuracy = correct / (double) testSet.size();
+        assertTrue("accuracy " + accuracy, accuracy >= 0.95);
+    }
+
+    @Test
+    public void cascadeEscalatesOnlyAmbiguousWindows() throws IOException {
+        CascadeClassifier cascade = new CascadeClassifier(loadModel(), MIN_CONFIDENCE);
+        int answered = 0;
+        int answeredCorrectly = 0;
+        for (SyntheticActivity.LabeledWindow window : testSet) {
+            ActivityPrediction prediction = cascade.classify(window.accelerometer, window.gyroscope);
+            if (prediction != null) {
+                answered++;
+                if (prediction.getLabel() == window.label) answeredCorrectly++;
+                assertEquals(ActivityPrediction.Source.CLASSIFIER, prediction.getSource());
+                assertTrue(prediction.getConfidence() >= MIN_CONFIDENCE);
+            }
+        }
+        double escalated = cascade.getEscalatedCount() / (double) testSet.size();
+        assertEquals(testSet.size(), cascade.getClassifiedCount() + cascade.getEscalatedCount());
+        assertEquals(answered, cascade.getClassifiedCount());
+        assertTrue("escalated " + escalated, escalated < 0.3);
+        assertTrue(answeredCorrectly >= 0.99 * answered);
+    }
+
+    @Test
+    public void missingGyroscopeStillClassifies() throws IOException {
+        DecisionTreeClassifier tree = loadModel();
+        SyntheticActivity.LabeledWindow running = null;
+        for (SyntheticActivity.LabeledWindow window : testSet) {
+            if (window.label == ActivityLabel.RUNNING) {
+                running = window;
+                break;
+            }
+        }
+        assertNotNull(running);
+        assertEquals(ActivityLabel.RUNNING, tree.classify(running.accelerometer, null).getLabel());
+    }
+
+    @Test
+    public void followsSplitsToLeaf() throws IOException {
+        DecisionTreeClassifier tree = parse("# comment\n"
+                + "0 split ACC_STD 1.5 1 2  # still or moving\n"
+                + "1 leaf SITTING 0.9\n"
+                + "\n"
+                + "2 leaf RUNNING 0.8\n");
+        WindowFeatures accelerometer = new WindowFeatures();
+        accelerometer.sampleCount = 1;
+        accelerometer.stdDev[0] = 1;
+        assertEquals(3, tree.getNodeCount());
+        assertEquals(ActivityLabel.SITTING, tree.classify(accelerometer, null).getLabel());
+        assertEquals(0.9, tree.classify(accelerometer, null).getConfidence(), 0);
+        accelerometer.stdDev[1] = 1.5; // vector std of (1, 1.5, 0) is above 1.5
+        assertEquals(ActivityLabel.RUNNING, tree.classify(accelerometer, null).getLabel());
+    }
+
+    @Test
+    public void rejectsMalformedModels() {
+        String[] models = {
+                "",
+                "0 split ACC_STD 1 1\n1 leaf SITTING 1\n",             // missing child
+                "0 split SPEED 1 1 2\n1 leaf SITTING 1\n2 leaf RUNNING 1\n",
+                "0 leaf JUMPING 1\n",
+                "0 split ACC_STD 1 0 1\n1 leaf SITTING 1\n",           // cycle
+                "0 split ACC_STD 1 1 5\n1 leaf SITTING 1\n",           // dangling reference
+                "0 leaf SITTING 1\n0 leaf RUNNING 1\n",
+        };
+        for (String model : models) {
+            try {
+                parse(model);
+                fail("accepted " + model);
+            } catch (IOException expected) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DutyCyclePolicyTest {
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+    private static final double RATE_HZ = 50;
+    private static final SamplingConfig ACTIVE = new SamplingConfig(RATE_HZ, RATE_HZ, 0);
+
+    /**
+     * Passes a policy the samples the service would register in its current mode: only the
+     * sensors of the mode's profile, decimated to its rates, and nothing while dormant but the
+     * significant motion trigger at a given time.
+     */
+    private static class DutyCycledFeed implements SampleSink {
+        final DutyCyclePolicy policy;
+        private DutyCyclePolicy.Mode mode;
+        private RateDecimator accelerometer;
+        private RateDecimator gyroscope;
+        // One-shot like the sensor's trigger
+        private long triggerNanos;
+        long lastTimestampNanos;
+
+        DutyCycledFeed(DutyCyclePolicy policy, long triggerNanos) {
+            this.policy = policy;
+            this.triggerNanos = triggerNanos;
+        }
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            lastTimestampNanos = timestampNanos;
+            if (timestampNanos >= triggerNanos && policy.getMode() == DutyCyclePolicy.Mode.DORMANT) {
+                policy.onSignificantMotion(timestampNanos);
+                triggerNanos = Long.MAX_VALUE;
+            }
+            if (policy.getMode() != mode) {
+                mode = policy.getMode();
+                DutyCyclePolicy.Profile profile = policy.getProfile(mode);
+                accelerometer = profile.uses(ACC) ? new RateDecimator(profile.rateHz(ACC)) : null;
+                gyroscope = profile.uses(GYRO) ? new RateDecimator(profile.rateHz(GYRO)) : null;
+            }
+            RateDecimator decimator = sensorType == ACC ? accelerometer : gyroscope;
+            if (decimator != null && decimator.accept(timestampNanos)) {
+                policy.onSample(timestampNanos, sensorType, x, y, z);
+            }
+        }
+    }
+
+    private static DutyCyclePolicy.Config config() {
+        return new DutyCyclePolicy.Config().active(ACTIVE);
+    }
+
+    private static DutyCycledFeed replay(DutyCyclePolicy policy, SyntheticSensorSource source) {
+        return replay(policy, source, Long.MAX_VALUE);
+    }
+
+    private static DutyCycledFeed replay(DutyCyclePolicy policy, SyntheticSensorSource source, long triggerNanos) {
+        DutyCycledFeed feed = new DutyCycledFeed(policy, triggerNanos);
+        source.forEach(feed);
+        return feed;
+    }
+
+    @Test
+    public void stillPhoneStepsDownOnce() {
+        List<DutyCyclePolicy.Transition> transitions = new ArrayList<>();
+        DutyCyclePolicy policy = new DutyCyclePolicy(config(), transitions::add);
+        DutyCycledFeed feed = replay(policy, new SyntheticSensorSource(RATE_HZ, 1).add(ActivityLabel.SITTING, 600));
+
+        assertEquals(DutyCyclePolicy.Mode.STILL, policy.getMode());
+        assertEquals(1, transitions.size());
+        DutyCyclePolicy.Transition still = transitions.get(0);
+        assertEquals(DutyCyclePolicy.Mode.ACTIVE, still.getFrom());
+        assertEquals(30, still.getTimestampNanos() / 1e9, 2);
+        assertTrue(still.getMilliwattsSaved() > 0);
+        assertFalse(still.getProfile().uses(GYRO));
+        assertTrue(feed.lastTimestampNanos > 599e9);
+    }
+
+    @Test
+    public void walkingAndRunningStayActive() {
+        for (long seed = 1; seed <= 5; seed++) {
+            DutyCyclePolicy policy = new DutyCyclePolicy(config(), null);
+            replay(policy, new SyntheticSensorSource(RATE_HZ, seed)
+                    .add(ActivityLabel.WALKING, 90).add(ActivityLabel.RUNNING, 90));
+            assertEquals("seed " + seed, 0, policy.getTransitionCount());
+        }
+    }
+
+    @Test
+    public void rampsBackWithinOneFeatureWindow() {
+        for (ActivityLabel activity : new ActivityLabel[]{ActivityLabel.WALKING, ActivityLabel.RUNNING}) {
+            for (long seed = 1; seed <= 5; seed++) {
+                List<DutyCyclePolicy.Transition> transitions = new ArrayList<>();
+                DutyCyclePolicy policy = new DutyCyclePolicy(config(), transitions::add);
+                replay(policy, new SyntheticSensorSource(RATE_HZ, seed)
+                        .add(ActivityLabel.SITTING, 60).add(activity, 30));
+
+                String message = activity + " seed " + seed;
+                assertEquals(message, 2, transitions.size());
+                DutyCyclePolicy.Transition ramp = transitions.get(1);
+                assertEquals(message, DutyCyclePolicy.Mode.ACTIVE, ramp.getTo());
+                // Noticed at the sample timestamps plus what the still mode's FIFO held back
+                double reactionSeconds = ramp.getTimestampNanos() / 1e9 - 60 + 0.5;
+                assertTrue(message + ": " + reactionSeconds, reactionSeconds <= SensorPipeline.WINDOW_SECONDS);
+                assertTrue(message, ramp.getLatencyNanos() <= SensorPipeline.WINDOW_SECONDS * 1e9);
+            }
+        }
+    }
+
+    @Test
+    public void goesDormantAndWakesOnSignificantMotion() {
+        List<DutyCyclePolicy.Transition> transitions = new ArrayList<>();
+        DutyCyclePolicy policy = new DutyCyclePolicy(config().significantMotion(true)
+                .stillAfterMillis(30_000, 120_000), transitions::add);
+        DutyCycledFeed feed = replay(policy, new SyntheticSensorSource(RATE_HZ, 2)
+                .add(ActivityLabel.SITTING, 200).add(ActivityLabel.WALKING, 20));
+
+        // Nothing streams while dormant, so the walk goes unnoticed until the trigger
+        assertEquals(DutyCyclePolicy.Mode.DORMANT, policy.getMode());
+        assertEquals(2, transitions.size());
+        assertEquals(120, transitions.get(1).getTimestampNanos() / 1e9, 2);
+        assertEquals(0, transitions.get(1).getProfile().getWakeupsPerMinute(), 0);
+
+        policy.onSignificantMotion(feed.lastTimestampNanos);
+        assertEquals(DutyCyclePolicy.Mode.ACTIVE, policy.getMode());
+        assertEquals(3, transitions.size());
+        assertEquals("significant motion", transitions.get(2).getReason());
+        assertEquals(DutyCyclePolicy.SIGNIFICANT_MOTION_LATENCY_NANOS, transitions.get(2).getLatencyNanos());
+        // Only a dormant policy listens to the trigger
+        policy.onSignificantMotion(feed.lastTimestampNanos + 1);
+        assertEquals(3, transitions.size());
+    }
+
+    @Test
+    public void policiesCompareOnWakeupsPerMinute() {
+        SyntheticSensorSource day = new SyntheticSensorSource(RATE_HZ, 3)
+                .add(ActivityLabel.SITTING, 900).add(ActivityLabel.WALKING, 300)
+                .add(ActivityLabel.RUNNING, 120).add(ActivityLabel.SITTING, 900);
+        DutyCyclePolicy[] policies = {
+                DutyCyclePolicy.alwaysActive(ACTIVE),
+                new DutyCyclePolicy(config(), null),
+                new DutyCyclePolicy(config().significantMotion(true), null),
+        };
+        double[] wakeupsPerMinute = new double[policies.length];
+        double[] milliwatts = new double[policies.length];
+        for (int i = 0; i < policies.length; i++) {
+            // Significant motion fires a few seconds into the walk
+            DutyCycledFeed feed = replay(policies[i], day,
+                    (long) (900e9 + DutyCyclePolicy.SIGNIFICANT_MOTION_LATENCY_NANOS));
+            double minutes = feed.lastTimestampNanos / 60e9;
+            wakeupsPerMinute[i] = policies[i].getEstimatedWakeups(feed.lastTimestampNanos) / minutes;
+            milliwatts[i] = policies[i].getEstimatedMillijoules(feed.lastTimestampNanos) / (minutes * 60);
+        }
+        // Without batching every sample of both sensors at 50 Hz takes the processor
+        assertEquals(2 * RATE_HZ * 60, wakeupsPerMinute[0], 1);
+        assertTrue(wakeupsPerMinute[1] < wakeupsPerMinute[0] / 2);
+        assertTrue(wakeupsPerMinute[2] < wakeupsPerMinute[1]);
+        assertTrue(milliwatts[1] < milliwatts[0]);
+        assertTrue(milliwatts[2] < milliwatts[1]);
+        // Still, dormant, woken by the walk, then still and dormant again
+        assertEquals(5, policies[2].getTransitionCount());
+    }
+
+    @Test
+    public void profileEstimates() {
+        DutyCyclePolicy.Profile batched = new DutyCyclePolicy.Profile(100, 0, 2_000_000, false);
+        assertEquals(30, batched.getWakeupsPerMinute(), 1e-9);
+        DutyCyclePolicy.Profile streaming = new DutyCyclePolicy.Profile(10, 10, 0, true);
+        assertEquals(1200, streaming.getWakeupsPerMinute(), 1e-9);
+        assertTrue(streaming.getEstimatedMilliwatts() > batched.getEstimatedMilliwatts());
+        assertTrue(new DutyCyclePolicy.Profile(SamplingConfig.RATE_DEVICE_MAX, 0, 0, false).uses(ACC));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMotionThresholdBelowStillThreshold() {
+        new DutyCyclePolicy(config().thresholds(1, 0.5), null);
+    }
+}
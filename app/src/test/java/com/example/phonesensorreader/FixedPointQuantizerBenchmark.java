@@ -0,0 +1,46 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounding sensor values to 6 decimals with {@link FixedPointQuantizer} and with the BigDecimal
+ * path PhoneSensorService used to run for every published value.
+ */
+public class FixedPointQuantizerBenchmark {
+    private static final int VALUES = 3_000_000;
+
+    private interface Rounding {
+        float round(float value);
+    }
+
+    private static void run(String name, float[] values, Rounding rounding) {
+        float[] checksum = {0};
+        long start = System.nanoTime();
+        long allocated = Allocations.measure(() -> {
+            for (float value : values) {
+                checksum[0] += rounding.round(value);
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-12s %7.1f ns/value %8.1f bytes/value (checksum %.3f)%n",
+                name, elapsed / (double) VALUES, allocated / (double) VALUES, checksum[0]);
+    }
+
+    @Test
+    public void rounding() {
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        float[] values = new float[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            // Accelerometer-like values between -20 and 20 m/s²
+            values[i] = (float) Math.sin(i * 0.001) * 20;
+        }
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("Rounding to 6 decimals:");
+            run("BigDecimal", values, value -> new BigDecimal(value).setScale(6, RoundingMode.HALF_UP).floatValue());
+            run("quantizer", values, quantizer::round);
+        }
+    }
+}
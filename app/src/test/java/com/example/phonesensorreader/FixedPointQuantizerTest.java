@@ -0,0 +1,153 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the quantizer against the BigDecimal rounding PhoneSensorService used before.
+ */
+public class FixedPointQuantizerTest {
+    // Beyond any accelerometer, gyroscope, magnetometer or barometer reading
+    private static final float SENSOR_RANGE = 2048;
+
+    private static float bigDecimalRound(float value, int decimals) {
+        return new BigDecimal(value).setScale(decimals, RoundingMode.HALF_UP).floatValue();
+    }
+
+    private static void assertSameRounding(FixedPointQuantizer quantizer, float value) {
+        float expected = bigDecimalRound(value, quantizer.getDecimals());
+        float actual = quantizer.round(value);
+        if (Float.floatToIntBits(expected) != Float.floatToIntBits(actual)) {
+            fail(value + " rounded to " + actual + " instead of " + expected);
+        }
+    }
+
+    @Test
+    public void matchesBigDecimalForEveryFloatAroundGravity() {
+        // Every float in [8, 16), where accelerometer readings at rest spend their time, and their negatives
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        for (int bits = Float.floatToIntBits(8f); bits < Float.floatToIntBits(16f); bits++) {
+            float value = Float.intBitsToFloat(bits);
+            assertSameRounding(quantizer, value);
+            assertSameRounding(quantizer, -value);
+        }
+    }
+
+    @Test
+    public void matchesBigDecimalAcrossTheSensorRange() {
+        // Every 211th float from 0 to the end of the sensor range, covering every binade
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        int last = Float.floatToIntBits(SENSOR_RANGE);
+        for (int bits = 0; bits <= last; bits += 211) {
+            float value = Float.intBitsToFloat(bits);
+            assertSameRounding(quantizer, value);
+            assertSameRounding(quantizer, -value);
+        }
+    }
+
+    @Test
+    public void matchesBigDecimalForEveryPrecision() {
+        Random random = new Random(16);
+        for (int decimals = 0; decimals <= FixedPointQuantizer.MAX_DECIMALS; decimals++) {
+            FixedPointQuantizer quantizer = new FixedPointQuantizer(decimals);
+            for (int i = 0; i < 200_000; i++) {
+                assertSameRounding(quantizer, (random.nextFloat() * 2 - 1) * SENSOR_RANGE);
+                assertSameRounding(quantizer, (float) random.nextGaussian() * 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void tiesRoundAwayFromZero() {
+        // 2^-7 is exactly 0.0078125, half way between two values with 6 decimals
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        assertEquals(7813, quantizer.encode(0.0078125f));
+        assertEquals(-7813, quantizer.encode(-0.0078125f));
+        assertEquals(0.007813f, quantizer.round(0.0078125f), 0);
+        FixedPointQuantizer integers = new FixedPointQuantizer(0);
+        assertEquals(3, integers.encode(2.5f));
+        assertEquals(-3, integers.encode(-2.5f));
+        assertEquals(2, integers.encode(2.4999998f));
+        // Every odd multiple of 2^-7 is a tie at 6 decimals
+        for (int odd = 1; odd < 1 << 16; odd += 2) {
+            assertSameRounding(quantizer, odd / 128f);
+            assertSameRounding(quantizer, -odd / 128f);
+        }
+    }
+
+    @Test
+    public void encodeAndDecodeRoundTrip() {
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        assertEquals(1_000_000, quantizer.getScale());
+        assertEquals(9_806_650, quantizer.encode(9.80665f));
+        assertEquals(-123, quantizer.encode(-0.000123f));
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            float value = (random.nextFloat() * 2 - 1) * SENSOR_RANGE;
+            long fixed = quantizer.encode(value);
+            assertEquals(quantizer.round(value), quantizer.decode(fixed), 0);
+            assertEquals(fixed, quantizer.encode(quantizer.decode(fixed)));
+        }
+    }
+
+    @Test
+    public void specialValuesPassThroughRound() {
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        assertTrue(Float.isNaN(quantizer.round(Float.NaN)));
+        assertEquals(Float.POSITIVE_INFINITY, quantizer.round(Float.POSITIVE_INFINITY), 0);
+        assertEquals(1e20f, quantizer.round(1e20f), 0);
+        assertEquals(0f, quantizer.round(-1e-7f), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsNaN() {
+        new FixedPointQuantizer(6).encode(Float.NaN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsOverflow() {
+        new FixedPointQuantizer(8).encode(1e12f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyDecimals() {
+        new FixedPointQuantizer(FixedPointQuantizer.MAX_DECIMALS + 1);
+    }
+
+    @Test
+    public void appendsPlainDecimals() {
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        assertEquals("9.806650", quantizer.append(new StringBuilder(), 9.80665f).toString());
+        assertEquals("-0.000120", quantizer.append(new StringBuilder(), -1.2e-4f).toString());
+        assertEquals("0.000000", quantizer.append(new StringBuilder(), -1e-7f).toString());
+        assertEquals("1013", new FixedPointQuantizer(0).append(new StringBuilder(), 1013.25f).toString());
+        assertEquals("x=NaN", quantizer.append(new StringBuilder("x="), Float.NaN).toString());
+        Random random = new Random(5);
+        for (int i = 0; i < 10_000; i++) {
+            float value = (random.nextFloat() * 2 - 1) * SENSOR_RANGE;
+            String expected = new BigDecimal(value).setScale(6, RoundingMode.HALF_UP).toPlainString();
+            assertEquals(expected, quantizer.append(new StringBuilder(), value).toString());
+        }
+    }
+
+    @Test
+    public void roundDoesNotAllocate() {
+        FixedPointQuantizer quantizer = new FixedPointQuantizer(6);
+        float[] sum = {0};
+        for (int i = 0; i < 100_000; i++) {
+            sum[0] += quantizer.round(i * 0.001f); // warm up so the JIT has compiled round()
+        }
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < 1_000_000; i++) {
+                sum[0] += quantizer.round(i * 0.0007f);
+            }
+        });
+
+        assertTrue("allocated " + allocated + " bytes (" + sum[0] + ")", allocated < 1024);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class InferenceCacheTest {
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+    private static final double RATE_HZ = 50;
+
+    /** Keys of the accelerometer windows of a synthetic session, each with the latest gyroscope window. */
+    private static List<Long> keys(SyntheticSensorSource source, boolean withGyroscope) {
+        List<Long> keys = new ArrayList<>();
+        WindowFeatures gyroscope = new WindowFeatures();
+        boolean[] haveGyroscope = {false};
+        WindowFeatureExtractor gyroscopeWindows = new WindowFeatureExtractor(GYRO, RATE_HZ,
+                SensorPipeline.WINDOW_SECONDS, SensorPipeline.WINDOW_OVERLAP, features -> {
+                    gyroscope.copyFrom(features);
+                    haveGyroscope[0] = true;
+                });
+        WindowFeatureExtractor accelerometerWindows = new WindowFeatureExtractor(ACC, RATE_HZ,
+                SensorPipeline.WINDOW_SECONDS, SensorPipeline.WINDOW_OVERLAP, features ->
+                keys.add(InferenceCache.keyOf(features, withGyroscope && haveGyroscope[0] ? gyroscope : null)));
+        source.forEach((timestampNanos, sensorType, x, y, z) -> {
+            if (sensorType == GYRO) {
+                gyroscopeWindows.onSample(timestampNanos, sensorType, x, y, z);
+            } else {
+                accelerometerWindows.onSample(timestampNanos, sensorType, x, y, z);
+            }
+        });
+        return keys;
+    }
+
+    @Test
+    public void stillWindowsShareOneKey() {
+        for (long seed = 1; seed <= 5; seed++) {
+            List<Long> keys = keys(new SyntheticSensorSource(RATE_HZ, seed).add(ActivityLabel.SITTING, 60), true);
+            assertEquals(45, keys.size());
+            assertEquals("seed " + seed, 1, new HashSet<>(keys).size());
+            assertNotEquals(InferenceCache.NO_KEY, (long) keys.get(0));
+        }
+    }
+
+    @Test
+    public void activitiesGetDifferentKeys() {
+        Set<Long> sitting = new HashSet<>(keys(new SyntheticSensorSource(RATE_HZ, 7).add(ActivityLabel.SITTING, 30), true));
+        Set<Long> walking = new HashSet<>(keys(new SyntheticSensorSource(RATE_HZ, 7).add(ActivityLabel.WALKING, 30), true));
+        Set<Long> running = new HashSet<>(keys(new SyntheticSensorSource(RATE_HZ, 7).add(ActivityLabel.RUNNING, 30), true));
+        Set<Long> withoutGyroscope = new HashSet<>(
+                keys(new SyntheticSensorSource(RATE_HZ, 7).add(ActivityLabel.SITTING, 30), false));
+
+        for (Long key : sitting) {
+            assertFalse(walking.contains(key));
+            assertFalse(running.contains(key));
+            assertFalse(withoutGyroscope.contains(key));
+        }
+        for (Long key : walking) {
+            assertFalse(running.contains(key));
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        InferenceCache cache = new InferenceCache(2, 60_000);
+        cache.put(1, ActivityLabel.SITTING, "Sitting", 100);
+        cache.put(2, ActivityLabel.WALKING, "Walking", 100);
+        assertNotNull(cache.get(1));
+        cache.put(3, ActivityLabel.RUNNING, "Running", 100);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(2));
+        assertEquals(ActivityLabel.SITTING, cache.get(1).getLabel());
+        assertEquals("Running", cache.get(3).getResponseText());
+    }
+
+    @Test
+    public void entriesExpireAfterTimeToLive() {
+        AtomicLong now = new AtomicLong();
+        InferenceCache cache = new InferenceCache(8, 1000, now::get);
+        cache.put(1, ActivityLabel.SITTING, "Sitting", 100);
+        now.set(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertNotNull(cache.get(1));
+        now.incrementAndGet();
+
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(0, cache.size());
+        // An answer cached again lives another time to live
+        cache.put(1, ActivityLabel.WALKING, "Walking", 100);
+        assertEquals(ActivityLabel.WALKING, cache.get(1).getLabel());
+    }
+
+    @Test
+    public void countsHitsAndSavedLatency() {
+        InferenceCache cache = new InferenceCache(8, 60_000);
+        assertEquals(0, cache.getHitRatio(), 0);
+        assertNull(cache.get(5));
+        cache.put(5, ActivityLabel.SITTING, "Sitting", 300_000_000L);
+        cache.put(InferenceCache.NO_KEY, ActivityLabel.WALKING, "Walking", 1);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cache.get(5));
+        }
+
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.75, cache.getHitRatio(), 1e-9);
+        assertEquals(900_000_000L, cache.getSavedNanos());
+        cache.clear();
+        assertNull(cache.get(5));
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.phonesensorreader;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InferenceLoopTest {
+    private HttpServer server;
+    private CompletionClient client;
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private volatile String answer = " Walking";
+    private volatile int status = 200;
+    private final BlockingQueue<ActivityPrediction> predictions = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> errors = new LinkedBlockingQueue<>();
+
+    private final InferenceLoop.Listener listener = new InferenceLoop.Listener() {
+        @Override
+        public void onPrediction(ActivityPrediction prediction) {
+            predictions.add(prediction);
+        }
+
+        @Override
+        public void onInferenceError(String message) {
+            errors.add(message);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/completion", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                prompts.add(new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8)).getString("prompt"));
+            } catch (Exception e) {
+                prompts.add("unparseable request");
+            }
+            byte[] response = ("{\"content\":" + JSONObject.quote(answer) + ",\"stop\":true}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        client = new CompletionClient(new CompletionClient.Config()
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/completion"));
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void parsesLabels() {
+        assertEquals(ActivityLabel.WALKING, ActivityLabel.parse(" Walking."));
+        assertEquals(ActivityLabel.RUNNING, ActivityLabel.parse("The user is running"));
+        assertEquals(ActivityLabel.SITTING, ActivityLabel.parse("sit"));
+        // The first activity named wins
+        assertEquals(ActivityLabel.SITTING, ActivityLabel.parse("Sitting, not walking"));
+        // Stems only match at the start of a word
+        assertEquals(ActivityLabel.UNKNOWN, ActivityLabel.parse("Upright position, rerun"));
+        assertEquals(ActivityLabel.UNKNOWN, ActivityLabel.parse(""));
+        assertEquals(ActivityLabel.UNKNOWN, ActivityLabel.parse(null));
+    }
+
+    @Test
+    public void publishesPredictionWithLatency() throws Exception {
+        answer = " Running\n";
+        InferenceLoop loop = new InferenceLoop(client, () -> "window 1", listener, 1000);
+        loop.runOnce();
+
+        ActivityPrediction prediction = predictions.poll(10, TimeUnit.SECONDS);
+        assertNotNull(prediction);
+        assertEquals(ActivityLabel.RUNNING, prediction.getLabel());
+        assertEquals("Running", prediction.getResponseText());
+        assertTrue(prediction.getLatencyMillis() >= 0);
+        assertEquals(List.of("window 1"), prompts);
+        assertEquals(1, loop.getPredictionCount());
+        assertEquals(prediction.getLatencyMillis(), loop.getLastLatencyMillis());
+        assertEquals(1, loop.getPromptBuildLatency().summarize().getCount());
+        assertEquals(1, loop.getInferenceLatency().summarize().getCount());
+        assertEquals(1, client.getTimeToFirstByte().summarize().getCount());
+        assertEquals(1, client.getResponseTime().summarize().getCount());
+        assertTrue(client.getResponseTime().summarize().getMaxNanos()
+                <= loop.getInferenceLatency().summarize().getMaxNanos());
+    }
+
+    @Test
+    public void skipsRoundsWithoutNewWindow() throws Exception {
+        InferenceLoop loop = new InferenceLoop(client, () -> null, listener, 1000);
+        loop.runOnce();
+        loop.runOnce();
+
+        assertNull(predictions.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, loop.getRequestCount());
+        assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    public void serverErrorsAreReportedNotPredicted() throws Exception {
+        status = 500;
+        InferenceLoop loop = new InferenceLoop(client, () -> "window", listener, 1000);
+        loop.runOnce();
+
+        String error = errors.poll(10, TimeUnit.SECONDS);
+        assertNotNull(error);
+        assertTrue(error, error.startsWith("Error: 500"));
+        assertTrue(predictions.isEmpty());
+        assertEquals(1, loop.getErrorCount());
+    }
+
+    @Test
+    public void runsContinuouslyUntilStopped() throws Exception {
+        AtomicInteger window = new AtomicInteger();
+        InferenceLoop loop = new InferenceLoop(client, () -> "window " + window.incrementAndGet(), listener, 20);
+        loop.start();
+        for (int i = 0; i < 5; i++) {
+            ActivityPrediction prediction = predictions.poll(10, TimeUnit.SECONDS);
+            assertNotNull("prediction " + i, prediction);
+            assertEquals(ActivityLabel.WALKING, prediction.getLabel());
+        }
+        loop.stop();
+        int sent = prompts.size();
+        Thread.sleep(100);
+
+        assertTrue(sent >= 5);
+        assertTrue(prompts.size() <= sent + 1);
+        assertTrue(loop.getMaxLatencyMillis() >= loop.getMeanLatencyMillis());
+        assertTrue(prompts.get(0).startsWith("window "));
+    }
+
+    @Test
+    public void keepsRunningAfterAFailingRound() throws Exception {
+        AtomicInteger window = new AtomicInteger();
+        InferenceLoop loop = new InferenceLoop(client, () -> {
+            if (window.incrementAndGet() == 1) {
+                throw new IllegalStateException("no window yet");
+            }
+            return "window " + window.get();
+        }, listener, 20);
+        loop.start();
+        try {
+            assertNotNull(predictions.poll(10, TimeUnit.SECONDS));
+        } finally {
+            loop.stop();
+        }
+
+        assertTrue(errors.poll().contains("no window yet"));
+        assertEquals(1, loop.getErrorCount());
+    }
+
+    @Test
+    public void repeatedStillWindowsCallTheServerOnce() throws Exception {
+        answer = " Sitting";
+        SensorRegistry registry = SensorRegistry.createDefault();
+        // Without a classifier every window is escalated
+        SensorPipeline pipeline = new SensorPipeline(registry, null, prediction -> { });
+        double[] rates = new double[registry.size()];
+        Arrays.fill(rates, 50);
+        pipeline.configure(rates, TimeUnit.MILLISECONDS.toNanos(80));
+        InferenceCache cache = new InferenceCache(16, 60_000);
+        InferenceLoop loop = new InferenceLoop(client, pipeline::nextInferenceRequest, listener, 1000, cache);
+        List<ActivityPrediction> answered = new CopyOnWriteArrayList<>();
+        new SyntheticSensorSource(50, 3).add(ActivityLabel.SITTING, 30).forEach((timestampNanos, type, x, y, z) -> {
+            pipeline.onSample(timestampNanos, type, x, y, z);
+            long sent = loop.getRequestCount();
+            loop.runOnce();
+            try {
+                // Cached answers arrive before runOnce returns, the server's must be waited for
+                ActivityPrediction prediction = predictions.poll(loop.getRequestCount() > sent ? 10 : 0, TimeUnit.SECONDS);
+                if (prediction != null) {
+                    answered.add(prediction);
+                }
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        assertTrue(answered.size() >= 20);
+        assertEquals(1, prompts.size());
+        assertEquals(1, loop.getRequestCount());
+        assertEquals(answered.size() - 1, loop.getCachedCount());
+        assertEquals(ActivityPrediction.Source.LLM, answered.get(0).getSource());
+        for (ActivityPrediction prediction : answered.subList(1, answered.size())) {
+            assertEquals(ActivityPrediction.Source.CACHE, prediction.getSource());
+            assertEquals(ActivityLabel.SITTING, prediction.getLabel());
+            assertEquals("Sitting", prediction.getResponseText());
+        }
+        assertEquals(loop.getCachedCount(), cache.getHitCount());
+        assertTrue(cache.getSavedNanos() >= loop.getCachedCount() * answered.get(0).getLatencyNanos());
+    }
+
+    @Test
+    public void unknownAnswersAreNotCached() throws Exception {
+        answer = " Hard to say";
+        InferenceCache cache = new InferenceCache(16, 60_000);
+        InferenceLoop loop = new InferenceLoop(client, () -> new InferenceLoop.Request("window", 42), listener,
+                1000, cache);
+        for (int i = 0; i < 2; i++) {
+            loop.runOnce();
+            assertEquals(ActivityLabel.UNKNOWN, predictions.poll(10, TimeUnit.SECONDS).getLabel());
+        }
+
+        assertEquals(2, prompts.size());
+        assertEquals(0, loop.getCachedCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void requestAsksForShortDeterministicAnswer() throws Exception {
+        JSONObject request = new JSONObject(InferenceLoop.requestJson("prompt \"quoted\""));
+
+        assertEquals("prompt \"quoted\"", request.getString("prompt"));
+        assertFalse(request.getBoolean("stream"));
+        assertEquals(0, request.getInt("temperature"));
+        assertTrue(request.getInt("n_predict") <= 16);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinOneThirtySecond() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 999_999, 1L << 40, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " in bucket " + bucket, bucket >= 0 && bucket < LatencyHistogram.BUCKET_COUNT);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(value + " <= " + highest, value <= highest);
+            assertTrue(value + " close to " + highest, highest - value <= value / 32);
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            if (bucket > 0) {
+                assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.highestValueOf(bucket - 1) + 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesMatchSortedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[100_000];
+        long total = 0;
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around 1 ms, like the ingestion path with an occasional stall
+            values[i] = (long) (1_000_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+            total += values[i];
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Summary summary = histogram.summarize();
+        assertEquals(values.length, summary.getCount());
+        assertEquals(total / values.length, summary.getMeanNanos());
+        assertClose(values[49_999], summary.getP50Nanos());
+        assertClose(values[89_999], summary.getP90Nanos());
+        assertClose(values[98_999], summary.getP99Nanos());
+        assertClose(values[values.length - 1], summary.getMaxNanos());
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(expected + " <= " + actual, expected <= actual);
+        assertTrue(actual + " within 1/32 of " + expected, actual - expected <= expected / 32);
+    }
+
+    @Test
+    public void emptyAndNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Summary empty = histogram.summarize();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getP99Nanos());
+
+        histogram.record(-5);
+        histogram.record(0);
+        assertEquals(2, histogram.summarize().getCount());
+        assertEquals(0, histogram.summarize().getMaxNanos());
+
+        histogram.reset();
+        assertEquals(0, histogram.summarize().getCount());
+    }
+
+    @Test
+    public void countsEveryRecordFromConcurrentThreads() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(offset * 1000 + i % 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Summary summary = histogram.summarize();
+        assertEquals(400_000, summary.getCount());
+        assertEquals(3999, summary.getMaxNanos(), 3999 / 32);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Eight hours of accelerometer and gyroscope at 100 Hz through a long session wired like
+ * PhoneSensorService's, in simulated time: samples go through the ring buffer and the consumer
+ * into the spilling recorder and {@link SensorPipeline}. Heap use must not grow with the length
+ * of the session.
+ */
+public class LongSessionSoakTest {
+    private static final int ACC = Sensor.TYPE_ACCELEROMETER;
+    private static final int GYRO = Sensor.TYPE_GYROSCOPE;
+    private static final double RATE_HZ = 100;
+    private static final long PERIOD_NANOS = 10_000_000L;
+    private static final long SAMPLES_PER_HOUR = 3600 * 100;
+    private static final int HOURS = 8;
+    // The service's sizes
+    private static final long MEMORY_BUDGET_BYTES = 4L * 1024 * 1024;
+    private static final int SAMPLE_BUFFER_CAPACITY = 8192;
+    private static final int SAMPLE_BATCH_SIZE = 256;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sessions").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /** Offers samples like onSensorChanged and drains them like the consumer thread. */
+    private static void feed(SampleRingBuffer buffer, SampleConsumer consumer, int fromHour, int toHour) {
+        for (long i = fromHour * SAMPLES_PER_HOUR; i < toHour * SAMPLES_PER_HOUR; i++) {
+            long timestamp = i * PERIOD_NANOS;
+            float phase = (float) (i * 0.013);
+            buffer.offer(timestamp, ACC, (float) Math.sin(phase), 0.3f, 9.81f + (float) Math.cos(phase));
+            buffer.offer(timestamp + PERIOD_NANOS / 2, GYRO, 0.1f * (float) Math.cos(phase), 0, 0.05f);
+            if (buffer.size() >= SAMPLE_BATCH_SIZE) {
+                consumer.drainOnce();
+            }
+        }
+        while (consumer.drainOnce() > 0) {
+            // the rest of the hour
+        }
+    }
+
+    @Test
+    public void heapStaysFlatOverEightHours() throws IOException {
+        SensorRegistry registry = SensorRegistry.createDefault();
+        SensorPipeline pipeline = new SensorPipeline(registry,
+                new CascadeClassifier(DecisionTreeClassifierTest.loadModel(), 0.8), prediction -> { });
+        double[] rates = new double[registry.size()];
+        rates[registry.indexOf(ACC)] = RATE_HZ;
+        rates[registry.indexOf(GYRO)] = RATE_HZ;
+        pipeline.configure(rates, TimeUnit.MILLISECONDS.toNanos(80));
+        File file = new File(directory, "session" + SpillingRecorder.FILE_EXTENSION);
+        SpillingRecorder recorder = new SpillingRecorder(file, 0, MEMORY_BUDGET_BYTES);
+        SampleRingBuffer buffer = new SampleRingBuffer(SAMPLE_BUFFER_CAPACITY);
+        // What the service's consumer sink does in a long session
+        SampleConsumer consumer = new SampleConsumer(buffer, (timestampNanos, sensorType, x, y, z) -> {
+            recorder.onSample(timestampNanos, sensorType, x, y, z);
+            pipeline.onSample(timestampNanos, sensorType, x, y, z);
+        }, SAMPLE_BATCH_SIZE, 20);
+
+        feed(buffer, consumer, 0, 1);
+        long heapAfterFirstHour = usedHeapAfterGc();
+        long allocated = Allocations.measure(() -> feed(buffer, consumer, 1, HOURS));
+        long heapGrowth = usedHeapAfterGc() - heapAfterFirstHour;
+        recorder.close();
+        pipeline.finish();
+
+        long samples = 2 * SAMPLES_PER_HOUR * HOURS;
+        double allocatedPerSample = allocated / (double) (samples - 2 * SAMPLES_PER_HOUR);
+        assertTrue("heap grew by " + heapGrowth + " bytes", heapGrowth < 2 * 1024 * 1024);
+        assertTrue("allocated " + allocatedPerSample + " bytes per sample", allocatedPerSample < 1);
+        assertEquals(0, buffer.getOverrunCount());
+        assertEquals(samples, consumer.getDrainedCount());
+
+        assertEquals(samples, recorder.getRecordCount());
+        assertTrue(file.length() < samples * SessionFormat.RECORD_SIZE);
+        assertEquals(samples, pipeline.getSampleCount());
+        assertEquals(SAMPLES_PER_HOUR * HOURS, pipeline.getStatistics().getCount(0));
+        assertEquals(SAMPLES_PER_HOUR * HOURS, pipeline.getLinearStatistics().getCount(0));
+        SensorStatistics lastHour = new SensorStatistics(1);
+        long hourNanos = TimeUnit.HOURS.toNanos(1);
+        pipeline.getRollingStatistics(hourNanos).summarize(0, hourNanos, lastHour, 0);
+        assertEquals(SAMPLES_PER_HOUR, lastHour.getCount(0));
+        long minuteNanos = TimeUnit.MINUTES.toNanos(1);
+        pipeline.getRollingStatistics(minuteNanos).summarize(3, minuteNanos, lastHour, 0);
+        assertEquals(6000, lastHour.getCount(0));
+        assertTrue(pipeline.getWindowCount() > 2 * HOURS * 3600 / SensorPipeline.WINDOW_SECONDS);
+        long[] count = {0};
+        assertEquals(samples, SpillingRecorder.read(file, (timestampNanos, sensorType, x, y, z) -> count[0]++));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LttbTest {
+
+    @Test
+    public void keepsEndpointsAndSpike() {
+        int n = 1000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+            ys[i] = Math.sin(i * 0.01);
+        }
+        ys[437] = 25;
+        double[] outX = new double[50];
+        double[] outY = new double[50];
+
+        int count = Lttb.downsample(xs, ys, n, 50, outX, outY);
+        assertEquals(50, count);
+        assertEquals(0, outX[0], 0);
+        assertEquals(n - 1, outX[count - 1], 0);
+        boolean spikeKept = false;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) assertTrue(outX[i] > outX[i - 1]);
+            spikeKept |= outY[i] == 25;
+        }
+        assertTrue(spikeKept);
+    }
+
+    @Test
+    public void straightLineKeepsItsShape() {
+        double[] xs = new double[101];
+        double[] ys = new double[101];
+        for (int i = 0; i <= 100; i++) {
+            xs[i] = i;
+            ys[i] = 2 * i + 1;
+        }
+        double[] outX = new double[10];
+        double[] outY = new double[10];
+        int count = Lttb.downsample(xs, ys, 101, 10, outX, outY);
+        for (int i = 0; i < count; i++) {
+            assertEquals(2 * outX[i] + 1, outY[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void smallInputIsCopied() {
+        double[] xs = {0, 1, 2};
+        double[] ys = {5, 6, 7};
+        double[] outX = new double[10];
+        double[] outY = new double[10];
+        assertEquals(3, Lttb.downsample(xs, ys, 3, 10, outX, outY));
+        assertArrayEquals(ys, java.util.Arrays.copyOf(outY, 3), 0);
+    }
+}
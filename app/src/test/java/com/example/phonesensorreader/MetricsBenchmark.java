@@ -0,0 +1,68 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+
+/**
+ * Cost of recording into a {@link LatencyHistogram} from the sensor thread, alone and with
+ * other threads recording into the same histogram, and of taking a {@link Metrics} snapshot.
+ */
+public class MetricsBenchmark {
+    private static final int RECORDS = 5_000_000;
+
+    private static void record(String name, LatencyHistogram histogram, int threadCount) throws InterruptedException {
+        Thread[] threads = new Thread[threadCount];
+        long[] allocated = new long[threadCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> allocated[index] = Allocations.measure(() -> {
+                for (int i = 0; i < RECORDS; i++) {
+                    histogram.record(1_000 + (i & 0xffff) * 37L);
+                }
+            }));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long totalAllocated = 0;
+        for (long bytes : allocated) {
+            totalAllocated += bytes;
+        }
+        System.out.printf("%-10s %6.1f ns/record per thread %6.3f bytes/record%n",
+                name, elapsed / (double) RECORDS, totalAllocated / (double) RECORDS / threadCount);
+    }
+
+    @Test
+    public void recording() throws InterruptedException {
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("Recording latencies:");
+            record("1 thread", new LatencyHistogram(), 1);
+            record("4 threads", new LatencyHistogram(), 4);
+        }
+    }
+
+    @Test
+    public void snapshot() {
+        Metrics metrics = new Metrics();
+        String[] names = {Metrics.SENSOR_INGEST, Metrics.AGGREGATION_BATCH, Metrics.UI_DELIVERY,
+                Metrics.PROMPT_BUILD, Metrics.HTTP_FIRST_BYTE, Metrics.HTTP_RESPONSE, Metrics.INFERENCE_TOTAL};
+        for (String name : names) {
+            for (int i = 0; i < 10_000; i++) {
+                metrics.histogram(name).record(i * 1_000L);
+            }
+        }
+        metrics.counter(Metrics.SENSOR_EVENTS).set(1_000_000);
+        int snapshots = 2_000;
+        long length = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < snapshots; i++) {
+            length += metrics.snapshot().appendJson(new StringBuilder()).length();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Snapshot of %d histograms as JSON: %.1f us (%d chars)%n",
+                names.length, elapsed / 1e3 / snapshots, length / snapshots);
+    }
+}
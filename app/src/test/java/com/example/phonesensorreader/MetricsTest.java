@@ -0,0 +1,78 @@
+package com.example.phonesensorreader;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void snapshotHoldsCountersGaugesAndHistograms() {
+        Metrics metrics = new Metrics();
+        metrics.counter(Metrics.SENSOR_EVENTS).addAndGet(3);
+        assertSame(metrics.counter(Metrics.SENSOR_EVENTS), metrics.counter(Metrics.SENSOR_EVENTS));
+        AtomicLong overruns = new AtomicLong(7);
+        metrics.gauge(Metrics.BUFFER_OVERRUNS, overruns::get);
+        metrics.histogram(Metrics.SENSOR_INGEST).record(2_000);
+        LatencyHistogram owned = new LatencyHistogram();
+        owned.record(5_000_000);
+        metrics.register(Metrics.HTTP_RESPONSE, owned);
+
+        overruns.set(9);
+        Metrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getValue(Metrics.SENSOR_EVENTS));
+        assertEquals(9, snapshot.getValue(Metrics.BUFFER_OVERRUNS));
+        assertEquals(-1, snapshot.getValue("missing"));
+        assertEquals(1, snapshot.getHistograms().get(Metrics.SENSOR_INGEST).getCount());
+        assertEquals(5_000_000, snapshot.getHistograms().get(Metrics.HTTP_RESPONSE).getMeanNanos());
+        assertTrue(snapshot.toString().contains(Metrics.HTTP_RESPONSE + ": n=1"));
+
+        metrics.clear();
+        assertTrue(metrics.snapshot().getValues().isEmpty());
+        assertTrue(metrics.snapshot().getHistograms().isEmpty());
+    }
+
+    @Test
+    public void snapshotIsOneJsonObject() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.counter("quote\"name").incrementAndGet();
+        metrics.histogram(Metrics.UI_DELIVERY).record(1_000);
+        metrics.histogram(Metrics.UI_DELIVERY).record(3_000);
+
+        JSONObject json = new JSONObject(metrics.snapshot().appendJson(new StringBuilder()).toString());
+        assertTrue(json.getLong("time") > 0);
+        assertEquals(1, json.getLong("quote\"name"));
+        JSONObject delivery = json.getJSONObject(Metrics.UI_DELIVERY);
+        assertEquals(2, delivery.getLong("count"));
+        assertEquals(2_000, delivery.getLong("mean"));
+        assertTrue(delivery.getLong("max") >= 3_000);
+    }
+
+    @Test
+    public void dumperAppendsLinesUntilStopped() throws Exception {
+        Metrics metrics = new Metrics();
+        AtomicLong events = metrics.counter(Metrics.SENSOR_EVENTS);
+        File file = File.createTempFile("metrics", ".jsonl");
+        file.deleteOnExit();
+        MetricsDumper dumper = new MetricsDumper(metrics, file, 20);
+        dumper.start();
+        events.set(42);
+        Thread.sleep(150);
+        dumper.stop();
+        long written = dumper.getWrittenCount();
+        Thread.sleep(60);
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertTrue("lines " + lines.size(), lines.size() >= 2);
+        assertEquals(written, lines.size());
+        assertEquals(42, new JSONObject(lines.get(lines.size() - 1)).getLong(Metrics.SENSOR_EVENTS));
+        assertEquals(0, dumper.getFailedCount());
+    }
+}
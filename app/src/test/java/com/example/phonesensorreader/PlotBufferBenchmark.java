@@ -0,0 +1,115 @@
+package com.example.phonesensorreader;
+
+import com.jjoe64.graphview.series.DataPoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of appending a sample and taking the visible 10 s once per 60 Hz frame, for
+ * PlotBuffer versus what LineGraphSeries.appendData does per axis: a new DataPoint added to
+ * an ArrayList that drops its first element once over the limit.
+ */
+public class PlotBufferBenchmark {
+    private static final double RATE_HZ = 100;
+    private static final int SAMPLES = 600_000;
+    private static final int SAMPLES_PER_FRAME = (int) Math.ceil(RATE_HZ / 60);
+    private static final double VISIBLE_SECONDS = 10;
+
+    private interface Path {
+        void append(double x, double y0, double y1, double y2);
+
+        /** Copies the visible part of the X axis series, returns the number of points. */
+        int snapshot(double fromX, double untilX, double[] xs, double[] ys);
+    }
+
+    private static class DataPointPath implements Path {
+        final int maxDataPoints;
+        final List<List<DataPoint>> series = new ArrayList<>();
+
+        DataPointPath(int maxDataPoints) {
+            this.maxDataPoints = maxDataPoints;
+            for (int axis = 0; axis < 3; axis++) {
+                series.add(new ArrayList<>());
+            }
+        }
+
+        private void append(List<DataPoint> data, DataPoint point) {
+            data.add(point);
+            if (data.size() > maxDataPoints) {
+                data.remove(0);
+            }
+        }
+
+        @Override
+        public void append(double x, double y0, double y1, double y2) {
+            append(series.get(0), new DataPoint(x, y0));
+            append(series.get(1), new DataPoint(x, y1));
+            append(series.get(2), new DataPoint(x, y2));
+        }
+
+        @Override
+        public int snapshot(double fromX, double untilX, double[] xs, double[] ys) {
+            // BaseSeries.getValues walks the list from the start
+            int count = 0;
+            for (DataPoint point : series.get(0)) {
+                if (point.getX() >= fromX && point.getX() <= untilX && count < xs.length) {
+                    xs[count] = point.getX();
+                    ys[count] = point.getY();
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static class PlotBufferPath implements Path {
+        final PlotBuffer buffer;
+
+        PlotBufferPath(int capacity) {
+            buffer = new PlotBuffer(capacity);
+        }
+
+        @Override
+        public void append(double x, double y0, double y1, double y2) {
+            buffer.append(x, y0, y1, y2);
+        }
+
+        @Override
+        public int snapshot(double fromX, double untilX, double[] xs, double[] ys) {
+            return buffer.snapshot(0, fromX, untilX, xs, ys);
+        }
+    }
+
+    private static void run(String name, Path path) {
+        double[] xs = new double[(int) (VISIBLE_SECONDS * RATE_HZ) + 2];
+        double[] ys = new double[xs.length];
+        long[] checksum = {0};
+        long start = System.nanoTime();
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < SAMPLES; i++) {
+                double x = i / RATE_HZ;
+                path.append(x, Math.sin(x), Math.cos(x), 9.81);
+                if (i % SAMPLES_PER_FRAME == 0) {
+                    checksum[0] += path.snapshot(x - VISIBLE_SECONDS, x, xs, ys);
+                }
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-26s %8.1f ns/sample %8.1f bytes/sample (checksum %d)%n",
+                name, elapsed / (double) SAMPLES, allocated / (double) SAMPLES, checksum[0]);
+    }
+
+    @Test
+    public void appendAndSnapshot() {
+        int history = (int) (60 * RATE_HZ);
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("100 Hz, snapshot of the last 10 s every frame:");
+            run("DataPoint, 40 points", new DataPointPath(40));
+            run("DataPoint, 60 s history", new DataPointPath(history));
+            run("PlotBuffer, 60 s history", new PlotBufferPath(history));
+        }
+    }
+}
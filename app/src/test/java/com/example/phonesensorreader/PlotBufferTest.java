@@ -0,0 +1,102 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+
+import static org.junit.Assert.*;
+
+public class PlotBufferTest {
+
+    private static void appendRange(PlotBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer.append(i * 0.01, i, -i, i % 7);
+        }
+    }
+
+    @Test
+    public void keepsNewestPointsInOrderAfterWrapping() {
+        PlotBuffer buffer = new PlotBuffer(100);
+        appendRange(buffer, 0, 250);
+
+        assertEquals(100, buffer.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals((150 + i) * 0.01, buffer.getX(i), 1e-12);
+            assertEquals(150 + i, buffer.getY(0, i), 0);
+            assertEquals(-(150 + i), buffer.getY(1, i), 0);
+            assertEquals((150 + i) % 7, buffer.getY(2, i), 0);
+        }
+    }
+
+    @Test
+    public void lowerBoundFindsVisibleRangeAcrossWrap() {
+        PlotBuffer buffer = new PlotBuffer(64);
+        appendRange(buffer, 0, 100); // holds x = 0.36 .. 0.99
+
+        assertEquals(0, buffer.lowerBound(0));
+        assertEquals(0, buffer.lowerBound(0.36));
+        assertEquals(1, buffer.lowerBound(0.365));
+        assertEquals(64 - 10, buffer.lowerBound(0.90 - 1e-9));
+        assertEquals(64, buffer.lowerBound(5));
+    }
+
+    @Test
+    public void minAndMaxOverRange() {
+        PlotBuffer buffer = new PlotBuffer(16);
+        appendRange(buffer, 0, 20); // y0 = 4 .. 19
+
+        assertEquals(4, buffer.getMinY(0, 0, buffer.size()), 0);
+        assertEquals(19, buffer.getMaxY(0, 0, buffer.size()), 0);
+        assertEquals(-19, buffer.getMinY(1, 0, buffer.size()), 0);
+        assertEquals(10, buffer.getMaxY(0, 2, 7), 0);
+        assertTrue(Double.isNaN(buffer.getMinY(0, 3, 3)));
+    }
+
+    @Test
+    public void snapshotCopiesOnlyVisiblePoints() {
+        PlotBuffer buffer = new PlotBuffer(1000);
+        appendRange(buffer, 0, 1500);
+        double[] xs = new double[2000];
+        double[] ys = new double[2000];
+
+        int count = buffer.snapshot(0, 10.0 - 1e-9, 12.0 + 1e-9, xs, ys);
+        assertEquals(201, count);
+        assertEquals(10.0, xs[0], 1e-9);
+        assertEquals(1000, ys[0], 0);
+        assertEquals(1200, ys[200], 0);
+
+        // Output smaller than the range is filled, not overrun
+        assertEquals(5, buffer.snapshot(0, 0, 100, new double[5], new double[5]));
+    }
+
+    @Test
+    public void clearEmptiesBuffer() {
+        PlotBuffer buffer = new PlotBuffer(8);
+        appendRange(buffer, 0, 12);
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        buffer.append(1, 2, 3, 4);
+        assertEquals(1, buffer.size());
+        assertEquals(1, buffer.getX(0), 0);
+    }
+
+    @Test
+    public void appendAndSnapshotDoNotAllocate() {
+        PlotBuffer buffer = new PlotBuffer(6000);
+        double[] xs = new double[6000];
+        double[] ys = new double[6000];
+        for (int i = 0; i < 100_000; i++) {
+            buffer.append(i * 0.01, i, i, i); // warm up
+        }
+        buffer.snapshot(0, 0, 1e9, xs, ys);
+        long allocated = Allocations.measure(() -> {
+            for (int i = 100_000; i < 1_100_000; i++) {
+                buffer.append(i * 0.01, i, -i, 0);
+                if (i % 1000 == 0) {
+                    buffer.snapshot(1, i * 0.01 - 10, i * 0.01, xs, ys);
+                }
+            }
+        });
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
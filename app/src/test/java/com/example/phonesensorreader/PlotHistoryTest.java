@@ -0,0 +1,206 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlotHistoryTest {
+    private static final double RATE_HZ = 100;
+    private static final int FACTOR = 8;
+    private static final int LEVEL_CAPACITY = 2048;
+
+    /** One minute raw, three levels of 2048 buckets: about 2.9 hours at 100 Hz. */
+    private static PlotHistory newHistory() {
+        return new PlotHistory(6000, LEVEL_CAPACITY, FACTOR, 3);
+    }
+
+    /** Noise between -1 and 1 with a single spike on axis 0 and a dip on axis 1 at {@code spikeIndex}. */
+    private static void fill(PlotHistory history, int samples, int spikeIndex, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < samples; i++) {
+            double noise = random.nextDouble() * 2 - 1;
+            history.append(i / RATE_HZ, i == spikeIndex ? 50 : noise, i == spikeIndex ? -40 : noise, noise);
+        }
+    }
+
+    private static double max(double[] values, int count) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) max = Math.max(max, values[i]);
+        return max;
+    }
+
+    private static double min(double[] values, int count) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) min = Math.min(min, values[i]);
+        return min;
+    }
+
+    @Test
+    public void peaksSurviveAnyZoomLevel() {
+        PlotHistory history = newHistory();
+        int samples = (int) (3600 * RATE_HZ);
+        int spike = 1_234_567 % samples;
+        fill(history, samples, spike, 1);
+        double spikeX = spike / RATE_HZ;
+        double[] xs = new double[1000];
+        double[] ys = new double[1000];
+
+        double[][] ranges = {{0, 3600}, {spikeX - 600, spikeX + 600}, {spikeX - 30, spikeX + 30}, {spikeX - 5, spikeX + 5}};
+        for (double[] range : ranges) {
+            int count = history.query(0, range[0], range[1], 800, xs, ys);
+            assertTrue(count <= 800);
+            assertEquals("max over " + range[0] + ".." + range[1], 50, max(ys, count), 0);
+            count = history.query(1, range[0], range[1], 800, xs, ys);
+            assertEquals("min over " + range[0] + ".." + range[1], -40, min(ys, count), 0);
+            // The spike is drawn where it happened
+            for (int i = 0; i < count; i++) {
+                if (ys[i] == -40) assertEquals(spikeX, xs[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void queryCostIsBoundedByOutputPoints() {
+        PlotHistory history = newHistory();
+        fill(history, (int) (3600 * RATE_HZ), -1, 2);
+        double[] xs = new double[2000];
+        double[] ys = new double[2000];
+
+        for (int maxPoints : new int[]{100, 500, 2000}) {
+            for (double span : new double[]{10, 60, 600, 3600}) {
+                int count = history.query(2, 3600 - span, 3600, maxPoints, xs, ys);
+                int visited = history.getLastQueryVisited();
+                assertTrue(count + " points", count <= maxPoints);
+                // Beyond what the coarsest level can reduce, the cost is capped by its capacity
+                int bound = Math.max(maxPoints / 2 * FACTOR + 2, LEVEL_CAPACITY + 1);
+                assertTrue("span " + span + " visited " + visited, visited <= bound);
+                assertTrue(count > 0);
+            }
+        }
+        // Screen sized queries stay within factor entries per output bucket at every zoom
+        for (double span : new double[]{10, 60, 600, 3600}) {
+            history.query(2, 3600 - span, 3600, 1000, xs, ys);
+            assertTrue(history.getLastQueryVisited() <= 500 * FACTOR + 2);
+        }
+    }
+
+    @Test
+    public void recentRangeReturnsRawPoints() {
+        PlotHistory history = newHistory();
+        fill(history, 10_000, -1, 3);
+        double[] xs = new double[2000];
+        double[] ys = new double[2000];
+
+        // 10 s at 100 Hz plus one point on each side
+        int count = history.query(0, 90, 99.99, 2000, xs, ys);
+        assertEquals(1001, count);
+        for (int i = 1; i < count; i++) {
+            assertEquals(0.01, xs[i] - xs[i - 1], 1e-9);
+        }
+    }
+
+    @Test
+    public void outputIsInTimeOrder() {
+        PlotHistory history = newHistory();
+        fill(history, (int) (1800 * RATE_HZ), 4242, 4);
+        double[] xs = new double[600];
+        double[] ys = new double[600];
+        for (double from : new double[]{0, 100, 1000}) {
+            int count = history.query(0, from, 1800, 600, xs, ys);
+            for (int i = 1; i < count; i++) {
+                assertTrue(xs[i] >= xs[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void extremesCoverWholeHistory() {
+        PlotHistory history = newHistory();
+        fill(history, (int) (1200 * RATE_HZ), 500, 5); // spike at 5 s, long gone from the raw buffer
+
+        assertEquals(0, history.getOldestX(), 0);
+        assertEquals((1200 * RATE_HZ - 1) / RATE_HZ, history.getNewestX(), 1e-9);
+        assertEquals(50, history.getMaxY(0), 0);
+        assertEquals(-40, history.getMinY(1), 0);
+    }
+
+    @Test
+    public void oldestDataIsDroppedWhenAllLevelsAreFull() {
+        PlotHistory history = new PlotHistory(100, 16, 4, 2); // 16 * 16 points in the coarsest level
+        for (int i = 0; i < 1000; i++) {
+            history.append(i, i, i, i);
+        }
+        double[] xs = new double[64];
+        double[] ys = new double[64];
+        int count = history.query(0, 0, 1000, 64, xs, ys);
+
+        assertEquals(1000 - 256, history.getOldestX(), 16);
+        assertEquals(999, max(ys, count), 0);
+        assertTrue(xs[0] >= 1000 - 256 - 16);
+    }
+
+    @Test
+    public void extremesAreNotRescannedEveryFrame() {
+        PlotHistory history = newHistory();
+        Random random = new Random(7);
+        for (int i = 0; i < 1200 * RATE_HZ; i++) {
+            double noise = random.nextDouble() * 2 - 1;
+            history.append(i / RATE_HZ, i == 500 ? 50 : noise, i == 500 ? -40 : noise, 0);
+            // As PlotSeries is asked on every redraw
+            assertEquals(i >= 500 ? 50 : 1, history.getMaxY(0), 1);
+            assertEquals(0, history.getMaxY(2), 0);
+        }
+
+        assertEquals(50, history.getMaxY(0), 0);
+        assertEquals(-40, history.getMinY(1), 0);
+        // Only when the spike and the newest extremes left the raw buffer
+        assertTrue("scans " + history.getExtremeScans(), history.getExtremeScans() < 10);
+    }
+
+    @Test
+    public void extremesFollowDroppedData() {
+        PlotHistory history = new PlotHistory(100, 16, 4, 2);
+        for (int i = 0; i < 1000; i++) {
+            history.append(i, i, -i, 0);
+            assertEquals(history.getOldestX(), history.getMinY(0), 0);
+            assertEquals(i, history.getMaxY(0), 0);
+            assertEquals(-history.getOldestX(), history.getMaxY(1), 0);
+        }
+        PlotHistory rawOnly = new PlotHistory(50, 1, 2, 0);
+        Random random = new Random(3);
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(20);
+            rawOnly.append(i, values[i], 0, 0);
+            double expected = Double.POSITIVE_INFINITY;
+            for (int j = Math.max(0, i - 49); j <= i; j++) expected = Math.min(expected, values[j]);
+            assertEquals(expected, rawOnly.getMinY(0), 0);
+        }
+        rawOnly.clear();
+        assertTrue(Double.isNaN(rawOnly.getMinY(0)));
+        rawOnly.append(0, 5, 5, 5);
+        assertEquals(5, rawOnly.getMinY(0), 0);
+    }
+
+    @Test
+    public void lttbReturnsRequestedPointCount() {
+        PlotHistory history = newHistory();
+        fill(history, (int) (600 * RATE_HZ), 30_000, 6);
+        double[] xs = new double[300];
+        double[] ys = new double[300];
+
+        int count = history.queryLttb(0, 0, 600, 300, xs, ys);
+        assertEquals(300, count);
+        assertEquals(50, max(ys, count), 0);
+    }
+
+    @Test
+    public void emptyHistory() {
+        PlotHistory history = newHistory();
+        assertTrue(history.isEmpty());
+        assertEquals(0, history.query(0, 0, 10, 100, new double[100], new double[100]));
+        assertTrue(Double.isNaN(history.getMinY(0)));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PredictionChannelTest {
+    private static ActivityPrediction prediction(ActivityLabel label) {
+        return new ActivityPrediction(label, ActivityPrediction.Source.LLM, 0, label.name(), 1_000_000, 0);
+    }
+
+    @Test
+    public void deliversOnTheSubscribersExecutor() {
+        PredictionChannel channel = new PredictionChannel();
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        PredictionChannel.Subscription subscription = channel.subscribe(
+                (prediction, meanLatencyMillis) -> received.add(prediction.getLabel() + "/" + meanLatencyMillis),
+                tasks::add);
+
+        channel.publish(prediction(ActivityLabel.WALKING), 40);
+        channel.publish(prediction(ActivityLabel.SITTING), 35);
+        assertTrue(received.isEmpty());
+        for (Runnable task : tasks) task.run();
+        assertEquals(List.of("WALKING/40", "SITTING/35"), received);
+
+        // Deliveries already queued when the subscriber goes away are dropped
+        tasks.clear();
+        channel.publish(prediction(ActivityLabel.RUNNING), 30);
+        subscription.close();
+        channel.publish(prediction(ActivityLabel.RUNNING), 30);
+        for (Runnable task : tasks) task.run();
+        assertEquals(1, tasks.size());
+        assertEquals(2, received.size());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.phonesensorreader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PromptBridgeTest {
+    private static class RecordingListener implements PromptBridge.Listener {
+        final List<Long> offered = new ArrayList<>();
+        final List<long[]> applied = new ArrayList<>();
+        final List<String> results = new ArrayList<>();
+
+        @Override
+        public void onPromptOffered(long version) {
+            offered.add(version);
+        }
+
+        @Override
+        public void onPromptApplied(long version, long stopToReadyNanos) {
+            applied.add(new long[]{version, stopToReadyNanos});
+        }
+
+        @Override
+        public void onResult(String text) {
+            results.add(text);
+        }
+    }
+
+    private static PromptBridge trustedBridge() {
+        PromptBridge bridge = new PromptBridge();
+        bridge.setPageTrusted(true);
+        return bridge;
+    }
+
+    @Test
+    public void promptsTravelAsJson() throws JSONException {
+        PromptBridge bridge = trustedBridge();
+        String prompt = "Windows: \"walking\", 'sitting'\n\tgyro 0.5 °/s </script>\\";
+        long version = bridge.offer(prompt, 12);
+
+        JSONObject taken = new JSONObject(bridge.takePrompt());
+        assertEquals(version, taken.getLong("version"));
+        assertEquals(prompt, taken.getString("prompt"));
+        assertEquals(12, taken.getInt("windows"));
+        assertEquals(PromptBuilder.estimateTokens(prompt), taken.getInt("tokens"));
+    }
+
+    @Test
+    public void eachPromptIsTakenOnce() throws JSONException {
+        PromptBridge bridge = trustedBridge();
+        assertFalse(bridge.hasPendingPrompt());
+        assertEquals("null", bridge.takePrompt());
+
+        long first = bridge.offer("first", 1);
+        long second = bridge.offer("second", 2);
+        assertTrue(second > first);
+        assertTrue(bridge.hasPendingPrompt());
+        JSONObject taken = new JSONObject(bridge.takePrompt());
+        assertEquals("second", taken.getString("prompt"));
+        assertEquals(second, taken.getLong("version"));
+        assertFalse(bridge.hasPendingPrompt());
+        assertEquals("null", bridge.takePrompt());
+    }
+
+    @Test
+    public void measuresStopToPromptReady() throws InterruptedException {
+        PromptBridge bridge = trustedBridge();
+        RecordingListener listener = new RecordingListener();
+        bridge.setListener(listener);
+
+        // Prompts applied without a Stop, like after a page reload, are not measured
+        bridge.onPromptApplied(bridge.offer("before", 1));
+        assertEquals(-1, listener.applied.get(0)[1]);
+        assertEquals(0, bridge.getPromptReadyLatency().summarize().getCount());
+
+        bridge.markStopRequested();
+        Thread.sleep(5);
+        long version = bridge.offer("session", 3);
+        bridge.takePrompt();
+        bridge.onPromptApplied(version);
+
+        assertEquals(List.of(1L, 2L), listener.offered);
+        assertEquals(version, listener.applied.get(1)[0]);
+        assertTrue(listener.applied.get(1)[1] >= 5_000_000);
+        assertEquals(1, bridge.getPromptReadyLatency().summarize().getCount());
+        bridge.onPromptApplied(version);
+        assertEquals(1, bridge.getPromptReadyLatency().summarize().getCount());
+    }
+
+    @Test
+    public void passesResultsOn() {
+        PromptBridge bridge = trustedBridge();
+        assertNull(bridge.getLastResult());
+        bridge.onResult("ignored, no listener yet");
+        RecordingListener listener = new RecordingListener();
+        bridge.setListener(listener);
+        bridge.onResult("You walked for 4 minutes.");
+
+        assertEquals(List.of("You walked for 4 minutes."), listener.results);
+        assertEquals("You walked for 4 minutes.", bridge.getLastResult());
+    }
+
+    @Test
+    public void otherPagesGetNothing() {
+        PromptBridge bridge = new PromptBridge();
+        RecordingListener listener = new RecordingListener();
+        bridge.setListener(listener);
+        bridge.offer("private", 1);
+
+        assertEquals("null", bridge.takePrompt());
+        bridge.onPromptApplied(1);
+        bridge.onResult("forged");
+        assertTrue(listener.applied.isEmpty());
+        assertTrue(listener.results.isEmpty());
+        assertNull(bridge.getLastResult());
+
+        bridge.setPageTrusted(true);
+        assertTrue(bridge.hasPendingPrompt());
+        assertNotEquals("null", bridge.takePrompt());
+    }
+
+    @Test
+    public void onlyThePageOriginIsTrusted() {
+        assertTrue(WebViewHost.isPageOrigin(WebViewHost.PAGE_URL));
+        assertTrue(WebViewHost.isPageOrigin("http://127.0.0.1:8080/other.html?q=1"));
+        assertFalse(WebViewHost.isPageOrigin("http://127.0.0.1:8081/index-new.html"));
+        assertFalse(WebViewHost.isPageOrigin("https://127.0.0.1:8080/index-new.html"));
+        assertFalse(WebViewHost.isPageOrigin("http://127.0.0.1.example.com:8080/"));
+        assertFalse(WebViewHost.isPageOrigin("javascript:alert(1)"));
+        assertFalse(WebViewHost.isPageOrigin("not a url"));
+        assertFalse(WebViewHost.isPageOrigin(null));
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.phonesensorreader;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PromptBuilderTest {
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+    private static final int PRESSURE = 6;
+
+    private static SensorRegistry registry() {
+        SensorRegistry registry = new SensorRegistry();
+        registry.register(new SensorSpec(ACC, "ACC", 3, "m/s²", 100));
+        registry.register(new SensorSpec(GYRO, "GYRO", 3, "rad/s", 100));
+        registry.register(new SensorSpec(PRESSURE, "PRESSURE", 1, "hPa", 1));
+        return registry;
+    }
+
+    private static WindowFeatures window(int sensorType, double level) {
+        WindowFeatures features = new WindowFeatures();
+        features.sensorType = sensorType;
+        features.sampleCount = 256;
+        features.sampleRateHz = 100;
+        features.signalMagnitudeArea = 3 * level;
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            features.stdDev[axis] = level + axis * 0.001;
+            features.min[axis] = -level * 2;
+            features.max[axis] = level * 2.5;
+            features.dominantFrequencyHz[axis] = 1.953125 * (axis + 1);
+        }
+        return features;
+    }
+
+    private static WindowHistory history(int sensorType, int count, double level) {
+        WindowHistory history = new WindowHistory(8);
+        for (int i = 0; i < count; i++) {
+            history.add(window(sensorType, level + i));
+        }
+        return history;
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void classificationPrefixIsByteIdenticalAcrossRequests() throws Exception {
+        PromptBuilder builder = new PromptBuilder(registry(), 512);
+        String first = builder.buildClassificationPrompt(history(ACC, 1, 0.2), history(GYRO, 1, 0.05));
+        String second = builder.buildClassificationPrompt(history(ACC, 3, 4.5), history(GYRO, 2, 1.7));
+        // A new builder, as after a service restart
+        String third = new PromptBuilder(registry(), 512).buildClassificationPrompt(history(ACC, 1, 9));
+        String prefix = builder.getClassificationPrefix();
+
+        assertTrue(first.startsWith(prefix));
+        assertTrue(second.startsWith(prefix));
+        assertTrue(third.startsWith(prefix));
+        assertNotEquals(first, second);
+        assertFalse(prefix.contains("ACC window"));
+        // What the server compares: the bytes of the request bodies
+        byte[] a = InferenceLoop.requestJson(first).getBytes("UTF-8");
+        byte[] b = InferenceLoop.requestJson(second).getBytes("UTF-8");
+        byte[] escapedPrefix = InferenceLoop.requestJson(prefix).getBytes("UTF-8");
+        int shared = 0;
+        while (shared < a.length && shared < b.length && a[shared] == b[shared]) {
+            shared++;
+        }
+        // All but the closing quote of the prefix-only request
+        int prefixBytes = escapedPrefix.length - InferenceLoop.requestJson("").getBytes("UTF-8").length + "{\"prompt\":\"".length();
+        assertTrue("shared " + shared + " of " + prefixBytes, shared >= prefixBytes);
+        assertEquals(first, new JSONObject(InferenceLoop.requestJson(first)).getString("prompt"));
+    }
+
+    @Test
+    public void summaryPrefixIsStatic() {
+        PromptBuilder builder = new PromptBuilder(registry(), 512);
+        SensorStatistics statistics = new SensorStatistics(7);
+        SensorStatistics linear = new SensorStatistics(3);
+        String empty = builder.buildSummaryPrompt(statistics, linear);
+        statistics.add(0, 9.81);
+        linear.add(0, 0.5);
+        String full = builder.buildSummaryPrompt(statistics, linear, history(ACC, 2, 1));
+
+        assertEquals(builder.getSummaryPrefix(), empty);
+        assertTrue(full.startsWith(builder.getSummaryPrefix()));
+    }
+
+    @Test
+    public void prefixListsRegistryUnits() {
+        String prefix = new PromptBuilder(registry(), 512).getClassificationPrefix();
+        assertTrue(prefix, prefix.contains("Units: ACC m/s², GYRO rad/s, PRESSURE hPa."));
+        assertFalse(prefix.contains("°/s"));
+    }
+
+    @Test
+    public void averagesAreGroupedBySensor() {
+        PromptBuilder builder = new PromptBuilder(registry(), 512);
+        SensorStatistics statistics = new SensorStatistics(7);
+        statistics.add(0, 0.0001);
+        statistics.add(1, -0.25);
+        statistics.add(2, 9.80665);
+        statistics.add(6, 1013.25);
+        String prompt = builder.buildSummaryPrompt(statistics, new SensorStatistics(3));
+
+        assertTrue(prompt, prompt.endsWith(
+                " Session averages: ACC X=0.000100 Y=-0.250000 Z=9.806650; PRESSURE=1013.250000."));
+    }
+
+    @Test
+    public void windowsAreListedNewestFirstAndAlternate() {
+        PromptBuilder builder = new PromptBuilder(registry(), 10_000);
+        String prompt = builder.buildClassificationPrompt(history(ACC, 2, 1), history(GYRO, 1, 0.5));
+
+        assertEquals(3, builder.getLastWindowCount());
+        int acc1 = prompt.indexOf(" ACC window 1 (2.56 s): std X=2.000 Y=2.001 Z=2.002; min X=-4.000");
+        int gyro1 = prompt.indexOf(" GYRO window 1 (2.56 s): std X=0.500");
+        int acc2 = prompt.indexOf(" ACC window 2 (2.56 s): std X=1.000");
+        assertTrue(prompt, acc1 >= 0 && acc1 < gyro1 && gyro1 < acc2);
+        assertTrue(prompt, prompt.contains("dominant X=1.95 Y=3.91 Z=5.86; SMA=6.000."));
+        assertTrue(prompt.endsWith("\nAnswer with one word.\nActivity:"));
+    }
+
+    @Test
+    public void fullWindowsGiveTheCadence() {
+        WindowHistory accelerometer = new WindowHistory(4);
+        WindowFeatures walking = window(ACC, 2);
+        walking.cadenceStepsPerMinute = 112.4;
+        accelerometer.add(walking);
+        String prompt = new PromptBuilder(registry(), 10_000).buildClassificationPrompt(accelerometer);
+
+        assertTrue(prompt, prompt.contains("dominant X=1.95 Y=3.91 Z=5.86; cadence=112; SMA=6.000."));
+    }
+
+    @Test
+    public void budgetLimitsWindows() {
+        WindowHistory acc = history(ACC, 8, 1);
+        WindowHistory gyro = history(GYRO, 8, 0.5);
+        int previousCount = 0;
+        int previousTokens = 0;
+        for (int budget = 100; budget <= 2000; budget += 100) {
+            PromptBuilder builder = new PromptBuilder(registry(), budget);
+            String prompt = builder.buildClassificationPrompt(acc, gyro);
+            int tokens = PromptBuilder.estimateTokens(prompt);
+            int windows = builder.getLastWindowCount();
+
+            assertTrue(windows >= 1);
+            assertTrue(windows >= previousCount);
+            assertTrue(tokens >= previousTokens);
+            assertEquals(windows, count(prompt.substring(builder.getClassificationPrefix().length()), " window "));
+            if (windows > 1) {
+                assertTrue("budget " + budget + " tokens " + tokens, tokens <= budget);
+            }
+            previousCount = windows;
+            previousTokens = tokens;
+        }
+        assertEquals(16, previousCount);
+    }
+
+    @Test
+    public void newestWindowIsKeptInCompactFormUnderTightBudget() {
+        PromptBuilder builder = new PromptBuilder(registry(), 1);
+        String prompt = builder.buildClassificationPrompt(history(ACC, 4, 1), history(GYRO, 4, 0.5));
+
+        assertEquals(1, builder.getLastWindowCount());
+        assertTrue(prompt, prompt.contains(" ACC window 1 (2.56 s): std X=4.000 Y=4.001 Z=4.002; SMA=12.000."));
+        assertFalse(prompt.contains("min X"));
+    }
+
+    @Test
+    public void estimatesDigitsAsTokens() {
+        assertEquals(0, PromptBuilder.estimateTokens(""));
+        assertEquals(6, PromptBuilder.estimateTokens("123456"));
+        assertEquals(2, PromptBuilder.estimateTokens("walking"));
+        assertEquals(4, PromptBuilder.estimateTokens("X=0.25"));
+    }
+
+    @Test
+    public void escapesJsonStrings() throws Exception {
+        String text = "Say \"hi\"\\n\n\r\t\b\f\u0001 ° </script> \u2028\u2029 😀 'single'";
+        String json = PromptBuilder.appendJsonString(new StringBuilder(), text).toString();
+
+        assertEquals("\"Say \\\"hi\\\"\\\\n\\n\\r\\t\\u0008\\u000c\\u0001 ° <\\/script> \\u2028\\u2029 😀 'single'\"", json);
+        assertEquals(text, new JSONObject("{\"v\":" + json + "}").getString("v"));
+        for (int i = 0; i < json.length(); i++) {
+            assertTrue("raw control character at " + i, json.charAt(i) >= 0x20);
+        }
+    }
+
+    @Test
+    public void requestJsonRoundTripsAnyPrompt() throws Exception {
+        StringBuilder prompt = new StringBuilder();
+        for (char c = 0; c < 0x3000; c++) {
+            if (!Character.isSurrogate(c)) {
+                prompt.append(c);
+            }
+        }
+        JSONObject request = new JSONObject(InferenceLoop.requestJson(prompt.toString()));
+        assertEquals(prompt.toString(), request.getString("prompt"));
+        assertTrue(request.getBoolean("cache_prompt"));
+    }
+}
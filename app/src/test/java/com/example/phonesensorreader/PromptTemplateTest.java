@@ -0,0 +1,47 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PromptTemplateTest {
+
+    @Test
+    public void rendersSlotsBetweenLiterals() {
+        PromptTemplate template = PromptTemplate.compile("Hello {name}, you are {activity_label}.");
+        int name = template.indexOf("name");
+        String text = template.render(new StringBuilder(">"),
+                (out, slot) -> out.append(slot == name ? "Ada" : "walking")).toString();
+
+        assertEquals(2, template.getSlotCount());
+        assertEquals(">Hello Ada, you are walking.", text);
+    }
+
+    @Test
+    public void rendersTemplatesWithoutSlots() {
+        PromptTemplate template = PromptTemplate.compile("No slots");
+        assertEquals(0, template.getSlotCount());
+        assertEquals("No slots", template.render(new StringBuilder(), (out, slot) -> fail()).toString());
+    }
+
+    @Test
+    public void slotsCanBeAdjacent() {
+        PromptTemplate template = PromptTemplate.compile("{a}{b}");
+        assertEquals("01", template.render(new StringBuilder(), (out, slot) -> out.append(slot)).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnclosedSlot() {
+        PromptTemplate.compile("Hello {name");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStrayBrace() {
+        PromptTemplate.compile("{\"json\": 1}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownSlot() {
+        PromptTemplate.compile("Hello {name}").indexOf("other");
+    }
+}
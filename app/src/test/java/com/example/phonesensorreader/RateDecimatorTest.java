@@ -0,0 +1,140 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RateDecimatorTest {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** Output of decimating a synthetic stream: accepted timestamps, in order. */
+    private static long[] decimate(RateDecimator decimator, double inputRateHz, double jitterFraction,
+                                   double seconds, long seed) {
+        Random random = new Random(seed);
+        long inputPeriod = Math.round(NANOS_PER_SECOND / inputRateHz);
+        int events = (int) (seconds * inputRateHz);
+        long[] out = new long[events];
+        int count = 0;
+        long timestamp = 5_000_000_000L; // sensor clocks do not start at zero
+        for (int i = 0; i < events; i++) {
+            long jitter = Math.round((random.nextDouble() * 2 - 1) * jitterFraction * inputPeriod);
+            if (decimator.accept(timestamp + jitter)) {
+                out[count++] = timestamp + jitter;
+            }
+            timestamp += inputPeriod;
+        }
+        long[] accepted = new long[count];
+        System.arraycopy(out, 0, accepted, 0, count);
+        return accepted;
+    }
+
+    private static double outputRate(long[] accepted) {
+        return (accepted.length - 1) * (double) NANOS_PER_SECOND / (accepted[accepted.length - 1] - accepted[0]);
+    }
+
+    private static double maxIntervalErrorFraction(long[] accepted, long periodNanos) {
+        double max = 0;
+        for (int i = 1; i < accepted.length; i++) {
+            max = Math.max(max, Math.abs(accepted[i] - accepted[i - 1] - periodNanos) / (double) periodNanos);
+        }
+        return max;
+    }
+
+    @Test
+    public void halvesRateOfCleanStream() {
+        RateDecimator decimator = new RateDecimator(100);
+        long[] accepted = decimate(decimator, 200, 0, 60, 1);
+
+        assertEquals(100, outputRate(accepted), 0.01);
+        assertEquals(0, maxIntervalErrorFraction(accepted, decimator.getPeriodNanos()), 1e-9);
+        assertEquals(accepted.length, decimator.getAcceptedCount());
+        assertEquals(12_000 - accepted.length, decimator.getDroppedCount());
+    }
+
+    @Test
+    public void keepsExactRateWithJitteryInput() {
+        RateDecimator decimator = new RateDecimator(50);
+        long[] accepted = decimate(decimator, 200, 0.2, 60, 2);
+
+        assertEquals(50, outputRate(accepted), 0.05);
+        // Each output sample is at most half an input period plus input jitter away from its slot
+        assertTrue(maxIntervalErrorFraction(accepted, decimator.getPeriodNanos()) < 0.5);
+    }
+
+    @Test
+    public void keepsRateWhenInputIsOnlySlightlyFaster() {
+        RateDecimator decimator = new RateDecimator(100);
+        long[] accepted = decimate(decimator, 104, 0.1, 60, 3);
+
+        // A naive "at least one period since the last sample" gate would emit ~52 Hz here
+        assertEquals(100, outputRate(accepted), 0.5);
+    }
+
+    @Test
+    public void slowerInputPassesThrough() {
+        RateDecimator decimator = new RateDecimator(100);
+        long[] accepted = decimate(decimator, 50, 0.1, 10, 4);
+
+        assertEquals(500, accepted.length);
+        assertEquals(0, decimator.getDroppedCount());
+    }
+
+    @Test
+    public void nonPositiveRatePassesEverything() {
+        RateDecimator decimator = new RateDecimator(SamplingConfig.RATE_DEVICE_MAX);
+        long[] accepted = decimate(decimator, 400, 0.3, 5, 5);
+
+        assertEquals(2000, accepted.length);
+    }
+
+    @Test
+    public void doesNotBurstAfterGap() {
+        RateDecimator decimator = new RateDecimator(10);
+        long t = 0;
+        for (int i = 0; i < 100; i++, t += 10_000_000L) {
+            decimator.accept(t);
+        }
+        long acceptedBeforeGap = decimator.getAcceptedCount();
+        t += 5 * NANOS_PER_SECOND; // device suspended for five seconds
+        int acceptedInFirst100ms = 0;
+        for (int i = 0; i < 10; i++, t += 10_000_000L) {
+            if (decimator.accept(t)) acceptedInFirst100ms++;
+        }
+
+        assertEquals(10, acceptedBeforeGap);
+        assertEquals(1, acceptedInFirst100ms);
+    }
+
+    @Test
+    public void independentDecimatorsDoNotStarveEachOther() {
+        // Accelerometer and gyroscope events interleaved on the same thread
+        RateDecimator accelerometer = new RateDecimator(50);
+        RateDecimator gyroscope = new RateDecimator(50);
+        long t = 0;
+        for (int i = 0; i < 20_000; i++, t += 5_000_000L) {
+            accelerometer.accept(t);
+            gyroscope.accept(t + 1_000_000L);
+        }
+
+        assertEquals(5000, accelerometer.getAcceptedCount());
+        assertEquals(5000, gyroscope.getAcceptedCount());
+    }
+
+    @Test
+    public void samplingPeriodIsClampedToSensorMinimum() {
+        assertEquals(10_000, SamplingConfig.samplingPeriodUs(100, 2_500));
+        assertEquals(2_500, SamplingConfig.samplingPeriodUs(1000, 2_500));
+        assertEquals(2_500, SamplingConfig.samplingPeriodUs(SamplingConfig.RATE_DEVICE_MAX, 2_500));
+        assertEquals(400, SamplingConfig.effectiveRateHz(1000, 2_500), 1e-9);
+    }
+
+    @Test
+    public void reportLatencyFitsInFifo() {
+        assertEquals(1_000_000, SamplingConfig.maxReportLatencyUs(1_000_000, 10_000, 3000));
+        assertEquals(500_000, SamplingConfig.maxReportLatencyUs(1_000_000, 10_000, 100));
+        assertEquals(0, SamplingConfig.maxReportLatencyUs(1_000_000, 10_000, 0));
+        assertEquals(0, SamplingConfig.maxReportLatencyUs(0, 10_000, 3000));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RealFftTest {
+
+    private static double[] randomSignal(int size, Random random) {
+        double[] signal = new double[size];
+        for (int i = 0; i < size; i++) {
+            signal[i] = random.nextGaussian();
+        }
+        return signal;
+    }
+
+    @Test
+    public void matchesDirectDft() {
+        Random random = new Random(7);
+        for (int size = 2; size <= 1024; size *= 2) {
+            double[] signal = randomSignal(size, random);
+            double[] data = signal.clone();
+            new RealFft(size).forward(data);
+            for (int k = 0; k <= size / 2; k++) {
+                double real = 0;
+                double imaginary = 0;
+                for (int i = 0; i < size; i++) {
+                    real += signal[i] * Math.cos(2 * Math.PI * k * i / size);
+                    imaginary -= signal[i] * Math.sin(2 * Math.PI * k * i / size);
+                }
+                double fftReal = k == 0 ? data[0] : k == size / 2 ? data[1] : data[2 * k];
+                double fftImaginary = k == 0 || k == size / 2 ? 0 : data[2 * k + 1];
+                String message = "size " + size + " bin " + k;
+                assertEquals(message, real, fftReal, 1e-9 * size);
+                assertEquals(message, imaginary, fftImaginary, 1e-9 * size);
+            }
+        }
+    }
+
+    @Test
+    public void sinusoidOnABinHasAllPowerThere() {
+        int size = 256;
+        RealFft fft = new RealFft(size);
+        double[] data = new double[size];
+        double[] power = new double[size / 2 + 1];
+        for (int bin : new int[]{1, 5, 37, 127}) {
+            for (int i = 0; i < size; i++) {
+                data[i] = 3 * Math.cos(2 * Math.PI * bin * i / size + 0.4);
+            }
+            fft.powerSpectrum(data, power);
+            for (int k = 0; k < power.length; k++) {
+                // |X| = A * n / 2 at the sinusoid's bin
+                double expected = k == bin ? 1.5 * size * 1.5 * size : 0;
+                assertEquals("bin " + bin + " at " + k, expected, power[k], 1e-6 * size * size);
+            }
+        }
+    }
+
+    @Test
+    public void nyquistAndDcArePacked() {
+        double[] data = {1, -1, 1, -1, 1, -1, 1, -1};
+        new RealFft(8).forward(data);
+        assertEquals(0, data[0], 1e-12);
+        assertEquals(8, data[1], 1e-12);
+
+        double[] constant = {2, 2, 2, 2};
+        new RealFft(4).forward(constant);
+        assertEquals(8, constant[0], 1e-12);
+        assertEquals(0, constant[1], 1e-12);
+    }
+
+    @Test
+    public void powerSatisfiesParseval() {
+        int size = 512;
+        double[] signal = randomSignal(size, new Random(11));
+        double timeEnergy = 0;
+        for (double value : signal) {
+            timeEnergy += value * value;
+        }
+        double[] power = new double[size / 2 + 1];
+        new RealFft(size).powerSpectrum(signal.clone(), power);
+        double spectrumEnergy = power[0] + power[size / 2];
+        for (int k = 1; k < size / 2; k++) {
+            spectrumEnergy += 2 * power[k];
+        }
+        assertEquals(timeEnergy, spectrumEnergy / size, 1e-9 * timeEnergy);
+    }
+
+    @Test
+    public void hannWindowIsPeriodic() {
+        double[] hann = WindowFunction.HANN.fill(new double[8]);
+        assertEquals(0, hann[0], 1e-12);
+        assertEquals(1, hann[4], 1e-12);
+        assertEquals(hann[1], hann[7], 1e-12);
+        assertEquals(0.375, WindowFunction.powerGain(hann), 1e-12);
+        assertEquals(1, WindowFunction.powerGain(WindowFunction.RECTANGULAR.fill(new double[5])), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSizeThatIsNotAPowerOfTwo() {
+        new RealFft(26);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RollingStatisticsTest {
+    private static final int ACC = 1;
+    private static final int PRESSURE = 6;
+    private static final long SECOND = 1_000_000_000L;
+
+    private static SensorRegistry registry() {
+        SensorRegistry registry = new SensorRegistry();
+        registry.register(new SensorSpec(ACC, "ACC", 3, "m/s²", 100));
+        registry.register(new SensorSpec(PRESSURE, "PRESSURE", 1, "hPa", 1));
+        return registry;
+    }
+
+    @Test
+    public void summarizesTheRequestedHorizon() {
+        RollingStatistics rolling = new RollingStatistics(registry(), SECOND, 60);
+        // Ten seconds at 10 Hz, X is the second number
+        for (int i = 0; i < 100; i++) {
+            rolling.onSample(i * SECOND / 10, ACC, i / 10, 0, 0);
+        }
+        SensorStatistics out = new SensorStatistics(1);
+
+        rolling.summarize(0, 3 * SECOND, out, 0);
+        assertEquals(30, out.getCount(0));
+        assertEquals(8.0, out.getMean(0), 1e-12);
+        assertEquals(7.0, out.getMin(0), 0);
+        assertEquals(9.0, out.getMax(0), 0);
+
+        rolling.summarize(0, 60 * SECOND, out, 0);
+        assertEquals(100, out.getCount(0));
+        assertEquals(4.5, out.getMean(0), 1e-12);
+    }
+
+    @Test
+    public void horizonIsRoundedUpToWholeBuckets() {
+        RollingStatistics rolling = new RollingStatistics(registry(), SECOND, 60);
+        for (int i = 0; i < 100; i++) {
+            rolling.onSample(i * SECOND / 10, ACC, i / 10, 0, 0);
+        }
+        SensorStatistics out = new SensorStatistics(1);
+        rolling.summarize(0, SECOND + 1, out, 0);
+        assertEquals(20, out.getCount(0));
+        rolling.summarize(0, 0, out, 0);
+        assertEquals(10, out.getCount(0));
+    }
+
+    @Test
+    public void oldBucketsAreOverwritten() {
+        RollingStatistics rolling = new RollingStatistics(registry(), SECOND, 10);
+        for (int second = 0; second < 25; second++) {
+            rolling.onSample(second * SECOND, ACC, second, 0, 0);
+        }
+        SensorStatistics out = new SensorStatistics(1);
+        rolling.summarize(0, rolling.getMaxHorizonNanos() * 2, out, 0);
+
+        assertEquals(10, out.getCount(0));
+        assertEquals(15.0, out.getMin(0), 0);
+        assertEquals(24.0, out.getMax(0), 0);
+        // Samples older than the ring are ignored
+        rolling.onSample(3 * SECOND, ACC, -100, 0, 0);
+        rolling.summarize(0, rolling.getMaxHorizonNanos(), out, 0);
+        assertEquals(15.0, out.getMin(0), 0);
+    }
+
+    @Test
+    public void gapsLeaveNoStaleBuckets() {
+        RollingStatistics rolling = new RollingStatistics(registry(), SECOND, 10);
+        rolling.onSample(0, ACC, 1, 0, 0);
+        rolling.onSample(2 * SECOND, ACC, 2, 0, 0);
+        // Twelve seconds later slot 2 is reused, slot 0 still holds second 0 but is out of range
+        rolling.onSample(12 * SECOND, ACC, 3, 0, 0);
+        SensorStatistics out = new SensorStatistics(1);
+        rolling.summarize(0, 10 * SECOND, out, 0);
+
+        assertEquals(1, out.getCount(0));
+        assertEquals(3.0, out.getMean(0), 0);
+    }
+
+    @Test
+    public void channelsFollowTheRegistry() {
+        SensorRegistry registry = registry();
+        RollingStatistics rolling = new RollingStatistics(registry, SECOND, 10);
+        rolling.onSample(SECOND, ACC, 1, 2, 3);
+        rolling.onSample(SECOND, PRESSURE, 1013, 0, 0);
+        rolling.onSample(SECOND, 99, 5, 5, 5);
+        SensorStatistics out = new SensorStatistics(registry.getChannelCount());
+        for (int channel = 0; channel < registry.getChannelCount(); channel++) {
+            rolling.summarize(channel, SECOND, out, channel);
+        }
+
+        assertEquals(2.0, out.getMean(1), 0);
+        assertEquals(3.0, out.getMean(2), 0);
+        assertEquals(1013.0, out.getMean(3), 0);
+        assertEquals(1, out.getCount(3));
+    }
+
+    @Test
+    public void emptyUntilTheFirstSample() {
+        RollingStatistics rolling = new RollingStatistics(registry(), SECOND, 10);
+        SensorStatistics out = new SensorStatistics(1);
+        out.add(0, 1);
+        rolling.summarize(0, SECOND, out, 0);
+        assertEquals(0, out.getCount(0));
+
+        rolling.onSample(SECOND, ACC, 1, 0, 0);
+        rolling.clear();
+        rolling.summarize(0, SECOND, out, 0);
+        assertEquals(0, out.getCount(0));
+    }
+}
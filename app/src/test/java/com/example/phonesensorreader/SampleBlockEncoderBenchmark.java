@@ -0,0 +1,119 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Encode throughput and size of upload blocks for a synthetic 100 Hz session of walking,
+ * running and sitting with timestamp jitter like real sensor events, at several decimals and
+ * against the raw floats a {@link SpillingRecorder} deflates.
+ */
+public class SampleBlockEncoderBenchmark {
+    private static final double RATE_HZ = 100;
+    private static final int BLOCK_SAMPLES = 8192;
+    // Spread of event timestamps around the nominal period
+    private static final long JITTER_NANOS = 200_000;
+
+    private static final class Trace implements SampleSink, SampleSource {
+        long[] timestamps = new long[0];
+        int[] sensorTypes = new int[0];
+        float[] xs = new float[0];
+        float[] ys = new float[0];
+        float[] zs = new float[0];
+        int size;
+        final Random random = new Random(1);
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            if (size == timestamps.length) {
+                int capacity = Math.max(1024, size * 2);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                sensorTypes = Arrays.copyOf(sensorTypes, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                zs = Arrays.copyOf(zs, capacity);
+            }
+            timestamps[size] = timestampNanos + (long) (random.nextGaussian() * JITTER_NANOS / 4);
+            sensorTypes[size] = sensorType;
+            xs[size] = x;
+            ys[size] = y;
+            zs[size] = z;
+            size++;
+        }
+
+        @Override
+        public void forEach(SampleSink sink) {
+            for (int i = 0; i < size; i++) {
+                sink.onSample(timestamps[i], sensorTypes[i], xs[i], ys[i], zs[i]);
+            }
+            sink.onBatchEnd();
+        }
+    }
+
+    private static void run(Trace trace, int decimals, boolean print) {
+        long[] bytes = {0};
+        long[] encodedBytes = {0};
+        try (SampleBlockEncoder encoder = new SampleBlockEncoder(decimals)) {
+            long start = System.nanoTime();
+            // Growing the buffers to the block size, once per encoder
+            long allocated = Allocations.measure(() -> {
+                for (int i = 0; i < trace.size; i++) {
+                    encoder.onSample(trace.timestamps[i], trace.sensorTypes[i], trace.xs[i], trace.ys[i], trace.zs[i]);
+                    if (encoder.getSampleCount() == BLOCK_SAMPLES || i == trace.size - 1) {
+                        bytes[0] += encoder.finishBlock();
+                        encodedBytes[0] += encoder.getEncodedLength();
+                    }
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+            if (print) {
+                System.out.printf("%d decimals %6.2f bytes/sample (%5.2f before deflate) ratio %5.2f"
+                                + " %6.1f ns/sample %6.1f MB/s raw %5.2f bytes/sample allocated%n",
+                        decimals, bytes[0] / (double) trace.size, encodedBytes[0] / (double) trace.size,
+                        trace.size * (double) SessionFormat.RECORD_SIZE / bytes[0], elapsed / (double) trace.size,
+                        trace.size * (double) SessionFormat.RECORD_SIZE * 1e3 / elapsed,
+                        allocated / (double) trace.size);
+            }
+        }
+    }
+
+    private static void runSpilling(Trace trace, boolean print) throws IOException {
+        File file = File.createTempFile("bench", SpillingRecorder.FILE_EXTENSION);
+        try {
+            long start = System.nanoTime();
+            try (SpillingRecorder recorder = new SpillingRecorder(file, 0,
+                    (long) BLOCK_SAMPLES * SpillingRecorder.MEMORY_PER_RECORD)) {
+                trace.forEach(recorder);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (print) {
+                System.out.printf("raw floats %6.2f bytes/sample ratio %5.2f %6.1f ns/sample (spilling recorder)%n",
+                        file.length() / (double) trace.size,
+                        trace.size * (double) SessionFormat.RECORD_SIZE / file.length(),
+                        elapsed / (double) trace.size);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void syntheticSession() throws IOException {
+        Trace trace = new Trace();
+        new SyntheticSensorSource(RATE_HZ, 9).add(ActivityLabel.SITTING, 300).add(ActivityLabel.WALKING, 300)
+                .add(ActivityLabel.RUNNING, 120).add(ActivityLabel.SITTING, 300).forEach(trace);
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) {
+                System.out.println("Upload blocks of " + trace.size + " samples at " + RATE_HZ + " Hz:");
+            }
+            for (int decimals = 2; decimals <= 4; decimals++) {
+                run(trace, decimals, round == 1);
+            }
+            runSpilling(trace, round == 1);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SampleBlockEncoderTest {
+    private static class CollectingSink implements SampleSink {
+        final List<long[]> timestampsAndTypes = new ArrayList<>();
+        final List<float[]> values = new ArrayList<>();
+        int batches;
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            timestampsAndTypes.add(new long[]{timestampNanos, sensorType});
+            values.add(new float[]{x, y, z});
+        }
+
+        @Override
+        public void onBatchEnd() {
+            batches++;
+        }
+    }
+
+    private static CollectingSink decode(SampleBlockEncoder encoder) throws IOException {
+        CollectingSink sink = new CollectingSink();
+        SampleBlockEncoder.decode(encoder.getBlock(), 0, encoder.getBlockLength(), sink);
+        return sink;
+    }
+
+    @Test
+    public void roundTripsWithinTheDecimals() throws IOException {
+        CollectingSink original = new CollectingSink();
+        // Jittery timestamps, interleaved sensors and negative values
+        for (int i = 0; i < 1000; i++) {
+            original.onSample(20_000_000L * i + (i * 7919 % 13) * 1000, i % 3 == 0 ? 4 : 1,
+                    (float) Math.sin(i * 0.1) * 3, -i / 7f, 9.81f);
+        }
+        SampleBlockEncoder encoder = new SampleBlockEncoder(3);
+        for (int i = 0; i < 1000; i++) {
+            long[] sample = original.timestampsAndTypes.get(i);
+            float[] values = original.values.get(i);
+            encoder.onSample(sample[0], (int) sample[1], values[0], values[1], values[2]);
+        }
+        assertEquals(1000, encoder.getSampleCount());
+        encoder.finishBlock();
+        assertEquals(0, encoder.getSampleCount());
+        CollectingSink decoded = decode(encoder);
+
+        assertEquals(1, decoded.batches);
+        assertEquals(1000, decoded.timestampsAndTypes.size());
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(original.timestampsAndTypes.get(i), decoded.timestampsAndTypes.get(i));
+            for (int axis = 0; axis < 3; axis++) {
+                assertEquals(original.values.get(i)[axis], decoded.values.get(i)[axis], 0.0005 + 1e-6);
+            }
+        }
+        encoder.close();
+    }
+
+    @Test
+    public void blocksAreIndependent() throws IOException {
+        SampleBlockEncoder encoder = new SampleBlockEncoder(2);
+        encoder.onSample(100, 1, 1, 2, 3);
+        encoder.onSample(200, 4, 4, 5, 6);
+        encoder.finishBlock();
+        encoder.onSample(300, 4, 7, 8, 9);
+        encoder.onSample(301, 2, 0, 0, 0);
+        encoder.clear();
+        encoder.onSample(400, 4, -1.25f, 0, 1);
+        encoder.finishBlock();
+        CollectingSink decoded = decode(encoder);
+
+        assertEquals(1, decoded.timestampsAndTypes.size());
+        assertArrayEquals(new long[]{400, 4}, decoded.timestampsAndTypes.get(0));
+        assertArrayEquals(new float[]{-1.25f, 0, 1}, decoded.values.get(0), 0);
+        encoder.finishBlock();
+        assertEquals(0, decode(encoder).timestampsAndTypes.size());
+        encoder.close();
+    }
+
+    @Test
+    public void compressesMotionTraces() throws IOException {
+        SampleBlockEncoder encoder = new SampleBlockEncoder(3);
+        SyntheticSensorSource source = new SyntheticSensorSource(100, 5)
+                .add(ActivityLabel.WALKING, 30).add(ActivityLabel.SITTING, 30);
+        source.forEach(encoder);
+        int samples = encoder.getSampleCount();
+        int length = encoder.finishBlock();
+
+        double ratio = (double) samples * SessionFormat.RECORD_SIZE / length;
+        assertTrue("ratio " + ratio, ratio > 3);
+        assertEquals(samples, SampleBlockEncoder.decode(encoder.getBlock(), 0, length, new CollectingSink()));
+        encoder.close();
+    }
+
+    @Test
+    public void rejectsDamagedBlocks() {
+        SampleBlockEncoder encoder = new SampleBlockEncoder(3);
+        for (int i = 0; i < 100; i++) {
+            encoder.onSample(i, 1, i, i, i);
+        }
+        int length = encoder.finishBlock();
+        byte[] block = Arrays.copyOf(encoder.getBlock(), length);
+        encoder.close();
+
+        try {
+            SampleBlockEncoder.decode(block, 0, length / 2, new CollectingSink());
+            fail("Decoded a truncated block");
+        } catch (IOException expected) {
+        }
+        block[length / 2] ^= 0x55;
+        try {
+            SampleBlockEncoder.decode(block, 0, length, new CollectingSink());
+            fail("Decoded a corrupt block");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void keepsValuesThatAreNotFinite() throws IOException {
+        SampleBlockEncoder encoder = new SampleBlockEncoder(3);
+        encoder.onSample(0, 1, 1, 2, 3);
+        encoder.onSample(10, 1, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        encoder.onSample(20, 1, 1e17f, -1e17f, Float.MAX_VALUE);
+        encoder.onSample(30, 1, -1, -2, -3);
+        encoder.finishBlock();
+        CollectingSink decoded = decode(encoder);
+
+        assertArrayEquals(new float[]{1, 2, 3}, decoded.values.get(0), 0);
+        assertArrayEquals(new float[]{Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY},
+                decoded.values.get(1), 0);
+        // Too large for 3 decimals
+        assertArrayEquals(new float[]{Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY},
+                decoded.values.get(2), 0);
+        assertArrayEquals(new float[]{-1, -2, -3}, decoded.values.get(3), 0);
+        encoder.close();
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SampleChannelTest {
+
+    /** Copies delivered batches so they can be inspected after the callback. */
+    private static class Recorder implements SampleChannel.Listener {
+        final List<long[]> batches = new ArrayList<>();
+        final List<Long> dropped = new ArrayList<>();
+        long samples;
+
+        @Override
+        public void onSamples(SampleBatch batch) {
+            long[] timestamps = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                timestamps[i] = batch.getTimestampNanos(i);
+                assertEquals((float) timestamps[i], batch.getX(i), 0);
+            }
+            batches.add(timestamps);
+            dropped.add(batch.getDroppedCount());
+            samples += batch.size();
+        }
+    }
+
+    /** Executor that holds tasks until the test runs them, like a busy UI thread. */
+    private static class ManualExecutor implements java.util.concurrent.Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due) task.run();
+        }
+    }
+
+    private static void publish(SampleChannel channel, long from, long to) {
+        for (long t = from; t < to; t++) {
+            channel.publish(t, 1, t, -t, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new SampleChannel(100, 60);
+    }
+
+    @Test
+    public void deliversEachFlushAsOneBatch() {
+        SampleChannel channel = new SampleChannel(64, 0);
+        Recorder recorder = new Recorder();
+        channel.subscribe(recorder, Runnable::run);
+        publish(channel, 0, 5);
+        channel.flush();
+        publish(channel, 5, 8);
+        channel.flush();
+        channel.flush(); // nothing pending
+
+        assertEquals(2, recorder.batches.size());
+        assertArrayEquals(new long[]{0, 1, 2, 3, 4}, recorder.batches.get(0));
+        assertArrayEquals(new long[]{5, 6, 7}, recorder.batches.get(1));
+        assertEquals(8, channel.getDeliveredSamples());
+        assertEquals(2, channel.getDeliveredBatches());
+        assertEquals(2, channel.getDeliveryLatency().summarize().getCount());
+    }
+
+    @Test
+    public void slowSubscriberGetsNewestSamplesInsteadOfQueuedFrames() {
+        SampleChannel channel = new SampleChannel(8, 0);
+        Recorder recorder = new Recorder();
+        ManualExecutor ui = new ManualExecutor();
+        channel.subscribe(recorder, ui);
+
+        publish(channel, 0, 10);
+        channel.flush();
+        assertEquals(1, ui.tasks.size());
+        // The UI thread is busy: more flushes must not queue more frames
+        for (long t = 10; t < 30; t += 5) {
+            publish(channel, t, t + 5);
+            channel.flush();
+        }
+        assertEquals(1, ui.tasks.size());
+        ui.runAll();
+        channel.flush();
+        ui.runAll();
+
+        assertEquals(2, recorder.batches.size());
+        assertArrayEquals(new long[]{2, 3, 4, 5, 6, 7, 8, 9}, recorder.batches.get(0));
+        assertArrayEquals(new long[]{22, 23, 24, 25, 26, 27, 28, 29}, recorder.batches.get(1));
+        assertEquals(List.of(2L, 12L), recorder.dropped);
+        assertEquals(30, channel.getPublishedSamples());
+        assertEquals(14, channel.getDroppedSamples());
+    }
+
+    @Test
+    public void deliveryRateIsCappedWhateverTheSampleRate() throws InterruptedException {
+        SampleChannel channel = new SampleChannel(1024, 60);
+        Recorder recorder = new Recorder();
+        channel.subscribe(recorder, Runnable::run);
+        long start = System.nanoTime();
+        long t = 0;
+        // Two sensors at 1 kHz, flushed every millisecond
+        while (System.nanoTime() - start < 500_000_000L) {
+            publish(channel, t, t + 2);
+            t += 2;
+            channel.flush();
+            Thread.sleep(1);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertTrue(recorder.batches.size() + " batches", recorder.batches.size() <= elapsedNanos * 60 / 1_000_000_000L + 1);
+        assertTrue(recorder.batches.size() >= 10);
+        // Nothing is lost at this rate, samples just wait for the next frame
+        long pending = t - recorder.samples;
+        assertTrue(pending + " pending", pending < 1024);
+        assertEquals(0, channel.getDroppedSamples());
+    }
+
+    @Test
+    public void heldBackSamplesGoOutWithoutAnotherFlush() throws InterruptedException {
+        SampleChannel channel = new SampleChannel(64, 10);
+        BlockingQueue<Long> delivered = new LinkedBlockingQueue<>();
+        channel.subscribe(batch -> delivered.add(batch.getTimestampNanos(batch.size() - 1)), Runnable::run);
+        publish(channel, 0, 3);
+        channel.flush();
+        // Within the 100 ms interval, and the last samples of the session
+        publish(channel, 3, 5);
+        channel.flush();
+
+        assertEquals(Long.valueOf(2), delivered.poll());
+        assertNull(delivered.poll());
+        assertEquals(Long.valueOf(4), delivered.poll(1, TimeUnit.SECONDS));
+        assertEquals(5, channel.getDeliveredSamples());
+    }
+
+    @Test
+    public void samplesArrivingDuringADeliveryFollowIt() {
+        SampleChannel channel = new SampleChannel(16, 0);
+        Recorder recorder = new Recorder();
+        ManualExecutor ui = new ManualExecutor();
+        channel.subscribe(recorder, ui);
+        publish(channel, 0, 2);
+        channel.flush();
+        publish(channel, 2, 4);
+        channel.flush(); // the first batch is still in flight
+        ui.runAll();
+        ui.runAll();
+
+        assertEquals(2, recorder.batches.size());
+        assertArrayEquals(new long[]{2, 3}, recorder.batches.get(1));
+    }
+
+    @Test
+    public void subscribersAreIndependent() {
+        SampleChannel channel = new SampleChannel(16, 0);
+        Recorder fast = new Recorder();
+        Recorder slow = new Recorder();
+        ManualExecutor slowUi = new ManualExecutor();
+        channel.subscribe(fast, Runnable::run);
+        channel.subscribe(slow, slowUi);
+        for (long t = 0; t < 6; t += 2) {
+            publish(channel, t, t + 2);
+            channel.flush();
+        }
+        slowUi.runAll();
+
+        assertEquals(3, fast.batches.size());
+        assertEquals(1, slow.batches.size());
+        assertArrayEquals(new long[]{0, 1}, slow.batches.get(0));
+    }
+
+    @Test
+    public void closedSubscriptionGetsNothing() {
+        SampleChannel channel = new SampleChannel(16, 0);
+        Recorder recorder = new Recorder();
+        ManualExecutor ui = new ManualExecutor();
+        SampleChannel.Subscription subscription = channel.subscribe(recorder, ui);
+        assertTrue(channel.hasSubscribers());
+        publish(channel, 0, 3);
+        channel.flush();
+        subscription.close(); // a delivery is already posted
+        ui.runAll();
+        publish(channel, 3, 6);
+        channel.flush();
+
+        assertFalse(channel.hasSubscribers());
+        assertTrue(ui.tasks.isEmpty());
+        assertTrue(recorder.batches.isEmpty());
+    }
+}
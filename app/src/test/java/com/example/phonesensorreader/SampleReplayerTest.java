@@ -0,0 +1,90 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SampleReplayerTest {
+
+    /** Ten samples 100 ms apart, in two batches. */
+    private static final SampleSource ONE_SECOND = sink -> {
+        for (int i = 0; i < 10; i++) {
+            sink.onSample(5_000_000_000L + i * 100_000_000L, 1, i, 0, 0);
+            if (i == 4 || i == 9) {
+                sink.onBatchEnd();
+            }
+        }
+    };
+
+    @Test
+    public void deliversEverySampleAndBatch() throws IOException {
+        List<Long> timestamps = new ArrayList<>();
+        int[] batches = {0};
+        SampleReplayer replayer = new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE);
+        long count = replayer.replay(ONE_SECOND, new SampleSink() {
+            @Override
+            public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+                timestamps.add(timestampNanos);
+            }
+
+            @Override
+            public void onBatchEnd() {
+                batches[0]++;
+            }
+        });
+        assertEquals(10, count);
+        assertEquals(10, timestamps.size());
+        assertEquals(2, batches[0]);
+        assertEquals(10, replayer.getSampleCount());
+        assertTrue(replayer.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, replayer.getMaxLagNanos());
+    }
+
+    @Test
+    public void pacesSamplesByTheirTimestamps() throws IOException {
+        long[] arrivals = new long[10];
+        int[] next = {0};
+        SampleReplayer replayer = new SampleReplayer(4);
+        long start = System.nanoTime();
+        replayer.replay(ONE_SECOND, (timestampNanos, sensorType, x, y, z) -> arrivals[next[0]++] = System.nanoTime() - start);
+
+        // 0.9 s of samples at four times real time
+        assertTrue("elapsed " + replayer.getElapsedNanos(), replayer.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(225));
+        for (int i = 1; i < arrivals.length; i++) {
+            assertTrue("sample " + i + " at " + arrivals[i], arrivals[i] >= i * TimeUnit.MILLISECONDS.toNanos(25));
+        }
+        assertEquals(4, replayer.getSpeed(), 0);
+    }
+
+    @Test
+    public void interruptionStopsAPacedReplay() throws Exception {
+        SampleReplayer replayer = new SampleReplayer(SampleReplayer.REAL_TIME);
+        IOException[] thrown = {null};
+        long[] delivered = {0};
+        Thread thread = new Thread(() -> {
+            try {
+                replayer.replay(ONE_SECOND, (timestampNanos, sensorType, x, y, z) -> delivered[0]++);
+            } catch (IOException e) {
+                thrown[0] = e;
+            }
+        });
+        thread.start();
+        Thread.sleep(150);
+        thread.interrupt();
+        thread.join(2000);
+        assertFalse(thread.isAlive());
+        assertTrue(String.valueOf(thrown[0]), thrown[0] instanceof InterruptedIOException);
+        assertTrue("delivered " + delivered[0], delivered[0] > 0 && delivered[0] < 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void speedMustNotBeNegative() {
+        new SampleReplayer(-1);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleRingBufferTest {
+
+    /** Checks that samples arrive in order with the values the producer derived from the sequence number. */
+    private static class SequenceCheckingSink implements SampleSink {
+        long expected;
+        long batches;
+        volatile String error;
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            if (error != null) return;
+            if (timestampNanos != expected) {
+                error = "expected sample " + expected + " but got " + timestampNanos;
+            } else if (sensorType != (int) (expected & 7) || x != (float) (expected % 1000) || y != -x || z != x * 0.5f) {
+                error = "corrupt sample " + expected;
+            }
+            expected = timestampNanos + 1;
+        }
+
+        @Override
+        public void onBatchEnd() {
+            batches++;
+        }
+    }
+
+    private static boolean offerSequence(SampleRingBuffer buffer, long sequence) {
+        float x = (float) (sequence % 1000);
+        return buffer.offer(sequence, (int) (sequence & 7), x, -x, x * 0.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new SampleRingBuffer(100);
+    }
+
+    @Test
+    public void drainsInFifoOrderAcrossWrapAround() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        SequenceCheckingSink sink = new SequenceCheckingSink();
+        long next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(offerSequence(buffer, next++));
+            }
+            assertEquals(5, buffer.size());
+            assertEquals(3, buffer.drain(sink, 3));
+            assertEquals(2, buffer.drain(sink, 100));
+            assertEquals(0, buffer.drain(sink, 100));
+        }
+        assertNull(sink.error, sink.error);
+        assertEquals(50, sink.expected);
+        assertEquals(20, sink.batches);
+    }
+
+    @Test
+    public void fullBufferCountsOverrunsAndKeepsOldestSamples() {
+        SampleRingBuffer buffer = new SampleRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(offerSequence(buffer, i));
+        }
+        assertFalse(offerSequence(buffer, 4));
+        assertFalse(offerSequence(buffer, 5));
+
+        assertEquals(2, buffer.getOverrunCount());
+        assertEquals(4, buffer.size());
+        SequenceCheckingSink sink = new SequenceCheckingSink();
+        assertEquals(4, buffer.drain(sink, 16));
+        assertNull(sink.error, sink.error);
+        assertEquals(4, sink.expected);
+    }
+
+    @Test
+    public void stressLosslessWithConcurrentConsumer() throws Exception {
+        final long total = 5_000_000;
+        SampleRingBuffer buffer = new SampleRingBuffer(16384);
+        SequenceCheckingSink sink = new SequenceCheckingSink();
+        SampleConsumer consumer = new SampleConsumer(buffer, sink, 256, 1);
+        consumer.start();
+
+        for (long sequence = 0; sequence < total; ) {
+            if (offerSequence(buffer, sequence)) {
+                sequence++;
+            } else {
+                Thread.yield(); // lossless mode: wait for the consumer instead of dropping
+            }
+        }
+        consumer.stop();
+
+        assertNull(sink.error, sink.error);
+        assertEquals(total, sink.expected);
+        assertEquals(total, consumer.getDrainedCount());
+        assertEquals(0, buffer.size());
+        assertTrue(consumer.getMaxBatchSize() <= 256);
+    }
+
+    @Test
+    public void stressDroppingProducerAccountsForEverySample() throws Exception {
+        final long total = 2_000_000;
+        SampleRingBuffer buffer = new SampleRingBuffer(256);
+        final long[] received = new long[1];
+        final String[] error = new String[1];
+        SampleSink sink = new SampleSink() {
+            long last = -1;
+
+            @Override
+            public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+                if (timestampNanos <= last && error[0] == null) {
+                    error[0] = "out of order: " + timestampNanos + " after " + last;
+                }
+                last = timestampNanos;
+                received[0]++;
+            }
+        };
+        SampleConsumer consumer = new SampleConsumer(buffer, sink, 64, 1);
+        consumer.start();
+        long accepted = 0;
+        for (long sequence = 0; sequence < total; sequence++) {
+            if (offerSequence(buffer, sequence)) {
+                accepted++;
+            }
+        }
+        consumer.stop();
+
+        assertNull(error[0], error[0]);
+        assertEquals(accepted, received[0]);
+        assertEquals(total, accepted + buffer.getOverrunCount());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+
+/**
+ * Throughput and allocation of {@link SensorFusion} on interleaved 100 Hz accelerometer and
+ * gyroscope samples, delivered one by one and in half second batches per sensor.
+ */
+public class SensorFusionBenchmark {
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+    private static final int SAMPLES = 2_000_000;
+    private static final long PERIOD_NANOS = 10_000_000L;
+    private static final int BATCH = 50;
+
+    private static void run(String name, boolean batched) {
+        double[] checksum = {0};
+        SensorFusion fusion = new SensorFusion(ACC, GYRO, 1, 1_000_000_000L,
+                motion -> checksum[0] += motion.getWorldLinearAcceleration(2));
+        long start = System.nanoTime();
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < SAMPLES / 2; i += BATCH) {
+                if (batched) {
+                    for (int j = i; j < i + BATCH; j++) {
+                        fusion.onSample(j * PERIOD_NANOS, ACC, accX(j), 0.5f, 9.7f);
+                    }
+                    for (int j = i; j < i + BATCH; j++) {
+                        fusion.onSample(j * PERIOD_NANOS + PERIOD_NANOS / 3, GYRO, gyroX(j), 0.1f, -0.2f);
+                    }
+                } else {
+                    for (int j = i; j < i + BATCH; j++) {
+                        fusion.onSample(j * PERIOD_NANOS, ACC, accX(j), 0.5f, 9.7f);
+                        fusion.onSample(j * PERIOD_NANOS + PERIOD_NANOS / 3, GYRO, gyroX(j), 0.1f, -0.2f);
+                    }
+                }
+            }
+            fusion.flush();
+        });
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-12s %6.2f M samples/s %7.1f ns/sample %6.2f bytes/sample (motions %d, checksum %.3f)%n",
+                name, SAMPLES * 1e3 / elapsed, elapsed / (double) SAMPLES, allocated / (double) SAMPLES,
+                fusion.getMotionCount(), checksum[0]);
+    }
+
+    private static float accX(int i) {
+        return (float) Math.sin(i * 0.05);
+    }
+
+    private static float gyroX(int i) {
+        return (float) (0.5 * Math.cos(i * 0.05));
+    }
+
+    @Test
+    public void throughput() {
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("Accelerometer and gyroscope at 100 Hz:");
+            run("interleaved", false);
+            run("batched", true);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SensorFusionTest {
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+    private static final double G = SensorFusion.STANDARD_GRAVITY;
+    private static final long SECOND = 1_000_000_000L;
+
+    /** One recorded sensor sample. */
+    private static class Sample {
+        final long timestampNanos;
+        final int sensorType;
+        final float x;
+        final float y;
+        final float z;
+
+        Sample(long timestampNanos, int sensorType, double x, double y, double z) {
+            this.timestampNanos = timestampNanos;
+            this.sensorType = sensorType;
+            this.x = (float) x;
+            this.y = (float) y;
+            this.z = (float) z;
+        }
+    }
+
+    /** Body rate in rad/s and world linear acceleration in m/s² at a time in seconds. */
+    private interface Motion {
+        void at(double seconds, double[] rate, double[] worldAcceleration);
+    }
+
+    /** True device to world orientation of a simulated phone. */
+    private static class Phone {
+        double w = 1;
+        double x;
+        double y;
+        double z;
+
+        Phone tilted(double rx, double ry, double rz) {
+            rotate(rx, ry, rz);
+            return this;
+        }
+
+        void rotate(double rx, double ry, double rz) {
+            double angle = Math.sqrt(rx * rx + ry * ry + rz * rz);
+            if (angle == 0) return;
+            double s = Math.sin(angle / 2) / angle;
+            double dw = Math.cos(angle / 2);
+            double dx = rx * s;
+            double dy = ry * s;
+            double dz = rz * s;
+            double nw = w * dw - x * dx - y * dy - z * dz;
+            double nx = w * dx + x * dw + y * dz - z * dy;
+            double ny = w * dy - x * dz + y * dw + z * dx;
+            double nz = w * dz + x * dy - y * dx + z * dw;
+            double norm = Math.sqrt(nw * nw + nx * nx + ny * ny + nz * nz);
+            w = nw / norm;
+            x = nx / norm;
+            y = ny / norm;
+            z = nz / norm;
+        }
+
+        /** World vector {@code v} in device coordinates. */
+        double[] toDevice(double[] v) {
+            // Rotate by the conjugate
+            double cx = -y * v[2] + z * v[1];
+            double cy = -z * v[0] + x * v[2];
+            double cz = -x * v[1] + y * v[0];
+            return new double[]{
+                    v[0] + 2 * (w * cx - y * cz + z * cy),
+                    v[1] + 2 * (w * cy - z * cx + x * cz),
+                    v[2] + 2 * (w * cz - x * cy + y * cx)};
+        }
+    }
+
+    /**
+     * Samples of {@code phone} moving per {@code motion}, the accelerometer at {@code accHz}
+     * and the gyroscope at {@code gyroHz} starting {@code gyroOffsetNanos} later, in time order.
+     */
+    private static List<Sample> simulate(Phone phone, Motion motion, double seconds, double accHz, double gyroHz,
+                                         long gyroOffsetNanos) {
+        List<Sample> samples = new ArrayList<>();
+        long accPeriod = Math.round(SECOND / accHz);
+        long gyroPeriod = gyroHz > 0 ? Math.round(SECOND / gyroHz) : 0;
+        long nextAcc = SECOND;
+        long nextGyro = gyroHz > 0 ? SECOND + gyroOffsetNanos : Long.MAX_VALUE;
+        long end = SECOND + (long) (seconds * SECOND);
+        long step = 100_000; // Integrate the true orientation every 0.1 ms
+        double[] rate = new double[3];
+        double[] world = new double[3];
+        for (long t = SECOND; t < end; t += step) {
+            motion.at((t - SECOND) / 1e9, rate, world);
+            if (t >= nextAcc) {
+                double[] device = phone.toDevice(new double[]{world[0], world[1], world[2] + G});
+                samples.add(new Sample(t, ACC, device[0], device[1], device[2]));
+                nextAcc += accPeriod;
+            }
+            if (t >= nextGyro) {
+                samples.add(new Sample(t, GYRO, rate[0], rate[1], rate[2]));
+                nextGyro += gyroPeriod;
+            }
+            phone.rotate(rate[0] * step / 1e9, rate[1] * step / 1e9, rate[2] * step / 1e9);
+        }
+        return samples;
+    }
+
+    private static List<FusedMotion> run(List<Sample> samples, double timeConstantSeconds) {
+        List<FusedMotion> out = new ArrayList<>();
+        SensorFusion fusion = new SensorFusion(ACC, GYRO, timeConstantSeconds, SECOND, motion -> {
+            FusedMotion copy = new FusedMotion();
+            copy.copyFrom(motion);
+            out.add(copy);
+        });
+        for (Sample sample : samples) {
+            fusion.onSample(sample.timestampNanos, sample.sensorType, sample.x, sample.y, sample.z);
+        }
+        fusion.flush();
+        return out;
+    }
+
+    private static double magnitude(double x, double y, double z) {
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    @Test
+    public void restingPhoneHasNoLinearAcceleration() {
+        Phone phone = new Phone().tilted(0.4, -0.7, 1.1);
+        List<FusedMotion> out = run(simulate(phone, (t, rate, world) -> { }, 5, 100, 100, 2_500_000), 1);
+
+        assertEquals(500, out.size());
+        for (FusedMotion motion : out) {
+            assertEquals(0, magnitude(motion.getLinearAcceleration(0), motion.getLinearAcceleration(1),
+                    motion.getLinearAcceleration(2)), 1e-4);
+        }
+        double[] up = phone.toDevice(new double[]{0, 0, 1});
+        FusedMotion last = out.get(out.size() - 1);
+        for (int axis = 0; axis < 3; axis++) {
+            assertEquals(up[axis] * G, last.getGravity(axis), 1e-4);
+        }
+    }
+
+    @Test
+    public void gyroscopeTracksFastRotation() {
+        // Turning over at 3 rad/s about a skewed axis; a long time constant leaves it to the gyroscope
+        Phone phone = new Phone();
+        List<Sample> samples = simulate(phone, (t, rate, world) -> {
+            rate[0] = 3 * Math.cos(t);
+            rate[1] = 1.5;
+            rate[2] = -0.5;
+        }, 4, 100, 200, 1_300_000);
+        List<FusedMotion> out = run(samples, 20);
+
+        double worst = 0;
+        for (FusedMotion motion : out) {
+            worst = Math.max(worst, magnitude(motion.getLinearAcceleration(0), motion.getLinearAcceleration(1),
+                    motion.getLinearAcceleration(2)));
+        }
+        // Gravity misplaced by less than half a degree
+        assertTrue("worst " + worst, worst < G * Math.toRadians(0.5));
+    }
+
+    @Test
+    public void accelerometerCorrectsGyroscopeBias() {
+        // A still phone whose gyroscope reports 0.05 rad/s of bias about X
+        Phone phone = new Phone().tilted(0.3, 0, 0);
+        List<Sample> samples = new ArrayList<>();
+        for (Sample sample : simulate(phone, (t, rate, world) -> { }, 30, 100, 100, 5_000_000)) {
+            samples.add(sample.sensorType == GYRO
+                    ? new Sample(sample.timestampNanos, GYRO, 0.05, 0, 0) : sample);
+        }
+        List<FusedMotion> out = run(samples, 0.5);
+
+        FusedMotion last = out.get(out.size() - 1);
+        double tilt = Math.toDegrees(0.3);
+        // The bias is balanced by a small steady error: bias * time constant, about 1.4 degrees
+        assertEquals(tilt, last.getTiltDegrees(), 2);
+    }
+
+    @Test
+    public void verticalMotionAppearsOnWorldZ() {
+        // Bouncing at 2 Hz with 3 m/s² while held at an angle
+        Phone phone = new Phone().tilted(-0.9, 0.5, 0.2);
+        List<Sample> samples = simulate(phone, (t, rate, world) -> world[2] = 3 * Math.sin(2 * Math.PI * 2 * t),
+                20, 100, 100, 4_000_000);
+        List<FusedMotion> out = run(samples, 2);
+
+        double worstZ = 0;
+        double worstHorizontal = 0;
+        for (FusedMotion motion : out) {
+            double t = (motion.getTimestampNanos() - SECOND) / 1e9;
+            if (t < 10) continue;
+            worstZ = Math.max(worstZ, Math.abs(motion.getWorldLinearAcceleration(2) - 3 * Math.sin(2 * Math.PI * 2 * t)));
+            worstHorizontal = Math.max(worstHorizontal,
+                    Math.hypot(motion.getWorldLinearAcceleration(0), motion.getWorldLinearAcceleration(1)));
+        }
+        assertTrue("vertical error " + worstZ, worstZ < 0.1);
+        assertTrue("horizontal error " + worstHorizontal, worstHorizontal < 0.2);
+    }
+
+    @Test
+    public void batchedDeliveryMatchesInterleaved() {
+        Motion motion = (t, rate, world) -> {
+            rate[0] = Math.sin(3 * t);
+            rate[2] = 0.7;
+            world[0] = Math.cos(5 * t);
+        };
+        List<Sample> interleaved = simulate(new Phone(), motion, 3, 100, 100, 3_000_000);
+        // Half a second of accelerometer, then the same half second of gyroscope, as a FIFO flush delivers them
+        List<Sample> batched = new ArrayList<>();
+        for (long batchEnd = SECOND / 2; batchEnd <= 4 * SECOND; batchEnd += SECOND / 2) {
+            for (int type : new int[]{ACC, GYRO}) {
+                for (Sample sample : interleaved) {
+                    if (sample.sensorType == type && sample.timestampNanos < batchEnd
+                            && sample.timestampNanos >= batchEnd - SECOND / 2) {
+                        batched.add(sample);
+                    }
+                }
+            }
+        }
+        assertEquals(interleaved.size(), batched.size());
+
+        List<FusedMotion> expected = run(interleaved, 1);
+        List<FusedMotion> actual = run(batched, 1);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestampNanos(), actual.get(i).getTimestampNanos());
+            for (int axis = 0; axis < 3; axis++) {
+                assertEquals(expected.get(i).getWorldLinearAcceleration(axis),
+                        actual.get(i).getWorldLinearAcceleration(axis), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void worksWithoutGyroscope() {
+        Phone phone = new Phone().tilted(0, 0.6, 0);
+        List<FusedMotion> out = new ArrayList<>();
+        SensorFusion fusion = new SensorFusion(ACC, GYRO, 1, SECOND / 10, motion -> {
+            FusedMotion copy = new FusedMotion();
+            copy.copyFrom(motion);
+            out.add(copy);
+        });
+        for (Sample sample : simulate(phone, (t, rate, world) -> { }, 2, 100, 0, 0)) {
+            fusion.onSample(sample.timestampNanos, sample.sensorType, sample.x, sample.y, sample.z);
+        }
+        // Samples wait at most a tenth of a second for a gyroscope that never comes
+        assertTrue(out.size() >= 189);
+        fusion.flush();
+
+        assertEquals(200, out.size());
+        assertEquals(200, fusion.getHeldRateCount());
+        assertEquals(Math.toDegrees(0.6), out.get(199).getTiltDegrees(), 1e-3);
+    }
+
+    @Test
+    public void ignoresOtherSensors() {
+        List<FusedMotion> out = new ArrayList<>();
+        SensorFusion fusion = new SensorFusion(ACC, GYRO, 1, SECOND, out::add);
+        fusion.onSample(1, 2, 30, 0, 0);
+        fusion.flush();
+        assertTrue(out.isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end throughput of the service's processing: an hour of synthetic accelerometer and
+ * gyroscope samples at 100 Hz replayed through {@link SensorPipeline} with the bundled
+ * classifier, building a prompt after every batch that escalated a window.
+ */
+public class SensorPipelineBenchmark {
+    private static final double RATE_HZ = 100;
+
+    /** Passes samples on and polls for a prompt at every batch end, like the inference loop does. */
+    private static class PromptingSink implements SampleSink {
+        final SensorPipeline pipeline;
+        long prompts;
+        long promptChars;
+
+        PromptingSink(SensorPipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            pipeline.onSample(timestampNanos, sensorType, x, y, z);
+        }
+
+        @Override
+        public void onBatchEnd() {
+            String prompt = pipeline.nextInferencePrompt();
+            if (prompt != null) {
+                prompts++;
+                promptChars += prompt.length();
+            }
+        }
+    }
+
+    private static void run(String name, CascadeClassifier classifier) throws IOException {
+        SensorRegistry registry = SensorRegistry.createDefault();
+        long[] predictions = {0};
+        SensorPipeline pipeline = new SensorPipeline(registry, classifier, prediction -> predictions[0]++);
+        double[] rates = new double[registry.size()];
+        Arrays.fill(rates, RATE_HZ);
+        pipeline.configure(rates, TimeUnit.MILLISECONDS.toNanos(80));
+        SyntheticSensorSource source = new SyntheticSensorSource(RATE_HZ, 1)
+                .add(ActivityLabel.SITTING, 1200).add(ActivityLabel.WALKING, 1200).add(ActivityLabel.RUNNING, 1200);
+        PromptingSink sink = new PromptingSink(pipeline);
+
+        SampleReplayer replayer = new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE);
+        long allocated = Allocations.measure(() -> {
+            try {
+                replayer.replay(source, sink);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pipeline.finish();
+        });
+        double sessionSeconds = replayer.getSampleCount() / 2 / RATE_HZ;
+        System.out.printf("%-14s %,10.0f samples/s %6.0fx real time %6.1f bytes/sample"
+                        + " (%d windows, %d predictions, %d prompts of %d chars)%n",
+                name, replayer.getSamplesPerSecond(), sessionSeconds * 1e9 / replayer.getElapsedNanos(),
+                allocated / (double) replayer.getSampleCount(), pipeline.getWindowCount(), predictions[0],
+                sink.prompts, sink.prompts == 0 ? 0 : sink.promptChars / sink.prompts);
+    }
+
+    @Test
+    public void endToEnd() throws IOException {
+        CascadeClassifier cascade = new CascadeClassifier(DecisionTreeClassifierTest.loadModel(), 0.8);
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("One hour at 100 Hz through the pipeline:");
+            run("with classifier", cascade);
+            run("LLM only", null);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.phonesensorreader;
+
+import android.hardware.Sensor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Synthetic and recorded sessions replayed through the pipeline the service runs. */
+public class SensorPipelineTest {
+    private static final double RATE_HZ = SamplingConfig.DEFAULT_RATE_HZ;
+    private static final long MAX_GYRO_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(80);
+
+    private final SensorRegistry registry = SensorRegistry.createDefault();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("replay").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private SensorPipeline newPipeline(CascadeClassifier classifier, List<ActivityPrediction> predictions) {
+        SensorPipeline pipeline = new SensorPipeline(registry, classifier, predictions::add);
+        double[] rates = new double[registry.size()];
+        Arrays.fill(rates, RATE_HZ);
+        pipeline.configure(rates, MAX_GYRO_WAIT_NANOS);
+        return pipeline;
+    }
+
+    private static SyntheticSensorSource synthetic(ActivityLabel label, double seconds, long seed) {
+        return new SyntheticSensorSource(RATE_HZ, seed).add(label, seconds);
+    }
+
+    @Test
+    public void classifiesSyntheticActivities() throws IOException {
+        CascadeClassifier cascade = new CascadeClassifier(DecisionTreeClassifierTest.loadModel(), 0.8);
+        ActivityLabel[] labels = {ActivityLabel.WALKING, ActivityLabel.RUNNING, ActivityLabel.SITTING};
+        for (int i = 0; i < labels.length; i++) {
+            List<ActivityPrediction> predictions = new ArrayList<>();
+            SensorPipeline pipeline = newPipeline(cascade, predictions);
+            SampleReplayer replayer = new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE);
+            assertEquals(2 * 600, replayer.replay(synthetic(labels[i], 60, 11 + i), pipeline));
+            pipeline.finish();
+
+            // 60 s of 2.56 s windows with half overlap, for both sensors
+            assertEquals(2 * 45, pipeline.getWindowCount());
+            int correct = 0;
+            for (ActivityPrediction prediction : predictions) {
+                if (prediction.getLabel() == labels[i]) {
+                    correct++;
+                }
+            }
+            // The rest of the 45 accelerometer windows are escalated
+            assertTrue(labels[i] + " answered " + predictions.size(), predictions.size() >= 10);
+            assertTrue(labels[i] + " correct " + correct + " of " + predictions.size(),
+                    correct >= 0.9 * predictions.size());
+        }
+    }
+
+    /** Replays {@code source}, calling {@code configure} once with the first sample at or after {@code atNanos}. */
+    private static void replayReconfiguring(SampleSource source, SensorPipeline pipeline, long atNanos,
+                                            Runnable configure) throws IOException {
+        boolean[] configured = {false};
+        source.forEach((timestampNanos, sensorType, x, y, z) -> {
+            if (!configured[0] && timestampNanos >= atNanos) {
+                configured[0] = true;
+                configure.run();
+            }
+            pipeline.onSample(timestampNanos, sensorType, x, y, z);
+        });
+        pipeline.finish();
+    }
+
+    @Test
+    public void reconfiguringKeepsWindowsAndFusion() throws IOException {
+        SensorPipeline pipeline = newPipeline(null, new ArrayList<>());
+        double[] rates = new double[registry.size()];
+        Arrays.fill(rates, RATE_HZ);
+        List<SensorFusion> fusions = new ArrayList<>();
+        // The duty cycle registering the same rates with another report latency
+        replayReconfiguring(synthetic(ActivityLabel.WALKING, 60, 3), pipeline, TimeUnit.SECONDS.toNanos(30), () -> {
+            fusions.add(pipeline.getSensorFusion());
+            pipeline.configure(rates, 2 * MAX_GYRO_WAIT_NANOS);
+        });
+
+        // No window lost to the reconfiguration, the same fusion went on
+        assertEquals(2 * 45, pipeline.getWindowCount());
+        assertSame(fusions.get(0), pipeline.getSensorFusion());
+        assertEquals(600, pipeline.getSensorFusion().getMotionCount());
+    }
+
+    @Test
+    public void stoppedSensorsLeaveNoStaleWindows() throws IOException {
+        SensorPipeline pipeline = newPipeline(null, new ArrayList<>());
+        double[] accelerometerOnly = new double[registry.size()];
+        accelerometerOnly[registry.indexOf(Sensor.TYPE_ACCELEROMETER)] = RATE_HZ;
+        replayReconfiguring(synthetic(ActivityLabel.WALKING, 60, 4), pipeline, TimeUnit.SECONDS.toNanos(30),
+                () -> pipeline.configure(accelerometerOnly, MAX_GYRO_WAIT_NANOS));
+
+        // Gyroscope windows of the first half only
+        assertTrue(pipeline.getWindowCount() < 2 * 45);
+        assertTrue(pipeline.getWindowCount() > 45);
+        String prompt = pipeline.buildSummaryPrompt();
+        assertTrue(prompt, prompt.contains(windowName(Sensor.TYPE_ACCELEROMETER)));
+        assertFalse(prompt, prompt.contains(windowName(Sensor.TYPE_GYROSCOPE)));
+    }
+
+    private String windowName(int sensorType) {
+        return registry.getSpec(registry.indexOf(sensorType)).getName() + " window";
+    }
+
+    @Test
+    public void escalatedWindowsBecomePrompts() throws IOException {
+        // Without a classifier every accelerometer window is left to the LLM
+        List<ActivityPrediction> predictions = new ArrayList<>();
+        SensorPipeline pipeline = newPipeline(null, predictions);
+        assertNull(pipeline.nextInferencePrompt());
+        new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE).replay(synthetic(ActivityLabel.WALKING, 10, 3), pipeline);
+
+        String prompt = pipeline.nextInferencePrompt();
+        assertNotNull(prompt);
+        assertTrue(prompt, prompt.contains("ACC window 1"));
+        assertTrue(prompt, prompt.contains("GYRO window 1"));
+        assertNull("one prompt per escalated window", pipeline.nextInferencePrompt());
+        assertTrue(predictions.isEmpty());
+    }
+
+    @Test
+    public void statisticsAndSummaryOfSyntheticSession() throws IOException {
+        SensorPipeline pipeline = newPipeline(null, new ArrayList<>());
+        SyntheticSensorSource source = new SyntheticSensorSource(RATE_HZ, 5)
+                .add(ActivityLabel.SITTING, 30).add(ActivityLabel.WALKING, 30);
+        new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE).replay(source, pipeline);
+        pipeline.finish();
+
+        assertEquals(source.getSampleCount(), pipeline.getSampleCount());
+        SensorStatistics statistics = pipeline.getStatistics();
+        int acc = registry.getFirstChannel(registry.indexOf(1));
+        assertEquals(600, statistics.getCount(acc));
+        // Gravity spread over the axes of a random orientation, about 1 g in total
+        double gravity = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            gravity += statistics.getMean(acc + axis) * statistics.getMean(acc + axis);
+        }
+        assertTrue("gravity " + Math.sqrt(gravity), Math.sqrt(gravity) > 5 && Math.sqrt(gravity) < 11);
+        assertEquals(600, pipeline.getLinearStatistics().getCount(0));
+
+        SensorStatistics lastMinute = new SensorStatistics(1);
+        pipeline.getRollingStatistics(TimeUnit.MINUTES.toNanos(1)).summarize(acc, TimeUnit.MINUTES.toNanos(1), lastMinute, 0);
+        assertEquals(600, lastMinute.getCount(0));
+
+        String summary = pipeline.buildSummaryPrompt();
+        assertTrue(summary, summary.contains("Session averages: ACC X="));
+        assertTrue(pipeline.getLastPromptWindowCount() > 0);
+    }
+
+    @Test
+    public void replayIsDeterministic() throws IOException {
+        SensorPipeline first = newPipeline(null, new ArrayList<>());
+        SensorPipeline second = newPipeline(null, new ArrayList<>());
+        new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE).replay(synthetic(ActivityLabel.RUNNING, 20, 9), first);
+        new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE).replay(synthetic(ActivityLabel.RUNNING, 20, 9), second);
+        assertEquals(first.buildSummaryPrompt(), second.buildSummaryPrompt());
+        assertEquals(first.nextInferencePrompt(), second.nextInferencePrompt());
+    }
+
+    @Test
+    public void recordedSessionsReplayLikeTheLiveStream() throws IOException {
+        SyntheticSensorSource source = synthetic(ActivityLabel.WALKING, 30, 21);
+        File raw = new File(directory, "session" + SessionFormat.FILE_EXTENSION);
+        File spilled = new File(directory, "session" + SpillingRecorder.FILE_EXTENSION);
+        SensorPipeline live = newPipeline(null, new ArrayList<>());
+        try (SessionRecorder recorder = new SessionRecorder(raw, 0, 1024, 64);
+             SpillingRecorder spilling = new SpillingRecorder(spilled, 0, 64 * 1024)) {
+            source.forEach(new SampleSink() {
+                @Override
+                public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+                    recorder.onSample(timestampNanos, sensorType, x, y, z);
+                    spilling.onSample(timestampNanos, sensorType, x, y, z);
+                    live.onSample(timestampNanos, sensorType, x, y, z);
+                }
+
+                @Override
+                public void onBatchEnd() {
+                    recorder.onBatchEnd();
+                }
+            });
+        }
+        live.finish();
+        String expected = live.buildSummaryPrompt();
+
+        SensorPipeline fromRaw = newPipeline(null, new ArrayList<>());
+        try (SessionReader reader = new SessionReader(raw)) {
+            assertEquals(source.getSampleCount(), new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE).replay(reader, fromRaw));
+        }
+        fromRaw.finish();
+        assertEquals(expected, fromRaw.buildSummaryPrompt());
+
+        SensorPipeline fromSpilled = newPipeline(null, new ArrayList<>());
+        new SampleReplayer(SampleReplayer.AS_FAST_AS_POSSIBLE).replay(SpillingRecorder.source(spilled), fromSpilled);
+        fromSpilled.finish();
+        assertEquals(expected, fromSpilled.buildSummaryPrompt());
+    }
+}
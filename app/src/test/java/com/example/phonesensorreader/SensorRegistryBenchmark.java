@@ -0,0 +1,80 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cost per event of dispatching samples to per-channel statistics as more sensors are
+ * registered: through {@link SensorRegistry} and {@link ChannelAccumulator}, and through a
+ * map keyed by channel name strings as the service used to aggregate.
+ */
+public class SensorRegistryBenchmark {
+    private static final int EVENTS = 4_000_000;
+    // Android sensor types of three-axis and scalar sensors
+    private static final int[] TYPES = {1, 4, 2, 6, 9, 10, 11, 5, 8, 12, 13, 14, 15, 16, 20, 35};
+
+    private interface Path {
+        void onSample(int sensorType, float x, float y, float z);
+    }
+
+    private static SensorRegistry registry(int sensors) {
+        SensorRegistry registry = new SensorRegistry();
+        for (int i = 0; i < sensors; i++) {
+            registry.register(new SensorSpec(TYPES[i], "S" + TYPES[i], i % 4 == 3 ? 1 : 3, "", 10));
+        }
+        return registry;
+    }
+
+    private static Path registryPath(SensorRegistry registry) {
+        ChannelAccumulator accumulator = new ChannelAccumulator(registry,
+                new SensorStatistics(registry.getChannelCount()));
+        return (sensorType, x, y, z) -> accumulator.onSample(0, sensorType, x, y, z);
+    }
+
+    /** Per axis running sums behind string keys built per event. */
+    private static Path stringKeyPath(SensorRegistry registry) {
+        Map<String, double[]> sums = new HashMap<>();
+        for (int channel = 0; channel < registry.getChannelCount(); channel++) {
+            sums.put(registry.getChannelName(channel), new double[2]);
+        }
+        return (sensorType, x, y, z) -> {
+            SensorSpec spec = registry.getSpec(registry.indexOf(sensorType));
+            float[] values = {x, y, z};
+            for (int axis = 0; axis < spec.getDimensions(); axis++) {
+                double[] sum = sums.get(spec.getChannelName(axis));
+                sum[0]++;
+                sum[1] += values[axis];
+            }
+        };
+    }
+
+    private static void run(String name, int sensors, Path path) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            order.add(TYPES[(i * 7) % sensors]);
+        }
+        int[] types = order.stream().mapToInt(Integer::intValue).toArray();
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            path.onSample(types[i & 63], i, 1, 2);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-10s %2d sensors %7.1f ns/event%n", name, sensors, elapsed / (double) EVENTS);
+    }
+
+    @Test
+    public void dispatchCostPerEvent() {
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("Dispatching events to per-channel statistics:");
+            for (int sensors : new int[]{2, 4, 8, 16}) {
+                SensorRegistry registry = registry(sensors);
+                run("registry", sensors, registryPath(registry));
+                run("string key", sensors, stringKeyPath(registry));
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorRegistryTest {
+    private static final int ACC = 1;
+    private static final int MAG = 2;
+    private static final int GYRO = 4;
+    private static final int PRESSURE = 6;
+
+    private static SensorRegistry registry() {
+        SensorRegistry registry = new SensorRegistry();
+        registry.register(new SensorSpec(GYRO, "GYRO", 3, "rad/s", 50));
+        registry.register(new SensorSpec(PRESSURE, "PRESSURE", 1, "hPa", 1));
+        registry.register(new SensorSpec(ACC, "ACC", 3, "m/s²", 50));
+        return registry;
+    }
+
+    @Test
+    public void laysOutChannelsInRegistrationOrder() {
+        SensorRegistry registry = registry();
+
+        assertEquals(3, registry.size());
+        assertEquals(7, registry.getChannelCount());
+        assertEquals(0, registry.indexOf(GYRO));
+        assertEquals(1, registry.indexOf(PRESSURE));
+        assertEquals(2, registry.indexOf(ACC));
+        assertEquals(0, registry.getFirstChannel(0));
+        assertEquals(3, registry.getFirstChannel(1));
+        assertEquals(4, registry.getFirstChannel(2));
+        assertEquals(1, registry.getDimensions(1));
+        assertEquals("GYRO_Z", registry.getChannelName(2));
+        assertEquals("PRESSURE", registry.getChannelName(3));
+        assertEquals("ACC_X", registry.getChannelName(4));
+        assertEquals("rad/s", registry.getChannelUnit(2));
+        assertEquals("hPa", registry.getChannelUnit(3));
+        assertEquals("m/s²", registry.getChannelUnit(6));
+    }
+
+    @Test
+    public void unknownTypesAreNotFound() {
+        SensorRegistry registry = registry();
+        assertEquals(-1, registry.indexOf(MAG));
+        assertEquals(-1, registry.indexOf(-1));
+        assertEquals(-1, registry.indexOf(65536)); // Vendor sensor types start here
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateType() {
+        registry().register(new SensorSpec(ACC, "ACC2", 3, "m/s²", 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreThanThreeDimensions() {
+        new SensorSpec(11, "ROTATION", 4, "", 10);
+    }
+
+    @Test
+    public void accumulatesEachSensorIntoItsChannels() {
+        SensorRegistry registry = registry();
+        SensorStatistics statistics = new SensorStatistics(registry.getChannelCount());
+        ChannelAccumulator accumulator = new ChannelAccumulator(registry, statistics);
+
+        accumulator.onSample(0, ACC, 1, 2, 3);
+        accumulator.onSample(1, ACC, 3, 4, 5);
+        accumulator.onSample(2, PRESSURE, 1013.25f, 0, 0);
+        accumulator.onSample(3, MAG, 40, 40, 40); // Not registered
+
+        assertEquals(0, statistics.getCount(0));
+        assertEquals(1, statistics.getCount(3));
+        assertEquals(1013.25, statistics.getMean(3), 1e-9);
+        assertEquals(2, statistics.getCount(4));
+        assertEquals(2, statistics.getMean(4), 1e-9);
+        assertEquals(3, statistics.getMean(5), 1e-9);
+        assertEquals(4, statistics.getMean(6), 1e-9);
+    }
+
+    @Test
+    public void defaultRegistryStartsWithMotionSensors() {
+        SensorRegistry registry = SensorRegistry.createDefault();
+        assertEquals(0, registry.indexOf(ACC));
+        assertEquals(1, registry.indexOf(GYRO));
+        assertTrue(registry.indexOf(MAG) > 1);
+        assertEquals("GYRO_X", registry.getChannelName(3));
+    }
+}
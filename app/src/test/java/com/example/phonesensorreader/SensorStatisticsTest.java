@@ -0,0 +1,161 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the streaming statistics against the two-pass computation that
+ * PhoneSensorService used to run over the full sample list.
+ */
+public class SensorStatisticsTest {
+
+    /** The previous two-pass algorithm, with max seeded correctly: {avg, min, max, stdDev}. */
+    private static float[] twoPass(float[] values) {
+        float sum = 0, min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (float value : values) {
+            sum += value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+        float avg = sum / values.length;
+
+        float varianceSum = 0;
+        for (float value : values) {
+            varianceSum += Math.pow(value - avg, 2);
+        }
+        float stdDev = (float) Math.sqrt(varianceSum / values.length);
+        return new float[]{avg, min, max, stdDev};
+    }
+
+    private static float[] randomSignal(Random random, int length, float offset, float amplitude) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = offset + amplitude * (float) Math.sin(i * 0.05) + (float) random.nextGaussian() * 0.3f;
+        }
+        return values;
+    }
+
+    @Test
+    public void matchesTwoPassComputation() {
+        Random random = new Random(42);
+        float[][] signals = {
+                randomSignal(random, 600, 9.81f, 2f),    // accelerometer Z, one minute at 10 Hz
+                randomSignal(random, 6000, 0f, 0.5f),    // gyroscope, ten minutes
+                randomSignal(random, 60000, -3f, 4f),    // long session
+        };
+        SensorStatistics statistics = new SensorStatistics(signals.length);
+        for (int channel = 0; channel < signals.length; channel++) {
+            for (float value : signals[channel]) {
+                statistics.add(channel, value);
+            }
+        }
+
+        for (int channel = 0; channel < signals.length; channel++) {
+            float[] expected = twoPass(signals[channel]);
+            assertEquals(signals[channel].length, statistics.getCount(channel));
+            assertEquals(expected[0], statistics.getMean(channel), 1e-3);
+            assertEquals(expected[1], statistics.getMin(channel), 0);
+            assertEquals(expected[2], statistics.getMax(channel), 0);
+            assertEquals(expected[3], statistics.getStdDev(channel), 1e-3);
+        }
+    }
+
+    @Test
+    public void maxOfNegativeValuesIsNotFloatMinValue() {
+        SensorStatistics statistics = new SensorStatistics(1);
+        statistics.add(0, -9.81);
+        statistics.add(0, -4.5);
+        statistics.add(0, -7.25);
+
+        assertEquals(-4.5, statistics.getMax(0), 0);
+        assertEquals(-9.81, statistics.getMin(0), 0);
+    }
+
+    @Test
+    public void channelsAreIndependent() {
+        SensorStatistics statistics = new SensorStatistics(2);
+        statistics.add(0, 1);
+        statistics.add(0, 3);
+        statistics.add(1, 10);
+
+        assertEquals(2, statistics.getCount(0));
+        assertEquals(2.0, statistics.getMean(0), 0);
+        assertEquals(1.0, statistics.getVariance(0), 1e-12);
+        assertEquals(1, statistics.getCount(1));
+        assertEquals(10.0, statistics.getMean(1), 0);
+        assertEquals(0.0, statistics.getVariance(1), 0);
+    }
+
+    @Test
+    public void emptyChannelReportsNaN() {
+        SensorStatistics statistics = new SensorStatistics(1);
+        assertEquals(0, statistics.getCount(0));
+        assertTrue(Double.isNaN(statistics.getMean(0)));
+        assertTrue(Double.isNaN(statistics.getMin(0)));
+        assertTrue(Double.isNaN(statistics.getMax(0)));
+        assertTrue(Double.isNaN(statistics.getStdDev(0)));
+    }
+
+    @Test
+    public void resetClearsAllChannels() {
+        SensorStatistics statistics = new SensorStatistics(1);
+        statistics.add(0, 5);
+        statistics.reset();
+        statistics.add(0, -1);
+
+        assertEquals(1, statistics.getCount(0));
+        assertEquals(-1.0, statistics.getMax(0), 0);
+    }
+
+    @Test
+    public void mergeMatchesSingleChannel() {
+        Random random = new Random(7);
+        float[] values = randomSignal(random, 10_000, 9.81f, 3f);
+        SensorStatistics whole = new SensorStatistics(1);
+        // Three unequal parts, the last one empty
+        SensorStatistics parts = new SensorStatistics(4);
+        for (int i = 0; i < values.length; i++) {
+            whole.add(0, values[i]);
+            parts.add(i < 1234 ? 0 : i < 9000 ? 1 : 2, values[i]);
+        }
+        SensorStatistics merged = new SensorStatistics(1);
+        for (int part = 0; part < 4; part++) {
+            merged.merge(0, parts, part);
+        }
+
+        assertEquals(whole.getCount(0), merged.getCount(0));
+        assertEquals(whole.getMean(0), merged.getMean(0), 1e-9);
+        assertEquals(whole.getVariance(0), merged.getVariance(0), 1e-9);
+        assertEquals(whole.getMin(0), merged.getMin(0), 0);
+        assertEquals(whole.getMax(0), merged.getMax(0), 0);
+    }
+
+    @Test
+    public void resetClearsOneChannel() {
+        SensorStatistics statistics = new SensorStatistics(2);
+        statistics.add(0, 5);
+        statistics.add(1, 6);
+        statistics.reset(0);
+
+        assertEquals(0, statistics.getCount(0));
+        assertEquals(1, statistics.getCount(1));
+    }
+
+    @Test
+    public void addDoesNotAllocate() {
+        SensorStatistics statistics = new SensorStatistics(6);
+        for (int i = 0; i < 100_000; i++) {
+            statistics.add(i % 6, i); // warm up so the JIT has compiled add()
+        }
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < 1_000_000; i++) {
+                statistics.add(i % 6, i * 0.001);
+            }
+        });
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Throughput of {@link SessionAnalyzer} over an hour of accelerometer and gyroscope samples
+ * at 100 Hz with 1, 2, 4 and all available threads.
+ */
+public class SessionAnalyzerBenchmark {
+    private static final double RATE_HZ = 100;
+
+    private static File recordHour(File directory) throws IOException {
+        File file = new File(directory, "hour" + SessionFormat.FILE_EXTENSION);
+        SyntheticSensorSource source = new SyntheticSensorSource(RATE_HZ, 1)
+                .add(ActivityLabel.SITTING, 1200).add(ActivityLabel.WALKING, 1200).add(ActivityLabel.RUNNING, 1200);
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 120_000, 1024)) {
+            source.forEach(recorder);
+        }
+        return file;
+    }
+
+    @Test
+    public void scaling() throws IOException {
+        File directory = Files.createTempDirectory("analysis").toFile();
+        File file = recordHour(directory);
+        SensorRegistry registry = SensorRegistry.createDefault();
+        double[] rates = new double[registry.size()];
+        Arrays.fill(rates, RATE_HZ);
+        DecisionTreeClassifier tree = DecisionTreeClassifierTest.loadModel();
+        int cores = Runtime.getRuntime().availableProcessors();
+        try (SessionReader reader = new SessionReader(file)) {
+            double singleThreaded = 0;
+            for (int round = 0; round < 2; round++) { // the first round warms up
+                if (round == 1) System.out.printf("One hour at 100 Hz, %d records, %d cores:%n", reader.getRecordCount(), cores);
+                for (int threads : new int[]{1, 2, 4, cores}) {
+                    ForkJoinPool pool = new ForkJoinPool(threads);
+                    SessionAnalyzer analyzer = new SessionAnalyzer(registry, rates, tree, pool,
+                            SessionAnalyzer.DEFAULT_CHUNK_RECORDS / 4);
+                    long start = System.nanoTime();
+                    SessionAnalysis analysis = analyzer.analyze(reader);
+                    long elapsed = System.nanoTime() - start;
+                    pool.shutdown();
+                    double recordsPerSecond = reader.getRecordCount() * 1e9 / elapsed;
+                    if (threads == 1) singleThreaded = recordsPerSecond;
+                    if (round == 1) {
+                        System.out.printf("%2d threads %8.1f ms %,12.0f records/s %5.2fx (%d windows)%n",
+                                threads, elapsed / 1e6, recordsPerSecond, recordsPerSecond / singleThreaded,
+                                analysis.getRows().size());
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+}
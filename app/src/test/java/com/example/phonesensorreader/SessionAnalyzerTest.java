@@ -0,0 +1,227 @@
+package com.example.phonesensorreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SessionAnalyzerTest {
+    private static final double RATE_HZ = SamplingConfig.DEFAULT_RATE_HZ;
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+
+    private final SensorRegistry registry = SensorRegistry.createDefault();
+    private final double[] rates = new double[registry.size()];
+    private File directory;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("analysis").toFile();
+        Arrays.fill(rates, RATE_HZ);
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /** Records synthetic activities, with a pause of {@code gapSeconds} after every segment. */
+    private File record(String name, long seed, double gapSeconds) throws IOException {
+        File file = new File(directory, name + SessionFormat.FILE_EXTENSION);
+        ActivityLabel[] labels = {ActivityLabel.WALKING, ActivityLabel.SITTING, ActivityLabel.RUNNING};
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 4096, 256)) {
+            long offset = 0;
+            for (int i = 0; i < labels.length; i++) {
+                long segmentOffset = offset;
+                long[] last = {0};
+                new SyntheticSensorSource(RATE_HZ, seed + i).add(labels[i], 40 + 7 * i).forEach(new SampleSink() {
+                    @Override
+                    public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+                        last[0] = segmentOffset + timestampNanos;
+                        recorder.onSample(last[0], sensorType, x, y, z);
+                    }
+
+                    @Override
+                    public void onBatchEnd() {
+                        recorder.onBatchEnd();
+                    }
+                });
+                offset = last[0] + (long) ((gapSeconds + 1 / RATE_HZ) * 1e9);
+            }
+        }
+        return file;
+    }
+
+    /** What a live session computes: every record in order through one accumulator and extractor per sensor. */
+    private static class Sequential implements SampleSink {
+        final SensorStatistics statistics;
+        final ChannelAccumulator accumulator;
+        final List<WindowFeatures> windows = new ArrayList<>();
+        final List<ActivityLabel> labels = new ArrayList<>();
+        final WindowFeatureExtractor acc;
+        final WindowFeatureExtractor gyro;
+        final WindowFeatures lastGyro = new WindowFeatures();
+        boolean hasGyro;
+
+        Sequential(SensorRegistry registry, ActivityClassifier classifier) {
+            statistics = new SensorStatistics(registry.getChannelCount());
+            accumulator = new ChannelAccumulator(registry, statistics);
+            WindowFeatureExtractor.FeatureListener listener = features -> {
+                WindowFeatures copy = new WindowFeatures();
+                copy.copyFrom(features);
+                windows.add(copy);
+                if (features.getSensorType() == GYRO) {
+                    lastGyro.copyFrom(features);
+                    hasGyro = true;
+                } else if (classifier != null) {
+                    labels.add(classifier.classify(features, hasGyro ? lastGyro : null).getLabel());
+                }
+            };
+            acc = new WindowFeatureExtractor(ACC, RATE_HZ, SensorPipeline.WINDOW_SECONDS, SensorPipeline.WINDOW_OVERLAP, listener);
+            gyro = new WindowFeatureExtractor(GYRO, RATE_HZ, SensorPipeline.WINDOW_SECONDS, SensorPipeline.WINDOW_OVERLAP, listener);
+        }
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            accumulator.onSample(timestampNanos, sensorType, x, y, z);
+            acc.onSample(timestampNanos, sensorType, x, y, z);
+            gyro.onSample(timestampNanos, sensorType, x, y, z);
+        }
+    }
+
+    private static void assertSameWindow(String message, WindowFeatures expected, WindowFeatures actual) {
+        assertEquals(message, expected.getSensorType(), actual.getSensorType());
+        assertEquals(message, expected.getStartTimestampNanos(), actual.getStartTimestampNanos());
+        assertEquals(message, expected.getEndTimestampNanos(), actual.getEndTimestampNanos());
+        assertEquals(message, expected.getSignalMagnitudeArea(), actual.getSignalMagnitudeArea(), 0);
+        for (int axis = 0; axis < WindowFeatures.AXES; axis++) {
+            assertEquals(message, expected.getMean(axis), actual.getMean(axis), 0);
+            assertEquals(message, expected.getStdDev(axis), actual.getStdDev(axis), 0);
+            assertEquals(message, expected.getDominantFrequencyHz(axis), actual.getDominantFrequencyHz(axis), 0);
+        }
+    }
+
+    private void assertMatchesSequential(File file, int chunkRecords) throws IOException {
+        DecisionTreeClassifier tree = DecisionTreeClassifierTest.loadModel();
+        Sequential expected = new Sequential(registry, tree);
+        SessionAnalysis analysis;
+        try (SessionReader reader = new SessionReader(file)) {
+            reader.forEach(expected);
+            analysis = new SessionAnalyzer(registry, rates, tree, pool, chunkRecords).analyze(reader);
+        }
+        String chunks = "chunks of " + chunkRecords;
+        SensorStatistics statistics = analysis.getStatistics();
+        for (int channel = 0; channel < registry.getChannelCount(); channel++) {
+            assertEquals(chunks, expected.statistics.getCount(channel), statistics.getCount(channel));
+            if (statistics.getCount(channel) == 0) continue;
+            assertEquals(chunks, expected.statistics.getMin(channel), statistics.getMin(channel), 0);
+            assertEquals(chunks, expected.statistics.getMax(channel), statistics.getMax(channel), 0);
+            assertEquals(chunks, expected.statistics.getMean(channel), statistics.getMean(channel), 1e-12);
+            assertEquals(chunks, expected.statistics.getVariance(channel), statistics.getVariance(channel),
+                    1e-12 * expected.statistics.getVariance(channel));
+        }
+
+        List<SessionAnalysis.Row> rows = analysis.getRows();
+        assertEquals(chunks, expected.windows.size(), rows.size());
+        List<ActivityLabel> labels = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            assertSameWindow(chunks + ", window " + i, expected.windows.get(i), rows.get(i).getFeatures());
+            if (i > 0) {
+                assertTrue(rows.get(i).getClosingRecord() > rows.get(i - 1).getClosingRecord());
+            }
+            if (rows.get(i).getFeatures().getSensorType() == ACC) {
+                labels.add(rows.get(i).getLabel());
+            }
+        }
+        assertEquals(chunks, expected.labels, labels);
+    }
+
+    @Test
+    public void parallelChunksMatchOneSequentialPass() throws IOException {
+        File file = record("session", 1, 0);
+        for (int chunkRecords : new int[]{50, 257, 1000, 4096, SessionAnalyzer.DEFAULT_CHUNK_RECORDS}) {
+            assertMatchesSequential(file, chunkRecords);
+        }
+    }
+
+    @Test
+    public void windowsRestartAfterPausesAcrossChunks() throws IOException {
+        File file = record("paused", 2, 5);
+        for (int chunkRecords : new int[]{31, 400, 1001}) {
+            assertMatchesSequential(file, chunkRecords);
+        }
+    }
+
+    @Test
+    public void analyzesSeveralSessions() throws IOException {
+        List<File> files = Arrays.asList(record("a", 3, 0), record("b", 4, 2), record("c", 5, 0));
+        SessionAnalyzer analyzer = new SessionAnalyzer(registry, rates, null, pool, 500);
+        List<SessionAnalysis> analyses = analyzer.analyze(files);
+        assertEquals(3, analyses.size());
+        for (int i = 0; i < files.size(); i++) {
+            try (SessionReader reader = new SessionReader(files.get(i))) {
+                assertEquals(reader.getRecordCount(), analyses.get(i).getRecordCount());
+            }
+            SessionAnalysis analysis = analyses.get(i);
+            assertTrue(analysis.getRowCount(ACC) > 0);
+            assertEquals(analysis.getRowCount(ACC), analysis.getRowCount(GYRO));
+            assertNull(analysis.getRows().get(0).getLabel());
+        }
+    }
+
+    @Test
+    public void featureTableAsCsv() throws IOException {
+        File file = record("csv", 6, 0);
+        SessionAnalysis analysis;
+        try (SessionReader reader = new SessionReader(file)) {
+            analysis = new SessionAnalyzer(registry, rates, DecisionTreeClassifierTest.loadModel(), pool, 1000)
+                    .analyze(reader);
+        }
+        StringBuilder csv = new StringBuilder();
+        analysis.appendCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(analysis.getRows().size() + 1, lines.length);
+        int columns = lines[0].split(",", -1).length;
+        assertEquals(4 + 7 * 3 + WindowFeatures.BANDS + 1 + 3, columns);
+        for (String line : lines) {
+            assertEquals(line, columns, line.split(",", -1).length);
+        }
+        assertTrue(lines[0], lines[0].startsWith("sensor,start_ns,end_ns,samples,mean_x"));
+        boolean labeled = false;
+        for (String line : lines) {
+            labeled |= line.startsWith("ACC,") && (line.contains(",WALKING,") || line.contains(",RUNNING,")
+                    || line.contains(",SITTING,"));
+        }
+        assertTrue(labeled);
+    }
+
+    @Test
+    public void emptySession() throws IOException {
+        File file = new File(directory, "empty" + SessionFormat.FILE_EXTENSION);
+        new SessionRecorder(file, 0, 16, 4).close();
+        try (SessionReader reader = new SessionReader(file)) {
+            SessionAnalysis analysis = new SessionAnalyzer(registry, rates, null, pool, 100).analyze(reader);
+            assertEquals(0, analysis.getRecordCount());
+            assertTrue(analysis.getRows().isEmpty());
+            assertEquals(0, analysis.getStatistics().getCount(0));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Write throughput of the memory-mapped session format against a CSV BufferedWriter.
+ * Run with {@code ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'}.
+ */
+public class SessionRecorderBenchmark {
+    private static final int RECORDS = 2_000_000;
+    private static final int ROUNDS = 5;
+
+    private static long recordMapped(File file) throws IOException {
+        long start = System.nanoTime();
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 120_000, 1024)) {
+            for (int i = 0; i < RECORDS; i++) {
+                recorder.onSample(10_000_000L * i, (i & 1) == 0 ? 1 : 4, i * 0.001f, 9.81f, -i * 0.002f);
+                if ((i & 255) == 255) {
+                    recorder.onBatchEnd();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long recordCsv(File file) throws IOException {
+        long start = System.nanoTime();
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < RECORDS; i++) {
+                writer.write(Long.toString(10_000_000L * i));
+                writer.write(',');
+                writer.write(Integer.toString((i & 1) == 0 ? 1 : 4));
+                writer.write(',');
+                writer.write(Float.toString(i * 0.001f));
+                writer.write(',');
+                writer.write(Float.toString(9.81f));
+                writer.write(',');
+                writer.write(Float.toString(-i * 0.002f));
+                writer.write('\n');
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void mappedVersusCsv() throws IOException {
+        File mapped = File.createTempFile("bench", ".psr");
+        File csv = File.createTempFile("bench", ".csv");
+        try {
+            long bestMapped = Long.MAX_VALUE;
+            long bestCsv = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                bestMapped = Math.min(bestMapped, recordMapped(mapped));
+                bestCsv = Math.min(bestCsv, recordCsv(csv));
+            }
+            System.out.printf("mapped: %.1f M records/s, %d bytes%n", RECORDS * 1e3 / bestMapped, mapped.length());
+            System.out.printf("csv:    %.1f M records/s, %d bytes%n", RECORDS * 1e3 / bestCsv, csv.length());
+        } finally {
+            mapped.delete();
+            csv.delete();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.phonesensorreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionRecorderTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sessions").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static class CollectingSink implements SampleSink {
+        final List<long[]> samples = new ArrayList<>();
+        int batches;
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            samples.add(new long[]{timestampNanos, sensorType, Float.floatToIntBits(x), Float.floatToIntBits(y), Float.floatToIntBits(z)});
+        }
+
+        @Override
+        public void onBatchEnd() {
+            batches++;
+        }
+    }
+
+    private static void writeSamples(SessionRecorder recorder, int from, int to) {
+        for (int i = from; i < to; i++) {
+            recorder.onSample(1_000_000L * i, i % 2 == 0 ? 1 : 4, i * 0.5f, -i, i / 3f);
+        }
+    }
+
+    private static void assertSample(SessionReader reader, int index, int i) {
+        assertEquals(1_000_000L * i, reader.getTimestamp(index));
+        assertEquals(i % 2 == 0 ? 1 : 4, reader.getSensorType(index));
+        assertEquals(i * 0.5f, reader.getX(index), 0);
+        assertEquals(-i, reader.getY(index), 0);
+        assertEquals(i / 3f, reader.getZ(index), 0);
+    }
+
+    @Test
+    public void roundTripsAndGrowsPastInitialCapacity() throws IOException {
+        File file = new File(directory, "a.psr");
+        SessionRecorder recorder = new SessionRecorder(file, 1234L, 100, 16);
+        writeSamples(recorder, 0, 1050);
+        recorder.close();
+
+        // Trimmed to the records, followed by the time index of two blocks
+        assertEquals(SessionFormat.recordOffset(1050) + 2 * SessionFormat.INDEX_ENTRY_SIZE, file.length());
+        try (SessionReader reader = new SessionReader(file)) {
+            assertTrue(reader.wasClosedCleanly());
+            assertTrue(reader.isTimeOrdered());
+            assertEquals(1234L, reader.getStartTimeMillis());
+            assertEquals(1050, reader.getRecordCount());
+            assertEquals(0, reader.getRecoveredCount());
+            for (int i = 0; i < 1050; i++) {
+                assertSample(reader, i, i);
+            }
+        }
+    }
+
+    @Test
+    public void rangeQueryUsesHalfOpenInterval() throws IOException {
+        File file = new File(directory, "b.psr");
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 1000, 100)) {
+            writeSamples(recorder, 0, 1000);
+        }
+        try (SessionReader reader = new SessionReader(file)) {
+            CollectingSink sink = new CollectingSink();
+            reader.forEachInRange(100_000_000L, 200_000_000L, sink);
+
+            assertEquals(100, sink.samples.size());
+            assertEquals(100_000_000L, sink.samples.get(0)[0]);
+            assertEquals(199_000_000L, sink.samples.get(99)[0]);
+            assertEquals(1, sink.batches);
+            assertEquals(0, reader.lowerBound(Long.MIN_VALUE));
+            assertEquals(1000, reader.lowerBound(Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void rangeQueryScansWhenRecordsAreOutOfOrder() throws IOException {
+        File file = new File(directory, "c.psr");
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 16, 4)) {
+            recorder.onSample(30, 1, 0, 0, 0);
+            recorder.onSample(10, 4, 0, 0, 0); // batched gyroscope event older than the accelerometer one
+            recorder.onSample(20, 1, 0, 0, 0);
+            recorder.onSample(40, 4, 0, 0, 0);
+        }
+        try (SessionReader reader = new SessionReader(file)) {
+            CollectingSink sink = new CollectingSink();
+            reader.forEachInRange(10, 31, sink);
+
+            assertFalse(reader.isTimeOrdered());
+            assertEquals(3, sink.samples.size());
+        }
+    }
+
+    /** 60 s of two 100 Hz sensors in 0.5 s batches, the gyroscope a batch behind. */
+    private static void recordInterleaved(File file) throws IOException {
+        long periodNanos = 10_000_000L;
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 4096, 256)) {
+            for (int batch = 0; batch < 120; batch++) {
+                for (int i = 0; i < 50; i++) {
+                    recorder.onSample((batch * 50L + i) * periodNanos, 1, i, 0, 0);
+                }
+                for (int i = 0; i < 50 && batch > 0; i++) {
+                    recorder.onSample(((batch - 1) * 50L + i) * periodNanos, 4, i, 0, 0);
+                }
+                recorder.onBatchEnd();
+            }
+        }
+    }
+
+    @Test
+    public void rangeQueryOnInterleavedBatchesReadsOnlyOverlappingBlocks() throws IOException {
+        File file = new File(directory, "g.psr");
+        recordInterleaved(file);
+        try (SessionReader reader = new SessionReader(file)) {
+            assertFalse(reader.isTimeOrdered());
+            assertTrue(reader.hasTimeIndex());
+            long from = 30_000_000_000L;
+            long to = 31_000_000_000L;
+            CollectingSink sink = new CollectingSink();
+            reader.forEachInRange(from, to, sink);
+
+            // Both sensors for one second, the gyroscope up to 59.5 s
+            assertEquals(200, sink.samples.size());
+            for (long[] sample : sink.samples) {
+                assertTrue(sample[0] >= from && sample[0] < to);
+            }
+            assertEquals(1, sink.batches);
+            assertTrue(reader.getRangeRecordsExamined() + " of " + reader.getRecordCount() + " examined",
+                    reader.getRangeRecordsExamined() <= 2 * SessionFormat.INDEX_BLOCK_RECORDS);
+        }
+    }
+
+    @Test
+    public void closeCutShortBeforeTheIndexScansInstead() throws IOException {
+        File file = new File(directory, "i.psr");
+        recordInterleaved(file);
+        long recordsEnd = SessionFormat.recordOffset(11_950);
+        // Marked closed with the pre-sized zero tail still there, then trimmed without the index
+        for (long length : new long[]{recordsEnd + 4096 * SessionFormat.RECORD_SIZE, recordsEnd}) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(recordsEnd);
+                raf.setLength(length);
+            }
+            try (SessionReader reader = new SessionReader(file)) {
+                assertTrue(reader.wasClosedCleanly());
+                assertEquals(11_950, reader.getRecordCount());
+                assertFalse(reader.hasTimeIndex());
+                CollectingSink sink = new CollectingSink();
+                reader.forEachInRange(30_000_000_000L, 31_000_000_000L, sink);
+                assertEquals(200, sink.samples.size());
+            }
+        }
+    }
+
+    @Test
+    public void unfinishedFilesHaveNoIndex() throws IOException {
+        File file = new File(directory, "h.psr");
+        SessionRecorder recorder = new SessionRecorder(file, 0, 64, 4);
+        try {
+            recorder.onSample(30, 1, 0, 0, 0);
+            recorder.onSample(10, 4, 0, 0, 0);
+            recorder.onBatchEnd();
+            try (SessionReader reader = new SessionReader(file)) {
+                assertFalse(reader.hasTimeIndex());
+                CollectingSink sink = new CollectingSink();
+                reader.forEachInRange(0, 20, sink);
+                assertEquals(1, sink.samples.size());
+                assertEquals(2, reader.getRangeRecordsExamined());
+            }
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void recoversRecordsWrittenAfterLastCheckpoint() throws IOException {
+        File file = new File(directory, "d.psr");
+        SessionRecorder recorder = new SessionRecorder(file, 0, 4096, 256);
+        try {
+            writeSamples(recorder, 0, 1000); // the process "dies" without a batch end or close
+
+            try (SessionReader reader = new SessionReader(file)) {
+                assertFalse(reader.wasClosedCleanly());
+                assertEquals(1000, reader.getRecordCount());
+                assertEquals(1000 - 768, reader.getRecoveredCount());
+                assertSample(reader, 999, 999);
+            }
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void ignoresTornRecordWithoutSensorType() throws IOException {
+        File file = new File(directory, "e.psr");
+        SessionRecorder recorder = new SessionRecorder(file, 0, 64, 1000);
+        writeSamples(recorder, 0, 10);
+        recorder.force();
+        // Simulate a crash halfway through the eleventh record: timestamp written, marker not
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(SessionFormat.recordOffset(10));
+            raw.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        try (SessionReader reader = new SessionReader(file)) {
+            assertEquals(10, reader.getRecordCount());
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFile() throws IOException {
+        File file = new File(directory, "f.psr");
+        Files.write(file.toPath(), new byte[SessionFormat.HEADER_SIZE]);
+        new SessionReader(file);
+    }
+}
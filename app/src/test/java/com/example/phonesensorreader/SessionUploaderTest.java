@@ -0,0 +1,283 @@
+package com.example.phonesensorreader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/** Uploads against an in-process collector that decodes and keeps what it receives. */
+public class SessionUploaderTest {
+    private static final double RATE_HZ = 50;
+
+    private HttpServer server;
+    private String endpoint;
+    private File directory;
+    // Timestamp, sensor type and values of the samples received per session, guarded by this
+    private final Map<String, List<double[]>> received = new HashMap<>();
+    private final List<String> posts = new ArrayList<>();
+    private int failuresLeft;
+    private int failAfterBatches = Integer.MAX_VALUE;
+    private int samplesToLoseOnce;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("upload").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/sessions", this::collect);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/sessions";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private void collect(HttpExchange exchange) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+            String[] pair = parameter.split("=", 2);
+            query.put(pair[0], pair[1]);
+        }
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        int status;
+        String answer;
+        synchronized (this) {
+            List<double[]> samples = received.get(query.get("session"));
+            if (exchange.getRequestMethod().equals("GET")) {
+                status = samples == null ? 404 : 200;
+                answer = samples == null ? "unknown session" : "{\"next\":" + samples.size() + "}";
+            } else {
+                posts.add(query.get("offset") + "+" + query.get("count"));
+                if (samples == null) {
+                    samples = new ArrayList<>();
+                    received.put(query.get("session"), samples);
+                }
+                if (failuresLeft > 0 || posts.size() > failAfterBatches) {
+                    failuresLeft--;
+                    status = 503;
+                    answer = "busy";
+                } else if (Long.parseLong(query.get("offset")) != samples.size()) {
+                    status = 409;
+                    answer = "{\"next\":" + samples.size() + "}";
+                } else {
+                    List<double[]> batch = new ArrayList<>();
+                    SampleBlockEncoder.decode(body, 0, body.length, (timestampNanos, sensorType, x, y, z) ->
+                            batch.add(new double[]{timestampNanos, sensorType, x, y, z}));
+                    assertEquals(Integer.parseInt(query.get("count")), batch.size());
+                    // A collector that crashed before storing the end of a batch
+                    samples.addAll(batch.subList(0, batch.size() - samplesToLoseOnce));
+                    samplesToLoseOnce = 0;
+                    status = 200;
+                    answer = "{\"next\":" + samples.size() + "}";
+                }
+            }
+        }
+        byte[] response = answer.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private SessionUploader newUploader() {
+        return new SessionUploader(new SessionUploader.Config().endpoint(endpoint)
+                .recordsPerBatch(300).backoff(1, 10));
+    }
+
+    /** A 20 s recording of both sensors, 2000 samples. */
+    private File record(String name) throws IOException {
+        File file = new File(directory, name + SessionFormat.FILE_EXTENSION);
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 4096, 256)) {
+            new SyntheticSensorSource(RATE_HZ, 4).add(ActivityLabel.WALKING, 20).forEach(recorder);
+        }
+        return file;
+    }
+
+    private synchronized void assertReceived(File file, String session) throws IOException {
+        List<double[]> samples = received.get(session);
+        try (SessionReader reader = new SessionReader(file)) {
+            assertEquals(reader.getRecordCount(), samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                double[] sample = samples.get(i);
+                assertEquals(reader.getTimestamp(i), (long) sample[0]);
+                assertEquals(reader.getSensorType(i), (int) sample[1]);
+                assertEquals(reader.getX(i), sample[2], 0.0005 + 1e-6);
+                assertEquals(reader.getY(i), sample[3], 0.0005 + 1e-6);
+                assertEquals(reader.getZ(i), sample[4], 0.0005 + 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void uploadsSessionInCompressedBatches() throws IOException {
+        File file = record("session-1");
+        SessionUploader uploader = newUploader();
+
+        assertEquals(2000, uploader.upload(file));
+        assertReceived(file, "session-1");
+        assertEquals(List.of("0+300", "300+300", "600+300", "900+300", "1200+300", "1500+300", "1800+200"), posts);
+        assertEquals(7, uploader.getBatchCount());
+        assertEquals(2000, uploader.getUploadedRecords());
+        assertEquals(2000 * SessionFormat.RECORD_SIZE, uploader.getRawBytes());
+        assertTrue("ratio " + uploader.getCompressionRatio(), uploader.getCompressionRatio() > 2);
+        assertEquals(uploader.getCompressedBytes(), uploader.getBytesSent());
+        assertTrue(uploader.getBytesPerHour() > uploader.getBytesSent());
+        assertEquals(8, uploader.getBatchLatency().summarize().getCount());
+
+        // Nothing left to send the second time
+        assertEquals(2000, uploader.upload(file));
+        assertEquals(7, posts.size());
+    }
+
+    @Test
+    public void retriesWhileTheCollectorIsBusy() throws IOException {
+        File file = record("session-2");
+        failuresLeft = 2;
+        SessionUploader uploader = newUploader();
+
+        assertEquals(2000, uploader.upload(file));
+        assertReceived(file, "session-2");
+        assertEquals(2, uploader.getRetryCount());
+        assertEquals(0, uploader.getFailedCount());
+        assertTrue(uploader.getBytesSent() > uploader.getCompressedBytes());
+    }
+
+    @Test
+    public void resumesFromTheCollectorOffset() throws IOException {
+        File file = record("session-3");
+        failAfterBatches = 3;
+        SessionUploader uploader = newUploader();
+        try {
+            uploader.upload(file);
+            fail("Upload succeeded against a failing collector");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, uploader.getFailedCount());
+        assertEquals(900, uploader.getUploadedRecords());
+
+        synchronized (this) {
+            failAfterBatches = Integer.MAX_VALUE;
+            posts.clear();
+        }
+        SessionUploader restarted = newUploader();
+        assertEquals(2000, restarted.upload(file));
+        assertReceived(file, "session-3");
+        assertEquals("900+300", posts.get(0));
+        assertEquals(1100, restarted.getUploadedRecords());
+    }
+
+    @Test
+    public void followsTheCollectorWhenItLosesSamples() throws IOException {
+        File file = record("session-4");
+        samplesToLoseOnce = 100;
+        SessionUploader uploader = newUploader();
+
+        assertEquals(2000, uploader.upload(file));
+        assertReceived(file, "session-4");
+        assertEquals(List.of("0+300", "200+300"), posts.subList(0, 2));
+    }
+
+    @Test
+    public void uploadsSpilledSessions() throws IOException {
+        File file = new File(directory, "long-1" + SpillingRecorder.FILE_EXTENSION);
+        try (SpillingRecorder recorder = new SpillingRecorder(file, 0, 0)) {
+            new SyntheticSensorSource(RATE_HZ, 5).add(ActivityLabel.SITTING, 10).forEach(recorder);
+        }
+        SessionUploader uploader = newUploader();
+
+        assertEquals(1000, uploader.upload(file));
+        synchronized (this) {
+            assertEquals(1000, received.get("long-1").size());
+        }
+    }
+
+    @Test
+    public void uploadedSessionsAreNotReadAgain() throws IOException {
+        File uploaded = record("session-5");
+        File pending = record("session-6");
+        File recording = record("session-7");
+        SessionUploader uploader = newUploader();
+        uploader.upload(uploaded);
+
+        assertTrue(SessionUploader.uploadedMarker(uploaded).isFile());
+        assertTrue(uploader.isUploaded(uploaded));
+        assertFalse(uploader.isUploaded(pending));
+        // The uploader of the next start
+        assertEquals(List.of(pending), newUploader().pendingUploads(directory, recording));
+        // Another collector doesn't have it
+        SessionUploader other = new SessionUploader(new SessionUploader.Config().endpoint(endpoint + "/other"));
+        assertFalse(other.isUploaded(uploaded));
+        // Nor does this one once the file changed
+        Files.write(uploaded.toPath(), new byte[]{1}, StandardOpenOption.APPEND);
+        assertFalse(uploader.isUploaded(uploaded));
+    }
+
+    @Test
+    public void uploadsSamplesThatAreNotFinite() throws IOException {
+        File file = new File(directory, "session-9" + SessionFormat.FILE_EXTENSION);
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 4096, 256)) {
+            recorder.onSample(0, 1, 0, 0, 9.81f);
+            // A sensor glitch
+            recorder.onSample(10_000_000, 1, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY);
+            recorder.onSample(20_000_000, 1, 0, 0, 9.81f);
+        }
+        SessionUploader uploader = newUploader();
+
+        assertEquals(3, uploader.upload(file));
+        assertReceived(file, "session-9");
+        assertTrue(uploader.isUploaded(file));
+    }
+
+    @Test
+    public void failedUploadsAreNotMarked() throws IOException {
+        File file = record("session-8");
+        failuresLeft = Integer.MAX_VALUE;
+        SessionUploader uploader = new SessionUploader(new SessionUploader.Config().endpoint(endpoint)
+                .recordsPerBatch(300).maxAttempts(2).backoff(1, 1));
+        try {
+            uploader.upload(file);
+            fail("Upload succeeded against a failing collector");
+        } catch (IOException expected) {
+        }
+
+        assertFalse(uploader.isUploaded(file));
+        assertFalse(SessionUploader.uploadedMarker(file).exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = new File(directory, "notes.txt");
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        newUploader().upload(file);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.phonesensorreader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpillingRecorderTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sessions").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static class CollectingSink implements SampleSink {
+        final List<long[]> samples = new ArrayList<>();
+        int batches;
+
+        @Override
+        public void onSample(long timestampNanos, int sensorType, float x, float y, float z) {
+            samples.add(new long[]{timestampNanos, sensorType, Float.floatToIntBits(x), Float.floatToIntBits(y), Float.floatToIntBits(z)});
+        }
+
+        @Override
+        public void onBatchEnd() {
+            batches++;
+        }
+    }
+
+    private static void writeSamples(SampleSink recorder, int from, int to) {
+        for (int i = from; i < to; i++) {
+            recorder.onSample(1_000_000L * i + (i % 7), i % 2 == 0 ? 1 : 4, (float) Math.sin(i * 0.01), -i, i / 3f);
+        }
+    }
+
+    private static void assertSamples(CollectingSink sink, int from, int to) {
+        assertEquals(to - from, sink.samples.size());
+        for (int i = from; i < to; i++) {
+            long[] sample = sink.samples.get(i - from);
+            assertEquals(1_000_000L * i + (i % 7), sample[0]);
+            assertEquals(i % 2 == 0 ? 1 : 4, sample[1]);
+            assertEquals(Float.floatToIntBits((float) Math.sin(i * 0.01)), sample[2]);
+            assertEquals(Float.floatToIntBits(-i), sample[3]);
+            assertEquals(Float.floatToIntBits(i / 3f), sample[4]);
+        }
+    }
+
+    @Test
+    public void roundTripsAcrossChunks() throws IOException {
+        File file = new File(directory, "session.psz");
+        SpillingRecorder recorder = new SpillingRecorder(file, 1234, 0);
+        assertEquals(SpillingRecorder.MIN_BLOCK_RECORDS, recorder.getBlockRecords());
+        writeSamples(recorder, 0, 1000);
+        assertEquals(3, recorder.getChunkCount());
+        assertEquals(1000 - 3 * 256, recorder.getRecentCount());
+        recorder.close();
+        assertEquals(4, recorder.getChunkCount());
+        assertEquals(file.length(), recorder.getFileBytes());
+
+        CollectingSink sink = new CollectingSink();
+        assertEquals(1000, SpillingRecorder.read(file, sink));
+        assertSamples(sink, 0, 1000);
+        assertEquals(4, sink.batches);
+    }
+
+    @Test
+    public void recentWindowHoldsUnspilledSamples() throws IOException {
+        SpillingRecorder recorder = new SpillingRecorder(new File(directory, "session.psz"), 0, 0);
+        writeSamples(recorder, 0, 300);
+        CollectingSink recent = new CollectingSink();
+        recorder.readRecent(recent);
+        assertSamples(recent, 256, 300);
+        assertEquals(300, recorder.getRecordCount());
+        assertEquals(256, recorder.getSpilledCount());
+        recorder.close();
+    }
+
+    @Test
+    public void compressesSmoothMotionData() throws IOException {
+        File file = new File(directory, "session.psz");
+        SpillingRecorder recorder = new SpillingRecorder(file, 0, 1024 * 1024);
+        // Two sensors at 100 Hz with a little quantization noise, like a real accelerometer
+        for (int i = 0; i < 200_000; i++) {
+            long timestamp = 5_000_000L * i;
+            float value = Math.round(Math.sin(i * 0.02) * 400) / 100f;
+            recorder.onSample(timestamp, i % 2 == 0 ? 1 : 4, value, value / 2, 9.81f);
+        }
+        recorder.close();
+        double bytesPerSample = file.length() / 200_000.0;
+        assertTrue("bytes per sample " + bytesPerSample, bytesPerSample < 12);
+    }
+
+    @Test
+    public void memoryFollowsTheBudget() throws IOException {
+        long budget = 2 * 1024 * 1024;
+        SpillingRecorder recorder = new SpillingRecorder(new File(directory, "session.psz"), 0, budget);
+        assertTrue(recorder.getMemoryBytes() <= budget);
+        assertTrue(recorder.getMemoryBytes() > budget * 9 / 10);
+        assertEquals(budget / SpillingRecorder.MEMORY_PER_RECORD, recorder.getBlockRecords());
+        recorder.close();
+    }
+
+    @Test
+    public void readStopsAtTruncatedChunk() throws IOException {
+        File file = new File(directory, "session.psz");
+        SpillingRecorder recorder = new SpillingRecorder(file, 0, 0);
+        writeSamples(recorder, 0, 600);
+        recorder.close();
+        // Cut the last chunk in half as if the process died while writing it
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 100);
+        }
+
+        CollectingSink sink = new CollectingSink();
+        assertEquals(512, SpillingRecorder.read(file, sink));
+        assertSamples(sink, 0, 512);
+    }
+
+    @Test
+    public void readStopsAtTruncatedChunkHeader() throws IOException {
+        File file = new File(directory, "session.psz");
+        SpillingRecorder recorder = new SpillingRecorder(file, 0, 0);
+        writeSamples(recorder, 0, 256);
+        long afterFirstChunk = recorder.getFileBytes();
+        writeSamples(recorder, 256, 300);
+        recorder.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(afterFirstChunk + 10);
+        }
+
+        CollectingSink sink = new CollectingSink();
+        assertEquals(256, SpillingRecorder.read(file, sink));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = new File(directory, "session.psr");
+        try (SessionRecorder recorder = new SessionRecorder(file, 0, 64, 16)) {
+            recorder.onSample(1, 1, 0, 0, 0);
+        }
+        SpillingRecorder.read(file, new CollectingSink());
+    }
+
+    @Test
+    public void spillingDoesNotAllocate() throws IOException {
+        SpillingRecorder recorder = new SpillingRecorder(new File(directory, "session.psz"), 0, 64 * 1024);
+        writeSamples(recorder, 0, 100_000); // warm up
+        long allocated = Allocations.measure(() -> writeSamples(recorder, 100_000, 1_100_000));
+        recorder.close();
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 64 * 1024);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SseParserTest {
+
+    private static List<String> parse(String stream) throws IOException {
+        List<String> events = new ArrayList<>();
+        new SseParser((event, data) -> events.add(event + "|" + data)).parse(new BufferedReader(new StringReader(stream)));
+        return events;
+    }
+
+    @Test
+    public void dispatchesOnBlankLine() throws IOException {
+        List<String> events = parse("data: {\"content\":\"Hi\"}\n\ndata: {\"content\":\" there\"}\n\n");
+        assertEquals(2, events.size());
+        assertEquals("message|{\"content\":\"Hi\"}", events.get(0));
+        assertEquals("message|{\"content\":\" there\"}", events.get(1));
+    }
+
+    @Test
+    public void joinsMultiLineDataAndKeepsEventName() throws IOException {
+        List<String> events = parse("event: update\ndata: a\ndata:b\nid: 7\n\n");
+        assertEquals(1, events.size());
+        assertEquals("update|a\nb", events.get(0));
+    }
+
+    @Test
+    public void ignoresCommentsAndEmptyEvents() throws IOException {
+        List<String> events = parse(": keep-alive\n\n\nevent: ping\n\ndata: x\n\n");
+        assertEquals(1, events.size());
+        assertEquals("message|x", events.get(0));
+    }
+
+    @Test
+    public void dispatchesTrailingEventWithoutBlankLine() throws IOException {
+        List<String> events = parse("data: last");
+        assertEquals(1, events.size());
+        assertEquals("message|last", events.get(0));
+    }
+
+    @Test
+    public void stopsWhenListenerReturnsFalse() throws IOException {
+        List<String> events = new ArrayList<>();
+        new SseParser((event, data) -> {
+            events.add(data);
+            return false;
+        }).parse(new BufferedReader(new StringReader("data: 1\n\ndata: 2\n\n")));
+        assertEquals(1, events.size());
+    }
+}
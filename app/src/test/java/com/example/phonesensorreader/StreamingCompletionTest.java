@@ -0,0 +1,206 @@
+package com.example.phonesensorreader;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Streams through {@link CompletionClient} from an in-process stub of the llama.cpp completion server. */
+public class StreamingCompletionTest {
+    private static final String[] TOKENS = {"You", " are", " walking", "."};
+    private static final long TOKEN_DELAY_MILLIS = 150;
+    private static final long PAUSE_MILLIS = 1000;
+
+    private HttpServer server;
+    private ExecutorService delivery;
+    private CompletionClient client;
+    private volatile long[] tokenSentNanos;
+    private volatile String requestBody;
+    private volatile long pauseEndNanos;
+
+    @Before
+    public void setUp() throws IOException {
+        tokenSentNanos = new long[TOKENS.length];
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/completion", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                requestBody = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < TOKENS.length; i++) {
+                    sleep(TOKEN_DELAY_MILLIS);
+                    tokenSentNanos[i] = System.nanoTime();
+                    String frame = "data: {\"content\":\"" + TOKENS[i] + "\",\"stop\":false}\n\n";
+                    out.write(frame.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                out.write("data: {\"content\":\"\",\"stop\":true}\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/pause", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("data: {\"content\":\"Still\"}\n\ndata: {\"content\":\" thinking\"}\n\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                sleep(PAUSE_MILLIS);
+                pauseEndNanos = System.nanoTime();
+                out.write("data: {\"content\":\".\",\"stop\":true}\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        delivery = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        server.stop(0);
+        delivery.shutdownNow();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stream(String path, String json, long minDeliveryIntervalMillis, StreamingCompletion.Listener listener) {
+        client = new CompletionClient(new CompletionClient.Config()
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + path));
+        client.stream(null, json, listener, delivery, minDeliveryIntervalMillis);
+    }
+
+    private static class RecordingListener implements StreamingCompletion.Listener {
+        final List<String> chunks = new ArrayList<>();
+        final List<Long> chunkNanos = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        String fullText;
+        CompletionStats stats;
+        String error;
+
+        @Override
+        public void onChunk(String text) {
+            chunkNanos.add(System.nanoTime());
+            chunks.add(text);
+        }
+
+        @Override
+        public void onComplete(String fullText, CompletionStats stats) {
+            this.fullText = fullText;
+            this.stats = stats;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String message) {
+            error = message;
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void deliversEachTokenAsItArrives() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        stream("/completion", "{\"prompt\":\"p\",\"stream\":true}", 0, listener);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertNull(listener.error);
+        assertEquals("{\"prompt\":\"p\",\"stream\":true}", requestBody);
+        assertEquals(TOKENS.length, listener.chunks.size());
+        for (int i = 0; i < TOKENS.length; i++) {
+            assertEquals(TOKENS[i], listener.chunks.get(i));
+            long latencyMillis = (listener.chunkNanos.get(i) - tokenSentNanos[i]) / 1_000_000L;
+            // Well below the gap between tokens, so nothing waits for the end of the response
+            assertTrue("chunk " + i + " delivered after " + latencyMillis + " ms", latencyMillis < TOKEN_DELAY_MILLIS / 2);
+        }
+        assertEquals("You are walking.", listener.fullText);
+        assertEquals(TOKENS.length, listener.stats.getTokenCount());
+        assertTrue(listener.stats.getTimeToFirstTokenMillis() >= TOKEN_DELAY_MILLIS - 20);
+        assertTrue(listener.stats.getTimeToFirstTokenMillis() < listener.stats.getTotalMillis());
+        // Three gaps of 150 ms after the first token
+        assertEquals(1000.0 / TOKEN_DELAY_MILLIS, listener.stats.getTokensPerSecond(), 2);
+    }
+
+    @Test
+    public void coalescesChunksToBoundedRate() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        // Longer than the whole stream after the first token, so everything else arrives at the end
+        stream("/completion", "{}", 10_000, listener);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(2, listener.chunks.size());
+        assertEquals("You", listener.chunks.get(0));
+        assertEquals(" are walking.", listener.chunks.get(1));
+        assertEquals("You are walking.", listener.fullText);
+    }
+
+    @Test
+    public void heldBackTokensGoOutWhenTheServerPauses() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        stream("/pause", "{}", 200, listener);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("Still", " thinking", "."), listener.chunks);
+        // Out when the interval ran out, not when the pause ended
+        assertTrue(listener.chunkNanos.get(1) < pauseEndNanos - TimeUnit.MILLISECONDS.toNanos(PAUSE_MILLIS / 2));
+    }
+
+    @Test
+    public void heldBackTokensGoOutBeforeAnError() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        InputStream body = new java.io.ByteArrayInputStream(
+                "data: {\"content\":\"Half\"}\n\ndata: {\"content\":\" an answer\"}\n\ndata: {\"con\n\n"
+                        .getBytes(StandardCharsets.UTF_8));
+        new StreamingCompletion(listener, delivery, 10_000).read(body);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("Half", " an answer"), listener.chunks);
+        assertEquals("Malformed event: {\"con", listener.error);
+    }
+
+    @Test
+    public void reportsHttpErrors() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        stream("/broken", "{}", 0, listener);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertEquals("Error: 503", listener.error);
+        assertTrue(listener.chunks.isEmpty());
+    }
+
+    @Test
+    public void reportsMalformedEvents() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        InputStream body = new java.io.ByteArrayInputStream("data: not json\n\n".getBytes(StandardCharsets.UTF_8));
+        new StreamingCompletion(listener, delivery, 0).read(body);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertEquals("Malformed event: not json", listener.error);
+    }
+}
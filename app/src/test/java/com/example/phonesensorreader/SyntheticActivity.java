@@ -0,0 +1,128 @@
+package com.example.phonesensorreader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Labeled synthetic accelerometer and gyroscope windows for walking, running and sitting.
+ *
+ * Each session holds the phone in a random orientation and moves it with a random cadence
+ * and intensity drawn from ranges typical of pocket and hand held recordings, plus sensor noise.
+ * Samples go through {@link WindowFeatureExtractor} exactly as in the service.
+ */
+class SyntheticActivity {
+    private static final int ACC = 1;
+    private static final int GYRO = 4;
+    private static final double GRAVITY = 9.81;
+
+    static class LabeledWindow {
+        final ActivityLabel label;
+        final WindowFeatures accelerometer = new WindowFeatures();
+        final WindowFeatures gyroscope = new WindowFeatures();
+
+        LabeledWindow(ActivityLabel label) {
+            this.label = label;
+        }
+    }
+
+    /** {@code sessionsPerLabel} sessions of {@code sessionSeconds} for each activity. */
+    static List<LabeledWindow> generate(int sessionsPerLabel, double sessionSeconds, double rateHz, long seed) {
+        Random random = new Random(seed);
+        List<LabeledWindow> windows = new ArrayList<>();
+        ActivityLabel[] labels = {ActivityLabel.WALKING, ActivityLabel.RUNNING, ActivityLabel.SITTING};
+        for (int session = 0; session < sessionsPerLabel; session++) {
+            for (ActivityLabel label : labels) {
+                generateSession(label, sessionSeconds, rateHz, random, windows);
+            }
+        }
+        return windows;
+    }
+
+    private static void generateSession(ActivityLabel label, double seconds, double rateHz, Random random,
+                                        List<LabeledWindow> out) {
+        double cadenceHz;
+        double amplitude; // vertical acceleration, m/s²
+        double rotation; // rad/s
+        switch (label) {
+            case WALKING:
+                cadenceHz = uniform(random, 1.4, 2.3);
+                amplitude = uniform(random, 1.2, 4.5);
+                rotation = uniform(random, 0.3, 1.0);
+                break;
+            case RUNNING:
+                cadenceHz = uniform(random, 2.3, 3.2);
+                amplitude = uniform(random, 4.5, 11);
+                rotation = uniform(random, 1.5, 3.0);
+                break;
+            default:
+                // Occasional slow fidgeting
+                cadenceHz = uniform(random, 0.1, 0.5);
+                amplitude = uniform(random, 0, 0.4);
+                rotation = uniform(random, 0, 0.05);
+                break;
+        }
+        double noise = uniform(random, 0.03, 0.15);
+        double phase = uniform(random, 0, 2 * Math.PI);
+        // Unit vector of gravity in phone coordinates and an orthogonal forward axis
+        double[] down = randomUnitVector(random);
+        double[] forward = orthogonalUnitVector(down, random);
+
+        LabeledWindow[] current = {null};
+        WindowFeatureExtractor.FeatureListener gyroListener = features -> {
+            if (current[0] != null) {
+                current[0].gyroscope.copyFrom(features);
+            }
+        };
+        WindowFeatureExtractor.FeatureListener accListener = features -> {
+            LabeledWindow window = new LabeledWindow(label);
+            window.accelerometer.copyFrom(features);
+            current[0] = window;
+            out.add(window);
+        };
+        WindowFeatureExtractor accWindows = new WindowFeatureExtractor(ACC, rateHz, 2.56, 0.5, accListener);
+        WindowFeatureExtractor gyroWindows = new WindowFeatureExtractor(GYRO, rateHz, 2.56, 0.5, gyroListener);
+
+        int samples = (int) (seconds * rateHz);
+        for (int i = 0; i < samples; i++) {
+            double t = i / rateHz;
+            double step = 2 * Math.PI * cadenceHz * t + phase;
+            double vertical = amplitude * (Math.sin(step) + 0.3 * Math.sin(2 * step + 1));
+            double sway = 0.4 * amplitude * Math.sin(step / 2);
+            long timestamp = (long) (t * 1e9);
+            // Gyroscope first so the accelerometer window closing at the same sample sees it
+            gyroWindows.onSample(timestamp, GYRO,
+                    (float) (rotation * Math.sin(step / 2) + noise * 0.1 * random.nextGaussian()),
+                    (float) (rotation * 0.5 * Math.sin(step) + noise * 0.1 * random.nextGaussian()),
+                    (float) (rotation * 0.3 * Math.cos(step / 2) + noise * 0.1 * random.nextGaussian()));
+            float[] acc = new float[3];
+            for (int axis = 0; axis < 3; axis++) {
+                acc[axis] = (float) (down[axis] * (GRAVITY + vertical) + forward[axis] * sway + noise * random.nextGaussian());
+            }
+            accWindows.onSample(timestamp, ACC, acc[0], acc[1], acc[2]);
+        }
+    }
+
+    private static double uniform(Random random, double from, double to) {
+        return from + random.nextDouble() * (to - from);
+    }
+
+    private static double[] randomUnitVector(Random random) {
+        double[] v = {random.nextGaussian(), random.nextGaussian(), random.nextGaussian()};
+        return normalize(v);
+    }
+
+    private static double[] orthogonalUnitVector(double[] unit, Random random) {
+        double[] v = randomUnitVector(random);
+        double dot = v[0] * unit[0] + v[1] * unit[1] + v[2] * unit[2];
+        for (int axis = 0; axis < 3; axis++) {
+            v[axis] -= dot * unit[axis];
+        }
+        return normalize(v);
+    }
+
+    private static double[] normalize(double[] v) {
+        double norm = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        return new double[]{v[0] / norm, v[1] / norm, v[2] / norm};
+    }
+}
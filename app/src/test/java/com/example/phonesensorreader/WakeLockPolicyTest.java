@@ -0,0 +1,52 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WakeLockPolicyTest {
+    private static final long MINUTE = 60_000;
+
+    @Test
+    public void renewsLeasesUntilTheSessionEnds() {
+        WakeLockPolicy policy = new WakeLockPolicy(60 * MINUTE, 10 * MINUTE);
+        long elapsed = 0;
+        long heldUntil = 0;
+        int leases = 0;
+        while (true) {
+            long lease = policy.nextLeaseMillis(elapsed);
+            if (lease == 0) break;
+            // Every renewal happens while the previous lease is still held
+            assertTrue(elapsed <= heldUntil || leases == 0);
+            heldUntil = elapsed + lease;
+            leases++;
+            long delay = policy.renewDelayMillis(elapsed, lease);
+            if (delay < 0) break;
+            elapsed += delay;
+        }
+        assertEquals(60 * MINUTE, heldUntil);
+        assertEquals(11, leases);
+    }
+
+    @Test
+    public void lastLeaseEndsWithTheSession() {
+        WakeLockPolicy policy = new WakeLockPolicy(60 * MINUTE, 10 * MINUTE);
+        assertEquals(10 * MINUTE, policy.nextLeaseMillis(0));
+        assertEquals(3 * MINUTE, policy.nextLeaseMillis(57 * MINUTE));
+        assertEquals(-1, policy.renewDelayMillis(57 * MINUTE, 3 * MINUTE));
+        assertEquals(0, policy.nextLeaseMillis(60 * MINUTE));
+        assertEquals(0, policy.nextLeaseMillis(90 * MINUTE));
+    }
+
+    @Test
+    public void fixedPolicyTakesOneLease() {
+        WakeLockPolicy policy = WakeLockPolicy.fixed(MINUTE);
+        assertEquals(MINUTE, policy.nextLeaseMillis(0));
+        assertEquals(-1, policy.renewDelayMillis(0, MINUTE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyLease() {
+        new WakeLockPolicy(MINUTE, 0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+
+/**
+ * Feature windows of three sensors at 200 Hz, 2.56 s long with half overlap, with the
+ * {@link RealFft} spectra of 512 sample windows and with the direct DFT the extractor falls back
+ * to for a 511 sample window. Reports the share of one core a live session would take.
+ */
+public class WindowFeatureExtractorBenchmark {
+    private static final double RATE_HZ = 200;
+    private static final int[] SENSOR_TYPES = {1, 2, 4};
+    private static final int SECONDS = 600;
+
+    private static void run(String name, double windowSeconds) {
+        double[] checksum = {0};
+        WindowFeatureExtractor[] extractors = new WindowFeatureExtractor[SENSOR_TYPES.length];
+        for (int i = 0; i < extractors.length; i++) {
+            extractors[i] = new WindowFeatureExtractor(SENSOR_TYPES[i], RATE_HZ, windowSeconds, 0.5,
+                    features -> checksum[0] += features.getCadenceStepsPerMinute() + features.getDominantFrequencyHz(0));
+        }
+        int instants = (int) (SECONDS * RATE_HZ);
+        long start = System.nanoTime();
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < instants; i++) {
+                double t = i / RATE_HZ;
+                long timestamp = (long) (t * 1e9);
+                float bounce = (float) (3 * Math.sin(2 * Math.PI * 1.9 * t));
+                for (int j = 0; j < extractors.length; j++) {
+                    extractors[j].onSample(timestamp, SENSOR_TYPES[j], bounce * 0.6f, 0.1f * j, 9.81f + bounce * 0.8f);
+                }
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        int samples = instants * extractors.length;
+        System.out.printf("%-4s n=%d %6.1f ns/sample %5.2f%% of a core %6.2f bytes/sample (checksum %.1f)%n",
+                name, extractors[0].getWindowLength(), elapsed / (double) samples,
+                100.0 * elapsed / SECONDS / 1e9, allocated / (double) samples, checksum[0]);
+    }
+
+    @Test
+    public void threeSensorsAt200Hz() {
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) System.out.println("Window features of 3 sensors at 200 Hz, " + SECONDS + " s:");
+            run("FFT", 2.56);
+            run("DFT", 2.555);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.phonesensorreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WindowFeatureExtractorTest {
+    private static final int ACC = 1;
+    private static final double RATE = 50;
+
+    private static class Collector implements WindowFeatureExtractor.FeatureListener {
+        final List<WindowFeatures> windows = new ArrayList<>();
+
+        @Override
+        public void onWindow(WindowFeatures features) {
+            WindowFeatures copy = new WindowFeatures();
+            copy.copyFrom(features);
+            windows.add(copy);
+        }
+    }
+
+    private interface Signal {
+        float value(int axis, double t);
+    }
+
+    private static void feed(WindowFeatureExtractor extractor, int count, Signal signal) {
+        for (int i = 0; i < count; i++) {
+            double t = i / RATE;
+            extractor.onSample((long) (t * 1e9), ACC, signal.value(0, t), signal.value(1, t), signal.value(2, t));
+        }
+    }
+
+    @Test
+    public void windowLengthAndHopFollowConfiguration() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 2.56, 0.5, collector);
+        assertEquals(128, extractor.getWindowLength());
+        assertEquals(64, extractor.getHop());
+
+        feed(extractor, 128 + 64 * 9, (axis, t) -> 0);
+        assertEquals(10, collector.windows.size());
+        WindowFeatures second = collector.windows.get(1);
+        assertEquals((long) (64 / RATE * 1e9), second.getStartTimestampNanos());
+        assertEquals((long) (191 / RATE * 1e9), second.getEndTimestampNanos());
+    }
+
+    @Test
+    public void sineWaveFeatures() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 2.56, 0.5, collector);
+        // 2.34375 Hz is exactly bin 6 of a 128 sample window at 50 Hz; Y is a slower wave, Z an offset sine
+        feed(extractor, 1000, (axis, t) -> axis == 0 ? (float) (2 * Math.sin(2 * Math.PI * 2.34375 * t))
+                : axis == 1 ? (float) Math.sin(2 * Math.PI * 0.78125 * t)
+                : (float) (9.81 + Math.sin(2 * Math.PI * 1.5625 * t)));
+
+        WindowFeatures last = collector.windows.get(collector.windows.size() - 1);
+        assertEquals(2.34375, last.getDominantFrequencyHz(0), 1e-9);
+        assertEquals(0.78125, last.getDominantFrequencyHz(1), 1e-9);
+        assertEquals(1.5625, last.getDominantFrequencyHz(2), 1e-9);
+        assertEquals(0, last.getMean(0), 1e-6);
+        assertEquals(2 / Math.sqrt(2), last.getStdDev(0), 1e-3);
+        assertEquals(2, last.getEnergy(0), 1e-3);          // A^2 / 2
+        assertEquals(9.81, last.getMean(2), 1e-5);
+        assertEquals(9.81 * 9.81 + 0.5, last.getEnergy(2), 1e-3);
+        assertEquals(2, last.getMax(0), 1e-3);
+        assertEquals(-2, last.getMin(0), 1e-3);
+        // Six full periods cross zero twelve times in 127 sample pairs
+        assertEquals(12.0 / 127, last.getZeroCrossingRate(0), 1.5 / 127);
+        // Mean |2 sin| + |sin| + (9.81 + sin) over whole periods
+        assertEquals(2 * 2 / Math.PI + 2 / Math.PI + 9.81, last.getSignalMagnitudeArea(), 1e-2);
+    }
+
+    @Test
+    public void stepSignalFeatures() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 2.0, 0, collector);
+        // First half of the only window at 0, second half at 4
+        feed(extractor, 100, (axis, t) -> t < 1.0 ? 0f : 4f);
+
+        assertEquals(1, collector.windows.size());
+        WindowFeatures window = collector.windows.get(0);
+        assertEquals(2, window.getMean(0), 1e-9);
+        assertEquals(2, window.getStdDev(0), 1e-9);
+        assertEquals(0, window.getMin(0), 0);
+        assertEquals(4, window.getMax(0), 0);
+        assertEquals(8, window.getEnergy(0), 1e-9);
+        assertEquals(1.0 / 99, window.getZeroCrossingRate(0), 1e-12);
+        assertEquals(0.5, window.getDominantFrequencyHz(0), 1e-9);
+        assertEquals(6, window.getSignalMagnitudeArea(), 1e-9);
+    }
+
+    @Test
+    public void cadenceAndBandsFromTheMagnitude() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 2.56, 0.5, collector);
+        // Gravity along a tilted axis plus 1.8 steps per second of vertical bounce, between bins
+        double amplitude = 3;
+        feed(extractor, 1000, (axis, t) -> {
+            double vertical = 9.81 + amplitude * Math.sin(2 * Math.PI * 1.8 * t);
+            return (float) (axis == 0 ? 0.6 * vertical : axis == 1 ? 0 : 0.8 * vertical);
+        });
+
+        WindowFeatures last = collector.windows.get(collector.windows.size() - 1);
+        assertEquals(108, last.getCadenceStepsPerMinute(), 1.5);
+        // A^2 / 2 of the magnitude, nearly all in the 1 to 2 Hz band
+        double total = 0;
+        for (int band = 0; band < WindowFeatures.BANDS; band++) {
+            total += last.getBandEnergy(band);
+        }
+        assertEquals(amplitude * amplitude / 2, total, 0.5);
+        assertTrue(last.getBandEnergy(1) > 0.9 * total);
+    }
+
+    @Test
+    public void windowsOtherThanAPowerOfTwoUseTheDirectDft() {
+        Collector collector = new Collector();
+        // 2.6 s at 50 Hz is 130 samples, which goes through the direct DFT; 6 / 2.6 Hz is bin 6
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 2.6, 0, collector);
+        assertEquals(130, extractor.getWindowLength());
+        double frequency = 6 / 2.6;
+        feed(extractor, 130, (axis, t) -> (float) (9.81 + 2 * Math.sin(2 * Math.PI * frequency * t)));
+
+        WindowFeatures window = collector.windows.get(0);
+        assertEquals(frequency, window.getDominantFrequencyHz(0), 1e-9);
+        assertEquals(60 * frequency, window.getCadenceStepsPerMinute(), 0.5);
+    }
+
+    @Test
+    public void stillPhoneHasNoCadence() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 2.56, 0.5, collector);
+        Random random = new Random(3);
+        feed(extractor, 500, (axis, t) -> (float) ((axis == 2 ? 9.81 : 0) + 0.05 * random.nextGaussian()));
+
+        for (WindowFeatures window : collector.windows) {
+            assertEquals(0, window.getCadenceStepsPerMinute(), 0);
+        }
+    }
+
+    @Test
+    public void flatSignalHasNoDominantFrequency() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 1.0, 0.5, collector);
+        feed(extractor, 200, (axis, t) -> 9.81f);
+
+        for (WindowFeatures window : collector.windows) {
+            assertEquals(0, window.getDominantFrequencyHz(2), 0);
+            assertEquals(0, window.getStdDev(2), 1e-6);
+            assertEquals(0, window.getZeroCrossingRate(2), 0);
+            assertEquals(0, window.getCadenceStepsPerMinute(), 0);
+            assertEquals(0, window.getBandEnergy(1), 1e-9);
+        }
+    }
+
+    @Test
+    public void ignoresOtherSensorsAndRestartsAfterGap() {
+        Collector collector = new Collector();
+        WindowFeatureExtractor extractor = new WindowFeatureExtractor(ACC, RATE, 1.0, 0, collector);
+        for (int i = 0; i < 40; i++) {
+            extractor.onSample(i * 20_000_000L, ACC, 1, 1, 1);
+            extractor.onSample(i * 20_000_000L, 4, 5, 5, 5);
+        }
+        // One second pause, then a full window
+        for (int i = 0; i < 50; i++) {
+            extractor.onSample(2_000_000_000L + i * 20_000_000L, ACC, 2, 2, 2);
+        }
+
+        assertEquals(1, collector.windows.size());
+        assertEquals(2, collector.windows.get(0).getMean(0), 0);
+        assertEquals(2_000_000_000L, collector.windows.get(0).getStartTimestampNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFullOverlap() {
+        new WindowFeatureExtractor(ACC, RATE, 2.56, 1.0, features -> { });
+    }
+}